@@ -0,0 +1,38 @@
+package fcu.pbiecs.spring_demo.benchmark;
+
+import fcu.pbiecs.spring_demo.dto.CourseEnrollmentDTO;
+import fcu.pbiecs.spring_demo.dto.PopularCourseDTO;
+import fcu.pbiecs.spring_demo.dto.StudentEnrollmentDTO;
+import fcu.pbiecs.spring_demo.service.EnrollmentService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnrollmentBenchmark {
+
+    @Benchmark
+    public List<CourseEnrollmentDTO> studentEnrollments(SeededState state) {
+        int studentId = state.randomStudentId();
+        return state.readOnlyTx.execute(status ->
+                state.bean(EnrollmentService.class).getStudentEnrollments(studentId));
+    }
+
+    @Benchmark
+    public List<StudentEnrollmentDTO> courseEnrollments(SeededState state) {
+        int courseId = state.randomCourseId();
+        return state.readOnlyTx.execute(status ->
+                state.bean(EnrollmentService.class).getCourseEnrollments(courseId));
+    }
+
+    @Benchmark
+    public List<PopularCourseDTO> topPopularCourses(SeededState state) {
+        return state.readOnlyTx.execute(status ->
+                state.bean(EnrollmentService.class).getTopPopularCourses(10));
+    }
+}
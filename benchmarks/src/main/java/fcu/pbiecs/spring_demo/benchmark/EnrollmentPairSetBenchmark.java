@@ -0,0 +1,62 @@
+package fcu.pbiecs.spring_demo.benchmark;
+
+import fcu.pbiecs.spring_demo.collection.IntPairSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比較產生選課資料時的去重方式：字串 key 的 HashSet 與打包成 long 的 IntPairSet。
+ * 不需要 Spring 與資料庫；記憶體差異用 GC profiler 看每次操作的配置量：
+ * <pre>
+ *   mvn -f benchmarks/pom.xml compile exec:exec -Djmh.args="EnrollmentPairSetBenchmark -prof gc"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class EnrollmentPairSetBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int enrollmentCount;
+
+    private int[] studentIds;
+    private int[] courseIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // 與 SeededState 相同的規模：學生數為選課數的十分之一，固定 50 門課
+        Random random = new Random(42);
+        int studentCount = Math.max(1000, enrollmentCount / 10);
+        studentIds = new int[enrollmentCount];
+        courseIds = new int[enrollmentCount];
+        for (int i = 0; i < enrollmentCount; i++) {
+            studentIds[i] = 1 + random.nextInt(studentCount);
+            courseIds[i] = 1 + random.nextInt(50);
+        }
+    }
+
+    @Benchmark
+    public int stringKeyHashSet() {
+        Set<String> enrollmentPairs = new HashSet<>();
+        for (int i = 0; i < enrollmentCount; i++) {
+            enrollmentPairs.add(studentIds[i] + "-" + courseIds[i]);
+        }
+        return enrollmentPairs.size();
+    }
+
+    @Benchmark
+    public int packedLongSet() {
+        IntPairSet enrollmentPairs = new IntPairSet(enrollmentCount);
+        for (int i = 0; i < enrollmentCount; i++) {
+            enrollmentPairs.add(studentIds[i], courseIds[i]);
+        }
+        return enrollmentPairs.size();
+    }
+}
@@ -0,0 +1,97 @@
+package fcu.pbiecs.spring_demo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import fcu.pbiecs.spring_demo.controller.ColumnarJsonHttpMessageConverter;
+import fcu.pbiecs.spring_demo.dto.StudentEnrollmentDTO;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 比較選課名單 (/api/courses/{id}/Students) 以各種回應格式輸出的大小與序列化成本，不需要 Spring context 與資料庫。
+ * gzip=true 時包含壓縮 (與 server.compression 相同的預設壓縮等級)。每個參數組合開始時印出輸出的位元組數，
+ * 即實際傳輸量；記憶體配置用 GC profiler 看：
+ * <pre>
+ *   mvn -f benchmarks/pom.xml compile exec:exec -Djmh.args="ResponseFormatBenchmark -prof gc"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseFormatBenchmark {
+
+    @Param({"1000", "50000"})
+    public int rowCount;
+
+    @Param({"json", "cbor", "smile", "columnar"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private List<StudentEnrollmentDTO> roster;
+    private BodyWriter bodyWriter;
+
+    private interface BodyWriter {
+        void write(List<StudentEnrollmentDTO> rows, OutputStream out) throws IOException;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        LocalDate firstDay = LocalDate.of(2025, 2, 10);
+        roster = new ArrayList<>(rowCount);
+        for (int i = 1; i <= rowCount; i++) {
+            LocalDate birthday = LocalDate.of(2000 + random.nextInt(6), 1 + random.nextInt(12), 1 + random.nextInt(28));
+            roster.add(new StudentEnrollmentDTO(i, "First" + i, "Last" + random.nextInt(5000),
+                    "student" + i + "@example.com", birthday.toString(),
+                    Date.valueOf(firstDay.plusDays(random.nextInt(14)))));
+        }
+
+        // 與 Spring Boot 預設的 Jackson 設定相同：日期輸出為字串
+        ObjectMapper json = mapperBuilder().build();
+        ObjectMapper cbor = mapperBuilder().factory(new CBORFactory()).build();
+        ObjectMapper smile = mapperBuilder().factory(new SmileFactory()).build();
+        ColumnarJsonHttpMessageConverter columnar = new ColumnarJsonHttpMessageConverter(json);
+        bodyWriter = switch (format) {
+            case "json" -> (rows, out) -> json.writeValue(out, rows);
+            case "cbor" -> (rows, out) -> cbor.writeValue(out, rows);
+            case "smile" -> (rows, out) -> smile.writeValue(out, rows);
+            case "columnar" -> columnar::writeColumns;
+            default -> throw new IllegalArgumentException("Unknown format: " + format);
+        };
+
+        int bytes = serialize().length;
+        System.out.printf("%n%s%s, %d rows: %d bytes (%.1f bytes/row)%n",
+                format, gzip ? "+gzip" : "", rowCount, bytes, (double) bytes / rowCount);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes) : bytes) {
+            bodyWriter.write(roster, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Jackson2ObjectMapperBuilder mapperBuilder() {
+        return Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+}
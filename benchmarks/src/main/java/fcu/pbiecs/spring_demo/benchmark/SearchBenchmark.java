@@ -0,0 +1,28 @@
+package fcu.pbiecs.spring_demo.benchmark;
+
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.service.CourseService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Benchmark
+    public List<Course> searchCoursesHit(SeededState state) {
+        return state.readOnlyTx.execute(status ->
+                state.bean(CourseService.class).searchCourses("資料"));
+    }
+
+    @Benchmark
+    public List<Course> searchCoursesMiss(SeededState state) {
+        return state.readOnlyTx.execute(status ->
+                state.bean(CourseService.class).searchCourses("zzz"));
+    }
+}
@@ -0,0 +1,102 @@
+package fcu.pbiecs.spring_demo.benchmark;
+
+import fcu.pbiecs.spring_demo.SpringDemoApplication;
+import fcu.pbiecs.spring_demo.service.DataGeneratorService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 啟動使用 H2 記憶體資料庫的 Spring context，並用 {@link DataGeneratorService} 產生指定數量的選課資料。
+ * 每個 enrollmentCount 參數都在獨立的 fork 中執行，所以資料只會在 trial 開始時產生一次。
+ */
+@State(Scope.Benchmark)
+public class SeededState {
+
+    static final int TEACHER_COUNT = 50;
+    static final int COURSE_COUNT = 50;
+
+    private static final String[] SUBJECTS = {
+            "資料結構", "演算法", "作業系統", "計算機網路", "資料庫系統",
+            "程式設計", "線性代數", "機率與統計", "離散數學", "編譯器"
+    };
+
+    @Param({"10000", "100000", "1000000"})
+    public int enrollmentCount;
+
+    ConfigurableApplicationContext context;
+    TransactionTemplate readOnlyTx;
+    int[] studentIds;
+    int[] courseIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        writeCourseCsvIfMissing();
+
+        context = new SpringApplicationBuilder(SpringDemoApplication.class)
+                .profiles("benchmark")
+                .web(WebApplicationType.NONE)
+                .run();
+
+        // 學生數為選課數的 1/10，每位學生平均選 10 門課
+        int studentCount = Math.max(1000, enrollmentCount / 10);
+        bean(DataGeneratorService.class)
+                .generateRandomData(studentCount, TEACHER_COUNT, COURSE_COUNT, enrollmentCount, null);
+
+        JdbcTemplate jdbc = bean(JdbcTemplate.class);
+        studentIds = jdbc.queryForList("SELECT student_id FROM Student", Integer.class)
+                .stream().mapToInt(Integer::intValue).toArray();
+        courseIds = jdbc.queryForList("SELECT course_id FROM Course", Integer.class)
+                .stream().mapToInt(Integer::intValue).toArray();
+
+        // 模擬 open-in-view，讓 lazy 關聯可以在服務方法外被讀取
+        readOnlyTx = new TransactionTemplate(bean(PlatformTransactionManager.class));
+        readOnlyTx.setReadOnly(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    int randomStudentId() {
+        return studentIds[ThreadLocalRandom.current().nextInt(studentIds.length)];
+    }
+
+    int randomCourseId() {
+        return courseIds[ThreadLocalRandom.current().nextInt(courseIds.length)];
+    }
+
+    // DataGeneratorService 從工作目錄讀取 courses.csv，沒有的話產生一份固定內容的課程清單
+    static void writeCourseCsvIfMissing() throws IOException {
+        Path csv = Path.of("courses.csv");
+        if (Files.exists(csv)) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add("course_name,credits,course_description");
+        for (int i = 0; i < COURSE_COUNT; i++) {
+            String name = SUBJECTS[i % SUBJECTS.length] + " (" + (i / SUBJECTS.length + 1) + ")";
+            lines.add(name + "," + (i % 4 + 1) + "," + name + " 課程介紹");
+        }
+        Files.write(csv, lines, StandardCharsets.UTF_8);
+    }
+}
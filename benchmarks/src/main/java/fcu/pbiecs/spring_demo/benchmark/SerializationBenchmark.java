@@ -0,0 +1,58 @@
+package fcu.pbiecs.spring_demo.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fcu.pbiecs.spring_demo.dto.CourseEnrollmentDTO;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.service.CourseService;
+import fcu.pbiecs.spring_demo.service.EnrollmentService;
+import org.hibernate.Hibernate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 只量測 Jackson 序列化成本，資料在 setup 時就先載入並初始化 lazy 關聯。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    private static final int ROSTER_STUDENTS = 200;
+
+    private ObjectMapper objectMapper;
+    private List<Course> courses;
+    private List<CourseEnrollmentDTO> enrollments;
+
+    @Setup(Level.Trial)
+    public void setUp(SeededState state) {
+        objectMapper = state.bean(ObjectMapper.class);
+        state.readOnlyTx.executeWithoutResult(status -> {
+            courses = state.bean(CourseService.class).getAllCourse();
+            courses.forEach(course -> Hibernate.initialize(course.getTeacher()));
+
+            enrollments = new ArrayList<>();
+            EnrollmentService enrollmentService = state.bean(EnrollmentService.class);
+            for (int i = 0; i < Math.min(ROSTER_STUDENTS, state.studentIds.length); i++) {
+                enrollments.addAll(enrollmentService.getStudentEnrollments(state.studentIds[i]));
+            }
+            enrollments.forEach(dto -> Hibernate.initialize(dto.getTeacher()));
+        });
+    }
+
+    @Benchmark
+    public byte[] serializeCourses() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(courses);
+    }
+
+    @Benchmark
+    public byte[] serializeCourseEnrollments() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(enrollments);
+    }
+}
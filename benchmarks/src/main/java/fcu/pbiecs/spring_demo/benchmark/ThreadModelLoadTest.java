@@ -0,0 +1,176 @@
+package fcu.pbiecs.spring_demo.benchmark;
+
+import fcu.pbiecs.spring_demo.SpringDemoApplication;
+import fcu.pbiecs.spring_demo.service.DataGeneratorService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 比較平台執行緒與虛擬執行緒處理阻塞端點的吞吐量與延遲。
+ * <p>
+ * 依序以兩種模式各啟動一次應用程式 (H2、benchmark profile)，對會存取資料庫的 GET 端點
+ * 以 1k～10k 個同時連線的客戶端送出請求，印出每秒請求數、p50/p99 延遲與失敗數。
+ * 客戶端使用非同步 HttpClient，本身不需要一個連線一條執行緒。
+ * 虛擬執行緒模式需要以 Java 21 執行，在較舊的 JVM 上會略過。
+ * <pre>
+ *   mvn -f benchmarks/pom.xml compile exec:exec -Dbench.main=fcu.pbiecs.spring_demo.benchmark.ThreadModelLoadTest \
+ *       -Dbench.args="concurrency=1000,2000,5000,10000 requestsPerClient=5 enrollmentCount=100000"
+ * </pre>
+ * 參數皆可省略，預設值如上。
+ */
+public class ThreadModelLoadTest {
+
+    private static final String[] ENDPOINTS = {
+            "/api/courses/%d",
+            "/api/courses/%d/Students?pageNumber=0&pageSize=20",
+            "/api/students/%d/courses"
+    };
+
+    private final int[] studentIds;
+    private final int[] courseIds;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+
+    private ThreadModelLoadTest(int[] studentIds, int[] courseIds) {
+        this.studentIds = studentIds;
+        this.courseIds = courseIds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length == 2) {
+                options.put(pair[0], pair[1]);
+            }
+        }
+        int[] concurrencyLevels = Arrays.stream(options.getOrDefault("concurrency", "1000,2000,5000,10000").split(","))
+                .mapToInt(value -> Integer.parseInt(value.trim()))
+                .toArray();
+        int requestsPerClient = Integer.parseInt(options.getOrDefault("requestsPerClient", "5"));
+        int enrollmentCount = Integer.parseInt(options.getOrDefault("enrollmentCount", "100000"));
+
+        SeededState.writeCourseCsvIfMissing();
+
+        run("platform", false, concurrencyLevels, requestsPerClient, enrollmentCount);
+        if (Runtime.version().feature() >= 21) {
+            run("virtual", true, concurrencyLevels, requestsPerClient, enrollmentCount);
+        } else {
+            System.out.println("virtual: skipped, requires Java 21 (running " + Runtime.version() + ")");
+        }
+    }
+
+    private static void run(String mode, boolean virtualThreads, int[] concurrencyLevels,
+                            int requestsPerClient, int enrollmentCount) throws Exception {
+        // 兩種模式使用相同的連線上限，差別只在請求由哪種執行緒處理
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringDemoApplication.class)
+                .profiles("benchmark")
+                .properties(
+                        "server.port=0",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "server.tomcat.max-connections=20000",
+                        "server.tomcat.accept-count=1000")
+                .run()) {
+
+            int studentCount = Math.max(1000, enrollmentCount / 10);
+            context.getBean(DataGeneratorService.class)
+                    .generateRandomData(studentCount, SeededState.TEACHER_COUNT, SeededState.COURSE_COUNT, enrollmentCount, null);
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            int[] studentIds = jdbc.queryForList("SELECT student_id FROM Student", Integer.class)
+                    .stream().mapToInt(Integer::intValue).toArray();
+            int[] courseIds = jdbc.queryForList("SELECT course_id FROM Course", Integer.class)
+                    .stream().mapToInt(Integer::intValue).toArray();
+
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            ThreadModelLoadTest loadTest = new ThreadModelLoadTest(studentIds, courseIds);
+
+            // 暖機
+            loadTest.measure(port, 100, 10);
+            for (int concurrency : concurrencyLevels) {
+                Result result = loadTest.measure(port, concurrency, requestsPerClient);
+                System.out.printf("%-8s clients=%6d  requests=%7d  throughput=%9.1f req/s  p50=%7.1f ms  p99=%8.1f ms  errors=%d%n",
+                        mode, concurrency, result.requests(), result.throughput(), result.p50Millis(), result.p99Millis(), result.errors());
+            }
+        }
+    }
+
+    private record Result(int requests, double throughput, double p50Millis, double p99Millis, int errors) {
+    }
+
+    // 同時啟動 concurrency 個客戶端，每個客戶端依序送出 requestsPerClient 個請求
+    private Result measure(int port, int concurrency, int requestsPerClient) {
+        long[] latencies = new long[concurrency * requestsPerClient];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> clients = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            clients.add(sendSequentially(port, requestsPerClient, latencies, next, errors));
+        }
+        CompletableFuture.allOf(clients.toArray(CompletableFuture[]::new)).join();
+        long elapsed = System.nanoTime() - start;
+
+        long[] sorted = Arrays.copyOf(latencies, next.get());
+        Arrays.sort(sorted);
+        return new Result(
+                sorted.length,
+                sorted.length * 1e9 / elapsed,
+                percentile(sorted, 0.50) / 1e6,
+                percentile(sorted, 0.99) / 1e6,
+                errors.get());
+    }
+
+    private CompletableFuture<Void> sendSequentially(int port, int remaining, long[] latencies,
+                                                     AtomicInteger next, AtomicInteger errors) {
+        if (remaining == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long start = System.nanoTime();
+        return client.sendAsync(randomRequest(port), HttpResponse.BodyHandlers.discarding())
+                .handle((response, failure) -> {
+                    latencies[next.getAndIncrement()] = System.nanoTime() - start;
+                    if (failure != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> sendSequentially(port, remaining - 1, latencies, next, errors));
+    }
+
+    private HttpRequest randomRequest(int port) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int endpoint = random.nextInt(ENDPOINTS.length);
+        int id = endpoint == ENDPOINTS.length - 1
+                ? studentIds[random.nextInt(studentIds.length)]
+                : courseIds[random.nextInt(courseIds.length)];
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + String.format(ENDPOINTS[endpoint], id)))
+                .timeout(Duration.ofMinutes(2))
+                .GET()
+                .build();
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,226 @@
+package fcu.pbiecs.spring_demo.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 依延遲自動調整的並行上限，超過上限的請求在有限長度的佇列中等待。
+ * <p>
+ * 每個請求完成時比較短期與長期的平均延遲 (gradient)：短期延遲超過長期的 1.5 倍表示請求開始在資料庫或
+ * 連線池排隊，依比例降低上限；延遲穩定且上限已用到一半以上時，逐步往上試探。上限維持在 [min, max] 之間。
+ * 佇列已滿或等待逾時的請求丟出 {@link LimitExceededException}，不佔用執行緒等待。
+ */
+public class AdaptiveLimiter {
+
+    // 短期延遲在長期的 1.5 倍以內視為正常
+    private static final double TOLERANCE = 1.5;
+    // 每次調整只採用新上限的 20%，避免單一慢請求造成大幅波動
+    private static final double SMOOTHING = 0.2;
+    private static final double SHORT_RTT_WEIGHT = 0.1;
+    private static final double LONG_RTT_WEIGHT = 0.01;
+    private static final long MAX_RETRY_AFTER_SECONDS = 60;
+
+    public enum Reason { QUEUE_FULL, TIMEOUT }
+
+    public static class LimitExceededException extends Exception {
+        private final Reason reason;
+        private final long retryAfterSeconds;
+
+        public LimitExceededException(Reason reason, long retryAfterSeconds) {
+            super("Too many concurrent requests (" + reason.name().toLowerCase() + ")");
+            this.reason = reason;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    // 量測延遲用的時間來源，測試時可以替換
+    private final LongSupplier nanoTime;
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    // 延遲的指數移動平均 (奈秒)，0 表示還沒有樣本
+    private double shortRtt;
+    private double longRtt;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, long maxWait, TimeUnit unit) {
+        this(initialLimit, minLimit, maxLimit, maxQueue, maxWait, unit, System::nanoTime);
+    }
+
+    AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, long maxWait, TimeUnit unit, LongSupplier nanoTime) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit || maxQueue < 0) {
+            throw new IllegalArgumentException("Invalid limiter bounds");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * 取得執行許可；已達上限時最多等待 maxWait。取得的許可必須呼叫 {@link Permit#release()} 歸還。
+     */
+    public Permit acquire() throws LimitExceededException, InterruptedException {
+        long start = nanoTime.getAsLong();
+        lock.lock();
+        try {
+            // 有人在排隊時新請求也要排隊，不插隊
+            if (waiting == 0 && inFlight < currentLimit()) {
+                return admit(start);
+            }
+            if (waiting >= maxQueue) {
+                throw new LimitExceededException(Reason.QUEUE_FULL, retryAfterSeconds());
+            }
+            waiting++;
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= currentLimit()) {
+                    if (remaining <= 0) {
+                        throw new LimitExceededException(Reason.TIMEOUT, retryAfterSeconds());
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+            } catch (LimitExceededException | InterruptedException e) {
+                // 離開佇列時若還有空位，喚醒下一個等待者
+                if (inFlight < currentLimit()) {
+                    available.signal();
+                }
+                throw e;
+            } finally {
+                waiting--;
+            }
+            return admit(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private Permit admit(long requestedAt) {
+        inFlight++;
+        return new Permit(requestedAt, nanoTime.getAsLong());
+    }
+
+    private void release(long rttNanos) {
+        lock.lock();
+        try {
+            int before = currentLimit();
+            // 用量還沒到一半時不調整，否則低負載時上限會一直往上加
+            boolean saturated = inFlight >= limit / 2;
+            inFlight--;
+            sample(rttNanos, saturated);
+            if (currentLimit() > before) {
+                available.signalAll();
+            } else {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sample(long rttNanos, boolean saturated) {
+        if (shortRtt == 0) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+            return;
+        }
+        shortRtt += (rttNanos - shortRtt) * SHORT_RTT_WEIGHT;
+        longRtt += (rttNanos - longRtt) * LONG_RTT_WEIGHT;
+        // 負載剛降下來時長期平均遠高於短期，讓它較快回到正常水準
+        if (longRtt > shortRtt * 2) {
+            longRtt *= 0.95;
+        }
+        if (!saturated) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        // sqrt(limit) 為允許的排隊量，延遲穩定時 (gradient = 1) 上限會慢慢增加
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    // 依目前的平均延遲估計排隊的請求多久能消化完
+    private long retryAfterSeconds() {
+        double seconds = shortRtt * (waiting + 1) / Math.max(1, currentLimit()) / 1e9;
+        return Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, (long) Math.ceil(seconds)));
+    }
+
+    /**
+     * 一次執行許可，release 只有第一次呼叫有效。
+     */
+    public class Permit {
+        private final long admittedAt;
+        private final long waitNanos;
+        private boolean released;
+
+        private Permit(long requestedAt, long admittedAt) {
+            this.admittedAt = admittedAt;
+            this.waitNanos = admittedAt - requestedAt;
+        }
+
+        // 在佇列中等待的時間
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        public void release() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            AdaptiveLimiter.this.release(nanoTime.getAsLong() - admittedAt);
+        }
+    }
+}
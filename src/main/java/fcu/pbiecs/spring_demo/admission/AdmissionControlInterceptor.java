@@ -0,0 +1,143 @@
+package fcu.pbiecs.spring_demo.admission;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 依端點類別限制同時處理的請求數。heavy ({@link HeavyEndpoint}) 與 light (其他端點) 各有一個
+ * {@link AdaptiveLimiter}，大量查詢塞滿時單筆查詢仍有自己的額度；超過上限且佇列已滿或等待逾時時立即回 503
+ * 並附上 Retry-After。SSE 訂閱只是等待背景工作的進度，不列入限制。
+ * <p>
+ * 指標 (標籤 class=heavy|light)：admission.limit、admission.inflight、admission.queue (佇列深度)、
+ * admission.wait (排隊時間) 與 admission.rejected (標籤 reason=queue_full|timeout)。
+ */
+@Component
+public class AdmissionControlInterceptor implements AsyncHandlerInterceptor {
+
+    public enum EndpointClass { HEAVY, LIGHT }
+
+    // 非同步回應 (NDJSON 串流) 在第一次 dispatch 取得許可，回應完成後的 async dispatch 才歸還
+    private static final String PERMIT_ATTRIBUTE = AdmissionControlInterceptor.class.getName() + ".permit";
+
+    @Autowired
+    private AdmissionProperties properties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Map<EndpointClass, AdaptiveLimiter> limiters = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Timer> waitTimers = new EnumMap<>(EndpointClass.class);
+
+    @PostConstruct
+    void init() {
+        register(EndpointClass.HEAVY, properties.getHeavy());
+        register(EndpointClass.LIGHT, properties.getLight());
+    }
+
+    private void register(EndpointClass endpointClass, AdmissionProperties.Bulkhead bulkhead) {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(bulkhead.getInitialLimit(), bulkhead.getMinLimit(),
+                bulkhead.getMaxLimit(), bulkhead.getMaxQueue(), bulkhead.getMaxWait().toNanos(), TimeUnit.NANOSECONDS);
+        limiters.put(endpointClass, limiter);
+
+        String tag = tag(endpointClass);
+        Gauge.builder("admission.limit", limiter, AdaptiveLimiter::getLimit)
+                .tag("class", tag).description("目前的並行上限").register(meterRegistry);
+        Gauge.builder("admission.inflight", limiter, AdaptiveLimiter::getInFlight)
+                .tag("class", tag).description("處理中的請求數").register(meterRegistry);
+        Gauge.builder("admission.queue", limiter, AdaptiveLimiter::getQueued)
+                .tag("class", tag).description("排隊中的請求數").register(meterRegistry);
+        waitTimers.put(endpointClass, Timer.builder("admission.wait")
+                .tag("class", tag).description("取得許可前的排隊時間").register(meterRegistry));
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!properties.isEnabled() || request.getAttribute(PERMIT_ATTRIBUTE) != null
+                || !(handler instanceof HandlerMethod method)
+                || SseEmitter.class.isAssignableFrom(method.getReturnType().getParameterType())) {
+            return true;
+        }
+
+        EndpointClass endpointClass = classify(request, method);
+        AdaptiveLimiter.Permit permit;
+        try {
+            permit = limiters.get(endpointClass).acquire();
+        } catch (AdaptiveLimiter.LimitExceededException e) {
+            reject(response, endpointClass, e);
+            return false;
+        }
+        waitTimers.get(endpointClass).record(permit.getWaitNanos(), TimeUnit.NANOSECONDS);
+        request.setAttribute(PERMIT_ATTRIBUTE, permit);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, @Nullable Exception ex) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) instanceof AdaptiveLimiter.Permit permit) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            permit.release();
+        }
+    }
+
+    EndpointClass classify(HttpServletRequest request, HandlerMethod method) {
+        HeavyEndpoint heavy = method.getMethodAnnotation(HeavyEndpoint.class);
+        if (heavy == null || (heavy.unlessPaged() && isSmallPage(request))) {
+            return EndpointClass.LIGHT;
+        }
+        return EndpointClass.HEAVY;
+    }
+
+    private boolean isSmallPage(HttpServletRequest request) {
+        String pageSize = request.getParameter("pageSize");
+        if (pageSize == null) {
+            return false;
+        }
+        try {
+            return Integer.parseInt(pageSize.trim()) <= properties.getMaxLightPageSize();
+        } catch (NumberFormatException e) {
+            // 格式錯誤由 controller 回 400，不需要佔用 heavy 的額度
+            return true;
+        }
+    }
+
+    // 在 content negotiation 之前就回應，直接寫出與 GlobalExceptionHandler 相同格式的 JSON
+    private void reject(HttpServletResponse response, EndpointClass endpointClass,
+                        AdaptiveLimiter.LimitExceededException e) throws IOException {
+        Counter.builder("admission.rejected")
+                .tag("class", tag(endpointClass))
+                .tag("reason", e.getReason().name().toLowerCase())
+                .register(meterRegistry)
+                .increment();
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), Map.of("error", e.getMessage()));
+    }
+
+    private static String tag(EndpointClass endpointClass) {
+        return endpointClass.name().toLowerCase();
+    }
+}
@@ -0,0 +1,40 @@
+package fcu.pbiecs.spring_demo.admission;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 限流設定 ({@code app.admission.*})。heavy 的上限應小於資料庫連線池大小，保留連線給 light 請求。
+ */
+@Data
+@Component
+@ConfigurationProperties("app.admission")
+public class AdmissionProperties {
+
+    private boolean enabled = true;
+
+    // 分頁大小超過此值的請求與不分頁相同，視為 heavy
+    private int maxLightPageSize = 1000;
+
+    private Bulkhead heavy = new Bulkhead(2, 1, 6, 10, Duration.ofSeconds(2));
+
+    private Bulkhead light = new Bulkhead(20, 5, 150, 200, Duration.ofMillis(500));
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Bulkhead {
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+        // 達到上限後最多排隊的請求數，超過時立即回 503
+        private int maxQueue;
+        // 排隊最長等待時間，逾時回 503
+        private Duration maxWait;
+    }
+}
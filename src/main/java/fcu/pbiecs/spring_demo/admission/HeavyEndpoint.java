@@ -0,0 +1,20 @@
+package fcu.pbiecs.spring_demo.admission;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 標示成本隨資料量增加的端點 (全表查詢、匯入、重建等)，由 {@link AdmissionControlInterceptor}
+ * 放進獨立的 heavy 限流區，不影響一般的單筆查詢。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface HeavyEndpoint {
+
+    /**
+     * 為 true 時，帶有 pageSize 且不超過 {@code app.admission.max-light-page-size} 的分頁請求視為 light。
+     */
+    boolean unlessPaged() default false;
+}
@@ -0,0 +1,102 @@
+package fcu.pbiecs.spring_demo.collection;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 字串的 Bloom filter：{@link #mightContain} 回傳 false 時一定沒有加入過，回傳 true 時可能是誤判。
+ * <p>
+ * 依預計筆數與誤判率決定位元數與雜湊次數，每筆資料約佔 10 bits (1% 誤判率)，不保留字串本身。
+ * 以一個 64 位元雜湊衍生出 k 個位置 (double hashing)。不支援刪除；加入的筆數超過預計筆數後
+ * 誤判率會上升，{@link #isSaturated()} 回傳 true，由使用者決定是否重建。可以多執行緒同時加入與查詢。
+ */
+public class BloomFilter {
+
+    private static final int MAX_HASH_FUNCTIONS = 16;
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final long expectedInsertions;
+    // 實際改變了位元的加入次數 (重複加入與碰撞不計)，接近實際筆數
+    private final AtomicLong insertions = new AtomicLong();
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid false positive rate: " + falsePositiveRate);
+        }
+        this.expectedInsertions = Math.max(1, expectedInsertions);
+        long requested = (long) Math.ceil(-this.expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        // 以 long 為單位配置，長度上限為陣列上限
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (requested + 63) / 64));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashFunctions = (int) Math.max(1, Math.min(MAX_HASH_FUNCTIONS,
+                Math.round((double) bitCount / this.expectedInsertions * Math.log(2))));
+    }
+
+    public void put(String value) {
+        long hash = hash(value);
+        long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        boolean changed = false;
+        long combined = hash;
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = Long.remainderUnsigned(combined, bitCount);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current = bits.get(word);
+            while ((current & mask) == 0) {
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    changed = true;
+                    break;
+                }
+                current = bits.get(word);
+            }
+            combined += step;
+        }
+        if (changed) {
+            insertions.incrementAndGet();
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        long combined = hash;
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = Long.remainderUnsigned(combined, bitCount);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+            combined += step;
+        }
+        return true;
+    }
+
+    public long approximateSize() {
+        return insertions.get();
+    }
+
+    public boolean isSaturated() {
+        return insertions.get() > expectedInsertions;
+    }
+
+    // FNV-1a 再經過 MurmurHash3 的 fmix64 打散
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB93FE1A85EC9L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,109 @@
+package fcu.pbiecs.spring_demo.collection;
+
+/**
+ * (int, int) 組合的集合，兩個值打包成一個 long 存在開放定址的 long 陣列中。
+ * <p>
+ * 每個元素只佔陣列中的 8 bytes，不會像 {@code HashSet<String>} 一樣為每筆資料建立字串與節點物件。
+ * 使用線性探測，負載超過一半時擴充為兩倍；不支援刪除。非執行緒安全。
+ */
+public class IntPairSet {
+
+    private static final long EMPTY = 0L;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] table;
+    private int mask;
+    private int size;
+    // 打包後剛好等於 EMPTY 的 (0, 0) 另外記錄
+    private boolean containsEmptyKey;
+
+    public IntPairSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntPairSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        table = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    public static long pack(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    public static int first(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int second(long key) {
+        return (int) key;
+    }
+
+    /**
+     * 加入組合，原本不存在時回傳 true。
+     */
+    public boolean add(int first, int second) {
+        long key = pack(first, second);
+        if (key == EMPTY) {
+            if (containsEmptyKey) {
+                return false;
+            }
+            containsEmptyKey = true;
+            size++;
+            return true;
+        }
+        int index = indexOf(key, table, mask);
+        if (table[index] == key) {
+            return false;
+        }
+        table[index] = key;
+        if (++size > (mask + 1) / 2) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(int first, int second) {
+        long key = pack(first, second);
+        if (key == EMPTY) {
+            return containsEmptyKey;
+        }
+        return table[indexOf(key, table, mask)] == key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 回傳 key 所在的位置，不存在時回傳應該放入的空位
+    private static int indexOf(long key, long[] table, int mask) {
+        int index = hash(key) & mask;
+        while (table[index] != EMPTY && table[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void grow() {
+        long[] newTable = new long[table.length * 2];
+        int newMask = newTable.length - 1;
+        for (long key : table) {
+            if (key != EMPTY) {
+                newTable[indexOf(key, newTable, newMask)] = key;
+            }
+        }
+        table = newTable;
+        mask = newMask;
+    }
+
+    // 連續的 ID 打包後高低位都很規律，先打散再取低位
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
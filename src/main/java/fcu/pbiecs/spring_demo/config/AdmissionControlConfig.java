@@ -0,0 +1,22 @@
+package fcu.pbiecs.spring_demo.config;
+
+import fcu.pbiecs.spring_demo.admission.AdmissionControlInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 所有 API 請求先經過限流 (見 {@link AdmissionControlInterceptor})。
+ */
+@Configuration
+public class AdmissionControlConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private AdmissionControlInterceptor admissionControlInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(admissionControlInterceptor).addPathPatterns("/api/**");
+    }
+}
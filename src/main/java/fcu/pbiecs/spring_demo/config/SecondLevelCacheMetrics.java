@@ -0,0 +1,42 @@
+package fcu.pbiecs.spring_demo.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.cache.CacheManager;
+
+/**
+ * 將 Hibernate 二級快取的每個區域註冊為 actuator 指標。
+ * <p>
+ * 可由 /actuator/metrics/cache.gets?tag=cache:course&amp;tag=result:hit 等查詢各區域的命中、未命中、
+ * 寫入與淘汰次數 (cache.gets、cache.puts、cache.removals、cache.evictions)。
+ */
+@Component
+public class SecondLevelCacheMetrics implements MeterBinder {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        RegionFactory regionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getCache()
+                .getRegionFactory();
+        // 未啟用二級快取時是 NoCachingRegionFactory，沒有區域可以監控
+        if (!(regionFactory instanceof JCacheRegionFactory jCacheRegionFactory)) {
+            return;
+        }
+        CacheManager cacheManager = jCacheRegionFactory.getCacheManager();
+        for (String name : cacheManager.getCacheNames()) {
+            JCacheMetrics.monitor(registry, cacheManager.getCache(name), Tags.of("cacheType", "hibernate"));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package fcu.pbiecs.spring_demo.controller;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * 欄位式 JSON：List 輸出為每個欄位一個陣列 ({"studentId":[1,2],"firstName":["Amy","Ben"]})，
+ * 欄位名稱只出現一次。不是 List 的回應 (單筆資料、錯誤訊息) 照一般 JSON 輸出。只用於回應，不解析請求。
+ */
+public class ColumnarJsonHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+    public static final String APPLICATION_COLUMNAR_JSON_VALUE = "application/x-columnar-json";
+
+    public ColumnarJsonHttpMessageConverter(ObjectMapper objectMapper) {
+        super(objectMapper, MediaType.parseMediaType(APPLICATION_COLUMNAR_JSON_VALUE));
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, @Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected void writeInternal(Object object, @Nullable Type type, HttpOutputMessage outputMessage) throws IOException {
+        if (object instanceof Collection<?> rows) {
+            writeColumns(rows, StreamUtils.nonClosing(outputMessage.getBody()));
+        } else {
+            super.writeInternal(object, type, outputMessage);
+        }
+    }
+
+    /**
+     * 依 Jackson 對元素型別的欄位設定 (含 @JsonIgnore 等註解) 逐欄輸出，每個欄位依序寫出所有資料的值。
+     * 元素不是一般物件 (例如數字) 或型別不一致時沒有固定的欄位可拆，照原樣輸出陣列。
+     */
+    public void writeColumns(Collection<?> rows, OutputStream out) throws IOException {
+        ObjectMapper objectMapper = getObjectMapper();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            if (rows.isEmpty()) {
+                generator.writeStartObject();
+                generator.writeEndObject();
+                return;
+            }
+            SerializerProvider provider = objectMapper.getSerializerProviderInstance();
+            Class<?> rowType = commonType(rows);
+            JsonSerializer<Object> serializer = rowType == null ? null : provider.findValueSerializer(rowType);
+            if (!(serializer instanceof BeanSerializerBase beanSerializer)) {
+                objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE).writeValue(generator, rows);
+                return;
+            }
+
+            generator.writeStartObject();
+            for (Iterator<PropertyWriter> properties = beanSerializer.properties(); properties.hasNext(); ) {
+                PropertyWriter property = properties.next();
+                generator.writeArrayFieldStart(property.getName());
+                for (Object row : rows) {
+                    property.serializeAsElement(row, generator, provider);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // PropertyWriter 的 getter 宣告 throws Exception
+            throw new IOException(e);
+        }
+    }
+
+    // 第一筆資料的型別，其他資料都是它 (或它的子類別，例如 Hibernate proxy) 時才能共用欄位；有 null 時回傳 null
+    private static Class<?> commonType(Collection<?> rows) {
+        Object first = rows.iterator().next();
+        if (first == null) {
+            return null;
+        }
+        for (Object row : rows) {
+            if (!first.getClass().isInstance(row)) {
+                return null;
+            }
+        }
+        return first.getClass();
+    }
+}
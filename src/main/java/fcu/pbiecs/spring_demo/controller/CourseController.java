@@ -1,21 +1,32 @@
 package fcu.pbiecs.spring_demo.controller;
 
+import fcu.pbiecs.spring_demo.admission.HeavyEndpoint;
+import fcu.pbiecs.spring_demo.config.ResponseFormatConfig;
+import fcu.pbiecs.spring_demo.dto.BulkDeleteRequestDTO;
+import fcu.pbiecs.spring_demo.dto.BulkDeleteResultDTO;
 import fcu.pbiecs.spring_demo.dto.StudentEnrollmentDTO;
+import fcu.pbiecs.spring_demo.etag.ChangeTracker;
 import fcu.pbiecs.spring_demo.model.Course;
 import fcu.pbiecs.spring_demo.model.Student;
 import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.pagination.CursorPage;
+import fcu.pbiecs.spring_demo.pagination.TotalMode;
+import fcu.pbiecs.spring_demo.service.BulkDeleteService;
 import fcu.pbiecs.spring_demo.service.CourseService;
 import fcu.pbiecs.spring_demo.service.EnrollmentService;
 import fcu.pbiecs.spring_demo.service.TeacherService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.http.HttpHeaders;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.Map;
 
 @Tag(name = "課程管理", description = "提供課程 CRUD API")
 @RestController
@@ -31,12 +42,60 @@ public class CourseController {
     @Autowired
     EnrollmentService enrollmentService;
 
-    @Operation(summary = "查詢所有課程", description = "取得所有課程的資訊")
-    @GetMapping
+    @Autowired
+    NdjsonStreamer ndjsonStreamer;
+
+    @Autowired
+    ChangeTracker changeTracker;
+
+    @Autowired
+    BulkDeleteService bulkDeleteService;
+
+    @Operation(summary = "串流所有課程", description = "以 NDJSON 逐筆輸出所有課程 (Accept: application/x-ndjson)，記憶體用量不隨資料量增加")
+    @HeavyEndpoint
+    @GetMapping(produces = NdjsonStreamer.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamCourses(@RequestParam Map<String, String> params) {
+        if (!params.isEmpty()) {
+            return ndjsonStreamer.badRequest("NDJSON streaming does not support paging or search parameters");
+        }
+        return ndjsonStreamer.stream(courseService::forEachCourse);
+    }
+
+    @Operation(summary = "查詢所有課程", description = "取得所有課程的資訊，支援 If-None-Match (資料未變更時回 304)；可依 Accept 回傳 CBOR、Smile 或欄位式 JSON。" +
+            "分頁時 total=none 不計算總筆數 (只回 X-Has-Next)，total=approximate 使用快取的總筆數")
+    @HeavyEndpoint(unlessPaged = true)
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE,
+            ResponseFormatConfig.APPLICATION_SMILE_VALUE, ColumnarJsonHttpMessageConverter.APPLICATION_COLUMNAR_JSON_VALUE})
     public ResponseEntity<List<Course>> getCourses(
             @RequestParam(value = "pageNumber", required = false) Integer pageNumber,
             @RequestParam(value = "pageSize", required = false) Integer pageSize,
-            @RequestParam(value = "search", required = false) String searchKeyword) {
+            @RequestParam(value = "search", required = false) String searchKeyword,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "total", required = false) String total,
+            WebRequest request) {
+
+        // 課程或教師沒有變更時直接回 304
+        if (request.checkNotModified(changeTracker.tag(ChangeTracker.Table.COURSE, ChangeTracker.Table.TEACHER))) {
+            return null;
+        }
+        return changeTracker.read(() -> listCourses(pageNumber, pageSize, searchKeyword, after, total));
+    }
+
+    private ResponseEntity<List<Course>> listCourses(Integer pageNumber, Integer pageSize, String searchKeyword,
+                                                     String after, String total) {
+        // Cursor (keyset) 分頁：after 為空字串時從第一筆開始，不計算總筆數
+        if (after != null) {
+            if (searchKeyword != null && !searchKeyword.trim().isEmpty()) {
+                throw new IllegalArgumentException("Cursor paging is not supported with search");
+            }
+            if (pageSize == null || pageSize <= 0) {
+                throw new IllegalArgumentException("Invalid page size");
+            }
+            CursorPage<Course> page = courseService.getCoursesAfter(after, pageSize);
+            return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.content());
+        }
+
+        TotalMode totalMode = TotalMode.parse(total);
 
         // 處理搜尋功能
         if (searchKeyword != null && !searchKeyword.trim().isEmpty()) {
@@ -48,11 +107,8 @@ public class CourseController {
                 throw new IllegalArgumentException("Invalid page number or page size");
             }
             // 搜尋 + 分頁查詢
-            Page<Course> page = courseService.searchCourses(searchKeyword.trim(), pageNumber, pageSize);
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("X-Total-Pages", String.valueOf(page.getTotalPages()));
-            headers.add("X-Total-Count", String.valueOf(page.getTotalElements()));
-            return ResponseEntity.ok().headers(headers).body(page.getContent());
+            Slice<Course> page = courseService.searchCourses(searchKeyword.trim(), pageNumber, pageSize, totalMode);
+            return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.getContent());
         }
 
         // 一般查詢
@@ -64,39 +120,66 @@ public class CourseController {
             throw new IllegalArgumentException("Invalid page number or page size");
         }
         // 分頁查詢
-        Page<Course> page = courseService.getAllCourse(pageNumber, pageSize);
-        HttpHeaders headers = new HttpHeaders();
-        headers.add("X-Total-Pages", String.valueOf(page.getTotalPages()));
-        headers.add("X-Total-Count", String.valueOf(page.getTotalElements()));
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        Slice<Course> page = courseService.getAllCourse(pageNumber, pageSize, totalMode);
+        return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.getContent());
     }
 
-    @Operation(summary = "查詢課程", description = "依照ID查詢課程資訊")
+    @Operation(summary = "查詢課程", description = "依照ID查詢課程資訊，ETag 由課程與授課教師的版本組成，支援 If-None-Match")
     @GetMapping("/{id}")
-    public Course getCourseById(@PathVariable("id") int id) throws CourseService.CourseNotfoundException {
-        return courseService.getCourseById(id);
+    public Course getCourseById(@PathVariable("id") int id, WebRequest request) throws CourseService.CourseNotfoundException {
+        return changeTracker.ifModified(request, ChangeTracker.Table.COURSE, id,
+                new ChangeTracker.Table[]{ChangeTracker.Table.COURSE, ChangeTracker.Table.TEACHER},
+                () -> courseService.getCourseById(id),
+                course -> {
+                    // 沒有授課教師的課程只看課程本身的版本
+                    Teacher teacher = course.getTeacher();
+                    return teacher == null
+                            ? new Object[]{course.getVersion()}
+                            : new Object[]{course.getVersion(), teacher.getTeacherId(), teacher.getVersion()};
+                });
     }
 
-    @Operation(summary = "查詢選課學生", description = "查詢選課學生")
+    @Operation(summary = "查詢選課學生", description = "查詢選課學生，支援 If-None-Match (資料未變更時回 304)；分頁時可用 total=none 或 total=approximate 省略 COUNT 查詢")
+    @HeavyEndpoint(unlessPaged = true)
     @GetMapping("/{id}/Students")
     public ResponseEntity<List<StudentEnrollmentDTO>> getCourseStudents(
             @PathVariable("id") int id,
             @RequestParam(value = "pageNumber", required = false) Integer pageNumber,
-            @RequestParam(value = "pageSize", required = false) Integer pageSize
+            @RequestParam(value = "pageSize", required = false) Integer pageSize,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "total", required = false) String total,
+            WebRequest request
     ) throws CourseService.CourseNotfoundException {
+        // 課程、學生與選課都沒有變更時直接回 304
+        if (request.checkNotModified(changeTracker.tag(
+                ChangeTracker.Table.COURSE, ChangeTracker.Table.STUDENT, ChangeTracker.Table.ENROLLMENT))) {
+            return null;
+        }
+        return changeTracker.read(() -> listCourseStudents(id, pageNumber, pageSize, after, total));
+    }
+
+    private ResponseEntity<List<StudentEnrollmentDTO>> listCourseStudents(
+            int id, Integer pageNumber, Integer pageSize, String after, String total) throws CourseService.CourseNotfoundException {
         // Verify course exists
         courseService.getCourseById(id);
-        
+
+        // Cursor (keyset) 分頁：after 為空字串時從第一筆開始，不計算總筆數
+        if (after != null) {
+            if (pageSize == null || pageSize <= 0) {
+                throw new IllegalArgumentException("Invalid page size");
+            }
+            CursorPage<StudentEnrollmentDTO> page = enrollmentService.getCourseEnrollmentsAfter(id, after, pageSize);
+            return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.content());
+        }
+
         if (pageNumber != null && pageSize != null) {
             if (pageNumber < 0 || pageSize < 0) {
                 throw new IllegalArgumentException("Invalid page number or page size");
             }
             // 分頁查詢
-            Page<StudentEnrollmentDTO> page = enrollmentService.getCourseEnrollments(id, pageNumber, pageSize);
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("X-Total-Pages", String.valueOf(page.getTotalPages()));
-            headers.add("X-Total-Count", String.valueOf(page.getTotalElements()));
-            return ResponseEntity.ok().headers(headers).body(page.getContent());
+            Slice<StudentEnrollmentDTO> page = enrollmentService.getCourseEnrollments(
+                    id, pageNumber, pageSize, TotalMode.parse(total));
+            return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.getContent());
         } else {
             // 無分頁查詢
             List<StudentEnrollmentDTO> students = enrollmentService.getCourseEnrollments(id);
@@ -118,6 +201,14 @@ public class CourseController {
         courseService.deleteCourse(id);
     }
 
+    @Operation(summary = "批次刪除課程", description = "依 ids (ID清單) 或 search (關鍵字，條件與列表的 search 相同) 刪除多門課程，選課記錄一併刪除 (不會刪除授課教師)。" +
+            "以集合式 DELETE 在單一交易中刪除，單次最多 " + BulkDeleteService.MAX_BULK_DELETE + " 筆")
+    @HeavyEndpoint
+    @PostMapping("/bulk-delete")
+    public BulkDeleteResultDTO bulkDeleteCourses(@RequestBody BulkDeleteRequestDTO request) {
+        return bulkDeleteService.deleteCourses(request);
+    }
+
     @Operation(summary = "更新課程", description = "依照ID更新課程資訊")
     @PutMapping("/{id}")
     public void updateCourse(@PathVariable("id") int id, @RequestBody Course updatedCourse) throws CourseService.CourseNotfoundException, TeacherService.TeacherNotfoundException {
@@ -1,14 +1,24 @@
 package fcu.pbiecs.spring_demo.controller;
 
+import fcu.pbiecs.spring_demo.admission.HeavyEndpoint;
+import fcu.pbiecs.spring_demo.dto.DataInitJobDTO;
+import fcu.pbiecs.spring_demo.job.BulkWriteGuard;
+import fcu.pbiecs.spring_demo.job.DataInitJobService;
 import fcu.pbiecs.spring_demo.service.DataGeneratorService;
+import fcu.pbiecs.spring_demo.writebehind.EnrollmentWriteBehindService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -20,153 +30,163 @@ public class DataInitController {
     @Autowired
     private DataGeneratorService dataGeneratorService;
 
+    @Autowired
+    private DataInitJobService dataInitJobService;
+
+    @Autowired
+    private BulkWriteGuard bulkWriteGuard;
+
+    @Autowired
+    private EnrollmentWriteBehindService enrollmentWriteBehindService;
+
+    // Spring Boot 提供的共用執行器，啟用虛擬執行緒時每個工作都在新的虛擬執行緒上執行
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor taskExecutor;
+
     @GetMapping(value = "/init", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter initializeDataWithProgress(
             @RequestParam(defaultValue = "10000") int studentCount,
             @RequestParam(defaultValue = "100") int teacherCount, 
             @RequestParam(defaultValue = "50") int courseCount,
-            @RequestParam(defaultValue = "1000000") int enrollmentCount) {
-        
-        SseEmitter emitter = new SseEmitter(1800000L); // 30 minutes timeout for large data
-        
-        CompletableFuture.runAsync(() -> {
-            try {
-                // 驗證參數
-                if (studentCount <= 0 || teacherCount <= 0 || courseCount <= 0 || enrollmentCount <= 0) {
-                    emitter.send(SseEmitter.event()
-                        .name("error")
-                        .data(Map.of("success", false, "message", "所有參數必須大於0")));
-                    emitter.complete();
-                    return;
-                }
-                
-                // 動態檢查CSV檔案中的課程數量
-                // 這個檢查移到DataGeneratorService中進行
-                
-                if (enrollmentCount > studentCount * courseCount) {
-                    emitter.send(SseEmitter.event()
-                        .name("error")
-                        .data(Map.of("success", false, "message", "選課數量不能超過學生數量 × 課程數量")));
-                    emitter.complete();
-                    return;
-                }
+            @RequestParam(defaultValue = "1000000") int enrollmentCount) throws DataInitJobService.JobNotFoundException {
 
-                long startTime = System.currentTimeMillis();
-                
-                // 發送開始事件
-                emitter.send(SseEmitter.event()
-                    .name("start")
-                    .data(Map.of("message", "開始生成資料...")));
-
-                // 執行資料生成並推送進度
-                dataGeneratorService.generateRandomData(studentCount, teacherCount, courseCount, enrollmentCount, 
-                    (step, current, total) -> {
-                        try {
-                            int percentage = (int) ((current * 100.0) / total);
-                            emitter.send(SseEmitter.event()
-                                .name("progress")
-                                .data(Map.of(
-                                    "step", step,
-                                    "current", current,
-                                    "total", total,
-                                    "percentage", percentage
-                                )));
-                            
-                            // 發送心跳保持連接
-                            emitter.send(SseEmitter.event()
-                                .name("heartbeat")
-                                .data("alive"));
-                        } catch (IOException e) {
-                            emitter.completeWithError(e);
-                        }
-                    });
-                
-                long endTime = System.currentTimeMillis();
-                
-                // 發送完成事件
-                emitter.send(SseEmitter.event()
-                    .name("complete")
-                    .data(Map.of(
-                        "success", true,
-                        "message", "資料初始化完成",
-                        "data", Map.of(
-                            "studentCount", studentCount,
-                            "teacherCount", teacherCount,
-                            "courseCount", courseCount,
-                            "enrollmentCount", enrollmentCount,
-                            "executionTime", (endTime - startTime) + "ms"
-                        )
-                    )));
-                
-                emitter.complete();
-                
-            } catch (Exception e) {
-                try {
-                    emitter.send(SseEmitter.event()
-                        .name("error")
-                        .data(Map.of("success", false, "message", "資料初始化失敗: " + e.getMessage())));
-                } catch (IOException ioException) {
-                    emitter.completeWithError(ioException);
-                }
-                emitter.complete();
-            }
-        });
-        
+        // 驗證參數
+        String invalid = validate(studentCount, teacherCount, courseCount, enrollmentCount);
+        if (invalid != null) {
+            return errorEmitter(Map.of("success", false, "message", invalid));
+        }
+
+        // 以背景工作執行，斷線後可用 /jobs/{jobId}/events 重新訂閱
+        DataInitJobDTO job;
+        try {
+            job = dataInitJobService.start(studentCount, teacherCount, courseCount, enrollmentCount);
+        } catch (DataInitJobService.JobAlreadyRunningException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("message", e.getMessage());
+            error.put("jobId", e.getJobId());
+            return errorEmitter(error);
+        }
+        return dataInitJobService.subscribe(job.getJobId());
+    }
+
+    // 在背景產生隨機資料並立即回傳工作ID，同一時間只能有一個工作
+    @PostMapping("/jobs")
+    public ResponseEntity<DataInitJobDTO> startJob(
+            @RequestParam(defaultValue = "10000") int studentCount,
+            @RequestParam(defaultValue = "100") int teacherCount,
+            @RequestParam(defaultValue = "50") int courseCount,
+            @RequestParam(defaultValue = "1000000") int enrollmentCount) throws DataInitJobService.JobAlreadyRunningException {
+        String invalid = validate(studentCount, teacherCount, courseCount, enrollmentCount);
+        if (invalid != null) {
+            throw new IllegalArgumentException(invalid);
+        }
+        DataInitJobDTO job = dataInitJobService.start(studentCount, teacherCount, courseCount, enrollmentCount);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/data/jobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    // 列出最近的資料初始化工作
+    @GetMapping("/jobs")
+    public List<DataInitJobDTO> getJobs() {
+        return dataInitJobService.getJobs();
+    }
+
+    // 查詢工作進度，包含目前階段、每秒寫入筆數與預估剩餘時間
+    @GetMapping("/jobs/{jobId}")
+    public DataInitJobDTO getJob(@PathVariable("jobId") String jobId) throws DataInitJobService.JobNotFoundException {
+        return dataInitJobService.getJob(jobId);
+    }
+
+    // 以 SSE 推送進度，可多個客戶端同時訂閱或斷線後重新訂閱
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeJob(@PathVariable("jobId") String jobId) throws DataInitJobService.JobNotFoundException {
+        return dataInitJobService.subscribe(jobId);
+    }
+
+    // 取消工作，會在下一個批次前停止，已寫入的資料會保留
+    @DeleteMapping("/jobs/{jobId}")
+    public ResponseEntity<DataInitJobDTO> cancelJob(@PathVariable("jobId") String jobId) throws DataInitJobService.JobNotFoundException {
+        return ResponseEntity.accepted().body(dataInitJobService.cancel(jobId));
+    }
+
+    private static String validate(int studentCount, int teacherCount, int courseCount, int enrollmentCount) {
+        if (studentCount <= 0 || teacherCount <= 0 || courseCount <= 0 || enrollmentCount <= 0) {
+            return "所有參數必須大於0";
+        }
+        // 動態檢查CSV檔案中的課程數量，移到DataGeneratorService中進行
+        if (enrollmentCount > (long) studentCount * courseCount) {
+            return "選課數量不能超過學生數量 × 課程數量";
+        }
+        return null;
+    }
+
+    private static SseEmitter errorEmitter(Map<String, Object> data) {
+        SseEmitter emitter = new SseEmitter();
+        try {
+            emitter.send(SseEmitter.event()
+                .name("error")
+                .data(data));
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
         return emitter;
     }
     
     // 保留原有的同步API作為備選
+    @HeavyEndpoint
     @PostMapping("/init-sync")
     public ResponseEntity<Map<String, Object>> initializeDataSync(
             @RequestParam(defaultValue = "10000") int studentCount,
             @RequestParam(defaultValue = "100") int teacherCount, 
             @RequestParam(defaultValue = "50") int courseCount,
-            @RequestParam(defaultValue = "1000000") int enrollmentCount) {
+            @RequestParam(defaultValue = "1000000") int enrollmentCount) throws DataInitJobService.JobNotFoundException {
         
         Map<String, Object> response = new HashMap<>();
         
+        // 驗證參數
+        String invalid = validate(studentCount, teacherCount, courseCount, enrollmentCount);
+        if (invalid != null) {
+            response.put("success", false);
+            response.put("message", invalid);
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        // 與背景工作共用單一執行的限制，等待工作結束後回應
+        DataInitJobDTO job;
         try {
-            // 驗證參數
-            if (studentCount <= 0 || teacherCount <= 0 || courseCount <= 0 || enrollmentCount <= 0) {
-                response.put("success", false);
-                response.put("message", "所有參數必須大於0");
-                return ResponseEntity.badRequest().body(response);
-            }
-            
-            // 動態檢查CSV檔案中的課程數量，移到DataGeneratorService中進行
-            
-            if (enrollmentCount > studentCount * courseCount) {
-                response.put("success", false);
-                response.put("message", "選課數量不能超過學生數量 × 課程數量");
-                return ResponseEntity.badRequest().body(response);
-            }
+            job = dataInitJobService.start(studentCount, teacherCount, courseCount, enrollmentCount);
+        } catch (DataInitJobService.JobAlreadyRunningException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            response.put("jobId", e.getJobId());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        }
+        job = dataInitJobService.await(job.getJobId());
 
-            long startTime = System.currentTimeMillis();
-            
-            // 執行資料生成
-            dataGeneratorService.generateRandomData(studentCount, teacherCount, courseCount, enrollmentCount);
-            
-            long endTime = System.currentTimeMillis();
-            
-            response.put("success", true);
-            response.put("message", "資料初始化完成");
-            response.put("data", Map.of(
-                "studentCount", studentCount,
-                "teacherCount", teacherCount,
-                "courseCount", courseCount,
-                "enrollmentCount", enrollmentCount,
-                "executionTime", (endTime - startTime) + "ms"
-            ));
-            
-            return ResponseEntity.ok(response);
-            
-        } catch (Exception e) {
+        if (!"COMPLETED".equals(job.getStatus())) {
             response.put("success", false);
-            response.put("message", "資料初始化失敗: " + e.getMessage());
+            response.put("message", job.getMessage());
             return ResponseEntity.internalServerError().body(response);
         }
+
+        response.put("success", true);
+        response.put("message", "資料初始化完成");
+        response.put("data", Map.of(
+            "studentCount", studentCount,
+            "teacherCount", teacherCount,
+            "courseCount", courseCount,
+            "enrollmentCount", enrollmentCount,
+            "executionTime", job.getElapsedMillis() + "ms"
+        ));
+
+        return ResponseEntity.ok(response);
     }
 
+    @HeavyEndpoint
     @GetMapping("/info")
     public ResponseEntity<Map<String, Object>> getDataInfo() {
         Map<String, Object> response = new HashMap<>();
@@ -211,16 +231,27 @@ public class DataInitController {
             } catch (Exception e) {
                 emitter.completeWithError(e);
             }
-        });
+        }, taskExecutor);
         
         return emitter;
     }
 
+    @HeavyEndpoint
     @DeleteMapping("/clear")
     public ResponseEntity<Map<String, Object>> clearAllData() {
         Map<String, Object> response = new HashMap<>();
+
+        // 與資料初始化、CSV 匯入共用執行權，清除途中不會有人寫入
+        Object clearing = new Object();
+        if (!bulkWriteGuard.tryAcquire(clearing)) {
+            response.put("success", false);
+            response.put("message", "資料初始化或匯入工作執行中，無法清除資料");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        }
         
         try {
+            // 尚未寫入的選課先寫完再清除，清除後不會再寫入
+            enrollmentWriteBehindService.drain();
             // 使用專門的清除方法
             dataGeneratorService.clearAllData();
             
@@ -233,6 +264,8 @@ public class DataInitController {
             response.put("success", false);
             response.put("message", "清除資料失敗: " + e.getMessage());
             return ResponseEntity.internalServerError().body(response);
+        } finally {
+            bulkWriteGuard.release(clearing);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package fcu.pbiecs.spring_demo.controller;
+
+import fcu.pbiecs.spring_demo.admission.HeavyEndpoint;
+import fcu.pbiecs.spring_demo.dto.ImportResultDTO;
+import fcu.pbiecs.spring_demo.importer.CsvImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Tag(name = "資料匯入", description = "以 CSV 串流匯入學生、老師、課程與選課資料")
+@RestController
+@RequestMapping("/api/import")
+public class ImportController {
+
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
+    @Autowired
+    CsvImportService csvImportService;
+
+    @Autowired
+    NdjsonStreamer ndjsonStreamer;
+
+    @Operation(summary = "匯入 CSV", description = "target 為 students、teachers、courses 或 enrollments，第一行為欄位名稱。"
+            + "完成後回傳匯入筆數與被拒絕的資料 (最多 " + CsvImportService.MAX_REPORTED_REJECTIONS + " 筆)")
+    @HeavyEndpoint
+    @PostMapping(value = "/{target}", consumes = {TEXT_CSV_VALUE, MediaType.TEXT_PLAIN_VALUE}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ImportResultDTO importCsv(@PathVariable("target") String target, InputStream body)
+            throws CsvImportService.ImportRejectedException, IOException {
+        return csvImportService.importCsv(CsvImportService.Target.of(target), body, null);
+    }
+
+    @Operation(summary = "匯入 CSV 並串流進度", description = "Accept: application/x-ndjson 時逐行輸出每次提交的進度 (progress)、"
+            + "每一筆被拒絕的資料 (rejected)，最後是結果 (summary) 或錯誤 (error)")
+    @HeavyEndpoint
+    @PostMapping(value = "/{target}", consumes = {TEXT_CSV_VALUE, MediaType.TEXT_PLAIN_VALUE}, produces = NdjsonStreamer.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> importCsvWithProgress(@PathVariable("target") String target, InputStream body) {
+        CsvImportService.Target importTarget;
+        try {
+            importTarget = CsvImportService.Target.of(target);
+            csvImportService.checkAvailable();
+        } catch (IllegalArgumentException e) {
+            return ndjsonStreamer.badRequest(e.getMessage());
+        } catch (CsvImportService.ImportRejectedException e) {
+            return ndjsonStreamer.error(HttpStatus.CONFLICT, e.getMessage());
+        }
+
+        return ndjsonStreamer.<Map<String, Object>>stream(emit -> {
+            try {
+                ImportResultDTO result = csvImportService.importCsv(importTarget, body, new CsvImportService.ImportListener() {
+                    @Override
+                    public void onRejected(long line, String reason) {
+                        emit.accept(event("rejected", "line", line, "reason", reason));
+                    }
+
+                    @Override
+                    public void onProgress(long rowsRead, long rowsImported, long rowsRejected) {
+                        emit.accept(event("progress", "rowsRead", rowsRead, "rowsImported", rowsImported, "rowsRejected", rowsRejected));
+                    }
+                });
+                // 被拒絕的資料已逐行輸出過
+                result.setRejected(null);
+                emit.accept(event("summary", "result", result));
+            } catch (Exception e) {
+                // 回應標頭已送出，只能在最後一行回報錯誤
+                emit.accept(event("error", "error", e.getMessage()));
+            }
+        }, true);
+    }
+
+    private static Map<String, Object> event(String type, Object... fields) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", type);
+        for (int i = 0; i < fields.length; i += 2) {
+            event.put((String) fields[i], fields[i + 1]);
+        }
+        return event;
+    }
+}
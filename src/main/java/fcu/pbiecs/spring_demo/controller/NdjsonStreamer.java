@@ -0,0 +1,85 @@
+package fcu.pbiecs.spring_demo.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 將資料逐筆寫成 NDJSON (每行一個 JSON 物件)，不在記憶體中組出整個 List。
+ */
+@Component
+public class NdjsonStreamer {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * @param source 接收一個逐筆輸出的 callback，並對每一筆資料呼叫它
+     */
+    public <T> ResponseEntity<StreamingResponseBody> stream(Consumer<Consumer<T>> source) {
+        return stream(source, false);
+    }
+
+    /**
+     * @param flushEachRow 每筆寫完立即送出，用於進度通知這類需要即時看到的少量資料
+     */
+    public <T> ResponseEntity<StreamingResponseBody> stream(Consumer<Consumer<T>> source, boolean flushEachRow) {
+        // 預設每筆寫完不 flush，由 generator 的緩衝區決定何時寫入 socket
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                source.accept(row -> {
+                    try {
+                        writer.writeValue(generator, row);
+                        generator.writeRaw('\n');
+                        if (flushEachRow) {
+                            generator.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+
+    /**
+     * 回傳 400，內容為單行的錯誤訊息 (格式與 GlobalExceptionHandler 相同)。
+     * 請求 NDJSON 時 JSON converter 無法輸出例外處理器的回應，所以由這裡直接寫出。
+     */
+    public ResponseEntity<StreamingResponseBody> badRequest(String message) {
+        return error(HttpStatus.BAD_REQUEST, message);
+    }
+
+    /**
+     * 以指定的狀態碼回傳單行的錯誤訊息。
+     */
+    public ResponseEntity<StreamingResponseBody> error(HttpStatus status, String message) {
+        StreamingResponseBody body = out -> {
+            out.write(objectMapper.writeValueAsBytes(Map.of("error", message)));
+            out.write('\n');
+        };
+        return ResponseEntity.status(status)
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+}
@@ -0,0 +1,39 @@
+package fcu.pbiecs.spring_demo.controller;
+
+import fcu.pbiecs.spring_demo.pagination.ApproximatePage;
+import fcu.pbiecs.spring_demo.pagination.CursorPage;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * 分頁查詢 (pageNumber + pageSize) 的回應標頭：X-Has-Next 一定會有；有總筆數時加上 X-Total-Count 與
+ * X-Total-Pages，總筆數取自快取 (total=approximate) 時再加上 X-Total-Count-Approximate: true。
+ * Cursor 分頁 (after) 還有下一頁時回傳 X-Next-Cursor。
+ */
+final class PageHeaders {
+
+    private PageHeaders() {
+    }
+
+    static HttpHeaders of(Slice<?> slice) {
+        HttpHeaders headers = new HttpHeaders();
+        if (slice instanceof Page<?> page) {
+            headers.add("X-Total-Pages", String.valueOf(page.getTotalPages()));
+            headers.add("X-Total-Count", String.valueOf(page.getTotalElements()));
+            if (page instanceof ApproximatePage) {
+                headers.add("X-Total-Count-Approximate", "true");
+            }
+        }
+        headers.add("X-Has-Next", String.valueOf(slice.hasNext()));
+        return headers;
+    }
+
+    static HttpHeaders of(CursorPage<?> page) {
+        HttpHeaders headers = new HttpHeaders();
+        if (page.nextCursor() != null) {
+            headers.add("X-Next-Cursor", page.nextCursor());
+        }
+        return headers;
+    }
+}
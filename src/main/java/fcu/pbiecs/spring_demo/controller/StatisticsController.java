@@ -1,12 +1,22 @@
 package fcu.pbiecs.spring_demo.controller;
 
+import fcu.pbiecs.spring_demo.admission.HeavyEndpoint;
+import fcu.pbiecs.spring_demo.dto.CreditsDistributionDTO;
+import fcu.pbiecs.spring_demo.dto.EnrollmentTrendDTO;
 import fcu.pbiecs.spring_demo.dto.PopularCourseDTO;
+import fcu.pbiecs.spring_demo.dto.RollupRebuildDTO;
+import fcu.pbiecs.spring_demo.dto.TeacherLoadDTO;
+import fcu.pbiecs.spring_demo.etag.ChangeTracker;
+import fcu.pbiecs.spring_demo.service.EnrollmentRollupService;
 import fcu.pbiecs.spring_demo.service.EnrollmentService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Tag(name = "統計分析", description = "提供課程統計分析 API")
@@ -17,14 +27,76 @@ public class StatisticsController {
     @Autowired
     EnrollmentService enrollmentService;
 
-    @Operation(summary = "查詢熱門課程", description = "取得最熱門課程前N名（按選課人數排序）")
+    @Autowired
+    EnrollmentRollupService enrollmentRollupService;
+
+    @Autowired
+    ChangeTracker changeTracker;
+
+    @Operation(summary = "查詢熱門課程", description = "取得最熱門課程前N名（按選課人數排序），支援 If-None-Match (資料未變更時回 304)")
     @GetMapping("/popular-courses")
     public List<PopularCourseDTO> getPopularCourses(
-            @RequestParam(value = "limit", defaultValue = "10") int limit
+            @RequestParam(value = "limit", defaultValue = "10") int limit,
+            WebRequest request
     ) {
         if (limit <= 0 || limit > 50) {
             throw new IllegalArgumentException("Limit must be between 1 and 50");
         }
-        return enrollmentService.getTopPopularCourses(limit);
+        if (request.checkNotModified(enrollmentStatisticsTag())) {
+            return null;
+        }
+        return changeTracker.read(() -> enrollmentService.getTopPopularCourses(limit));
+    }
+
+    @Operation(summary = "查詢選課趨勢", description = "日期範圍內每日的選課人數 (最多 3660 天，沒有選課的日子為 0)，可指定單一課程；由每日彙總表計算")
+    @GetMapping("/enrollment-trend")
+    public List<EnrollmentTrendDTO> getEnrollmentTrend(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "courseId", required = false) Integer courseId,
+            WebRequest request
+    ) {
+        if (request.checkNotModified(enrollmentStatisticsTag())) {
+            return null;
+        }
+        return changeTracker.read(() -> enrollmentRollupService.getDailyTrend(from, to, courseId));
+    }
+
+    @Operation(summary = "查詢教師授課負擔", description = "各教師的授課數與選課人數 (可限定選課日期範圍)，依選課人數排序；由每日彙總表計算")
+    @GetMapping("/teacher-load")
+    public List<TeacherLoadDTO> getTeacherLoad(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            WebRequest request
+    ) {
+        if (request.checkNotModified(enrollmentStatisticsTag())) {
+            return null;
+        }
+        return changeTracker.read(() -> enrollmentRollupService.getTeacherLoad(from, to));
+    }
+
+    @Operation(summary = "查詢學分分布", description = "各學分數的課程數與選課人數 (可限定選課日期範圍)；由每日彙總表計算")
+    @GetMapping("/credits-distribution")
+    public List<CreditsDistributionDTO> getCreditsDistribution(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            WebRequest request
+    ) {
+        if (request.checkNotModified(enrollmentStatisticsTag())) {
+            return null;
+        }
+        return changeTracker.read(() -> enrollmentRollupService.getCreditsDistribution(from, to));
+    }
+
+    @Operation(summary = "重建每日選課彙總", description = "從選課記錄重新計算每日彙總表")
+    @HeavyEndpoint
+    @PostMapping("/rollup/rebuild")
+    public RollupRebuildDTO rebuildRollup() {
+        return enrollmentRollupService.rebuild();
+    }
+
+    // 統計結果涉及選課、課程與教師
+    private String enrollmentStatisticsTag() {
+        return changeTracker.tag(ChangeTracker.Table.ENROLLMENT, ChangeTracker.Table.COURSE, ChangeTracker.Table.TEACHER);
     }
-}
\ No newline at end of file
+}
@@ -1,24 +1,36 @@
 package fcu.pbiecs.spring_demo.controller;
 
+import fcu.pbiecs.spring_demo.admission.HeavyEndpoint;
+import fcu.pbiecs.spring_demo.config.ResponseFormatConfig;
+import fcu.pbiecs.spring_demo.dto.BulkDeleteRequestDTO;
+import fcu.pbiecs.spring_demo.dto.BulkDeleteResultDTO;
+import fcu.pbiecs.spring_demo.dto.BulkEnrollmentResultDTO;
 import fcu.pbiecs.spring_demo.dto.CourseEnrollmentDTO;
+import fcu.pbiecs.spring_demo.dto.EnrollmentPairDTO;
 import fcu.pbiecs.spring_demo.model.Course;
 import fcu.pbiecs.spring_demo.model.Enrollment;
 import fcu.pbiecs.spring_demo.model.EnrollmentId;
 import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.pagination.CursorPage;
+import fcu.pbiecs.spring_demo.pagination.TotalMode;
+import fcu.pbiecs.spring_demo.service.BulkDeleteService;
 import fcu.pbiecs.spring_demo.service.CourseService;
 import fcu.pbiecs.spring_demo.service.EnrollmentService;
 import fcu.pbiecs.spring_demo.service.StudentService;
+import fcu.pbiecs.spring_demo.writebehind.EnrollmentWriteBehindService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.http.HttpHeaders;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.sql.Date;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 
 @Tag(name = "學生管理", description = "提供學生 CRUD API")
@@ -35,12 +47,50 @@ public class StudentController {
     @Autowired
     EnrollmentService enrollmentService;
 
-    @Operation(summary = "查詢所有學生", description = "取得所有學生的資訊")
-    @GetMapping
+    @Autowired
+    NdjsonStreamer ndjsonStreamer;
+
+    @Autowired
+    BulkDeleteService bulkDeleteService;
+
+    @Autowired
+    EnrollmentWriteBehindService enrollmentWriteBehindService;
+
+    @Operation(summary = "串流所有學生", description = "以 NDJSON 逐筆輸出所有學生 (Accept: application/x-ndjson)，記憶體用量不隨資料量增加")
+    @HeavyEndpoint
+    @GetMapping(produces = NdjsonStreamer.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamStudents(@RequestParam Map<String, String> params) {
+        if (!params.isEmpty()) {
+            return ndjsonStreamer.badRequest("NDJSON streaming does not support paging or search parameters");
+        }
+        return ndjsonStreamer.stream(studentService::forEachStudent);
+    }
+
+    @Operation(summary = "查詢所有學生", description = "取得所有學生的資訊，可依 Accept 回傳 CBOR、Smile 或欄位式 JSON。" +
+            "分頁時 total=none 不計算總筆數 (只回 X-Has-Next)，total=approximate 使用快取的總筆數")
+    @HeavyEndpoint(unlessPaged = true)
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE,
+            ResponseFormatConfig.APPLICATION_SMILE_VALUE, ColumnarJsonHttpMessageConverter.APPLICATION_COLUMNAR_JSON_VALUE})
     public ResponseEntity<List<Student>> getStudents(
             @RequestParam(value = "pageNumber", required = false) Integer pageNumber,
             @RequestParam(value = "pageSize", required = false) Integer pageSize,
-            @RequestParam(value = "search", required = false) String searchKeyword) {
+            @RequestParam(value = "search", required = false) String searchKeyword,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "total", required = false) String total) {
+
+        // Cursor (keyset) 分頁：after 為空字串時從第一筆開始，不計算總筆數
+        if (after != null) {
+            if (searchKeyword != null && !searchKeyword.trim().isEmpty()) {
+                throw new IllegalArgumentException("Cursor paging is not supported with search");
+            }
+            if (pageSize == null || pageSize <= 0) {
+                throw new IllegalArgumentException("Invalid page size");
+            }
+            CursorPage<Student> page = studentService.getStudentsAfter(after, pageSize);
+            return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.content());
+        }
+
+        TotalMode totalMode = TotalMode.parse(total);
 
         // 處理搜尋功能
         if (searchKeyword != null && !searchKeyword.trim().isEmpty()) {
@@ -52,11 +102,8 @@ public class StudentController {
                 throw new IllegalArgumentException("Invalid page number or page size");
             }
             // 搜尋 + 分頁查詢
-            Page<Student> page = studentService.searchStudents(searchKeyword.trim(), pageNumber, pageSize);
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("X-Total-Pages", String.valueOf(page.getTotalPages()));
-            headers.add("X-Total-Count", String.valueOf(page.getTotalElements()));
-            return ResponseEntity.ok().headers(headers).body(page.getContent());
+            Slice<Student> page = studentService.searchStudents(searchKeyword.trim(), pageNumber, pageSize, totalMode);
+            return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.getContent());
         }
 
         // 一般查詢
@@ -68,11 +115,8 @@ public class StudentController {
             throw new IllegalArgumentException("Invalid page number or page size");
         }
         // 分頁查詢
-        Page<Student> page = studentService.getAllStudent(pageNumber, pageSize);
-        HttpHeaders headers = new HttpHeaders();
-        headers.add("X-Total-Pages", String.valueOf(page.getTotalPages()));
-        headers.add("X-Total-Count", String.valueOf(page.getTotalElements()));
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        Slice<Student> page = studentService.getAllStudent(pageNumber, pageSize, totalMode);
+        return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.getContent());
     }
 
     @Operation(summary = "查詢學生", description = "依照ID查詢學生資訊")
@@ -94,6 +138,14 @@ public class StudentController {
         studentService.deleteStudent(id);
     }
 
+    @Operation(summary = "批次刪除學生", description = "依 ids (ID清單) 或 search (關鍵字，條件與列表的 search 相同) 刪除多位學生，選課記錄一併刪除。" +
+            "以集合式 DELETE 在單一交易中刪除，單次最多 " + BulkDeleteService.MAX_BULK_DELETE + " 筆")
+    @HeavyEndpoint
+    @PostMapping("/bulk-delete")
+    public BulkDeleteResultDTO bulkDeleteStudents(@RequestBody BulkDeleteRequestDTO request) {
+        return bulkDeleteService.deleteStudents(request);
+    }
+
     @Operation(summary = "更新學生", description = "依照ID更新學生資訊")
     @PutMapping("/{id}")
     public void updateStudent(@PathVariable("id") int id, @RequestBody Student updatedStudent) throws StudentService.StudentNotfoundException {
@@ -101,26 +153,35 @@ public class StudentController {
         studentService.updateStudent(updatedStudent);
     }
 
-    @Operation(summary = "查詢學生選課", description = "查詢學生選課")
+    @Operation(summary = "查詢學生選課", description = "查詢學生選課，分頁時可用 total=none 或 total=approximate 省略 COUNT 查詢")
     @GetMapping("/{id}/courses")
     public ResponseEntity<List<CourseEnrollmentDTO>> getStudentCourses(
             @PathVariable("id") int studentId,
             @RequestParam(value = "pageNumber", required = false) Integer pageNumber,
-            @RequestParam(value = "pageSize", required = false) Integer pageSize
+            @RequestParam(value = "pageSize", required = false) Integer pageSize,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "total", required = false) String total
     ) throws StudentService.StudentNotfoundException {
         // Verify student exists
         studentService.getStudentById(studentId);
-        
+
+        // Cursor (keyset) 分頁：after 為空字串時從第一筆開始，不計算總筆數
+        if (after != null) {
+            if (pageSize == null || pageSize <= 0) {
+                throw new IllegalArgumentException("Invalid page size");
+            }
+            CursorPage<CourseEnrollmentDTO> page = enrollmentService.getStudentEnrollmentsAfter(studentId, after, pageSize);
+            return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.content());
+        }
+
         if (pageNumber != null && pageSize != null) {
             if (pageNumber < 0 || pageSize < 0) {
                 throw new IllegalArgumentException("Invalid page number or page size");
             }
             // 分頁查詢
-            Page<CourseEnrollmentDTO> page = enrollmentService.getStudentEnrollments(studentId, pageNumber, pageSize);
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("X-Total-Pages", String.valueOf(page.getTotalPages()));
-            headers.add("X-Total-Count", String.valueOf(page.getTotalElements()));
-            return ResponseEntity.ok().headers(headers).body(page.getContent());
+            Slice<CourseEnrollmentDTO> page = enrollmentService.getStudentEnrollments(
+                    studentId, pageNumber, pageSize, TotalMode.parse(total));
+            return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.getContent());
         } else {
             // 無分頁查詢
             List<CourseEnrollmentDTO> courses = enrollmentService.getStudentEnrollments(studentId);
@@ -128,9 +189,9 @@ public class StudentController {
         }
     }
 
-    @Operation(summary = "新增學生選課", description = "新增學生選課")
+    @Operation(summary = "新增學生選課", description = "新增學生選課，課程額滿時回傳 409；啟用 write-behind 時寫入日誌後即回傳 202，稍後才寫入資料庫 (資料初始化或匯入期間回傳 503)")
     @PostMapping("/{student_id}/courses/{course_id}")
-    public Enrollment addStudentCourse(@PathVariable("student_id") int studentId, @PathVariable("course_id") int courseId) throws StudentService.StudentNotfoundException, CourseService.CourseNotfoundException, EnrollmentService.EnrollmentAlreadyExistsException {
+    public ResponseEntity<Enrollment> addStudentCourse(@PathVariable("student_id") int studentId, @PathVariable("course_id") int courseId) throws StudentService.StudentNotfoundException, CourseService.CourseNotfoundException, EnrollmentService.EnrollmentAlreadyExistsException, EnrollmentService.CourseFullException {
         Student student = studentService.getStudentById(studentId);
         Course course = courseService.getCourseById(courseId);
 
@@ -140,18 +201,35 @@ public class StudentController {
                 course,
                 Date.valueOf(LocalDate.now())
         );
-        return enrollmentService.addEnrollment(enrollment);
+        if (enrollmentWriteBehindService.isEnabled()) {
+            enrollmentWriteBehindService.add(studentId, courseId, enrollment.getEnrollmentDate().toLocalDate());
+            return ResponseEntity.accepted().body(enrollment);
+        }
+        return ResponseEntity.ok(enrollmentService.addEnrollment(enrollment));
     }
 
-    @Operation(summary = "刪除學生選課", description = "刪除學生選課")
+    @Operation(summary = "批次新增學生選課", description = "一次新增多筆 (studentId, courseId) 選課，回傳每一筆的結果 (CREATED、DUPLICATE、UNKNOWN_STUDENT、UNKNOWN_COURSE、COURSE_FULL)")
+    @HeavyEndpoint
+    @PostMapping("/enrollments")
+    public BulkEnrollmentResultDTO addStudentCourses(@RequestBody List<EnrollmentPairDTO> enrollments) {
+        return enrollmentService.addEnrollments(enrollments);
+    }
+
+    @Operation(summary = "刪除學生選課", description = "刪除學生選課；啟用 write-behind 時寫入日誌後即回傳 202 (資料初始化或匯入期間回傳 503)")
     @DeleteMapping("/{student_id}/courses/{course_id}")
-    public void deleteStudentCourses(@PathVariable("student_id") int studentId, @PathVariable("course_id") int courseId) throws StudentService.StudentNotfoundException, CourseService.CourseNotfoundException, EnrollmentService.EnrollmentNotfoundException {
+    public ResponseEntity<Void> deleteStudentCourses(@PathVariable("student_id") int studentId, @PathVariable("course_id") int courseId) throws StudentService.StudentNotfoundException, CourseService.CourseNotfoundException, EnrollmentService.EnrollmentNotfoundException {
         Student student = studentService.getStudentById(studentId);
         Course course = courseService.getCourseById(courseId);
+        if (enrollmentWriteBehindService.isEnabled()) {
+            enrollmentWriteBehindService.delete(student.getStudentId(), course.getCourseId());
+            return ResponseEntity.accepted().build();
+        }
         enrollmentService.deleteEnrollment(student.getStudentId(), course.getCourseId());
+        return ResponseEntity.ok().build();
     }
 
     @Operation(summary = "依照名字查詢學生", description = "根據名字關鍵字查詢學生資訊")
+    @HeavyEndpoint
     @GetMapping("/first_name/{firstName}")
     public List<Student> getStudentsByFirstName(@PathVariable("firstName") String firstName) {
         return studentService.findStudentsByFirstName(firstName);
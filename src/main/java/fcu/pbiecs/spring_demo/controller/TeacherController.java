@@ -1,18 +1,27 @@
 package fcu.pbiecs.spring_demo.controller;
 
+import fcu.pbiecs.spring_demo.admission.HeavyEndpoint;
+import fcu.pbiecs.spring_demo.config.ResponseFormatConfig;
+import fcu.pbiecs.spring_demo.dto.BulkDeleteRequestDTO;
+import fcu.pbiecs.spring_demo.dto.BulkDeleteResultDTO;
 import fcu.pbiecs.spring_demo.model.Course;
 import fcu.pbiecs.spring_demo.model.Student;
 import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.pagination.CursorPage;
+import fcu.pbiecs.spring_demo.pagination.TotalMode;
+import fcu.pbiecs.spring_demo.service.BulkDeleteService;
 import fcu.pbiecs.spring_demo.service.TeacherService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.http.HttpHeaders;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.Map;
 
 @Tag(name = "教師管理", description = "提供教師 CRUD API")
 @RestController
@@ -22,12 +31,47 @@ public class TeacherController {
     @Autowired
     TeacherService teacherService;
 
-    @Operation(summary = "查詢所有教師", description = "取得所有教師的資訊")
-    @GetMapping
+    @Autowired
+    NdjsonStreamer ndjsonStreamer;
+
+    @Autowired
+    BulkDeleteService bulkDeleteService;
+
+    @Operation(summary = "串流所有教師", description = "以 NDJSON 逐筆輸出所有教師 (Accept: application/x-ndjson)，記憶體用量不隨資料量增加")
+    @HeavyEndpoint
+    @GetMapping(produces = NdjsonStreamer.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamTeachers(@RequestParam Map<String, String> params) {
+        if (!params.isEmpty()) {
+            return ndjsonStreamer.badRequest("NDJSON streaming does not support paging or search parameters");
+        }
+        return ndjsonStreamer.stream(teacherService::forEachTeacher);
+    }
+
+    @Operation(summary = "查詢所有教師", description = "取得所有教師的資訊，可依 Accept 回傳 CBOR、Smile 或欄位式 JSON。" +
+            "分頁時 total=none 不計算總筆數 (只回 X-Has-Next)，total=approximate 使用快取的總筆數")
+    @HeavyEndpoint(unlessPaged = true)
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE,
+            ResponseFormatConfig.APPLICATION_SMILE_VALUE, ColumnarJsonHttpMessageConverter.APPLICATION_COLUMNAR_JSON_VALUE})
     public ResponseEntity<List<Teacher>> getTeachers(
             @RequestParam(value = "pageNumber", required = false) Integer pageNumber,
             @RequestParam(value = "pageSize", required = false) Integer pageSize,
-            @RequestParam(value = "search", required = false) String searchKeyword) {
+            @RequestParam(value = "search", required = false) String searchKeyword,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "total", required = false) String total) {
+
+        // Cursor (keyset) 分頁：after 為空字串時從第一筆開始，不計算總筆數
+        if (after != null) {
+            if (searchKeyword != null && !searchKeyword.trim().isEmpty()) {
+                throw new IllegalArgumentException("Cursor paging is not supported with search");
+            }
+            if (pageSize == null || pageSize <= 0) {
+                throw new IllegalArgumentException("Invalid page size");
+            }
+            CursorPage<Teacher> page = teacherService.getTeachersAfter(after, pageSize);
+            return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.content());
+        }
+
+        TotalMode totalMode = TotalMode.parse(total);
 
         // 處理搜尋功能
         if (searchKeyword != null && !searchKeyword.trim().isEmpty()) {
@@ -39,11 +83,8 @@ public class TeacherController {
                 throw new IllegalArgumentException("Invalid page number or page size");
             }
             // 搜尋 + 分頁查詢
-            Page<Teacher> page = teacherService.searchTeachers(searchKeyword.trim(), pageNumber, pageSize);
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("X-Total-Pages", String.valueOf(page.getTotalPages()));
-            headers.add("X-Total-Count", String.valueOf(page.getTotalElements()));
-            return ResponseEntity.ok().headers(headers).body(page.getContent());
+            Slice<Teacher> page = teacherService.searchTeachers(searchKeyword.trim(), pageNumber, pageSize, totalMode);
+            return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.getContent());
         }
 
         // 一般查詢
@@ -55,11 +96,8 @@ public class TeacherController {
             throw new IllegalArgumentException("Invalid page number or page size");
         }
         // 分頁查詢
-        Page<Teacher> page = teacherService.getAllTeacher(pageNumber, pageSize);
-        HttpHeaders headers = new HttpHeaders();
-        headers.add("X-Total-Pages", String.valueOf(page.getTotalPages()));
-        headers.add("X-Total-Count", String.valueOf(page.getTotalElements()));
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        Slice<Teacher> page = teacherService.getAllTeacher(pageNumber, pageSize, totalMode);
+        return ResponseEntity.ok().headers(PageHeaders.of(page)).body(page.getContent());
     }
 
     @Operation(summary = "查詢教師", description = "依照ID查詢教師資訊")
@@ -91,6 +129,14 @@ public class TeacherController {
         teacherService.deleteTeacher(id);
     }
 
+    @Operation(summary = "批次刪除教師", description = "依 ids (ID清單) 或 search (關鍵字，條件與列表的 search 相同) 刪除多位教師，授課的課程與選課記錄一併刪除。" +
+            "以集合式 DELETE 在單一交易中刪除，單次最多 " + BulkDeleteService.MAX_BULK_DELETE + " 筆")
+    @HeavyEndpoint
+    @PostMapping("/bulk-delete")
+    public BulkDeleteResultDTO bulkDeleteTeachers(@RequestBody BulkDeleteRequestDTO request) {
+        return bulkDeleteService.deleteTeachers(request);
+    }
+
     @Operation(summary = "更新教師", description = "依照ID更新教師資訊")
     @PutMapping("/{id}")
     public void updateTeachers(@PathVariable("id") int id, @RequestBody Teacher updatedTeacher) throws TeacherService.TeacherNotfoundException {
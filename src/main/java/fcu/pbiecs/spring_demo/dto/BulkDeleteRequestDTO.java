@@ -0,0 +1,17 @@
+package fcu.pbiecs.spring_demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkDeleteRequestDTO {
+    // 要刪除的ID，與 search 擇一
+    private List<Integer> ids;
+    // 刪除關鍵字搜尋符合的全部資料 (條件與列表的 search 參數相同)
+    private String search;
+}
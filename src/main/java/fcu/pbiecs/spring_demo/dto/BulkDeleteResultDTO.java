@@ -0,0 +1,16 @@
+package fcu.pbiecs.spring_demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkDeleteResultDTO {
+    // 實際刪除的學生、課程或教師數 (不存在的ID不計入)
+    private int deleted;
+    // 刪除教師時一併刪除的課程數
+    private int coursesDeleted;
+    private int enrollmentsDeleted;
+}
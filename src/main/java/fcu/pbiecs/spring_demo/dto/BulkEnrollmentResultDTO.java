@@ -0,0 +1,38 @@
+package fcu.pbiecs.spring_demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkEnrollmentResultDTO {
+
+    public enum Status {
+        CREATED,
+        DUPLICATE,
+        UNKNOWN_STUDENT,
+        UNKNOWN_COURSE,
+        COURSE_FULL
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Item {
+        private Integer studentId;
+        private Integer courseId;
+        private Status status;
+    }
+
+    private int created;
+    private int duplicate;
+    private int unknownStudent;
+    private int unknownCourse;
+    private int courseFull;
+    // 與請求順序相同
+    private List<Item> results;
+}
@@ -17,4 +17,13 @@ public class CourseEnrollmentDTO {
     private Integer credits;
     private Teacher teacher;
     private Date enrollmentDate;
+
+    // 供 JPQL 建構式投影使用，教師欄位 (含版本) 攤平查詢後再組回 Teacher，JSON 與 /api/teachers/{id} 相同
+    public CourseEnrollmentDTO(Integer courseId, String name, String description, Integer credits,
+                               Integer teacherId, String teacherName, String teacherEmail, Integer teacherAge,
+                               Long teacherVersion, Date enrollmentDate) {
+        this(courseId, name, description, credits,
+                teacherId == null ? null : new Teacher(teacherId, teacherName, teacherEmail, teacherAge, null, teacherVersion),
+                enrollmentDate);
+    }
 }
\ No newline at end of file
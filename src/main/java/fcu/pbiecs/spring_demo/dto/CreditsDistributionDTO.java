@@ -0,0 +1,14 @@
+package fcu.pbiecs.spring_demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CreditsDistributionDTO {
+    private int credits;
+    private long courses;
+    private long enrollments;
+}
@@ -0,0 +1,28 @@
+package fcu.pbiecs.spring_demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DataInitJobDTO {
+    private String jobId;
+    // RUNNING、COMPLETED、FAILED、CANCELLED
+    private String status;
+    private Map<String, Integer> parameters;
+    private String step;
+    private int current;
+    private int total;
+    private int percentage;
+    // 目前階段 (學生或選課的大量寫入) 的已寫入筆數、總筆數、每秒筆數與預估剩餘秒數
+    private long rowsWritten;
+    private long rowsTotal;
+    private double rowsPerSecond;
+    private Long etaSeconds;
+    private long elapsedMillis;
+    private String message;
+}
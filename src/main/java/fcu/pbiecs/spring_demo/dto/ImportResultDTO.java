@@ -0,0 +1,32 @@
+package fcu.pbiecs.spring_demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportResultDTO {
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class RejectedRow {
+        // CSV 中資料開始的行號，標題列是第 1 行
+        private long line;
+        private String reason;
+    }
+
+    private String target;
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsRejected;
+    private long elapsedMillis;
+    private long rowsPerSecond;
+    // 只保留前面幾筆被拒絕的資料，完整清單請用 NDJSON 格式匯入
+    private List<RejectedRow> rejected;
+    private boolean rejectedTruncated;
+}
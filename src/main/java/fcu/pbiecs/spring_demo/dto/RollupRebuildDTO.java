@@ -0,0 +1,14 @@
+package fcu.pbiecs.spring_demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RollupRebuildDTO {
+    // 重建後的彙總列數 (日期 × 課程)
+    private long rows;
+    private long elapsedMillis;
+}
@@ -0,0 +1,15 @@
+package fcu.pbiecs.spring_demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TeacherLoadDTO {
+    private Integer teacherId;
+    private String name;
+    private long courses;
+    private long enrollments;
+}
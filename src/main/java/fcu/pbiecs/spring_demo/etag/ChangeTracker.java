@@ -0,0 +1,155 @@
+package fcu.pbiecs.spring_demo.etag;
+
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.jdbc.ReadWriteRoutingDataSource;
+import fcu.pbiecs.spring_demo.transaction.TransactionCallbacks;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * 各資料表的變更計數，用來產生 ETag 並回應條件式 GET。
+ * <p>
+ * 各 Service 的寫入方法呼叫 {@link #changed}，在交易提交後才增加計數；端點以相關資料表的計數組成 ETag，
+ * If-None-Match 相同時直接回 304，不查資料庫也不序列化。計數只存在記憶體中，ETag 開頭帶啟動時間，
+ * 重新啟動後舊的 ETag 不會被誤認；部署多個執行個體時各自計數，與熱門課程統計相同。
+ * <p>
+ * 計數在本機提交後就增加，要配上 ETag 的資料以 {@link #read} 從 primary 讀取，
+ * 否則 replica 落後時舊資料會配上新的 ETag，客戶端會一直沿用到下一次變更。
+ * <p>
+ * ETag 一律是弱 ETag：同一份資料會依 Accept 輸出 JSON、CBOR 等不同格式，也可能經過 gzip，
+ * 內容不是逐位元組相同；而且 Tomcat 遇到強 ETag 時不會壓縮回應。
+ */
+@Component
+public class ChangeTracker {
+
+    public enum Table {
+        STUDENT, TEACHER, COURSE, ENROLLMENT
+    }
+
+    /**
+     * 載入單一實體，可丟出 Service 的 checked exception。
+     */
+    public interface Loader<T, X extends Exception> {
+        T load() throws X;
+    }
+
+    private static final String WEAK_PREFIX = "W/\"";
+
+    // 單一實體 ETag 的快取上限，超過時整個清掉
+    private static final int MAX_ENTITY_TAGS = 10_000;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLongArray changes = new AtomicLongArray(Table.values().length);
+
+    // 大量重建的次數，放在 ETag 開頭
+    private final AtomicLong reloads = new AtomicLong();
+
+    // 最近一次從資料庫讀到的單一實體 ETag，以及讀取前的資料表計數
+    private final Map<EntityKey, EntityTag> entityTags = new ConcurrentHashMap<>();
+
+    private record EntityKey(Table table, int id) {
+    }
+
+    private record EntityTag(String stamp, String tag) {
+    }
+
+    // 讓 Loader 的 checked exception 穿過 onPrimary 的 Supplier
+    private static class LoaderFailure extends RuntimeException {
+        LoaderFailure(Exception cause) {
+            super(cause);
+        }
+    }
+
+    public void changed(Table... tables) {
+        // 提交前就增加的話，其他請求可能拿新的 ETag 配上還沒提交的舊資料
+        TransactionCallbacks.afterCommit(() -> increment(tables));
+    }
+
+    // 排在其他重新載入的 listener 之後，記憶體中的統計與索引都更新完才換 ETag
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onDataReloaded(DataReloadedEvent event) {
+        // TRUNCATE 之後 ID 與版本會重新開始，以版本組成的 ETag 也要跟著失效
+        reloads.incrementAndGet();
+        entityTags.clear();
+        increment(Table.values());
+    }
+
+    /**
+     * 由資料表計數組成的 ETag，任何一張表有變更就會不同。
+     */
+    public String tag(Table... tables) {
+        StringBuilder tag = new StringBuilder(WEAK_PREFIX).append(epoch).append('.').append(reloads.get());
+        for (Table table : tables) {
+            tag.append('-').append(changes.get(table.ordinal()));
+        }
+        return tag.append('"').toString();
+    }
+
+    /**
+     * 以實體的 {@code @Version} 回應條件式 GET，其他實體的變更不會讓 ETag 改變。
+     * 資料表計數沒有變動時以上次的 ETag 比對，不需要載入實體；回傳 null 表示已回應 304。
+     *
+     * @param dependsOn 實體的 JSON 內容所涉及的資料表，例如課程包含授課教師
+     * @param versions  由實體取出組成 ETag 的版本號
+     */
+    public <T, X extends Exception> T ifModified(WebRequest request, Table table, int id, Table[] dependsOn,
+                                                  Loader<T, X> loader, Function<T, Object[]> versions) throws X {
+        EntityKey key = new EntityKey(table, id);
+        // 計數必須在載入前取得，載入期間有寫入時這次的結果就不會被沿用
+        String stamp = tag(dependsOn);
+        EntityTag known = entityTags.get(key);
+        if (known != null && known.stamp().equals(stamp)) {
+            return request.checkNotModified(known.tag()) ? null : read(loader);
+        }
+
+        T entity = read(loader);
+        // 沿用計數的開頭 (啟動時間與重建次數)，後面接各實體的版本
+        StringBuilder tag = new StringBuilder(WEAK_PREFIX).append(stamp, WEAK_PREFIX.length(), stamp.indexOf('-'));
+        for (Object version : versions.apply(entity)) {
+            tag.append('-').append(version);
+        }
+        String etag = tag.append('"').toString();
+        if (entityTags.size() >= MAX_ENTITY_TAGS) {
+            entityTags.clear();
+        }
+        entityTags.put(key, new EntityTag(stamp, etag));
+        return request.checkNotModified(etag) ? null : entity;
+    }
+
+    /**
+     * 在 primary 上讀取要以 {@link #tag} 回應的資料，即使是唯讀交易也不走 replica。
+     */
+    @SuppressWarnings("unchecked")
+    public <T, X extends Exception> T read(Loader<T, X> loader) throws X {
+        try {
+            return ReadWriteRoutingDataSource.onPrimary(() -> {
+                try {
+                    return loader.load();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new LoaderFailure(e);
+                }
+            });
+        } catch (LoaderFailure e) {
+            throw (X) e.getCause();
+        }
+    }
+
+    private void increment(Table... tables) {
+        for (Table table : tables) {
+            changes.incrementAndGet(table.ordinal());
+        }
+    }
+}
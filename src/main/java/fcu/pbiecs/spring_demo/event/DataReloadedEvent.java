@@ -0,0 +1,8 @@
+package fcu.pbiecs.spring_demo.event;
+
+/**
+ * 資料被大量重建或清除 (繞過各 Service 直接寫入資料庫) 後發布，
+ * 記憶體中的索引與統計收到後應從資料庫重新載入。
+ */
+public record DataReloadedEvent() {
+}
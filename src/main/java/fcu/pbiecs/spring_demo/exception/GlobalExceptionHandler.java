@@ -1,9 +1,13 @@
 package fcu.pbiecs.spring_demo.exception;
 
+import fcu.pbiecs.spring_demo.importer.CsvImportService;
+import fcu.pbiecs.spring_demo.job.DataInitJobService;
 import fcu.pbiecs.spring_demo.service.CourseService;
 import fcu.pbiecs.spring_demo.service.EnrollmentService;
 import fcu.pbiecs.spring_demo.service.StudentService;
+import fcu.pbiecs.spring_demo.writebehind.EnrollmentWriteBehindService;
 import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
@@ -21,6 +25,16 @@ public class GlobalExceptionHandler {
         return error;
     }
 
+    // 兩個請求同時更新同一筆資料 (@Version 不符)
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ResponseBody
+    public Map<String, String> handleOptimisticLockingFailure(ObjectOptimisticLockingFailureException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "The resource was modified by another request, please retry");
+        return error;
+    }
+
     @ExceptionHandler(StudentService.StudentNotfoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
     @ResponseBody
@@ -74,4 +88,51 @@ public class GlobalExceptionHandler {
         error.put("error", ex.getMessage());
         return error;
     }
-}
\ No newline at end of file
+
+    @ExceptionHandler(EnrollmentService.CourseFullException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ResponseBody
+    public Map<String, String> handleCourseFull(EnrollmentService.CourseFullException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return error;
+    }
+
+    @ExceptionHandler(DataInitJobService.JobNotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ResponseBody
+    public Map<String, String> handleJobNotFound(DataInitJobService.JobNotFoundException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return error;
+    }
+
+    @ExceptionHandler(DataInitJobService.JobAlreadyRunningException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ResponseBody
+    public Map<String, String> handleJobAlreadyRunning(DataInitJobService.JobAlreadyRunningException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        error.put("jobId", ex.getJobId());
+        return error;
+    }
+
+    // write-behind 在大量寫入期間不接受選課，稍後重試即可
+    @ExceptionHandler(EnrollmentWriteBehindService.BulkWriteInProgressException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ResponseBody
+    public Map<String, String> handleBulkWriteInProgress(EnrollmentWriteBehindService.BulkWriteInProgressException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return error;
+    }
+
+    @ExceptionHandler(CsvImportService.ImportRejectedException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ResponseBody
+    public Map<String, String> handleImportRejected(CsvImportService.ImportRejectedException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return error;
+    }
+}
@@ -0,0 +1,808 @@
+package fcu.pbiecs.spring_demo.importer;
+
+import fcu.pbiecs.spring_demo.collection.BloomFilter;
+import fcu.pbiecs.spring_demo.collection.IntPairSet;
+import fcu.pbiecs.spring_demo.dto.ImportResultDTO;
+import fcu.pbiecs.spring_demo.etag.ChangeTracker;
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.jdbc.BatchInsertPipeline;
+import fcu.pbiecs.spring_demo.job.BulkWriteGuard;
+import fcu.pbiecs.spring_demo.job.DataInitJob;
+import fcu.pbiecs.spring_demo.service.CourseSeatService;
+import fcu.pbiecs.spring_demo.service.EmailIndexService;
+import fcu.pbiecs.spring_demo.writebehind.EnrollmentWriteBehindService;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * 從 CSV 串流匯入學生、老師、課程與選課資料。
+ * <p>
+ * 邊讀邊驗證，每 {@link BatchInsertPipeline#BATCH_SIZE} 筆用 IN 查詢檢查重複與關聯資料後以 JDBC batch 寫入，
+ * 每讀取 {@link BatchInsertPipeline#COMMIT_SIZE} 筆提交一次。檢查與寫入使用同一條連線，
+ * 前面批次剛寫入但尚未提交的資料也看得到，所以整個檔案內的重複都能找出來，記憶體中只保留一個批次。
+ * <p>
+ * 中途失敗或客戶端斷線時只回滾尚未提交的部分，已提交的資料會保留。
+ * <p>
+ * 選課與線上選課一樣經過 {@link CourseSeatService} 保留名額，額滿的課程拒絕該筆選課；保留在提交後計入選課人數，回滾時歸還。
+ */
+@Service
+public class CsvImportService {
+
+    // 回應中最多列出幾筆被拒絕的資料
+    public static final int MAX_REPORTED_REJECTIONS = 1000;
+
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+    public enum Target {
+        STUDENTS, TEACHERS, COURSES, ENROLLMENTS;
+
+        public static Target of(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支援的匯入類型: " + name + "，可用的有 " + Arrays.toString(values()).toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    public static class ImportRejectedException extends Exception {
+        public ImportRejectedException(String m) {
+            super(m);
+        }
+    }
+
+    /**
+     * 匯入過程的通知，在呼叫 {@link #importCsv} 的執行緒上呼叫。
+     */
+    public interface ImportListener {
+        default void onRejected(long line, String reason) {
+        }
+
+        // 每次提交後呼叫
+        default void onProgress(long rowsRead, long rowsImported, long rowsRejected) {
+        }
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private BulkWriteGuard bulkWriteGuard;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private EmailIndexService emailIndexService;
+
+    @Autowired
+    private CourseSeatService courseSeatService;
+
+    @Autowired
+    private EnrollmentWriteBehindService enrollmentWriteBehindService;
+
+    // 匯入持有的執行權；每次匯入建立新的，釋放時不會誤放別人的
+    private record Importing(Target target) {
+    }
+
+    /**
+     * 檢查目前能否匯入，讓串流回應在送出標頭前就能回報衝突。
+     */
+    public void checkAvailable() throws ImportRejectedException {
+        Object owner = bulkWriteGuard.owner();
+        if (owner != null) {
+            throw rejected(owner);
+        }
+    }
+
+    /**
+     * 同一時間只允許一個匯入，也不能與資料初始化同時進行，避免同時寫入相同的 Email 或選課。
+     */
+    public ImportResultDTO importCsv(Target target, InputStream input, ImportListener listener)
+            throws ImportRejectedException, IOException {
+        Importing importing = new Importing(target);
+        if (!bulkWriteGuard.tryAcquire(importing)) {
+            throw rejected(bulkWriteGuard.owner());
+        }
+        try {
+            // 尚未寫入的選課先寫完，匯入後的重新載入不會捨棄它們
+            enrollmentWriteBehindService.drain();
+            return run(target, table(target), input, listener != null ? listener : new ImportListener() {});
+        } finally {
+            bulkWriteGuard.release(importing);
+        }
+    }
+
+    private static ImportRejectedException rejected(Object owner) {
+        return new ImportRejectedException(owner instanceof DataInitJob
+                ? "資料初始化工作執行中，無法匯入" : "已有匯入工作執行中");
+    }
+
+    private record Row<T>(long line, T value) {
+    }
+
+    private <T> ImportResultDTO run(Target target, Table<T> table, InputStream input, ImportListener listener) throws IOException {
+        long start = System.currentTimeMillis();
+        ImportResultDTO result = new ImportResultDTO();
+        result.setTarget(target.name().toLowerCase(Locale.ROOT));
+        result.setRejected(new ArrayList<>());
+
+        Rejector rejector = (line, reason) -> {
+            result.setRowsRejected(result.getRowsRejected() + 1);
+            if (result.getRejected().size() < MAX_REPORTED_REJECTIONS) {
+                result.getRejected().add(new ImportResultDTO.RejectedRow(line, reason));
+            } else {
+                result.setRejectedTruncated(true);
+            }
+            listener.onRejected(line, reason);
+        };
+
+        long committed = 0;
+        try (CsvReader reader = new CsvReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String[] header = readHeader(reader);
+            int[] columns = table.mapColumns(header);
+
+            try (Connection connection = dataSource.getConnection()) {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try (PreparedStatement insert = connection.prepareStatement(table.insertSql())) {
+                    List<Row<T>> chunk = new ArrayList<>(BatchInsertPipeline.BATCH_SIZE);
+                    long readSinceCommit = 0;
+                    while (true) {
+                        String[] record;
+                        try {
+                            record = reader.next();
+                        } catch (CsvReader.MalformedRecordException e) {
+                            result.setRowsRead(result.getRowsRead() + 1);
+                            readSinceCommit++;
+                            rejector.reject(e.getLine(), e.getMessage());
+                            continue;
+                        }
+                        if (record == null) {
+                            break;
+                        }
+                        result.setRowsRead(result.getRowsRead() + 1);
+                        readSinceCommit++;
+
+                        try {
+                            if (record.length != header.length) {
+                                throw new IllegalArgumentException("欄位數量 " + record.length + " 與標題的 " + header.length + " 不符");
+                            }
+                            chunk.add(new Row<>(reader.getRecordLine(), table.parse(record, columns)));
+                        } catch (IllegalArgumentException e) {
+                            rejector.reject(reader.getRecordLine(), e.getMessage());
+                        }
+
+                        if (chunk.size() == BatchInsertPipeline.BATCH_SIZE) {
+                            result.setRowsImported(result.getRowsImported() + write(connection, insert, table, chunk, rejector));
+                        }
+                        // 以讀取筆數決定提交時機，大部分資料被拒絕時也會定期回報進度
+                        if (readSinceCommit >= BatchInsertPipeline.COMMIT_SIZE) {
+                            result.setRowsImported(result.getRowsImported() + write(connection, insert, table, chunk, rejector));
+                            connection.commit();
+                            table.committed();
+                            committed = result.getRowsImported();
+                            readSinceCommit = 0;
+                            listener.onProgress(result.getRowsRead(), result.getRowsImported(), result.getRowsRejected());
+                        }
+                    }
+                    result.setRowsImported(result.getRowsImported() + write(connection, insert, table, chunk, rejector));
+                    connection.commit();
+                    table.committed();
+                    committed = result.getRowsImported();
+                    listener.onProgress(result.getRowsRead(), result.getRowsImported(), result.getRowsRejected());
+                } catch (SQLException | IOException | RuntimeException e) {
+                    connection.rollback();
+                    table.rolledBack();
+                    result.setRowsImported(committed);
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("匯入資料時發生錯誤: " + e.getMessage(), e);
+            }
+        } finally {
+            if (committed > 0) {
+                dataWritten();
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        result.setElapsedMillis(elapsed);
+        result.setRowsPerSecond(result.getRowsImported() * 1000 / Math.max(1, elapsed));
+        return result;
+    }
+
+    private static String[] readHeader(CsvReader reader) throws IOException {
+        String[] header;
+        try {
+            header = reader.next();
+        } catch (CsvReader.MalformedRecordException e) {
+            throw new IllegalArgumentException("CSV 標題列格式錯誤: " + e.getMessage());
+        }
+        if (header == null) {
+            throw new IllegalArgumentException("CSV 內容是空的");
+        }
+        // 略過 Excel 存檔時加上的 BOM
+        if (header[0].startsWith("\uFEFF")) {
+            header[0] = header[0].substring(1);
+        }
+        return header;
+    }
+
+    private <T> int write(Connection connection, PreparedStatement insert, Table<T> table,
+                          List<Row<T>> chunk, Rejector rejector) throws SQLException {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        List<Row<T>> accepted = table.validate(connection, chunk, rejector);
+        for (Row<T> row : accepted) {
+            table.bind(insert, row.value());
+            insert.addBatch();
+        }
+        if (!accepted.isEmpty()) {
+            insert.executeBatch();
+        }
+        chunk.clear();
+        return accepted.size();
+    }
+
+    private void dataWritten() {
+        // 資料經由 JDBC 直接寫入資料庫，Hibernate 不知道有變動，清掉二級快取
+        entityManagerFactory.getCache().unwrap(org.hibernate.Cache.class).evictAllRegions();
+
+        // 通知索引與統計重新載入
+        eventPublisher.publishEvent(new DataReloadedEvent());
+    }
+
+    private Table<?> table(Target target) {
+        return switch (target) {
+            case STUDENTS -> new StudentTable(new EmailFilter(emailIndexService, ChangeTracker.Table.STUDENT));
+            case TEACHERS -> new TeacherTable(new EmailFilter(emailIndexService, ChangeTracker.Table.TEACHER));
+            case COURSES -> new CourseTable();
+            case ENROLLMENTS -> new EnrollmentTable(courseSeatService);
+        };
+    }
+
+    @FunctionalInterface
+    private interface Rejector {
+        void reject(long line, String reason);
+    }
+
+    /**
+     * 欄位名稱比對時忽略大小寫、底線與空白，所以 first_name、firstName、First Name 都可以。
+     */
+    private record Column(String name, boolean required, String... aliases) {
+    }
+
+    /**
+     * 一種匯入目標：欄位定義、單筆解析、批次驗證與寫入。
+     */
+    private abstract static class Table<T> {
+
+        abstract Column[] columns();
+
+        abstract String insertSql();
+
+        // 單筆格式驗證，不合格時丟出 IllegalArgumentException，訊息即為拒絕原因
+        abstract T parse(String[] record, int[] columns);
+
+        // 對整個批次查詢資料庫做重複與關聯檢查，回傳可以寫入的資料
+        abstract List<Row<T>> validate(Connection connection, List<Row<T>> chunk, Rejector rejector) throws SQLException;
+
+        abstract void bind(PreparedStatement statement, T row) throws SQLException;
+
+        // 連線提交或回滾後呼叫，結算驗證時保留的資源
+        void committed() {
+        }
+
+        void rolledBack() {
+        }
+
+        /**
+         * 回傳各欄位在 CSV 中的位置，沒有的選填欄位為 -1。
+         */
+        int[] mapColumns(String[] header) {
+            Column[] columns = columns();
+            int[] index = new int[columns.length];
+            Arrays.fill(index, -1);
+            List<String> missing = new ArrayList<>();
+            for (int i = 0; i < columns.length; i++) {
+                for (int j = 0; j < header.length; j++) {
+                    if (matches(columns[i], header[j])) {
+                        index[i] = j;
+                        break;
+                    }
+                }
+                if (index[i] == -1 && columns[i].required()) {
+                    missing.add(columns[i].name());
+                }
+            }
+            if (!missing.isEmpty()) {
+                throw new IllegalArgumentException("CSV 缺少必要欄位: " + String.join(", ", missing));
+            }
+            return index;
+        }
+
+        private static boolean matches(Column column, String header) {
+            String normalized = normalize(header);
+            if (normalized.equals(normalize(column.name()))) {
+                return true;
+            }
+            for (String alias : column.aliases()) {
+                if (normalized.equals(normalize(alias))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String normalize(String name) {
+            return name.replaceAll("[\\s_-]", "").toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private record StudentRow(String firstName, String lastName, String email, String birthday) {
+    }
+
+    private static class StudentTable extends Table<StudentRow> {
+        private final EmailFilter emails;
+
+        StudentTable(EmailFilter emails) {
+            this.emails = emails;
+        }
+
+        @Override
+        Column[] columns() {
+            return new Column[]{
+                    new Column("first_name", true),
+                    new Column("last_name", true),
+                    new Column("email", true),
+                    new Column("date_of_birth", false, "birthday")
+            };
+        }
+
+        @Override
+        String insertSql() {
+            return "INSERT INTO Student (first_name, last_name, email, date_of_birth) VALUES (?, ?, ?, ?)";
+        }
+
+        @Override
+        StudentRow parse(String[] record, int[] columns) {
+            LocalDate birthday = date(record, columns[3], "date_of_birth");
+            return new StudentRow(
+                    text(record, columns[0], "first_name"),
+                    text(record, columns[1], "last_name"),
+                    email(record, columns[2]),
+                    birthday != null ? birthday.toString() : null);
+        }
+
+        @Override
+        List<Row<StudentRow>> validate(Connection connection, List<Row<StudentRow>> chunk, Rejector rejector) throws SQLException {
+            return uniqueEmails(connection, "SELECT email FROM Student WHERE email IN ", chunk, StudentRow::email, emails, rejector);
+        }
+
+        @Override
+        void bind(PreparedStatement statement, StudentRow row) throws SQLException {
+            statement.setString(1, row.firstName());
+            statement.setString(2, row.lastName());
+            statement.setString(3, row.email());
+            statement.setString(4, row.birthday());
+        }
+    }
+
+    private record TeacherRow(String name, String email, int age) {
+    }
+
+    private static class TeacherTable extends Table<TeacherRow> {
+        private final EmailFilter emails;
+
+        TeacherTable(EmailFilter emails) {
+            this.emails = emails;
+        }
+
+        @Override
+        Column[] columns() {
+            return new Column[]{
+                    new Column("teacher_name", true, "name"),
+                    new Column("email", true),
+                    new Column("age", false)
+            };
+        }
+
+        @Override
+        String insertSql() {
+            return "INSERT INTO Teacher (teacher_name, email, age) VALUES (?, ?, ?)";
+        }
+
+        @Override
+        TeacherRow parse(String[] record, int[] columns) {
+            Integer age = integer(record, columns[2], "age", 0, 150);
+            return new TeacherRow(
+                    text(record, columns[0], "teacher_name"),
+                    email(record, columns[1]),
+                    age != null ? age : 0);
+        }
+
+        @Override
+        List<Row<TeacherRow>> validate(Connection connection, List<Row<TeacherRow>> chunk, Rejector rejector) throws SQLException {
+            return uniqueEmails(connection, "SELECT email FROM Teacher WHERE email IN ", chunk, TeacherRow::email, emails, rejector);
+        }
+
+        @Override
+        void bind(PreparedStatement statement, TeacherRow row) throws SQLException {
+            statement.setString(1, row.name());
+            statement.setString(2, row.email());
+            statement.setInt(3, row.age());
+        }
+    }
+
+    private record CourseRow(String name, String description, int credits, int teacherId) {
+        String key() {
+            return name.toLowerCase(Locale.ROOT) + '\0' + teacherId;
+        }
+    }
+
+    private static class CourseTable extends Table<CourseRow> {
+        @Override
+        Column[] columns() {
+            return new Column[]{
+                    new Column("course_name", true, "name"),
+                    new Column("course_description", false, "description"),
+                    new Column("credits", true, "credit"),
+                    new Column("teacher_id", true)
+            };
+        }
+
+        @Override
+        String insertSql() {
+            return "INSERT INTO Course (course_name, course_description, credits, teacher_id) VALUES (?, ?, ?, ?)";
+        }
+
+        @Override
+        CourseRow parse(String[] record, int[] columns) {
+            String description = value(record, columns[1]);
+            if (description != null && description.length() > MAX_TEXT_LENGTH) {
+                throw new IllegalArgumentException("course_description 超過 " + MAX_TEXT_LENGTH + " 個字元");
+            }
+            return new CourseRow(
+                    text(record, columns[0], "course_name"),
+                    description,
+                    requiredInteger(record, columns[2], "credits", 0, 20),
+                    requiredInteger(record, columns[3], "teacher_id", 1, Integer.MAX_VALUE));
+        }
+
+        @Override
+        List<Row<CourseRow>> validate(Connection connection, List<Row<CourseRow>> chunk, Rejector rejector) throws SQLException {
+            // 同一位老師不能有同名課程
+            Set<Integer> teacherIds = new HashSet<>();
+            Set<String> names = new HashSet<>();
+            for (Row<CourseRow> row : chunk) {
+                teacherIds.add(row.value().teacherId());
+                names.add(row.value().name());
+            }
+            Set<Integer> teachers = queryInts(connection, "SELECT teacher_id FROM Teacher WHERE teacher_id IN ", teacherIds);
+            Set<String> existing = new HashSet<>();
+            query(connection, "SELECT course_name, teacher_id FROM Course WHERE course_name IN ", names,
+                    rs -> existing.add(rs.getString(1).toLowerCase(Locale.ROOT) + '\0' + rs.getInt(2)));
+
+            List<Row<CourseRow>> accepted = new ArrayList<>(chunk.size());
+            for (Row<CourseRow> row : chunk) {
+                if (!teachers.contains(row.value().teacherId())) {
+                    rejector.reject(row.line(), "老師不存在: " + row.value().teacherId());
+                } else if (!existing.add(row.value().key())) {
+                    rejector.reject(row.line(), "課程已存在: " + row.value().name());
+                } else {
+                    accepted.add(row);
+                }
+            }
+            return accepted;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, CourseRow row) throws SQLException {
+            statement.setString(1, row.name());
+            statement.setString(2, row.description());
+            statement.setInt(3, row.credits());
+            statement.setInt(4, row.teacherId());
+        }
+    }
+
+    private record EnrollmentRow(int studentId, int courseId, LocalDate enrollmentDate) {
+    }
+
+    private static class EnrollmentTable extends Table<EnrollmentRow> {
+        private final CourseSeatService seats;
+        // 尚未提交的選課保留的名額 (課程ID -> 筆數)
+        private final Map<Integer, Integer> held = new HashMap<>();
+
+        EnrollmentTable(CourseSeatService seats) {
+            this.seats = seats;
+        }
+
+        @Override
+        Column[] columns() {
+            return new Column[]{
+                    new Column("student_id", true),
+                    new Column("course_id", true),
+                    new Column("enrollment_date", false)
+            };
+        }
+
+        @Override
+        String insertSql() {
+            return "INSERT INTO Enrollment (student_id, course_id, enrollment_date) VALUES (?, ?, ?)";
+        }
+
+        @Override
+        EnrollmentRow parse(String[] record, int[] columns) {
+            LocalDate date = date(record, columns[2], "enrollment_date");
+            return new EnrollmentRow(
+                    requiredInteger(record, columns[0], "student_id", 1, Integer.MAX_VALUE),
+                    requiredInteger(record, columns[1], "course_id", 1, Integer.MAX_VALUE),
+                    date != null ? date : LocalDate.now());
+        }
+
+        @Override
+        List<Row<EnrollmentRow>> validate(Connection connection, List<Row<EnrollmentRow>> chunk, Rejector rejector) throws SQLException {
+            Set<Integer> studentIds = new HashSet<>();
+            Set<Integer> courseIds = new HashSet<>();
+            for (Row<EnrollmentRow> row : chunk) {
+                studentIds.add(row.value().studentId());
+                courseIds.add(row.value().courseId());
+            }
+            Set<Integer> students = queryInts(connection, "SELECT student_id FROM Student WHERE student_id IN ", studentIds);
+            Set<Integer> courses = queryInts(connection, "SELECT course_id FROM Course WHERE course_id IN ", courseIds);
+
+            // 只查這個批次的 (學生, 課程) 組合，走主鍵而不是掃過這些課程的所有選課
+            IntPairSet existing = new IntPairSet(chunk.size());
+            List<Row<EnrollmentRow>> known = new ArrayList<>(chunk.size());
+            for (Row<EnrollmentRow> row : chunk) {
+                if (students.contains(row.value().studentId()) && courses.contains(row.value().courseId())) {
+                    known.add(row);
+                }
+            }
+            if (!known.isEmpty()) {
+                String sql = "SELECT student_id, course_id FROM Enrollment WHERE (student_id, course_id) IN ("
+                        + String.join(", ", Collections.nCopies(known.size(), "(?, ?)")) + ")";
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    int index = 1;
+                    for (Row<EnrollmentRow> row : known) {
+                        statement.setInt(index++, row.value().studentId());
+                        statement.setInt(index++, row.value().courseId());
+                    }
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            existing.add(rs.getInt(1), rs.getInt(2));
+                        }
+                    }
+                }
+            }
+
+            List<Row<EnrollmentRow>> accepted = new ArrayList<>(chunk.size());
+            for (Row<EnrollmentRow> row : chunk) {
+                EnrollmentRow value = row.value();
+                if (!students.contains(value.studentId())) {
+                    rejector.reject(row.line(), "學生不存在: " + value.studentId());
+                } else if (!courses.contains(value.courseId())) {
+                    rejector.reject(row.line(), "課程不存在: " + value.courseId());
+                } else if (existing.contains(value.studentId(), value.courseId())) {
+                    rejector.reject(row.line(), "選課已存在: " + value.studentId() + " / " + value.courseId());
+                } else if (!seats.hold(value.courseId())) {
+                    rejector.reject(row.line(), "課程已額滿: " + value.courseId());
+                } else {
+                    existing.add(value.studentId(), value.courseId());
+                    held.merge(value.courseId(), 1, Integer::sum);
+                    accepted.add(row);
+                }
+            }
+            return accepted;
+        }
+
+        @Override
+        void committed() {
+            held.forEach((courseId, count) -> seats.settle(courseId, count, -count));
+            held.clear();
+        }
+
+        @Override
+        void rolledBack() {
+            held.forEach((courseId, count) -> seats.settle(courseId, 0, -count));
+            held.clear();
+        }
+
+        @Override
+        void bind(PreparedStatement statement, EnrollmentRow row) throws SQLException {
+            statement.setInt(1, row.studentId());
+            statement.setInt(2, row.courseId());
+            statement.setDate(3, Date.valueOf(row.enrollmentDate()));
+        }
+    }
+
+    /**
+     * 判斷 Email 是否可能已經存在：資料庫中已提交的看 Email 索引，這次匯入寫入的另外記在 Bloom filter 中
+     * (重建 Email 索引時還沒提交的資料不會被讀到)。都判斷不存在時不需要查詢資料庫。
+     */
+    private static class EmailFilter {
+        // 這次匯入的 Email 超過這個數量後誤判率上升，只會多一些 IN 查詢
+        private static final int EXPECTED_IMPORTED = 100_000;
+
+        private final EmailIndexService emailIndex;
+        private final ChangeTracker.Table table;
+        private final BloomFilter imported = new BloomFilter(EXPECTED_IMPORTED, 0.01);
+
+        EmailFilter(EmailIndexService emailIndex, ChangeTracker.Table table) {
+            this.emailIndex = emailIndex;
+            this.table = table;
+        }
+
+        boolean mightExist(String email) {
+            return imported.mightContain(email.toLowerCase(Locale.ROOT)) || emailIndex.mightExist(table, email);
+        }
+
+        // 寫入前呼叫，提交前其他查詢就可能讀到，先加入 Email 索引
+        void accepted(String email) {
+            imported.put(email.toLowerCase(Locale.ROOT));
+            emailIndex.add(table, email);
+        }
+    }
+
+    // 批次內與資料庫中已有的 Email 都算重複，批次內不分大小寫；資料庫端依欄位定序比對，email 欄位需要索引。
+    // 整個批次的 Email 都確定不存在時略過 IN 查詢
+    private static <T> List<Row<T>> uniqueEmails(Connection connection, String select, List<Row<T>> chunk,
+                                                 Function<T, String> email, EmailFilter filter,
+                                                 Rejector rejector) throws SQLException {
+        Set<String> emails = new LinkedHashSet<>();
+        boolean mightExist = false;
+        for (Row<T> row : chunk) {
+            String value = email.apply(row.value());
+            emails.add(value);
+            mightExist |= filter.mightExist(value);
+        }
+        Set<String> existing = new HashSet<>();
+        if (mightExist) {
+            query(connection, select, emails, rs -> existing.add(rs.getString(1).toLowerCase(Locale.ROOT)));
+        }
+
+        List<Row<T>> accepted = new ArrayList<>(chunk.size());
+        for (Row<T> row : chunk) {
+            String value = email.apply(row.value());
+            if (existing.add(value.toLowerCase(Locale.ROOT))) {
+                filter.accepted(value);
+                accepted.add(row);
+            } else {
+                rejector.reject(row.line(), "Email 已存在: " + value);
+            }
+        }
+        return accepted;
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        void handle(ResultSet rs) throws SQLException;
+    }
+
+    private static void query(Connection connection, String select, Collection<?> values, RowHandler handler) throws SQLException {
+        if (values.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(select + placeholders(values.size()))) {
+            int index = 1;
+            for (Object value : values) {
+                statement.setObject(index++, value);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(rs);
+                }
+            }
+        }
+    }
+
+    private static Set<Integer> queryInts(Connection connection, String select, Collection<Integer> values) throws SQLException {
+        Set<Integer> found = new HashSet<>();
+        query(connection, select, values, rs -> found.add(rs.getInt(1)));
+        return found;
+    }
+
+    private static String placeholders(int count) {
+        return "(" + String.join(", ", Collections.nCopies(count, "?")) + ")";
+    }
+
+    private static String value(String[] record, int index) {
+        if (index < 0) {
+            return null;
+        }
+        String value = record[index].trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String text(String[] record, int index, String name) {
+        String value = value(record, index);
+        if (value == null) {
+            throw new IllegalArgumentException(name + " 不可為空");
+        }
+        if (value.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException(name + " 超過 " + MAX_TEXT_LENGTH + " 個字元");
+        }
+        return value;
+    }
+
+    private static String email(String[] record, int index) {
+        String value = text(record, index, "email");
+        if (!EMAIL.matcher(value).matches()) {
+            throw new IllegalArgumentException("email 格式錯誤: " + value);
+        }
+        return value;
+    }
+
+    private static Integer integer(String[] record, int index, String name, int min, int max) {
+        String value = value(record, index);
+        if (value == null) {
+            return null;
+        }
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " 必須是整數: " + value);
+        }
+        if (number < min || number > max) {
+            throw new IllegalArgumentException(name + " 必須介於 " + min + " 到 " + max + " 之間: " + value);
+        }
+        return number;
+    }
+
+    private static int requiredInteger(String[] record, int index, String name, int min, int max) {
+        Integer value = integer(record, index, name, min, max);
+        if (value == null) {
+            throw new IllegalArgumentException(name + " 不可為空");
+        }
+        return value;
+    }
+
+    private static LocalDate date(String[] record, int index, String name) {
+        String value = value(record, index);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(name + " 必須是 yyyy-MM-dd 格式: " + value);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package fcu.pbiecs.spring_demo.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 逐筆讀取 CSV (RFC 4180) 的解析器，支援雙引號欄位、欄位內的逗號與換行以及 {@code ""} 跳脫。
+ * <p>
+ * 一次只保留一筆資料，單筆超過 {@link #MAX_RECORD_CHARS} 個字元時丟棄該筆並回報錯誤，
+ * 所以不論輸入多大，記憶體用量都有上限。
+ */
+public class CsvReader implements AutoCloseable {
+
+    public static final int MAX_RECORD_CHARS = 64 * 1024;
+
+    /**
+     * 單筆資料格式錯誤，讀取器已跳到下一筆的開頭，可以繼續讀取。
+     */
+    public static class MalformedRecordException extends Exception {
+        private final long line;
+
+        public MalformedRecordException(String message, long line) {
+            super(message);
+            this.line = line;
+        }
+
+        public long getLine() {
+            return line;
+        }
+    }
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> fields = new ArrayList<>();
+    // 目前位置的行號，以及最近一筆資料開始的行號
+    private long line = 1;
+    private long recordLine;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 讀取下一筆資料，檔案結束時回傳 {@code null}；空白行會被略過。
+     */
+    public String[] next() throws IOException, MalformedRecordException {
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            if (c == '\n' || c == '\r') {
+                if (c == '\r') skipLineFeed();
+                line++;
+                continue;
+            }
+            unread();
+            return readRecord();
+        }
+    }
+
+    /**
+     * 最近一次 {@link #next()} 回傳的資料開始的行號 (從 1 開始)。
+     */
+    public long getRecordLine() {
+        return recordLine;
+    }
+
+    private String[] readRecord() throws IOException, MalformedRecordException {
+        recordLine = line;
+        fields.clear();
+        field.setLength(0);
+        int length = 0;
+        boolean quoted = false;
+        boolean afterQuote = false;
+
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                if (quoted) {
+                    throw new MalformedRecordException("引號未結束", recordLine);
+                }
+                fields.add(field.toString());
+                return fields.toArray(new String[0]);
+            }
+            if (++length > MAX_RECORD_CHARS) {
+                skipRecord(quoted);
+                throw new MalformedRecordException("資料長度超過 " + MAX_RECORD_CHARS + " 個字元", recordLine);
+            }
+
+            if (quoted) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        afterQuote = true;
+                    }
+                } else {
+                    if (c == '\n' || (c == '\r' && peek() != '\n')) line++;
+                    field.append((char) c);
+                }
+                continue;
+            }
+
+            switch (c) {
+                case ',' -> {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    afterQuote = false;
+                }
+                case '\r', '\n' -> {
+                    if (c == '\r') skipLineFeed();
+                    line++;
+                    fields.add(field.toString());
+                    return fields.toArray(new String[0]);
+                }
+                case '"' -> {
+                    if (field.length() > 0 || afterQuote) {
+                        skipRecord(false);
+                        throw new MalformedRecordException("欄位中間出現引號", recordLine);
+                    }
+                    quoted = true;
+                }
+                default -> {
+                    if (afterQuote) {
+                        skipRecord(false);
+                        throw new MalformedRecordException("引號後必須是逗號或換行", recordLine);
+                    }
+                    field.append((char) c);
+                }
+            }
+        }
+    }
+
+    // 略過這一筆剩下的內容，引號內的換行不算結尾
+    private void skipRecord(boolean quoted) throws IOException {
+        field.setLength(0);
+        fields.clear();
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r') skipLineFeed();
+                line++;
+                if (!quoted) return;
+            }
+        }
+    }
+
+    private void skipLineFeed() throws IOException {
+        if (peek() == '\n') read();
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        int c = read();
+        if (c != -1) unread();
+        return c;
+    }
+
+    private void unread() {
+        position--;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
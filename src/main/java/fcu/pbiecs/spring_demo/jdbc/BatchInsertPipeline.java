@@ -0,0 +1,180 @@
+package fcu.pbiecs.spring_demo.jdbc;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 大量寫入用的生產者／消費者管線。
+ * <p>
+ * 生產者在獨立執行緒產生資料列並放入有界佇列，呼叫端執行緒取出後以 JDBC batch 寫入，
+ * 每 {@link #BATCH_SIZE} 筆執行一次 batch、每 {@link #COMMIT_SIZE} 筆提交一次。
+ * 佇列滿了生產者就會等待，所以不論總筆數多少，記憶體中最多只有佇列容量加上一個 batch 的資料。
+ * <p>
+ * 使用自己的連線與交易，不參與呼叫端的 Spring 交易；失敗或生產者丟出 {@link CancellationException} 時
+ * 只回滾尚未提交的部分。
+ */
+@Component
+public class BatchInsertPipeline {
+
+    public static final int BATCH_SIZE = 1000;
+    public static final int COMMIT_SIZE = 10_000;
+
+    private static final int QUEUE_CAPACITY = BATCH_SIZE * 4;
+    private static final Object END = new Object();
+
+    @FunctionalInterface
+    public interface RowProducer<T> {
+        void produce(Consumer<T> sink) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface RowBinder<T> {
+        void bind(PreparedStatement statement, T row) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onCommit(long rowsWritten);
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 執行管線直到生產者結束，回傳寫入的總筆數。
+     */
+    @SuppressWarnings("unchecked")
+    public <T> long run(String sql, RowProducer<T> producer, RowBinder<T> binder, ProgressListener listener) {
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicBoolean consumerDone = new AtomicBoolean();
+        AtomicReference<Throwable> producerError = new AtomicReference<>();
+
+        Thread producerThread = new Thread(() -> {
+            try {
+                producer.produce(row -> put(queue, row, consumerDone));
+            } catch (CancellationException e) {
+                // 消費端已經結束時是正常停止，否則是生產者被取消
+                if (!consumerDone.get()) {
+                    producerError.set(e);
+                }
+            } catch (Throwable e) {
+                producerError.set(e);
+            } finally {
+                try {
+                    put(queue, END, consumerDone);
+                } catch (CancellationException ignored) {
+                    // 消費端已經結束
+                }
+            }
+        }, "batch-insert-producer");
+        producerThread.setDaemon(true);
+        producerThread.start();
+
+        long written = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                int pending = 0;
+                Object item;
+                while ((item = queue.take()) != END) {
+                    binder.bind(statement, (T) item);
+                    statement.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        statement.executeBatch();
+                        written += pending;
+                        pending = 0;
+                        if (written % COMMIT_SIZE == 0) {
+                            connection.commit();
+                            if (listener != null) listener.onCommit(written);
+                        }
+                    }
+                }
+                if (producerError.get() instanceof CancellationException cancelled) {
+                    throw cancelled;
+                }
+                if (producerError.get() != null) {
+                    throw new IllegalStateException("產生資料時發生錯誤: " + producerError.get().getMessage(), producerError.get());
+                }
+                if (pending > 0) {
+                    statement.executeBatch();
+                    written += pending;
+                }
+                connection.commit();
+                if (listener != null) listener.onCommit(written);
+            } catch (SQLException | RuntimeException | InterruptedException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("批次寫入失敗: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("批次寫入被中斷");
+        } finally {
+            consumerDone.set(true);
+            producerThread.interrupt();
+        }
+        return written;
+    }
+
+    /**
+     * 依序讀出單一整數欄位，例如剛寫入資料的自動產生主鍵，不建立實體物件。
+     */
+    public int[] queryIds(String sql) {
+        IdCollector collector = new IdCollector();
+        jdbcTemplate.query(sql, collector);
+        return collector.toArray();
+    }
+
+    private static void put(BlockingQueue<Object> queue, Object item, AtomicBoolean consumerDone) {
+        try {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (consumerDone.get()) {
+                    throw new CancellationException();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    private static final class IdCollector implements RowCallbackHandler {
+        private int[] ids = new int[1024];
+        private int size;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = rs.getInt(1);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package fcu.pbiecs.spring_demo.jdbc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 不經過 JPA 的原生 SQL 查詢，使用 Spring 管理的連線池。
+ * <p>
+ * 結果由 {@link SqlStatement} 的 RowMapper 直接轉成 DTO；每次執行以 {@code jdbc.statement} 計時
+ * (標籤 statement、outcome)。在 {@code @Transactional} 方法中呼叫時使用該交易的連線，唯讀交易會連到 replica。
+ * Prepared statement 由驅動程式在每條連線上快取 (見 application.properties 的 hikari.data-source-properties)。
+ */
+@Component
+public class JdbcQueryExecutor {
+
+    public static final String METRIC_NAME = "jdbc.statement";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 查詢逾時，避免慢查詢在高負載時佔住連線池
+    @Value("${app.jdbc.query-timeout:10s}")
+    private Duration queryTimeout;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setQueryTimeout((int) queryTimeout.toSeconds());
+    }
+
+    public <T> List<T> query(SqlStatement<T> statement, Object... args) {
+        return timed(statement, () -> jdbcTemplate.query(statement.sql(), statement.rowMapper(), args));
+    }
+
+    private <R> R timed(SqlStatement<?> statement, Supplier<R> call) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            R result = call.get();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(Timer.builder(METRIC_NAME)
+                    .tag("statement", statement.name())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+}
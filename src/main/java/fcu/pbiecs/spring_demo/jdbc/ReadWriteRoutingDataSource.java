@@ -0,0 +1,58 @@
+package fcu.pbiecs.spring_demo.jdbc;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 依目前交易決定連線來源：唯讀交易連到 replica，其餘 (寫入交易、交易外的 JDBC) 連到 primary。
+ * <p>
+ * 交易開始時還不知道是否唯讀，必須包在 {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}
+ * 裡，等第一個 SQL 執行時才取得實際連線。
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        PRIMARY,
+        REPLICA
+    }
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = ThreadLocal.withInitial(() -> false);
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica) {
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * 在這段程式中即使是唯讀交易也連到 primary，用於剛寫入後要讀到最新資料的情況 (replica 可能還沒同步)。
+     * 未設定 replica 時不影響任何行為。
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        boolean previous = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(true);
+        try {
+            return action.get();
+        } finally {
+            PRIMARY_ONLY.set(previous);
+        }
+    }
+
+    public static void onPrimary(Runnable action) {
+        onPrimary(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !PRIMARY_ONLY.get()) {
+            return Route.REPLICA;
+        }
+        return Route.PRIMARY;
+    }
+}
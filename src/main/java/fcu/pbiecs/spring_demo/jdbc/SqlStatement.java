@@ -0,0 +1,11 @@
+package fcu.pbiecs.spring_demo.jdbc;
+
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * 一個具名的原生 SQL 與它的 RowMapper。
+ * <p>
+ * 名稱會成為 {@code jdbc.statement} 指標的 statement 標籤，所以應宣告成常數而不是每次組出新的 SQL。
+ */
+public record SqlStatement<T>(String name, String sql, RowMapper<T> rowMapper) {
+}
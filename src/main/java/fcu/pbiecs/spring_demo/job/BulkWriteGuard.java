@@ -0,0 +1,36 @@
+package fcu.pbiecs.spring_demo.job;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 資料初始化與 CSV 匯入共用的執行權，同一時間只允許其中一個大量寫入。
+ * <p>
+ * 兩邊都以 {@link #tryAcquire} 取得、{@link #release} 釋放，不會因為各自先檢查對方再開始而同時執行。
+ * 持有期間選課 write-behind 不接受新的請求 (見 EnrollmentWriteBehindService#drain)。
+ */
+@Component
+public class BulkWriteGuard {
+
+    private final AtomicReference<Object> owner = new AtomicReference<>();
+
+    /**
+     * 沒有其他人持有時由 owner 取得並回傳 true。
+     */
+    public boolean tryAcquire(Object owner) {
+        return this.owner.compareAndSet(null, owner);
+    }
+
+    // 只有目前的持有者能釋放
+    public void release(Object owner) {
+        this.owner.compareAndSet(owner, null);
+    }
+
+    /**
+     * 目前的持有者，沒有時回傳 null。
+     */
+    public Object owner() {
+        return owner.get();
+    }
+}
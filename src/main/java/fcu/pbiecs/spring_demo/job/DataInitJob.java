@@ -0,0 +1,202 @@
+package fcu.pbiecs.spring_demo.job;
+
+import fcu.pbiecs.spring_demo.dto.DataInitJobDTO;
+import fcu.pbiecs.spring_demo.service.DataGeneratorService;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一次資料初始化工作的狀態，同時作為 {@link DataGeneratorService} 的進度回呼。
+ * <p>
+ * 進度更新會推送給所有 SSE 訂閱者，輪詢的客戶端則透過 {@link #snapshot()} 讀取同一份狀態。
+ */
+public class DataInitJob implements DataGeneratorService.ProgressCallback {
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    private final String id;
+    private final Map<String, Integer> parameters;
+    private final long startNanos = System.nanoTime();
+    private final CompletableFuture<DataInitJobDTO> done = new CompletableFuture<>();
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+    // 狀態變更與推送給訂閱者都在同一個鎖內，新訂閱者不會錯過結束事件
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile boolean cancelRequested;
+    private Status status = Status.RUNNING;
+    private String step = "等待開始";
+    private int current;
+    private int total = 5;
+    private long rowsWritten;
+    private long rowsTotal;
+    private long phaseStartNanos = startNanos;
+    private long finishedNanos;
+    private String message;
+
+    DataInitJob(String id, Map<String, Integer> parameters) {
+        this.id = id;
+        this.parameters = parameters;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public CompletableFuture<DataInitJobDTO> getDone() {
+        return done;
+    }
+
+    @Override
+    public void updateProgress(String step, int current, int total) {
+        lock.lock();
+        try {
+            if (current != this.current) {
+                // 進入新階段，重新計算寫入速度
+                rowsWritten = 0;
+                rowsTotal = 0;
+                phaseStartNanos = System.nanoTime();
+            }
+            this.step = step;
+            this.current = current;
+            this.total = total;
+            publish("progress", snapshot());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void updateRows(long written, long total) {
+        lock.lock();
+        try {
+            rowsWritten = written;
+            rowsTotal = total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    void cancel() {
+        cancelRequested = true;
+    }
+
+    void finish(Status status, String message) {
+        lock.lock();
+        try {
+            this.status = status;
+            this.message = message;
+            this.finishedNanos = System.nanoTime();
+            DataInitJobDTO snapshot = snapshot();
+            publish(status == Status.COMPLETED ? "complete" : "error", terminalEvent(snapshot));
+            subscribers.forEach(SseEmitter::complete);
+            subscribers.clear();
+            done.complete(snapshot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isFinished() {
+        return done.isDone();
+    }
+
+    void subscribe(SseEmitter emitter) {
+        lock.lock();
+        try {
+            DataInitJobDTO snapshot = snapshot();
+            if (isFinished()) {
+                send(emitter, status == Status.COMPLETED ? "complete" : "error", terminalEvent(snapshot));
+                emitter.complete();
+                return;
+            }
+            subscribers.add(emitter);
+            emitter.onCompletion(() -> subscribers.remove(emitter));
+            emitter.onTimeout(() -> subscribers.remove(emitter));
+            emitter.onError(e -> subscribers.remove(emitter));
+            send(emitter, "start", Map.of("message", "開始生成資料...", "jobId", id));
+            send(emitter, "progress", snapshot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public DataInitJobDTO snapshot() {
+        lock.lock();
+        try {
+            long now = finishedNanos != 0 ? finishedNanos : System.nanoTime();
+            double rowsPerSecond = 0;
+            Long etaSeconds = null;
+            long phaseNanos = now - phaseStartNanos;
+            if (rowsWritten > 0 && phaseNanos > 0) {
+                rowsPerSecond = rowsWritten * 1e9 / phaseNanos;
+                if (status == Status.RUNNING && rowsTotal > rowsWritten) {
+                    etaSeconds = (long) Math.ceil((rowsTotal - rowsWritten) / rowsPerSecond);
+                }
+            }
+            return new DataInitJobDTO(
+                    id,
+                    status.name(),
+                    parameters,
+                    step,
+                    current,
+                    total,
+                    (int) ((current * 100.0) / total),
+                    rowsWritten,
+                    rowsTotal,
+                    rowsPerSecond,
+                    etaSeconds,
+                    (now - startNanos) / 1_000_000,
+                    message);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 與原本 /api/data/init 的 complete、error 事件格式相同，另外附上工作狀態
+    private Map<String, Object> terminalEvent(DataInitJobDTO snapshot) {
+        if (status == Status.COMPLETED) {
+            return Map.of(
+                    "success", true,
+                    "message", message,
+                    "data", Map.of(
+                            "studentCount", parameters.get("studentCount"),
+                            "teacherCount", parameters.get("teacherCount"),
+                            "courseCount", parameters.get("courseCount"),
+                            "enrollmentCount", parameters.get("enrollmentCount"),
+                            "executionTime", snapshot.getElapsedMillis() + "ms"
+                    ),
+                    "job", snapshot);
+        }
+        return Map.of("success", false, "message", message, "job", snapshot);
+    }
+
+    private void publish(String event, Object data) {
+        for (SseEmitter emitter : subscribers) {
+            send(emitter, event, data);
+        }
+    }
+
+    private void send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data));
+            // 發送心跳保持連接
+            emitter.send(SseEmitter.event().name("heartbeat").data("alive"));
+        } catch (IOException | IllegalStateException e) {
+            // 客戶端已斷線，只移除這個訂閱者，工作繼續執行
+            subscribers.remove(emitter);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package fcu.pbiecs.spring_demo.job;
+
+import fcu.pbiecs.spring_demo.dto.DataInitJobDTO;
+import fcu.pbiecs.spring_demo.service.DataGeneratorService;
+import fcu.pbiecs.spring_demo.writebehind.EnrollmentWriteBehindService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 資料初始化工作管理。
+ * <p>
+ * 同一時間只允許一個工作執行，也不能與 CSV 匯入同時進行 (共用 {@link BulkWriteGuard})，工作在專用的單一執行緒上跑 (虛擬執行緒模式下為虛擬執行緒)，可以用工作ID查詢進度、重新訂閱 SSE 或取消。
+ * 保留最近 {@link #HISTORY_SIZE} 個工作的結果供查詢。
+ */
+@Service
+public class DataInitJobService {
+
+    public static class JobAlreadyRunningException extends Exception {
+        private final String jobId;
+
+        public JobAlreadyRunningException(String m, String jobId) {
+            super(m);
+            this.jobId = jobId;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+    }
+
+    public static class JobNotFoundException extends Exception {
+        public JobNotFoundException(String m) {
+            super(m);
+        }
+    }
+
+    private static final int HISTORY_SIZE = 20;
+    private static final long SSE_TIMEOUT = 1800000L; // 30 minutes timeout for large data
+
+    @Autowired
+    private DataGeneratorService dataGeneratorService;
+
+    @Autowired
+    private BulkWriteGuard bulkWriteGuard;
+
+    @Autowired
+    private EnrollmentWriteBehindService enrollmentWriteBehindService;
+
+    @Autowired
+    private Environment environment;
+
+    private ThreadPoolExecutor executor;
+
+    private final Map<String, DataInitJob> jobs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DataInitJob> eldest) {
+            return size() > HISTORY_SIZE && eldest.getValue().isFinished();
+        }
+    };
+
+    @PostConstruct
+    void createExecutor() {
+        // spring.threads.virtual.enabled=true 且執行在 Java 21 以上時改用虛擬執行緒，與 applicationTaskExecutor 相同
+        ThreadFactory threadFactory = Threading.VIRTUAL.isActive(environment)
+                ? new VirtualThreadTaskExecutor("data-init-").getVirtualThreadFactory()
+                : new CustomizableThreadFactory("data-init-");
+        // 只有一條執行緒；執行權確保同時只有一個工作，佇列只需容納上一個工作收尾時提交的下一個工作
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(1), threadFactory);
+    }
+
+    public DataInitJobDTO start(int studentCount, int teacherCount, int courseCount, int enrollmentCount) throws JobAlreadyRunningException {
+        Map<String, Integer> parameters = new LinkedHashMap<>();
+        parameters.put("studentCount", studentCount);
+        parameters.put("teacherCount", teacherCount);
+        parameters.put("courseCount", courseCount);
+        parameters.put("enrollmentCount", enrollmentCount);
+
+        DataInitJob job = new DataInitJob(UUID.randomUUID().toString(), parameters);
+        if (!bulkWriteGuard.tryAcquire(job)) {
+            if (bulkWriteGuard.owner() instanceof DataInitJob current) {
+                throw new JobAlreadyRunningException("已有資料初始化工作執行中", current.getId());
+            }
+            throw new JobAlreadyRunningException("CSV 匯入執行中，無法初始化資料", null);
+        }
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+        }
+
+        try {
+            executor.execute(() -> run(job, studentCount, teacherCount, courseCount, enrollmentCount));
+        } catch (RuntimeException e) {
+            job.finish(DataInitJob.Status.FAILED, "資料初始化失敗: " + e.getMessage());
+            bulkWriteGuard.release(job);
+            throw e;
+        }
+        return job.snapshot();
+    }
+
+    private void run(DataInitJob job, int studentCount, int teacherCount, int courseCount, int enrollmentCount) {
+        try {
+            // 尚未寫入的選課先寫完，重新產生資料後不會再寫入舊的組合
+            enrollmentWriteBehindService.drain();
+            dataGeneratorService.generateRandomData(studentCount, teacherCount, courseCount, enrollmentCount, job);
+            finish(job, DataInitJob.Status.COMPLETED, "資料初始化完成");
+        } catch (CancellationException e) {
+            finish(job, DataInitJob.Status.CANCELLED, "資料初始化已取消，已寫入的資料會保留");
+        } catch (Exception e) {
+            finish(job, DataInitJob.Status.FAILED, "資料初始化失敗: " + e.getMessage());
+        }
+    }
+
+    private void finish(DataInitJob job, DataInitJob.Status status, String message) {
+        // 先釋放執行權，收到結束事件的客戶端可以立刻開始下一個工作
+        bulkWriteGuard.release(job);
+        job.finish(status, message);
+    }
+
+    public DataInitJobDTO getJob(String jobId) throws JobNotFoundException {
+        return find(jobId).snapshot();
+    }
+
+    public List<DataInitJobDTO> getJobs() {
+        List<DataInitJob> snapshot;
+        synchronized (jobs) {
+            snapshot = new ArrayList<>(jobs.values());
+        }
+        return snapshot.stream().map(DataInitJob::snapshot).toList();
+    }
+
+    // 要求取消，工作會在下一個批次前停止
+    public DataInitJobDTO cancel(String jobId) throws JobNotFoundException {
+        DataInitJob job = find(jobId);
+        job.cancel();
+        return job.snapshot();
+    }
+
+    // 訂閱工作進度，可在斷線後重新訂閱；已結束的工作會直接收到結束事件
+    public SseEmitter subscribe(String jobId) throws JobNotFoundException {
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT);
+        find(jobId).subscribe(emitter);
+        return emitter;
+    }
+
+    // 等待工作結束並回傳最後狀態
+    public DataInitJobDTO await(String jobId) throws JobNotFoundException {
+        return find(jobId).getDone().join();
+    }
+
+    private DataInitJob find(String jobId) throws JobNotFoundException {
+        DataInitJob job;
+        synchronized (jobs) {
+            job = jobs.get(jobId);
+        }
+        if (job == null) {
+            throw new JobNotFoundException("Job not found with id: " + jobId);
+        }
+        return job;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (bulkWriteGuard.owner() instanceof DataInitJob job) {
+            job.cancel();
+        }
+        executor.shutdown();
+    }
+}
@@ -3,6 +3,9 @@ package fcu.pbiecs.spring_demo.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,6 +16,8 @@ import java.util.List;
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @ToString(exclude = {"teacher", "students"})
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "course")
 @Table(name="Course")
 @Data
 @AllArgsConstructor
@@ -32,6 +37,10 @@ public class Course {
     @Column(name="credits")
     private int credits;
 
+    // 名額上限，null 表示不限人數；已選課人數由 CourseSeatService 控管
+    @Column(name="capacity")
+    private Integer capacity;
+
     @ManyToOne(
         fetch = FetchType.LAZY,
         cascade = CascadeType.ALL,
@@ -48,4 +57,10 @@ public class Course {
     )
     @JsonIgnore
     private List<Student> students;
+
+    // 樂觀鎖版本，每次更新加一，也用來組成 ETag；JDBC 大量寫入時不指定，由預設值 0 開始
+    @Version
+    @ColumnDefault("0")
+    @Column(name="version", nullable = false)
+    private Long version;
 }
@@ -0,0 +1,25 @@
+package fcu.pbiecs.spring_demo.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 每日各課程的選課人數彙總，統計端點由這張表回答，不掃描 Enrollment。
+ * 主鍵為 (course_id, enrollment_date, bucket)，同一天同一門課程分成多列以分散熱門課程的列鎖，人數為各列的合計；
+ * 另以 enrollment_date 索引支援全部課程的日期範圍查詢。
+ * 由選課的新增、刪除以 SQL 直接增減 (見 EnrollmentRollupRepository)，沒有外鍵，課程刪除時一併清除。
+ */
+@Data
+@Entity
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "EnrollmentDailyCount", indexes = @Index(name = "idx_enrollment_daily_count_date", columnList = "enrollment_date"))
+public class EnrollmentDailyCount {
+    @EmbeddedId
+    private EnrollmentDailyCountId id;
+
+    @Column(name = "enrollment_count", nullable = false)
+    private long enrollmentCount;
+}
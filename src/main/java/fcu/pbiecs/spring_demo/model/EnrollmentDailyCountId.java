@@ -0,0 +1,26 @@
+package fcu.pbiecs.spring_demo.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.sql.Date;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Embeddable
+public class EnrollmentDailyCountId implements Serializable {
+    @Column(name = "enrollment_date")
+    private Date enrollmentDate;
+
+    @Column(name = "course_id")
+    private Integer courseId;
+
+    // 同一個 (日期, 課程) 分成多列，見 EnrollmentRollupRepository
+    @Column(name = "bucket")
+    private Integer bucket;
+}
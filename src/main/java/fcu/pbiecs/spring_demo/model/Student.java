@@ -2,6 +2,9 @@ package fcu.pbiecs.spring_demo.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 import lombok.Data;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
@@ -13,6 +16,8 @@ import java.util.List;
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @ToString(exclude = "courses")
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "student")
 @Table(name="Student")
 @Data
 @AllArgsConstructor
@@ -43,4 +48,10 @@ public class Student {
     )
     @JsonIgnore
     private List<Course> courses;
+
+    // 樂觀鎖版本，每次更新加一，也用來組成 ETag；JDBC 大量寫入時不指定，由預設值 0 開始
+    @Version
+    @ColumnDefault("0")
+    @Column(name="version", nullable = false)
+    private Long version;
 }
@@ -3,6 +3,9 @@ package fcu.pbiecs.spring_demo.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 import lombok.Data;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
@@ -11,6 +14,8 @@ import lombok.ToString;
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @ToString(exclude = "courses")
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "teacher")
 @Table(name="Teacher")
 @Data
 @AllArgsConstructor
@@ -37,4 +42,10 @@ public class Teacher {
     )
     @JsonIgnore
     private java.util.List<Course> courses;
+
+    // 樂觀鎖版本，每次更新加一，也用來組成 ETag；JDBC 大量寫入時不指定，由預設值 0 開始
+    @Version
+    @ColumnDefault("0")
+    @Column(name="version", nullable = false)
+    private Long version;
 }
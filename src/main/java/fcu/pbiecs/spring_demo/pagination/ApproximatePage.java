@@ -0,0 +1,24 @@
+package fcu.pbiecs.spring_demo.pagination;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Slice;
+
+/**
+ * 總筆數取自 {@link TotalCountCache} 的分頁結果。內容與是否有下一頁是實際查詢的結果，只有總筆數是近似值。
+ */
+public class ApproximatePage<T> extends PageImpl<T> {
+
+    private final boolean hasNext;
+
+    public ApproximatePage(Slice<T> slice, long approximateTotal) {
+        // 快取的總數比這一頁看到的還少時 (剛新增過資料)，至少要涵蓋到這一頁，還有下一頁時再多一筆
+        super(slice.getContent(), slice.getPageable(), Math.max(approximateTotal,
+                slice.getPageable().getOffset() + slice.getNumberOfElements() + (slice.hasNext() ? 1 : 0)));
+        this.hasNext = slice.hasNext();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext;
+    }
+}
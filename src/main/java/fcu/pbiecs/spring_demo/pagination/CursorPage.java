@@ -0,0 +1,25 @@
+package fcu.pbiecs.spring_demo.pagination;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset 分頁的結果，nextCursor 為 null 代表已經是最後一頁。
+ */
+public record CursorPage<T>(List<T> content, String nextCursor) {
+
+    /**
+     * 由多查一筆的結果建立分頁：rows 超過 pageSize 代表還有下一頁。
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int pageSize, Function<T, String> cursorOf) {
+        if (rows.size() <= pageSize) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> content = rows.subList(0, pageSize);
+        return new CursorPage<>(content, cursorOf.apply(content.get(pageSize - 1)));
+    }
+
+    public <R> CursorPage<R> map(Function<T, R> mapper) {
+        return new CursorPage<>(content.stream().map(mapper).toList(), nextCursor);
+    }
+}
@@ -0,0 +1,41 @@
+package fcu.pbiecs.spring_demo.pagination;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.stream.Collectors;
+
+/**
+ * Keyset 分頁使用的 cursor，內容是上一頁最後一筆的主鍵 (複合主鍵依序串接)，
+ * 以 Base64 編碼讓用戶端視為不透明字串。空字串代表從第一筆開始。
+ */
+public final class PageCursor {
+
+    private PageCursor() {
+    }
+
+    public static String encode(int... key) {
+        String raw = Arrays.stream(key).mapToObj(String::valueOf).collect(Collectors.joining(":"));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析 cursor 為主鍵欄位值；空字串回傳全為 0 的主鍵 (ID 由 1 開始)。
+     */
+    public static int[] decode(String cursor, int keyLength) {
+        if (cursor == null || cursor.isBlank()) {
+            return new int[keyLength];
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int[] key = Arrays.stream(raw.split(":")).mapToInt(Integer::parseInt).toArray();
+            if (key.length != keyLength) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return key;
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException 也是 IllegalArgumentException
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package fcu.pbiecs.spring_demo.pagination;
+
+import fcu.pbiecs.spring_demo.etag.ChangeTracker.Table;
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.transaction.TransactionCallbacks;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 分頁查詢 total=approximate 時使用的總筆數快取，避免每一頁都執行 COUNT 查詢。
+ * <p>
+ * 整張表的總數由各 Service 的寫入方法在交易提交後以 {@link #added}、{@link #removed} 增減；
+ * 無法得知影響筆數的寫入 (cascade 刪除) 呼叫 {@link #invalidate}，下一次查詢時重新計算。
+ * 關鍵字搜尋、某位學生的選課等子集合的總數無法從寫入推算，只在 TTL 內沿用。
+ * 計算期間同時提交的寫入可能少算或重複計入，整張表的總數因此也設有較長的 TTL。
+ */
+@Component
+public class TotalCountCache {
+
+    // 快取筆數上限，超過時整個清掉 (多半是大量不同的搜尋關鍵字)
+    private static final int MAX_ENTRIES = 10_000;
+
+    private static final String WHOLE_TABLE = "";
+
+    @Value("${app.pagination.total-cache.table-ttl:10m}")
+    private Duration tableTtl;
+
+    @Value("${app.pagination.total-cache.ttl:30s}")
+    private Duration scopedTtl;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private record Key(Table table, String scope) {
+    }
+
+    private record Entry(AtomicLong count, long expiresAt) {
+    }
+
+    /**
+     * 以快取的整張表總數組成分頁結果。
+     */
+    public <T> Page<T> page(Slice<T> slice, Table table, LongSupplier counter) {
+        return page(slice, new Key(table, WHOLE_TABLE), tableTtl, counter);
+    }
+
+    /**
+     * 以快取的子集合總數組成分頁結果，scope 區分同一張表的不同條件 (例如 "keyword:abc")。
+     */
+    public <T> Page<T> page(Slice<T> slice, Table table, String scope, LongSupplier counter) {
+        return page(slice, new Key(table, scope), scopedTtl, counter);
+    }
+
+    private <T> Page<T> page(Slice<T> slice, Key key, Duration ttl, LongSupplier counter) {
+        // 最後一頁的總數可以直接算出來，不需要快取
+        if (!slice.hasNext() && (slice.hasContent() || slice.getPageable().getOffset() == 0)) {
+            return new PageImpl<>(slice.getContent(), slice.getPageable(),
+                    slice.getPageable().getOffset() + slice.getNumberOfElements());
+        }
+        return new ApproximatePage<>(slice, total(key, ttl, counter));
+    }
+
+    private long total(Key key, Duration ttl, LongSupplier counter) {
+        long now = System.nanoTime();
+        Entry entry = entries.get(key);
+        if (entry != null && now - entry.expiresAt() < 0) {
+            return entry.count().get();
+        }
+        long count = counter.getAsLong();
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.clear();
+        }
+        entries.put(key, new Entry(new AtomicLong(count), now + ttl.toNanos()));
+        return count;
+    }
+
+    public void added(Table table, long count) {
+        TransactionCallbacks.afterCommit(() -> adjust(table, count));
+    }
+
+    public void removed(Table table, long count) {
+        TransactionCallbacks.afterCommit(() -> adjust(table, -count));
+    }
+
+    /**
+     * 捨棄這些資料表的所有快取總數 (含子集合)。
+     */
+    public void invalidate(Table... tables) {
+        TransactionCallbacks.afterCommit(() -> {
+            for (Table table : tables) {
+                entries.keySet().removeIf(key -> key.table() == table);
+            }
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDataReloaded(DataReloadedEvent event) {
+        entries.clear();
+    }
+
+    private void adjust(Table table, long delta) {
+        Entry entry = entries.get(new Key(table, WHOLE_TABLE));
+        if (entry != null) {
+            entry.count().updateAndGet(count -> Math.max(0, count + delta));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package fcu.pbiecs.spring_demo.pagination;
+
+import java.util.Locale;
+
+/**
+ * 分頁查詢的總筆數來源，由 total 參數指定。
+ * <ul>
+ *   <li>exact (預設)：每次執行 COUNT 查詢</li>
+ *   <li>none：不計算總筆數，只回傳是否還有下一頁</li>
+ *   <li>approximate：使用 {@link TotalCountCache} 快取的總筆數，可能與實際有些微差距</li>
+ * </ul>
+ */
+public enum TotalMode {
+    EXACT, NONE, APPROXIMATE;
+
+    public static TotalMode parse(String value) {
+        if (value == null || value.isBlank()) {
+            return EXACT;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid total mode: " + value);
+        }
+    }
+}
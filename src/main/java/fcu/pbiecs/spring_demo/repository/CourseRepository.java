@@ -1,31 +1,112 @@
 package fcu.pbiecs.spring_demo.repository;
 
 import fcu.pbiecs.spring_demo.model.Course;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface CourseRepository extends JpaRepository<Course,Integer> {
-    
-    // 根據關鍵字搜尋課程 (不分頁)
-    @Query("SELECT c FROM Course c LEFT JOIN c.teacher t WHERE " +
+
+    // 關鍵字搜尋的條件 (含授課教師姓名)，查詢、分頁與計數共用
+    String KEYWORD_FILTER = "LEFT JOIN c.teacher t WHERE " +
            "(:keyword IS NULL OR :keyword = '' OR " +
            "LOWER(c.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
            "LOWER(c.description) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
            "LOWER(t.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "CAST(c.courseId AS string) LIKE CONCAT('%', :keyword, '%'))")
+           "CAST(c.courseId AS string) LIKE CONCAT('%', :keyword, '%'))";
+
+    // 根據關鍵字搜尋課程 (不分頁)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT c FROM Course c " + KEYWORD_FILTER)
     List<Course> findByKeyword(@Param("keyword") String keyword);
 
     // 根據關鍵字搜尋課程 (分頁)
-    @Query("SELECT c FROM Course c LEFT JOIN c.teacher t WHERE " +
-           "(:keyword IS NULL OR :keyword = '' OR " +
-           "LOWER(c.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "LOWER(c.description) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "LOWER(t.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "CAST(c.courseId AS string) LIKE CONCAT('%', :keyword, '%'))")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT c FROM Course c " + KEYWORD_FILTER)
     Page<Course> findByKeyword(@Param("keyword") String keyword, Pageable pageable);
+
+    // 根據關鍵字搜尋課程 (分頁但不執行 COUNT，多查一筆判斷是否有下一頁)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT c FROM Course c " + KEYWORD_FILTER)
+    Slice<Course> findSliceByKeyword(@Param("keyword") String keyword, Pageable pageable);
+
+    // total=approximate 時計算關鍵字的總筆數
+    @Query("SELECT COUNT(c) FROM Course c " + KEYWORD_FILTER)
+    long countByKeyword(@Param("keyword") String keyword);
+
+    // FULLTEXT 搜尋 (MariaDB / MySQL，索引見 V3__add_fulltext_indexes.sql)，query 為 BOOLEAN MODE 語法 (FullTextQuery)
+    String FULL_TEXT_QUERY = "SELECT * FROM Course WHERE course_id IN (" +
+           "SELECT course_id FROM Course WHERE MATCH(course_name, course_description) AGAINST(:query IN BOOLEAN MODE) " +
+           "UNION " +
+           "SELECT c.course_id FROM Course c JOIN Teacher t ON t.teacher_id = c.teacher_id " +
+           "WHERE MATCH(t.teacher_name) AGAINST(:query IN BOOLEAN MODE))";
+
+    @Query(value = FULL_TEXT_QUERY, nativeQuery = true)
+    List<Course> findByFullText(@Param("query") String query);
+
+    @Query(value = FULL_TEXT_QUERY, countQuery = "SELECT COUNT(*) FROM (" + FULL_TEXT_QUERY + ") matched", nativeQuery = true)
+    Page<Course> findByFullText(@Param("query") String query, Pageable pageable);
+
+    @Query(value = FULL_TEXT_QUERY, nativeQuery = true)
+    Slice<Course> findSliceByFullText(@Param("query") String query, Pageable pageable);
+
+    @Query(value = "SELECT COUNT(*) FROM (" + FULL_TEXT_QUERY + ") matched", nativeQuery = true)
+    long countByFullText(@Param("query") String query);
+
+    // 全部資料分頁，不執行 COUNT
+    @Query("SELECT c FROM Course c")
+    Slice<Course> findSlice(Pageable pageable);
+
+    // 建立搜尋索引用 (courseId, name, description, teacherId, teacherName)
+    @Query("SELECT c.courseId, c.name, c.description, t.teacherId, t.name FROM Course c LEFT JOIN c.teacher t")
+    List<Object[]> findSearchFields();
+
+    @Query("SELECT c FROM Course c LEFT JOIN FETCH c.teacher")
+    List<Course> findAllWithTeacher();
+
+    // Keyset 分頁：依主鍵順序取 afterId 之後的課程
+    @Query("SELECT c FROM Course c WHERE c.courseId > :afterId ORDER BY c.courseId")
+    List<Course> findAfter(@Param("afterId") Integer afterId, Limit limit);
+
+    // 串流讀取全部資料 (forward-only cursor)，需在交易中使用並關閉 Stream
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT c FROM Course c LEFT JOIN FETCH c.teacher")
+    Stream<Course> streamAll();
+
+    // 批次驗證用：回傳清單中實際存在的ID
+    @Query("SELECT c.courseId FROM Course c WHERE c.courseId IN :ids")
+    List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    // 名額控管用 (capacity, 選課人數)，課程不存在時沒有資料
+    @Query("SELECT c.capacity, (SELECT COUNT(e) FROM Enrollment e WHERE e.id.courseId = c.courseId) " +
+           "FROM Course c WHERE c.courseId = :courseId")
+    List<Object[]> findSeatUsage(@Param("courseId") Integer courseId);
+
+    // 批次刪除用：關鍵字符合的課程ID (條件同 KEYWORD_FILTER)
+    @Query("SELECT c.courseId FROM Course c " + KEYWORD_FILTER + " ORDER BY c.courseId")
+    List<Integer> findIdsByKeyword(@Param("keyword") String keyword, Limit limit);
+
+    // 批次刪除教師時找出授課的課程
+    @Query("SELECT c.courseId FROM Course c WHERE c.teacher.teacherId IN :teacherIds")
+    List<Integer> findIdsByTeacherIds(@Param("teacherIds") Collection<Integer> teacherIds);
+
+    // 批次刪除，需先刪除選課；不會 cascade 到教師，也不會逐筆載入實體
+    @Modifying
+    @Query("DELETE FROM Course c WHERE c.courseId IN :ids")
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
 }
@@ -0,0 +1,62 @@
+package fcu.pbiecs.spring_demo.repository;
+
+import fcu.pbiecs.spring_demo.dto.CourseEnrollmentDTO;
+import fcu.pbiecs.spring_demo.dto.StudentEnrollmentDTO;
+import fcu.pbiecs.spring_demo.jdbc.JdbcQueryExecutor;
+import fcu.pbiecs.spring_demo.jdbc.SqlStatement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * 選課名單的原生 SQL 查詢，結果直接對應到 DTO，不建立實體也不經過 persistence context。
+ */
+@Repository
+public class EnrollmentJdbcRepository {
+
+    // 學生選修的課程與授課教師
+    private static final SqlStatement<CourseEnrollmentDTO> COURSES_BY_STUDENT = new SqlStatement<>(
+            "enrollment.coursesByStudent",
+            "SELECT c.course_id, c.course_name, c.course_description, c.credits, " +
+            "t.teacher_id, t.teacher_name, t.email, t.age, t.version, e.enrollment_date " +
+            "FROM Enrollment e JOIN Course c ON c.course_id = e.course_id " +
+            "LEFT JOIN Teacher t ON t.teacher_id = c.teacher_id " +
+            "WHERE e.student_id = ?",
+            (rs, rowNum) -> new CourseEnrollmentDTO(
+                    rs.getInt(1),
+                    rs.getString(2),
+                    rs.getString(3),
+                    rs.getObject(4, Integer.class),
+                    rs.getObject(5, Integer.class),
+                    rs.getString(6),
+                    rs.getString(7),
+                    rs.getObject(8, Integer.class),
+                    rs.getObject(9, Long.class),
+                    rs.getDate(10)));
+
+    // 修課的學生
+    private static final SqlStatement<StudentEnrollmentDTO> STUDENTS_BY_COURSE = new SqlStatement<>(
+            "enrollment.studentsByCourse",
+            "SELECT s.student_id, s.first_name, s.last_name, s.email, s.date_of_birth, e.enrollment_date " +
+            "FROM Enrollment e JOIN Student s ON s.student_id = e.student_id " +
+            "WHERE e.course_id = ?",
+            (rs, rowNum) -> new StudentEnrollmentDTO(
+                    rs.getInt(1),
+                    rs.getString(2),
+                    rs.getString(3),
+                    rs.getString(4),
+                    rs.getString(5),
+                    rs.getDate(6)));
+
+    @Autowired
+    private JdbcQueryExecutor jdbcQueryExecutor;
+
+    public List<CourseEnrollmentDTO> findByStudentId(int studentId) {
+        return jdbcQueryExecutor.query(COURSES_BY_STUDENT, studentId);
+    }
+
+    public List<StudentEnrollmentDTO> findByCourseId(int courseId) {
+        return jdbcQueryExecutor.query(STUDENTS_BY_COURSE, courseId);
+    }
+}
@@ -1,32 +1,60 @@
 package fcu.pbiecs.spring_demo.repository;
 
+import fcu.pbiecs.spring_demo.dto.CourseEnrollmentDTO;
+import fcu.pbiecs.spring_demo.dto.StudentEnrollmentDTO;
 import fcu.pbiecs.spring_demo.model.Enrollment;
 import fcu.pbiecs.spring_demo.model.EnrollmentId;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface EnrollmentRepository extends JpaRepository<Enrollment, EnrollmentId> {
 
-    // 根據學生ID查詢選課記錄 (無分頁)
-    @Query("SELECT e FROM Enrollment e WHERE e.student.studentId = :studentId")
-    List<Enrollment> findByStudentId(@Param("studentId") Integer studentId);
+    // 學生選修的課程，課程與教師欄位在同一個查詢中投影成 DTO
+    String COURSE_ENROLLMENT_DTO = "SELECT new fcu.pbiecs.spring_demo.dto.CourseEnrollmentDTO(" +
+           "c.courseId, c.name, c.description, c.credits, t.teacherId, t.name, t.email, t.age, t.version, e.enrollmentDate) " +
+           "FROM Enrollment e JOIN e.course c LEFT JOIN c.teacher t ";
 
-    // 根據學生ID查詢選課記錄 (分頁)
-    @Query("SELECT e FROM Enrollment e WHERE e.student.studentId = :studentId")
-    Page<Enrollment> findByStudentId(@Param("studentId") Integer studentId, Pageable pageable);
+    // 修課的學生，學生欄位在同一個查詢中投影成 DTO
+    String STUDENT_ENROLLMENT_DTO = "SELECT new fcu.pbiecs.spring_demo.dto.StudentEnrollmentDTO(" +
+           "s.studentId, s.firstName, s.lastName, s.email, s.birthday, e.enrollmentDate) " +
+           "FROM Enrollment e JOIN e.student s ";
 
-    // 根據課程ID查詢選課記錄 (無分頁)
-    @Query("SELECT e FROM Enrollment e WHERE e.course.courseId = :courseId")
-    List<Enrollment> findByCourseId(@Param("courseId") Integer courseId);
+    // 根據學生ID查詢選課記錄 (分頁)
+    @Query(value = COURSE_ENROLLMENT_DTO + "WHERE e.id.studentId = :studentId",
+           countQuery = "SELECT COUNT(e) FROM Enrollment e WHERE e.id.studentId = :studentId")
+    Page<CourseEnrollmentDTO> findByStudentId(@Param("studentId") Integer studentId, Pageable pageable);
 
     // 根據課程ID查詢選課記錄 (分頁)
-    @Query("SELECT e FROM Enrollment e WHERE e.course.courseId = :courseId")
-    Page<Enrollment> findByCourseId(@Param("courseId") Integer courseId, Pageable pageable);
+    @Query(value = STUDENT_ENROLLMENT_DTO + "WHERE e.id.courseId = :courseId",
+           countQuery = "SELECT COUNT(e) FROM Enrollment e WHERE e.id.courseId = :courseId")
+    Page<StudentEnrollmentDTO> findByCourseId(@Param("courseId") Integer courseId, Pageable pageable);
+
+    // 根據學生ID查詢選課記錄 (分頁但不執行 COUNT)
+    @Query(COURSE_ENROLLMENT_DTO + "WHERE e.id.studentId = :studentId")
+    Slice<CourseEnrollmentDTO> findSliceByStudentId(@Param("studentId") Integer studentId, Pageable pageable);
+
+    // 根據課程ID查詢選課記錄 (分頁但不執行 COUNT)
+    @Query(STUDENT_ENROLLMENT_DTO + "WHERE e.id.courseId = :courseId")
+    Slice<StudentEnrollmentDTO> findSliceByCourseId(@Param("courseId") Integer courseId, Pageable pageable);
+
+    @Query("SELECT COUNT(e) FROM Enrollment e WHERE e.id.studentId = :studentId")
+    long countByStudentId(@Param("studentId") Integer studentId);
+
+    @Query("SELECT COUNT(e) FROM Enrollment e WHERE e.id.courseId = :courseId")
+    long countByCourseId(@Param("courseId") Integer courseId);
 
     // 查詢最熱門課程 (按選課人數排序)
     @Query("SELECT e.course.courseId as courseId, COUNT(e) as enrollmentCount " +
@@ -34,4 +62,61 @@ public interface EnrollmentRepository extends JpaRepository<Enrollment, Enrollme
            "GROUP BY e.course.courseId " +
            "ORDER BY COUNT(e) DESC")
     List<Object[]> findTopCoursesByEnrollmentCount(Pageable pageable);
+
+    // 查詢學生選修的課程ID
+    @Query("SELECT e.course.courseId FROM Enrollment e WHERE e.student.studentId = :studentId")
+    List<Integer> findCourseIdsByStudentId(@Param("studentId") Integer studentId);
+
+    // Keyset 分頁：依複合主鍵 (studentId, courseId) 順序取下一批選課記錄
+    @Query("SELECT e FROM Enrollment e WHERE e.id.studentId > :afterStudentId " +
+           "OR (e.id.studentId = :afterStudentId AND e.id.courseId > :afterCourseId) " +
+           "ORDER BY e.id.studentId, e.id.courseId")
+    List<Enrollment> findAfter(@Param("afterStudentId") Integer afterStudentId,
+                               @Param("afterCourseId") Integer afterCourseId,
+                               Limit limit);
+
+    // Keyset 分頁：學生的選課記錄，學生固定時依 courseId 排序
+    @Query(COURSE_ENROLLMENT_DTO + "WHERE e.id.studentId = :studentId AND e.id.courseId > :afterCourseId " +
+           "ORDER BY e.id.courseId")
+    List<CourseEnrollmentDTO> findByStudentIdAfter(@Param("studentId") Integer studentId,
+                                          @Param("afterCourseId") Integer afterCourseId,
+                                          Limit limit);
+
+    // Keyset 分頁：課程的選課記錄，課程固定時依 studentId 排序
+    @Query(STUDENT_ENROLLMENT_DTO + "WHERE e.id.courseId = :courseId AND e.id.studentId > :afterStudentId " +
+           "ORDER BY e.id.studentId")
+    List<StudentEnrollmentDTO> findByCourseIdAfter(@Param("courseId") Integer courseId,
+                                         @Param("afterStudentId") Integer afterStudentId,
+                                         Limit limit);
+
+    // 串流讀取全部資料 (forward-only cursor)，需在交易中使用並關閉 Stream
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT e FROM Enrollment e JOIN FETCH e.student JOIN FETCH e.course c LEFT JOIN FETCH c.teacher")
+    Stream<Enrollment> streamAll();
+
+    // 批次驗證用：學生與課程組合中已經存在的選課 (結果可能多於請求的組合，由呼叫端比對)
+    @Query("SELECT e.id FROM Enrollment e WHERE e.id.studentId IN :studentIds AND e.id.courseId IN :courseIds")
+    List<EnrollmentId> findExistingIds(@Param("studentIds") Collection<Integer> studentIds,
+                                       @Param("courseIds") Collection<Integer> courseIds);
+
+    // write-behind 寫入時比對用 (studentId, courseId, enrollmentDate)，結果可能多於請求的組合
+    @Query("SELECT e.id.studentId, e.id.courseId, e.enrollmentDate FROM Enrollment e " +
+           "WHERE e.id.studentId IN :studentIds AND e.id.courseId IN :courseIds")
+    List<Object[]> findExistingWithDates(@Param("studentIds") Collection<Integer> studentIds,
+                                         @Param("courseIds") Collection<Integer> courseIds);
+
+    // 批次刪除學生時更新熱門課程統計用，每筆選課一個課程ID (可重複)
+    @Query("SELECT e.id.courseId FROM Enrollment e WHERE e.id.studentId IN :studentIds")
+    List<Integer> findCourseIdsByStudentIds(@Param("studentIds") Collection<Integer> studentIds);
+
+    @Modifying
+    @Query("DELETE FROM Enrollment e WHERE e.id.studentId IN :studentIds")
+    int deleteByStudentIds(@Param("studentIds") Collection<Integer> studentIds);
+
+    @Modifying
+    @Query("DELETE FROM Enrollment e WHERE e.id.courseId IN :courseIds")
+    int deleteByCourseIds(@Param("courseIds") Collection<Integer> courseIds);
 }
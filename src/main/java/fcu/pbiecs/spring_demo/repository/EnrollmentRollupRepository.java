@@ -0,0 +1,147 @@
+package fcu.pbiecs.spring_demo.repository;
+
+import fcu.pbiecs.spring_demo.dto.CreditsDistributionDTO;
+import fcu.pbiecs.spring_demo.dto.EnrollmentTrendDTO;
+import fcu.pbiecs.spring_demo.dto.TeacherLoadDTO;
+import fcu.pbiecs.spring_demo.jdbc.JdbcQueryExecutor;
+import fcu.pbiecs.spring_demo.jdbc.SqlStatement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * EnrollmentDailyCount 彙總表的原生 SQL。
+ * 增減使用 MariaDB 的 INSERT ... ON DUPLICATE KEY UPDATE，需在選課寫入的同一個交易中呼叫。
+ * 每次增減隨機選一個 bucket 列，同一門課程同時進行的選課交易大多鎖住不同列；查詢都以 SUM 合計。
+ */
+@Repository
+public class EnrollmentRollupRepository {
+
+    // 每個 (日期, 課程) 最多分成的列數
+    public static final int BUCKETS = 16;
+
+    private static final String UPSERT =
+            "INSERT INTO EnrollmentDailyCount (enrollment_date, course_id, bucket, enrollment_count) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE enrollment_count = enrollment_count + VALUES(enrollment_count)";
+
+    // 每日選課人數
+    private static final SqlStatement<EnrollmentTrendDTO> DAILY_TREND = new SqlStatement<>(
+            "rollup.dailyTrend",
+            "SELECT enrollment_date, SUM(enrollment_count) FROM EnrollmentDailyCount " +
+            "WHERE enrollment_date BETWEEN ? AND ? " +
+            "GROUP BY enrollment_date ORDER BY enrollment_date",
+            (rs, rowNum) -> new EnrollmentTrendDTO(rs.getDate(1).toLocalDate(), rs.getLong(2)));
+
+    // 單一課程的每日選課人數
+    private static final SqlStatement<EnrollmentTrendDTO> COURSE_DAILY_TREND = new SqlStatement<>(
+            "rollup.courseDailyTrend",
+            "SELECT enrollment_date, SUM(enrollment_count) FROM EnrollmentDailyCount " +
+            "WHERE enrollment_date BETWEEN ? AND ? AND course_id = ? " +
+            "GROUP BY enrollment_date ORDER BY enrollment_date",
+            (rs, rowNum) -> new EnrollmentTrendDTO(rs.getDate(1).toLocalDate(), rs.getLong(2)));
+
+    // 各教師授課數與選課人數，沒有課程的教師也列出
+    private static final SqlStatement<TeacherLoadDTO> TEACHER_LOAD = new SqlStatement<>(
+            "rollup.teacherLoad",
+            "SELECT t.teacher_id, t.teacher_name, COUNT(DISTINCT c.course_id), COALESCE(SUM(r.enrollment_count), 0) " +
+            "FROM Teacher t LEFT JOIN Course c ON c.teacher_id = t.teacher_id " +
+            "LEFT JOIN EnrollmentDailyCount r ON r.course_id = c.course_id AND r.enrollment_date BETWEEN ? AND ? " +
+            "GROUP BY t.teacher_id, t.teacher_name " +
+            "ORDER BY 4 DESC, t.teacher_id",
+            (rs, rowNum) -> new TeacherLoadDTO(rs.getInt(1), rs.getString(2), rs.getLong(3), rs.getLong(4)));
+
+    // 各學分數的課程數與選課人數
+    private static final SqlStatement<CreditsDistributionDTO> CREDITS_DISTRIBUTION = new SqlStatement<>(
+            "rollup.creditsDistribution",
+            "SELECT c.credits, COUNT(DISTINCT c.course_id), COALESCE(SUM(r.enrollment_count), 0) " +
+            "FROM Course c LEFT JOIN EnrollmentDailyCount r " +
+            "ON r.course_id = c.course_id AND r.enrollment_date BETWEEN ? AND ? " +
+            "GROUP BY c.credits ORDER BY c.credits",
+            (rs, rowNum) -> new CreditsDistributionDTO(rs.getInt(1), rs.getLong(2), rs.getLong(3)));
+
+    @Autowired
+    private JdbcQueryExecutor jdbcQueryExecutor;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public void add(LocalDate date, int courseId, long delta) {
+        jdbcTemplate.update(UPSERT, Date.valueOf(date), courseId, bucket(), delta);
+    }
+
+    // 同一天多門課程各自增減，以 JDBC batch 送出
+    public void addAll(LocalDate date, Map<Integer, Long> deltaByCourse) {
+        Date day = Date.valueOf(date);
+        jdbcTemplate.batchUpdate(UPSERT, List.copyOf(deltaByCourse.entrySet()), deltaByCourse.size(), (statement, entry) -> {
+            statement.setDate(1, day);
+            statement.setInt(2, entry.getKey());
+            statement.setInt(3, bucket());
+            statement.setLong(4, entry.getValue());
+        });
+    }
+
+    // 學生被刪除前呼叫：這位學生的選課依 (日期, 課程) 從 bucket 0 扣除，只扣一列才不會每個 bucket 都減
+    public void removeStudent(int studentId) {
+        removeStudents(List.of(studentId));
+    }
+
+    // 批次刪除學生前呼叫：每個 (日期, 課程) 減去這些學生在該日該課程的選課數
+    public void removeStudents(Collection<Integer> studentIds) {
+        String in = String.join(", ", Collections.nCopies(studentIds.size(), "?"));
+        jdbcTemplate.update(
+                "INSERT INTO EnrollmentDailyCount (enrollment_date, course_id, bucket, enrollment_count) " +
+                "SELECT enrollment_date, course_id, 0, -COUNT(*) FROM Enrollment " +
+                "WHERE student_id IN (" + in + ") AND enrollment_date IS NOT NULL " +
+                "GROUP BY enrollment_date, course_id " +
+                "ON DUPLICATE KEY UPDATE enrollment_count = enrollment_count + VALUES(enrollment_count)",
+                studentIds.toArray());
+    }
+
+    // 課程刪除 (含 cascade 刪除的課程) flush 之後呼叫，清掉已不存在課程的彙總
+    public void removeOrphans() {
+        jdbcTemplate.update(
+                "DELETE FROM EnrollmentDailyCount " +
+                "WHERE NOT EXISTS (SELECT 1 FROM Course c WHERE c.course_id = EnrollmentDailyCount.course_id)");
+    }
+
+    // 從 Enrollment 重新彙總，回傳彙總列數；沒有選課日期的記錄不列入
+    public long rebuild() {
+        jdbcTemplate.update("DELETE FROM EnrollmentDailyCount");
+        return jdbcTemplate.update(
+                "INSERT INTO EnrollmentDailyCount (enrollment_date, course_id, bucket, enrollment_count) " +
+                "SELECT enrollment_date, course_id, 0, COUNT(*) FROM Enrollment " +
+                "WHERE enrollment_date IS NOT NULL GROUP BY enrollment_date, course_id");
+    }
+
+    public boolean isEmpty() {
+        return jdbcTemplate.queryForList("SELECT 1 FROM EnrollmentDailyCount LIMIT 1").isEmpty();
+    }
+
+    public List<EnrollmentTrendDTO> findDailyTrend(LocalDate from, LocalDate to) {
+        return jdbcQueryExecutor.query(DAILY_TREND, Date.valueOf(from), Date.valueOf(to));
+    }
+
+    public List<EnrollmentTrendDTO> findDailyTrend(LocalDate from, LocalDate to, int courseId) {
+        return jdbcQueryExecutor.query(COURSE_DAILY_TREND, Date.valueOf(from), Date.valueOf(to), courseId);
+    }
+
+    public List<TeacherLoadDTO> findTeacherLoad(LocalDate from, LocalDate to) {
+        return jdbcQueryExecutor.query(TEACHER_LOAD, Date.valueOf(from), Date.valueOf(to));
+    }
+
+    public List<CreditsDistributionDTO> findCreditsDistribution(LocalDate from, LocalDate to) {
+        return jdbcQueryExecutor.query(CREDITS_DISTRIBUTION, Date.valueOf(from), Date.valueOf(to));
+    }
+
+    private static int bucket() {
+        return ThreadLocalRandom.current().nextInt(BUCKETS);
+    }
+}
@@ -1,33 +1,112 @@
 package fcu.pbiecs.spring_demo.repository;
 
 import fcu.pbiecs.spring_demo.model.Student;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface StudentRepository extends JpaRepository<Student,Integer> {
 
+    // 關鍵字搜尋的條件，查詢、分頁與計數共用
+    String KEYWORD_FILTER = "WHERE " +
+           "LOWER(s.firstName) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
+           "LOWER(s.lastName) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
+           "LOWER(s.email) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
+           "CAST(s.studentId AS string) LIKE CONCAT('%', :keyword, '%')";
+
     @Query("SELECT s FROM Student s WHERE s.firstName LIKE %?1%")
     List<Student> findByFirstNameContaining(String keyword);
 
     @Query("SELECT s FROM Student s WHERE s.email = ?1")
     Student findStudentByEmail(String email);
 
-    @Query("SELECT s FROM Student s WHERE " +
-           "LOWER(s.firstName) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "LOWER(s.lastName) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "LOWER(s.email) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "CAST(s.studentId AS string) LIKE CONCAT('%', :keyword, '%')")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT s FROM Student s " + KEYWORD_FILTER)
     List<Student> findByKeyword(@Param("keyword") String keyword);
 
-    @Query("SELECT s FROM Student s WHERE " +
-           "LOWER(s.firstName) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "LOWER(s.lastName) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "LOWER(s.email) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "CAST(s.studentId AS string) LIKE CONCAT('%', :keyword, '%')")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT s FROM Student s " + KEYWORD_FILTER)
     Page<Student> findByKeyword(@Param("keyword") String keyword, Pageable pageable);
+
+    // 分頁但不執行 COUNT (多查一筆判斷是否有下一頁)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT s FROM Student s " + KEYWORD_FILTER)
+    Slice<Student> findSliceByKeyword(@Param("keyword") String keyword, Pageable pageable);
+
+    // total=approximate 時計算關鍵字的總筆數
+    @Query("SELECT COUNT(s) FROM Student s " + KEYWORD_FILTER)
+    long countByKeyword(@Param("keyword") String keyword);
+
+    // FULLTEXT 搜尋 (MariaDB / MySQL，索引見 V3__add_fulltext_indexes.sql)，query 為 BOOLEAN MODE 語法 (FullTextQuery)
+    String FULL_TEXT_QUERY = "SELECT * FROM Student " +
+           "WHERE MATCH(first_name, last_name, email) AGAINST(:query IN BOOLEAN MODE)";
+
+    @Query(value = FULL_TEXT_QUERY, nativeQuery = true)
+    List<Student> findByFullText(@Param("query") String query);
+
+    @Query(value = FULL_TEXT_QUERY, countQuery = "SELECT COUNT(*) FROM (" + FULL_TEXT_QUERY + ") matched", nativeQuery = true)
+    Page<Student> findByFullText(@Param("query") String query, Pageable pageable);
+
+    @Query(value = FULL_TEXT_QUERY, nativeQuery = true)
+    Slice<Student> findSliceByFullText(@Param("query") String query, Pageable pageable);
+
+    @Query(value = "SELECT COUNT(*) FROM (" + FULL_TEXT_QUERY + ") matched", nativeQuery = true)
+    long countByFullText(@Param("query") String query);
+
+    // 全部資料分頁，不執行 COUNT
+    @Query("SELECT s FROM Student s")
+    Slice<Student> findSlice(Pageable pageable);
+
+    // 建立搜尋索引用 (studentId, firstName, lastName, email)
+    @Query("SELECT s.studentId, s.firstName, s.lastName, s.email FROM Student s")
+    List<Object[]> findSearchFields();
+
+    // Keyset 分頁：依主鍵順序取 afterId 之後的學生
+    @Query("SELECT s FROM Student s WHERE s.studentId > :afterId ORDER BY s.studentId")
+    List<Student> findAfter(@Param("afterId") Integer afterId, Limit limit);
+
+    // 串流讀取全部資料 (forward-only cursor)，需在交易中使用並關閉 Stream
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT s FROM Student s")
+    Stream<Student> streamAll();
+
+    // 建立 Email 索引用，只讀取 email 欄位
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT s.email FROM Student s WHERE s.email IS NOT NULL")
+    Stream<String> streamEmails();
+
+    // 批次驗證用：回傳清單中實際存在的ID
+    @Query("SELECT s.studentId FROM Student s WHERE s.studentId IN :ids")
+    List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    // 批次刪除用：關鍵字符合的學生ID (條件同 KEYWORD_FILTER)
+    @Query("SELECT s.studentId FROM Student s " + KEYWORD_FILTER + " ORDER BY s.studentId")
+    List<Integer> findIdsByKeyword(@Param("keyword") String keyword, Limit limit);
+
+    // 批次刪除用：(studentId, email)
+    @Query("SELECT s.studentId, s.email FROM Student s WHERE s.studentId IN :ids")
+    List<Object[]> findEmailsByIds(@Param("ids") Collection<Integer> ids);
+
+    // 批次刪除，需先刪除選課；不會 cascade，也不會逐筆載入實體
+    @Modifying
+    @Query("DELETE FROM Student s WHERE s.studentId IN :ids")
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
 }
@@ -1,26 +1,101 @@
 package fcu.pbiecs.spring_demo.repository;
 
 import fcu.pbiecs.spring_demo.model.Teacher;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface TeacherRepository extends JpaRepository<Teacher,Integer> {
 
-    @Query("SELECT t FROM Teacher t WHERE " +
+    // 關鍵字搜尋的條件，查詢、分頁與計數共用
+    String KEYWORD_FILTER = "WHERE " +
            "LOWER(t.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
            "LOWER(t.email) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "CAST(t.teacherId AS string) LIKE CONCAT('%', :keyword, '%')")
+           "CAST(t.teacherId AS string) LIKE CONCAT('%', :keyword, '%')";
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT t FROM Teacher t " + KEYWORD_FILTER)
     List<Teacher> findByKeyword(@Param("keyword") String keyword);
 
-    @Query("SELECT t FROM Teacher t WHERE " +
-           "LOWER(t.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "LOWER(t.email) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "CAST(t.teacherId AS string) LIKE CONCAT('%', :keyword, '%')")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT t FROM Teacher t " + KEYWORD_FILTER)
     Page<Teacher> findByKeyword(@Param("keyword") String keyword, Pageable pageable);
 
+    // 分頁但不執行 COUNT (多查一筆判斷是否有下一頁)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT t FROM Teacher t " + KEYWORD_FILTER)
+    Slice<Teacher> findSliceByKeyword(@Param("keyword") String keyword, Pageable pageable);
+
+    // total=approximate 時計算關鍵字的總筆數
+    @Query("SELECT COUNT(t) FROM Teacher t " + KEYWORD_FILTER)
+    long countByKeyword(@Param("keyword") String keyword);
+
+    // FULLTEXT 搜尋 (MariaDB / MySQL，索引見 V3__add_fulltext_indexes.sql)，query 為 BOOLEAN MODE 語法 (FullTextQuery)
+    String FULL_TEXT_QUERY = "SELECT * FROM Teacher " +
+           "WHERE MATCH(teacher_name, email) AGAINST(:query IN BOOLEAN MODE)";
+
+    @Query(value = FULL_TEXT_QUERY, nativeQuery = true)
+    List<Teacher> findByFullText(@Param("query") String query);
+
+    @Query(value = FULL_TEXT_QUERY, countQuery = "SELECT COUNT(*) FROM (" + FULL_TEXT_QUERY + ") matched", nativeQuery = true)
+    Page<Teacher> findByFullText(@Param("query") String query, Pageable pageable);
+
+    @Query(value = FULL_TEXT_QUERY, nativeQuery = true)
+    Slice<Teacher> findSliceByFullText(@Param("query") String query, Pageable pageable);
+
+    @Query(value = "SELECT COUNT(*) FROM (" + FULL_TEXT_QUERY + ") matched", nativeQuery = true)
+    long countByFullText(@Param("query") String query);
+
+    // 全部資料分頁，不執行 COUNT
+    @Query("SELECT t FROM Teacher t")
+    Slice<Teacher> findSlice(Pageable pageable);
+
+    // 建立搜尋索引用 (teacherId, name, email)
+    @Query("SELECT t.teacherId, t.name, t.email FROM Teacher t")
+    List<Object[]> findSearchFields();
+
+    // Keyset 分頁：依主鍵順序取 afterId 之後的教師
+    @Query("SELECT t FROM Teacher t WHERE t.teacherId > :afterId ORDER BY t.teacherId")
+    List<Teacher> findAfter(@Param("afterId") Integer afterId, Limit limit);
+
+    // 串流讀取全部資料 (forward-only cursor)，需在交易中使用並關閉 Stream
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT t FROM Teacher t")
+    Stream<Teacher> streamAll();
+
+    // 建立 Email 索引用，只讀取 email 欄位
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT t.email FROM Teacher t WHERE t.email IS NOT NULL")
+    Stream<String> streamEmails();
+
+    // 批次刪除用：關鍵字符合的教師ID (條件同 KEYWORD_FILTER)
+    @Query("SELECT t.teacherId FROM Teacher t " + KEYWORD_FILTER + " ORDER BY t.teacherId")
+    List<Integer> findIdsByKeyword(@Param("keyword") String keyword, Limit limit);
+
+    // 批次刪除用：(teacherId, email)
+    @Query("SELECT t.teacherId, t.email FROM Teacher t WHERE t.teacherId IN :ids")
+    List<Object[]> findEmailsByIds(@Param("ids") Collection<Integer> ids);
+
+    // 批次刪除，需先刪除授課的課程；不會 cascade，也不會逐筆載入實體
+    @Modifying
+    @Query("DELETE FROM Teacher t WHERE t.teacherId IN :ids")
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
 }
@@ -0,0 +1,53 @@
+package fcu.pbiecs.spring_demo.search;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 將搜尋關鍵字轉成 MariaDB FULLTEXT 的 BOOLEAN MODE 查詢字串：每個詞都必須出現 (+) 並以前綴比對 (*)，
+ * 例如 "bob.lin" 轉成 "+bob* +lin*"。
+ * <p>
+ * InnoDB 的 FULLTEXT 以空白與標點分詞、不索引少於 3 個字元的詞與停用詞，也不會切分中文，
+ * 只能比對詞的開頭；LIKE 查詢則是比對任意子字串。無法以 FULLTEXT 得到相近結果的關鍵字
+ * (短詞、中文、只有數字的 ID) 回傳 null，由呼叫端改用 LIKE 查詢。
+ */
+public final class FullTextQuery {
+
+    // innodb_ft_min_token_size 的預設值
+    private static final int MIN_TOKEN_LENGTH = 3;
+
+    // InnoDB 預設停用詞中長度足夠的部分，必須出現 (+) 的停用詞會讓查詢沒有結果，直接略過
+    private static final Set<String> STOPWORDS = Set.of(
+            "about", "are", "com", "for", "from", "how", "that", "the", "this",
+            "und", "was", "what", "when", "where", "who", "will", "with", "www");
+
+    private FullTextQuery() {
+    }
+
+    public static String of(String keyword) {
+        if (keyword == null) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String token : keyword.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}_]+")) {
+            if (token.isEmpty() || STOPWORDS.contains(token)) {
+                continue;
+            }
+            if (token.length() < MIN_TOKEN_LENGTH || token.chars().allMatch(Character::isDigit)
+                    || token.codePoints().anyMatch(FullTextQuery::isCjk)) {
+                return null;
+            }
+            if (!query.isEmpty()) {
+                query.append(' ');
+            }
+            query.append('+').append(token).append('*');
+        }
+        return query.isEmpty() ? null : query.toString();
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+}
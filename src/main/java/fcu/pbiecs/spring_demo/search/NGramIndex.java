@@ -0,0 +1,217 @@
+package fcu.pbiecs.spring_demo.search;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 記憶體內的 n-gram 反向索引，語意等同於對每個欄位做 {@code LOWER(col) LIKE '%keyword%'}。
+ * <p>
+ * 每個欄位會切成長度 1 到 {@link #MAX_GRAM} 的 gram 並記錄出現的文件 ID。
+ * 關鍵字不超過 {@link #MAX_GRAM} 個字時，posting list 本身就是答案；
+ * 較長的關鍵字則取其中最短的 posting list 作為候選，再逐筆比對原始欄位。
+ */
+public class NGramIndex {
+
+    static final int MAX_GRAM = 3;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<Integer, String[]> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 新增或取代一筆文件，null 欄位會被忽略。
+     */
+    public void put(int id, String... fields) {
+        String[] normalized = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            normalized[i] = fields[i] == null ? null : normalize(fields[i]);
+        }
+
+        lock.writeLock().lock();
+        try {
+            String[] previous = documents.put(id, normalized);
+            if (previous != null) {
+                for (String gram : grams(previous)) {
+                    removePosting(gram, id);
+                }
+            }
+            for (String gram : grams(normalized)) {
+                postings.computeIfAbsent(gram, g -> new PostingList()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            String[] previous = documents.remove(id);
+            if (previous != null) {
+                for (String gram : grams(previous)) {
+                    removePosting(gram, id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 回傳任一欄位包含關鍵字 (不分大小寫) 的文件 ID，依 ID 遞增排序。
+     */
+    public int[] search(String keyword) {
+        String query = normalize(keyword);
+        if (query.isEmpty()) {
+            return allIds();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (query.length() <= MAX_GRAM) {
+                PostingList list = postings.get(query);
+                return list == null ? EMPTY : list.toArray();
+            }
+
+            // 找出最短的 posting list 當作候選集合
+            PostingList candidates = null;
+            for (int i = 0; i + MAX_GRAM <= query.length(); i++) {
+                PostingList list = postings.get(query.substring(i, i + MAX_GRAM));
+                if (list == null) {
+                    return EMPTY;
+                }
+                if (candidates == null || list.size < candidates.size) {
+                    candidates = list;
+                }
+            }
+
+            int[] result = new int[candidates.size];
+            int count = 0;
+            for (int i = 0; i < candidates.size; i++) {
+                int id = candidates.ids[i];
+                if (matches(documents.get(id), query)) {
+                    result[count++] = id;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 取得已索引的欄位內容 (已轉為小寫)，文件不存在時回傳 null。
+     */
+    public String[] fields(int id) {
+        lock.readLock().lock();
+        try {
+            String[] fields = documents.get(id);
+            return fields == null ? null : fields.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] allIds() {
+        lock.readLock().lock();
+        try {
+            int[] ids = documents.keySet().stream().mapToInt(Integer::intValue).toArray();
+            Arrays.sort(ids);
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removePosting(String gram, int id) {
+        PostingList list = postings.get(gram);
+        if (list != null) {
+            list.remove(id);
+            if (list.size == 0) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    private static boolean matches(String[] fields, String query) {
+        for (String field : fields) {
+            if (field != null && field.contains(query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // gram 不跨欄位，避免把兩個欄位接起來後誤判
+    private static Set<String> grams(String[] fields) {
+        Set<String> grams = new HashSet<>();
+        for (String field : fields) {
+            if (field == null) {
+                continue;
+            }
+            for (int n = 1; n <= MAX_GRAM; n++) {
+                for (int i = 0; i + n <= field.length(); i++) {
+                    grams.add(field.substring(i, i + n));
+                }
+            }
+        }
+        return grams;
+    }
+
+    private static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 以遞增排序的 int 陣列儲存文件 ID；ID 多半遞增產生，新增通常只是 append。
+     */
+    private static final class PostingList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] >= id) {
+                int pos = Arrays.binarySearch(ids, 0, size, id);
+                if (pos >= 0) {
+                    return;
+                }
+                insertAt(-pos - 1, id);
+                return;
+            }
+            insertAt(size, id);
+        }
+
+        void remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+                size--;
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        private void insertAt(int pos, int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+    }
+}
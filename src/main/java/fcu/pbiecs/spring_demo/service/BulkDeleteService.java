@@ -0,0 +1,196 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.dto.BulkDeleteRequestDTO;
+import fcu.pbiecs.spring_demo.dto.BulkDeleteResultDTO;
+import fcu.pbiecs.spring_demo.etag.ChangeTracker;
+import fcu.pbiecs.spring_demo.pagination.TotalCountCache;
+import fcu.pbiecs.spring_demo.repository.CourseRepository;
+import fcu.pbiecs.spring_demo.repository.EnrollmentRepository;
+import fcu.pbiecs.spring_demo.repository.StudentRepository;
+import fcu.pbiecs.spring_demo.repository.TeacherRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * 學生、課程與教師的批次刪除 (依ID清單或關鍵字)。
+ * <p>
+ * 單筆刪除的 deleteById 會載入實體，再逐筆刪除 @ManyToMany 的選課與 cascade 的課程，熱門課程有幾千筆選課時
+ * 就是幾千個 DELETE。這裡在同一個交易中以 IN 條件的 JPQL DELETE 先刪選課、再刪課程與上層資料，
+ * 每 {@link #IN_CLAUSE_SIZE} 個ID一批。JPQL DELETE 會清掉受影響實體的整個二級快取區域與相關的查詢快取；
+ * 每日選課彙總在同一個交易中更新，記憶體中的搜尋索引、熱門課程、Email 索引、總筆數快取與 ETag 在提交後更新。
+ * <p>
+ * 與單筆刪除不同，刪除課程時不會經由 Course.teacher 的 CascadeType.ALL 連帶刪除授課教師。
+ */
+@Service
+public class BulkDeleteService {
+
+    // 單次批次刪除的上限，以及 IN 條件每批的ID數量
+    public static final int MAX_BULK_DELETE = 10_000;
+    private static final int IN_CLAUSE_SIZE = 1000;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private EnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private EnrollmentRollupService enrollmentRollupService;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private EmailIndexService emailIndexService;
+
+    @Autowired
+    private PopularCourseService popularCourseService;
+
+    @Autowired
+    private CourseSeatService courseSeatService;
+
+    @Autowired
+    private TotalCountCache totalCountCache;
+
+    @Autowired
+    private ChangeTracker changeTracker;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    public BulkDeleteResultDTO deleteStudents(BulkDeleteRequestDTO request) {
+        Map<Integer, String> deleted = new HashMap<>();
+        List<Integer> enrolledCourseIds = new ArrayList<>();
+        BulkDeleteResultDTO result = transactionTemplate.execute(status -> {
+            List<Integer> ids = resolve(request, studentRepository::findIdsByKeyword);
+            BulkDeleteResultDTO counts = new BulkDeleteResultDTO();
+            forEachChunk(ids, chunk -> {
+                studentRepository.findEmailsByIds(chunk).forEach(row -> deleted.put((Integer) row[0], (String) row[1]));
+                List<Integer> courseIds = enrollmentRepository.findCourseIdsByStudentIds(chunk);
+                enrolledCourseIds.addAll(courseIds);
+                courseSeatService.released(courseIds);
+                enrollmentRollupService.studentsRemoving(chunk);
+                counts.setEnrollmentsDeleted(counts.getEnrollmentsDeleted() + enrollmentRepository.deleteByStudentIds(chunk));
+                counts.setDeleted(counts.getDeleted() + studentRepository.deleteByIds(chunk));
+            });
+            return counts;
+        });
+
+        // 交易提交後才更新記憶體中的索引與統計
+        deleted.forEach((id, email) -> {
+            searchIndexService.removeStudent(id);
+            emailIndexService.removed(ChangeTracker.Table.STUDENT, email);
+        });
+        popularCourseService.enrollmentsRemoved(enrolledCourseIds);
+        totalCountCache.removed(ChangeTracker.Table.STUDENT, result.getDeleted());
+        totalCountCache.removed(ChangeTracker.Table.ENROLLMENT, result.getEnrollmentsDeleted());
+        changeTracker.changed(ChangeTracker.Table.STUDENT, ChangeTracker.Table.ENROLLMENT);
+        return result;
+    }
+
+    public BulkDeleteResultDTO deleteCourses(BulkDeleteRequestDTO request) {
+        List<Integer> deleted = new ArrayList<>();
+        BulkDeleteResultDTO result = transactionTemplate.execute(status -> {
+            List<Integer> ids = resolve(request, courseRepository::findIdsByKeyword);
+            BulkDeleteResultDTO counts = new BulkDeleteResultDTO();
+            forEachChunk(ids, chunk -> {
+                deleted.addAll(courseRepository.findExistingIds(chunk));
+                counts.setEnrollmentsDeleted(counts.getEnrollmentsDeleted() + enrollmentRepository.deleteByCourseIds(chunk));
+                counts.setDeleted(counts.getDeleted() + courseRepository.deleteByIds(chunk));
+            });
+            enrollmentRollupService.coursesRemoved();
+            return counts;
+        });
+
+        deleted.forEach(id -> {
+            searchIndexService.removeCourse(id);
+            popularCourseService.courseRemoved(id);
+        });
+        totalCountCache.removed(ChangeTracker.Table.COURSE, result.getDeleted());
+        totalCountCache.removed(ChangeTracker.Table.ENROLLMENT, result.getEnrollmentsDeleted());
+        changeTracker.changed(ChangeTracker.Table.COURSE, ChangeTracker.Table.ENROLLMENT);
+        return result;
+    }
+
+    // 教師授課的課程與其選課一併刪除 (與單筆刪除的 cascade 相同)
+    public BulkDeleteResultDTO deleteTeachers(BulkDeleteRequestDTO request) {
+        Map<Integer, String> deleted = new HashMap<>();
+        BulkDeleteResultDTO result = transactionTemplate.execute(status -> {
+            List<Integer> ids = resolve(request, teacherRepository::findIdsByKeyword);
+            BulkDeleteResultDTO counts = new BulkDeleteResultDTO();
+            forEachChunk(ids, chunk -> {
+                teacherRepository.findEmailsByIds(chunk).forEach(row -> deleted.put((Integer) row[0], (String) row[1]));
+                forEachChunk(courseRepository.findIdsByTeacherIds(chunk), courseChunk -> {
+                    counts.setEnrollmentsDeleted(counts.getEnrollmentsDeleted() + enrollmentRepository.deleteByCourseIds(courseChunk));
+                    counts.setCoursesDeleted(counts.getCoursesDeleted() + courseRepository.deleteByIds(courseChunk));
+                });
+                counts.setDeleted(counts.getDeleted() + teacherRepository.deleteByIds(chunk));
+            });
+            enrollmentRollupService.coursesRemoved();
+            return counts;
+        });
+
+        // removeTeacher 與 teacherRemoved 也會移除該教師的課程
+        deleted.forEach((id, email) -> {
+            searchIndexService.removeTeacher(id);
+            popularCourseService.teacherRemoved(id);
+            emailIndexService.removed(ChangeTracker.Table.TEACHER, email);
+        });
+        totalCountCache.removed(ChangeTracker.Table.TEACHER, result.getDeleted());
+        totalCountCache.removed(ChangeTracker.Table.COURSE, result.getCoursesDeleted());
+        totalCountCache.removed(ChangeTracker.Table.ENROLLMENT, result.getEnrollmentsDeleted());
+        changeTracker.changed(ChangeTracker.Table.TEACHER, ChangeTracker.Table.COURSE, ChangeTracker.Table.ENROLLMENT);
+        return result;
+    }
+
+    // ID清單去除重複；關鍵字在刪除的交易中查出符合的ID，超過上限時不刪除
+    private static List<Integer> resolve(BulkDeleteRequestDTO request, BiFunction<String, Limit, List<Integer>> findIdsByKeyword) {
+        if (request == null || (request.getIds() == null) == (request.getSearch() == null)) {
+            throw new IllegalArgumentException("Exactly one of ids or search is required");
+        }
+        if (request.getIds() != null) {
+            if (request.getIds().isEmpty()) {
+                throw new IllegalArgumentException("No ids given");
+            }
+            if (request.getIds().size() > MAX_BULK_DELETE) {
+                throw new IllegalArgumentException("Too many ids, at most " + MAX_BULK_DELETE + " per request");
+            }
+            if (request.getIds().stream().anyMatch(Objects::isNull)) {
+                throw new IllegalArgumentException("ids must not contain null");
+            }
+            return new ArrayList<>(new LinkedHashSet<>(request.getIds()));
+        }
+        String keyword = request.getSearch().trim();
+        if (keyword.isEmpty()) {
+            throw new IllegalArgumentException("search must not be empty");
+        }
+        List<Integer> ids = findIdsByKeyword.apply(keyword, Limit.of(MAX_BULK_DELETE + 1));
+        if (ids.size() > MAX_BULK_DELETE) {
+            throw new IllegalArgumentException("More than " + MAX_BULK_DELETE + " rows match the search, narrow it down or delete by ids");
+        }
+        return ids;
+    }
+
+    private static void forEachChunk(List<Integer> ids, Consumer<List<Integer>> action) {
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_SIZE) {
+            action.accept(ids.subList(from, Math.min(from + IN_CLAUSE_SIZE, ids.size())));
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.jdbc.ReadWriteRoutingDataSource;
+import fcu.pbiecs.spring_demo.repository.CourseRepository;
+import fcu.pbiecs.spring_demo.transaction.TransactionCallbacks;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 課程名額的保留。
+ * <p>
+ * 每門課程一個記憶體中的計數器，第一次使用時從資料庫 (primary) 載入名額與選課人數。計數分成兩部分：
+ * 已提交的選課人數 (committed)，以及還沒寫入資料庫的增減 (held：交易中的選課、write-behind 或匯入尚未提交的選課與退選)。
+ * 保留以 CAS 遞增 held，同一門熱門課程同時有大量選課時不需要任何鎖，額滿時不存取資料庫直接拒絕。
+ * 交易中的保留在提交後轉為 committed、回滾時歸還；選課刪除在提交後從 committed 扣除，課程名額修改在提交後生效。
+ * <p>
+ * 其他途徑 (其他執行個體、直接以 SQL 修改) 的寫入不會經過這裡，每隔 reconcile-interval 以資料庫的選課人數與名額
+ * 校正已載入的 committed。已提交到資料庫、但還沒結算到計數器的寫入會被算兩次，所以查詢前課程還有保留或退選沒有結算、
+ * 或查詢期間有結算時略過這一輪，等下一輪再校正。JDBC 大量寫入後 (DataReloadedEvent) 計數器全部清空，下次使用時重新載入。
+ */
+@Service
+public class CourseSeatService {
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Value("${app.enrollment.seats.reconcile-interval:1m}")
+    private Duration reconcileInterval;
+
+    private final Map<Integer, Seats> seats = new ConcurrentHashMap<>();
+
+    // 載入時會查詢資料庫，用 ReentrantLock 而不是 synchronized (computeIfAbsent)，避免虛擬執行緒卡住載體執行緒
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    private ScheduledExecutorService reconciler;
+
+    private static class Seats {
+        // null 表示不限人數
+        volatile Integer capacity;
+        final AtomicInteger committed;
+        final AtomicInteger held = new AtomicInteger();
+        // 已登記、交易還沒結束的退選筆數
+        final AtomicInteger releasing = new AtomicInteger();
+        // 結算與名額修改的次數，校正用來判斷查詢期間計數器是否變動過
+        final AtomicLong changes = new AtomicLong();
+        // 結算與名額修改共用讀鎖，彼此不互相等待；校正只在比對 changes 並寫入結果時持有寫鎖，不會在持有鎖時等待連線
+        final ReentrantReadWriteLock settleLock = new ReentrantReadWriteLock();
+
+        Seats(Integer capacity, int committed) {
+            this.capacity = capacity;
+            this.committed = new AtomicInteger(committed);
+        }
+
+        boolean tryHold() {
+            while (true) {
+                // 先讀 held 再讀 committed：提交時先增後減，中間讀到的人數只會偏高；held 變了 CAS 就會失敗重來
+                int pending = held.get();
+                int count = committed.get();
+                Integer limit = capacity;
+                if (limit != null && count + pending >= limit) {
+                    return false;
+                }
+                if (held.compareAndSet(pending, pending + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void settle(int committedDelta, int heldDelta) {
+            settleLock.readLock().lock();
+            try {
+                // 先套用增加的一方，過程中算出的人數只會偏高、不會超收
+                if (committedDelta >= 0) {
+                    committed.addAndGet(committedDelta);
+                    held.addAndGet(heldDelta);
+                } else {
+                    held.addAndGet(heldDelta);
+                    committed.addAndGet(committedDelta);
+                }
+                changes.incrementAndGet();
+            } finally {
+                settleLock.readLock().unlock();
+            }
+        }
+
+        // 有寫入已登記但還沒結算；其中可能有已經提交到資料庫的寫入
+        boolean unsettled() {
+            return held.get() != 0 || releasing.get() != 0;
+        }
+
+        void setCapacity(Integer capacity) {
+            settleLock.readLock().lock();
+            try {
+                this.capacity = capacity;
+                changes.incrementAndGet();
+            } finally {
+                settleLock.readLock().unlock();
+            }
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        long interval = reconcileInterval.toMillis();
+        reconciler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("course-seat-"));
+        reconciler.scheduleWithFixedDelay(this::reconcileQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        reconciler.shutdownNow();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDataReloaded(DataReloadedEvent event) {
+        seats.clear();
+    }
+
+    /**
+     * 保留課程的一個名額，額滿時回傳 false。需在選課寫入的交易中呼叫，提交後計入選課人數，交易沒有提交時自動歸還。
+     * 課程不存在時回傳 true，由選課寫入時的外鍵拒絕。
+     */
+    public boolean reserve(int courseId) {
+        Seats course = seats(courseId);
+        if (course == null) {
+            return true;
+        }
+        if (!course.tryHold()) {
+            return false;
+        }
+        TransactionCallbacks.afterCommit(() -> course.settle(1, -1));
+        TransactionCallbacks.afterRollback(() -> course.settle(0, -1));
+        return true;
+    }
+
+    /**
+     * 提交後才知道實際寫入筆數的寫入 (write-behind、CSV 匯入、批次選課) 使用：保留一個名額，額滿時回傳 false。
+     * 呼叫端寫入提交或放棄後必須以 {@link #settle} 結算。
+     */
+    public boolean hold(int courseId) {
+        Seats course = seats(courseId);
+        return course == null || course.tryHold();
+    }
+
+    /**
+     * 結算 {@link #hold} 之後的結果：committedDelta 為實際寫入資料庫的選課人數增減，heldDelta 為要撤銷的保留
+     * (例如提交了 3 筆保留的選課為 (3, -3)，放棄一筆為 (0, -1))。計數器尚未載入時不需要結算，載入時已從資料庫計算。
+     */
+    public void settle(int courseId, int committedDelta, int heldDelta) {
+        Seats course = seats.get(courseId);
+        if (course != null) {
+            course.settle(committedDelta, heldDelta);
+        }
+    }
+
+    /**
+     * 選課被刪除時在刪除的交易中呼叫，提交後歸還名額。
+     */
+    public void released(Collection<Integer> courseIds) {
+        // 先取得目前的計數器；提交前才載入的計數器已經包含這些選課，多算的名額在下次校正時修正
+        List<Seats> held = new ArrayList<>(courseIds.size());
+        for (Integer courseId : courseIds) {
+            Seats course = seats.get(courseId);
+            if (course != null) {
+                held.add(course);
+            }
+        }
+        if (!held.isEmpty()) {
+            held.forEach(course -> course.releasing.incrementAndGet());
+            // 結算完才減少 releasing，校正不會在兩者之間把已經扣掉的選課再算一次
+            TransactionCallbacks.afterCommit(() -> held.forEach(course -> {
+                course.settle(-1, 0);
+                course.releasing.decrementAndGet();
+            }));
+            TransactionCallbacks.afterRollback(() -> held.forEach(course -> course.releasing.decrementAndGet()));
+        }
+    }
+
+    public void released(int courseId) {
+        released(List.of(courseId));
+    }
+
+    /**
+     * 課程新增或修改時呼叫，提交後套用新的名額；名額小於已選課人數時不會退選，只是不再接受選課。
+     */
+    public void capacityChanged(int courseId, Integer capacity) {
+        TransactionCallbacks.afterCommit(() -> {
+            Seats course = seats.get(courseId);
+            if (course != null) {
+                course.setCapacity(capacity);
+            }
+        });
+    }
+
+    /**
+     * 以資料庫中的選課人數與名額校正所有已載入的計數器；已刪除的課程移除計數器。
+     * 還有保留或退選沒有結算的計數器這一輪不校正。
+     */
+    public void reconcile() {
+        seats.forEach(this::reconcile);
+    }
+
+    private void reconcile(int courseId, Seats course) {
+        // 查詢前沒有未結算的寫入，查詢看到的選課都已經計入 committed；held 與 releasing 只有結算會減少，
+        // 查詢期間開始的寫入在寫入結果時不是還沒結算，就是已經改變了 changes
+        if (course.unsettled()) {
+            return;
+        }
+        long changes = course.changes.get();
+        List<Object[]> rows = ReadWriteRoutingDataSource.onPrimary(() -> courseRepository.findSeatUsage(courseId));
+        if (rows.isEmpty()) {
+            seats.remove(courseId, course);
+            return;
+        }
+        course.settleLock.writeLock().lock();
+        try {
+            if (course.unsettled() || course.changes.get() != changes) {
+                return;
+            }
+            course.capacity = (Integer) rows.get(0)[0];
+            course.committed.set(((Long) rows.get(0)[1]).intValue());
+        } finally {
+            course.settleLock.writeLock().unlock();
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            // 計數器維持原狀，下一輪再校正
+        }
+    }
+
+    private Seats seats(int courseId) {
+        Seats course = seats.get(courseId);
+        if (course != null) {
+            return course;
+        }
+        loadLock.lock();
+        try {
+            course = seats.get(courseId);
+            if (course == null) {
+                // 不在交易中呼叫時 (write-behind、匯入) 也要讀 primary，replica 的人數可能還沒同步
+                List<Object[]> rows = ReadWriteRoutingDataSource.onPrimary(() -> courseRepository.findSeatUsage(courseId));
+                if (rows.isEmpty()) {
+                    return null;
+                }
+                course = new Seats((Integer) rows.get(0)[0], ((Long) rows.get(0)[1]).intValue());
+                seats.put(courseId, course);
+            }
+            return course;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+}
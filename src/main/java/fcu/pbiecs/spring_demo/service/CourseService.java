@@ -1,15 +1,28 @@
 package fcu.pbiecs.spring_demo.service;
 
+import fcu.pbiecs.spring_demo.etag.ChangeTracker;
 import fcu.pbiecs.spring_demo.model.Course;
 import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.pagination.CursorPage;
+import fcu.pbiecs.spring_demo.pagination.PageCursor;
+import fcu.pbiecs.spring_demo.pagination.TotalCountCache;
+import fcu.pbiecs.spring_demo.pagination.TotalMode;
 import fcu.pbiecs.spring_demo.repository.CourseRepository;
+import fcu.pbiecs.spring_demo.repository.TeacherRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
 
 
 @Service
@@ -27,27 +40,133 @@ public class CourseService {
         }
     }
 
+    @Autowired
+    private EntityStreamer entityStreamer;
+
     @Autowired
     private CourseRepository courseRepository;
 
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private EmailIndexService emailIndexService;
+
+    @Autowired
+    private PopularCourseService popularCourseService;
+
+    @Autowired
+    private CourseSeatService courseSeatService;
+
+    @Autowired
+    private EnrollmentRollupService enrollmentRollupService;
+
+    @Autowired
+    private ChangeTracker changeTracker;
+
+    @Autowired
+    private TotalCountCache totalCountCache;
+
+    @Transactional(readOnly = true)
     public List<Course> getAllCourse(){
         return courseRepository.findAll();
     }
 
+    // 以 forward-only cursor 逐筆處理全部資料，不會一次載入整張表
+    public void forEachCourse(Consumer<Course> action) {
+        entityStreamer.forEach(courseRepository::streamAll, action);
+    }
+
+    @Transactional(readOnly = true)
     public Page<Course> getAllCourse(int pageNumber, int pageSize) {
         Pageable pageable = PageRequest.of(pageNumber, pageSize);
         return courseRepository.findAll(pageable);
     }
 
+    // total=none 時不執行 COUNT，total=approximate 時總筆數取自快取
+    @Transactional(readOnly = true)
+    public Slice<Course> getAllCourse(int pageNumber, int pageSize, TotalMode totalMode) {
+        Pageable pageable = PageRequest.of(pageNumber, pageSize);
+        return switch (totalMode) {
+            case EXACT -> courseRepository.findAll(pageable);
+            case NONE -> courseRepository.findSlice(pageable);
+            case APPROXIMATE -> totalCountCache.page(courseRepository.findSlice(pageable),
+                    ChangeTracker.Table.COURSE, courseRepository::count);
+        };
+    }
+
+    @Transactional(readOnly = true)
     public List<Course> searchCourses(String keyword) {
-        return courseRepository.findByKeyword(keyword);
+        int[] ids = searchIndexService.searchCourseIds(keyword);
+        if (ids == null) {
+            String query = searchIndexService.fullTextQuery(keyword);
+            return query != null ? courseRepository.findByFullText(query) : courseRepository.findByKeyword(keyword);
+        }
+        return findAllInOrder(ids, 0, ids.length);
     }
 
+    @Transactional(readOnly = true)
     public Page<Course> searchCourses(String keyword, int pageNumber, int pageSize) {
         Pageable pageable = PageRequest.of(pageNumber, pageSize);
-        return courseRepository.findByKeyword(keyword, pageable);
+        int[] ids = searchIndexService.searchCourseIds(keyword);
+        if (ids == null) {
+            String query = searchIndexService.fullTextQuery(keyword);
+            return query != null ? courseRepository.findByFullText(query, pageable) : courseRepository.findByKeyword(keyword, pageable);
+        }
+        return pageOf(ids, pageable);
+    }
+
+    @Transactional(readOnly = true)
+    public Slice<Course> searchCourses(String keyword, int pageNumber, int pageSize, TotalMode totalMode) {
+        if (totalMode == TotalMode.EXACT) {
+            return searchCourses(keyword, pageNumber, pageSize);
+        }
+        Pageable pageable = PageRequest.of(pageNumber, pageSize);
+        int[] ids = searchIndexService.searchCourseIds(keyword);
+        if (ids != null) {
+            // 搜尋索引已經有全部符合的ID，總筆數不需要另外查詢
+            return pageOf(ids, pageable);
+        }
+        String query = searchIndexService.fullTextQuery(keyword);
+        Slice<Course> slice = query != null
+                ? courseRepository.findSliceByFullText(query, pageable)
+                : courseRepository.findSliceByKeyword(keyword, pageable);
+        if (totalMode == TotalMode.NONE) {
+            return slice;
+        }
+        return totalCountCache.page(slice, ChangeTracker.Table.COURSE, "keyword:" + keyword.toLowerCase(Locale.ROOT),
+                () -> query != null ? courseRepository.countByFullText(query) : courseRepository.countByKeyword(keyword));
+    }
+
+    private Page<Course> pageOf(int[] ids, Pageable pageable) {
+        int from = (int) Math.min(pageable.getOffset(), ids.length);
+        int to = Math.min(from + pageable.getPageSize(), ids.length);
+        return new PageImpl<>(findAllInOrder(ids, from, to), pageable, ids.length);
+    }
+
+    private List<Course> findAllInOrder(int[] ids, int from, int to) {
+        if (from >= to) {
+            return List.of();
+        }
+        List<Integer> pageIds = SearchIndexService.idList(ids, from, to);
+        return SearchIndexService.inIdOrder(courseRepository.findAllById(pageIds), pageIds, Course::getCourseId);
     }
 
+    // Keyset 分頁，不執行 COUNT 查詢
+    @Transactional(readOnly = true)
+    public CursorPage<Course> getCoursesAfter(String after, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size");
+        }
+        int afterId = PageCursor.decode(after, 1)[0];
+        List<Course> rows = courseRepository.findAfter(afterId, Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, row -> PageCursor.encode(row.getCourseId()));
+    }
+
+    @Transactional(readOnly = true)
     public Course getCourseById(int id) throws CourseNotfoundException {
         Course course = courseRepository.findById(id).orElse(null);
         if (course == null) {
@@ -57,10 +176,27 @@ public class CourseService {
     }
 
     public Course addCourse(Course course)  {
-        return courseRepository.save(course);
+        checkCapacity(course);
+        // 沒有版本的是新資料，忽略傳入的 ID (有 ID 又沒有版本時 JPA 無法新增)
+        boolean created = course.getVersion() == null;
+        if (created) {
+            course.setCourseId(null);
+        }
+        Course saved = courseRepository.save(course);
+        if (created) {
+            totalCountCache.added(ChangeTracker.Table.COURSE, 1);
+        }
+        searchIndexService.indexCourse(saved);
+        teacherSaved(saved);
+        popularCourseService.courseSaved(saved);
+        courseSeatService.capacityChanged(saved.getCourseId(), saved.getCapacity());
+        changeTracker.changed(ChangeTracker.Table.COURSE);
+        return saved;
     }
 
+    @Transactional
     public void updateCourse(Course course) throws CourseNotfoundException {
+        checkCapacity(course);
         if (!courseRepository.existsById(course.getCourseId())) {
             throw new CourseNotfoundException("Course not found with id: " + course.getCourseId());
         }
@@ -68,16 +204,50 @@ public class CourseService {
         oldCourse.setName(course.getName());
         oldCourse.setDescription(course.getDescription());
         oldCourse.setCredits(course.getCredits());
-        oldCourse.setTeacher(course.getTeacher());
+        oldCourse.setCapacity(course.getCapacity());
+        oldCourse.setTeacher(managedTeacher(course.getTeacher()));
         courseRepository.save(oldCourse);
+        searchIndexService.indexCourse(oldCourse);
+        teacherSaved(oldCourse);
+        popularCourseService.courseSaved(oldCourse);
+        courseSeatService.capacityChanged(oldCourse.getCourseId(), oldCourse.getCapacity());
+        changeTracker.changed(ChangeTracker.Table.COURSE);
     }
 
+    @Transactional
     public void deleteCourse(int id) throws CourseNotfoundException {
         if (!courseRepository.existsById(id)) {
             throw new CourseNotfoundException("Course not found with id: " + id);
         }
         courseRepository.deleteById(id);
+        courseRepository.flush();
+        enrollmentRollupService.coursesRemoved();
+        searchIndexService.removeCourse(id);
+        popularCourseService.courseRemoved(id);
+        totalCountCache.invalidate(ChangeTracker.Table.COURSE, ChangeTracker.Table.TEACHER, ChangeTracker.Table.ENROLLMENT);
+        // Course.teacher 設定為 CascadeType.ALL，教師也可能一併被刪除
+        changeTracker.changed(ChangeTracker.Table.COURSE, ChangeTracker.Table.TEACHER, ChangeTracker.Table.ENROLLMENT);
+    }
+
+    // 傳入的教師常常只有ID，改用資料庫中的教師，搜尋索引與熱門課程快照才會有教師名稱
+    private Teacher managedTeacher(Teacher teacher) {
+        if (teacher == null || teacher.getTeacherId() == null) {
+            return teacher;
+        }
+        return teacherRepository.findById(teacher.getTeacherId())
+                .orElseThrow(() -> new IllegalArgumentException("Teacher not found with id: " + teacher.getTeacherId()));
     }
 
+    private static void checkCapacity(Course course) {
+        if (course.getCapacity() != null && course.getCapacity() < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+    }
 
+    // Course.teacher 設定為 CascadeType.ALL，隨課程傳入的教師也可能被新增或修改
+    private void teacherSaved(Course course) {
+        if (course.getTeacher() != null) {
+            emailIndexService.saved(ChangeTracker.Table.TEACHER, null, course.getTeacher().getEmail());
+        }
+    }
 }
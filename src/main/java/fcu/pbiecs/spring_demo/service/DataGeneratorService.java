@@ -1,11 +1,21 @@
 package fcu.pbiecs.spring_demo.service;
 
 import com.github.javafaker.Faker;
+import fcu.pbiecs.spring_demo.collection.BloomFilter;
+import fcu.pbiecs.spring_demo.collection.IntPairSet;
+import fcu.pbiecs.spring_demo.etag.ChangeTracker;
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.jdbc.BatchInsertPipeline;
 import fcu.pbiecs.spring_demo.model.*;
 import fcu.pbiecs.spring_demo.repository.*;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 
@@ -16,7 +26,10 @@ import java.sql.Date;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Service
 public class DataGeneratorService {
@@ -33,66 +46,143 @@ public class DataGeneratorService {
     @Autowired
     private EnrollmentRepository enrollmentRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private BatchInsertPipeline batchInsertPipeline;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EmailIndexService emailIndexService;
+
     @PersistenceContext
     private EntityManager entityManager;
 
+    // 產生 Email 時判斷是否用過的誤判率，誤判的 Email 會重新產生
+    private static final double USED_EMAIL_FALSE_POSITIVE_RATE = 0.01;
+
     private final Random random = new Random();
     private final Faker faker = new Faker(new Locale("zh-TW"));
     private final Faker englishFaker = new Faker();
 
     public interface ProgressCallback {
         void updateProgress(String step, int current, int total);
+
+        // 大量寫入時每次提交後回報目前階段已寫入的筆數
+        default void updateRows(long written, long total) {
+        }
+
+        // 回傳 true 時會在下一個批次前停止產生
+        default boolean isCancelled() {
+            return false;
+        }
     }
 
-    @Transactional
     public void generateRandomData(int studentCount, int teacherCount, int courseCount, int enrollmentCount, ProgressCallback callback) {
         try {
             // 清除現有資料
             if (callback != null) callback.updateProgress("清除現有資料", 0, 5);
-            enrollmentRepository.deleteAll();
-            courseRepository.deleteAll();
-            studentRepository.deleteAll();
-            teacherRepository.deleteAll();
+            timePhase("clear", () -> {
+                transactionTemplate.executeWithoutResult(status -> {
+                    enrollmentRepository.deleteAllInBatch();
+                    courseRepository.deleteAllInBatch();
+                    studentRepository.deleteAllInBatch();
+                    teacherRepository.deleteAllInBatch();
+                });
+                return 0L;
+            });
 
             // 生成學生資料
+            checkCancelled(callback);
             if (callback != null) callback.updateProgress("生成學生資料", 1, 5);
-            List<Student> students = generateStudents(studentCount);
-            studentRepository.saveAll(students);
-
-            // 生成老師資料
-            if (callback != null) callback.updateProgress("生成老師資料", 2, 5);
-            List<Teacher> teachers = generateTeachers(teacherCount);
-            teacherRepository.saveAll(teachers);
-
-            // 生成課程資料
-            if (callback != null) callback.updateProgress("生成課程資料", 3, 5);
-            List<Course> courses = generateCourses(courseCount, teachers);
-            courseRepository.saveAll(courses);
-
-            // 生成選課資料
+            int[] studentIds = generateStudents(studentCount, callback);
+
+            // 生成老師與課程資料 (課程會 cascade 到老師，需要在同一個交易中)
+            checkCancelled(callback);
+            int[] courseIds = transactionTemplate.execute(status -> {
+                if (callback != null) callback.updateProgress("生成老師資料", 2, 5);
+                List<Teacher> teachers = generateTeachers(teacherCount);
+                timePhase("teachers", () -> (long) teacherRepository.saveAll(teachers).size());
+
+                if (callback != null) callback.updateProgress("生成課程資料", 3, 5);
+                List<Course> courses = generateCourses(courseCount, teachers);
+                timePhase("courses", () -> (long) courseRepository.saveAll(courses).size());
+                return courses.stream().mapToInt(Course::getCourseId).toArray();
+            });
+
+            // 生成選課資料；只選這次產生的課程，這些課程都不設名額 (不限人數)，不需要經過 CourseSeatService
+            checkCancelled(callback);
             if (callback != null) callback.updateProgress("生成選課資料", 4, 5);
-            generateEnrollmentsBatchWithProgress(enrollmentCount, students, courses, callback);
+            timePhase("enrollments", () -> generateEnrollmentsBatchWithProgress(enrollmentCount, studentIds, courseIds, callback));
 
             if (callback != null) callback.updateProgress("完成", 5, 5);
 
+            dataWritten();
+
+        } catch (CancellationException e) {
+            // 已提交的批次不會回滾，讓快取與索引和資料庫保持一致
+            dataWritten();
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("生成隨機資料時發生錯誤: " + e.getMessage(), e);
         }
     }
 
+    private void dataWritten() {
+        // 資料經由 JDBC 直接寫入資料庫，Hibernate 不知道有變動，清掉二級快取
+        entityManager.getEntityManagerFactory().getCache().unwrap(org.hibernate.Cache.class).evictAllRegions();
+
+        // 通知索引與統計重新載入
+        eventPublisher.publishEvent(new DataReloadedEvent());
+    }
+
+    private static void checkCancelled(ProgressCallback callback) {
+        if (callback != null && callback.isCancelled()) {
+            throw new CancellationException("資料產生已取消");
+        }
+    }
+
     // 保持舊版本方法的兼容性
     public void generateRandomData(int studentCount, int teacherCount, int courseCount, int enrollmentCount) {
         generateRandomData(studentCount, teacherCount, courseCount, enrollmentCount, null);
     }
 
-    private List<Student> generateStudents(int count) {
+    // 記錄一個階段的耗時 (data.generator.phase) 與每秒寫入筆數 (data.generator.throughput)，work 回傳寫入筆數
+    private long timePhase(String phase, Supplier<Long> work) {
+        long start = System.nanoTime();
+        long rows = work.get();
+        long elapsed = System.nanoTime() - start;
+
+        Timer.builder("data.generator.phase")
+                .description("資料產生各階段耗時")
+                .tag("phase", phase)
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        if (rows > 0) {
+            DistributionSummary.builder("data.generator.throughput")
+                    .description("資料產生各階段每秒寫入筆數")
+                    .baseUnit("rows/s")
+                    .tag("phase", phase)
+                    .register(meterRegistry)
+                    .record(rows * 1_000_000_000.0 / Math.max(elapsed, 1));
+        }
+        return rows;
+    }
+
+    private int[] generateStudents(int count, ProgressCallback callback) {
         if (count > 1000) {
-            // 對於大量資料，使用批量SQL插入
-            return generateStudentsBatch(count);
+            // 對於大量資料，使用JDBC批次寫入
+            return generateStudentsBatch(count, callback);
         }
         
         List<Student> students = new ArrayList<>();
-        Set<String> usedEmails = new HashSet<>();
+        BloomFilter usedEmails = new BloomFilter(count, USED_EMAIL_FALSE_POSITIVE_RATE);
 
         for (int i = 0; i < count; i++) {
             Student student = new Student();
@@ -104,12 +194,7 @@ public class DataGeneratorService {
             student.setLastName(lastName);
 
             // 唯一的email
-            String email;
-            do {
-                email = englishFaker.internet().emailAddress();
-            } while (usedEmails.contains(email));
-            usedEmails.add(email);
-            student.setEmail(email);
+            student.setEmail(uniqueEmail(usedEmails, ChangeTracker.Table.STUDENT));
 
             // 使用Faker生成隨機生日 (18-25歲)
             LocalDate birthDate = faker.date().birthday(18, 25).toInstant()
@@ -119,51 +204,54 @@ public class DataGeneratorService {
             students.add(student);
         }
 
-        return students;
+        timePhase("students", () -> (long) studentRepository.saveAll(students).size());
+        return students.stream()
+                .mapToInt(Student::getStudentId)
+                .toArray();
     }
 
-    private List<Student> generateStudentsBatch(int count) {
-        // 使用原生SQL批量插入，提升效率
-        StringBuilder sql = new StringBuilder("INSERT INTO Student (first_name, last_name, email, date_of_birth) VALUES ");
-        List<Object> parameters = new ArrayList<>();
-        Set<String> usedEmails = new HashSet<>();
-        
-        for (int i = 0; i < count; i++) {
-            String firstName = faker.name().firstName();
-            String lastName = faker.name().lastName();
-            
-            String email;
-            do {
-                email = englishFaker.internet().emailAddress();
-            } while (usedEmails.contains(email));
-            usedEmails.add(email);
-            
-            LocalDate birthDate = faker.date().birthday(18, 25).toInstant()
-                    .atZone(ZoneId.systemDefault()).toLocalDate();
-            
-            if (i > 0) sql.append(", ");
-            sql.append("(?, ?, ?, ?)");
-            
-            parameters.add(firstName);
-            parameters.add(lastName);
-            parameters.add(email);
-            parameters.add(birthDate.toString());
-        }
-        
-        // 執行批量插入
-        var query = entityManager.createNativeQuery(sql.toString());
-        for (int i = 0; i < parameters.size(); i++) {
-            query.setParameter(i + 1, parameters.get(i));
-        }
-        query.executeUpdate();
-        
-        // 返回插入的學生列表（從資料庫重新讀取）
-        return studentRepository.findAll();
+    private record StudentRow(String firstName, String lastName, String email, String birthday) {
+    }
+
+    private record EnrollmentRow(int studentId, int courseId, Date enrollmentDate) {
+    }
+
+    private int[] generateStudentsBatch(int count, ProgressCallback callback) {
+        // 生產者產生學生資料，JDBC batch 分批寫入，不在記憶體中保留全部資料
+        timePhase("students", () -> batchInsertPipeline.<StudentRow>run(
+                "INSERT INTO Student (first_name, last_name, email, date_of_birth) VALUES (?, ?, ?, ?)",
+                sink -> {
+                    BloomFilter usedEmails = new BloomFilter(count, USED_EMAIL_FALSE_POSITIVE_RATE);
+                    for (int i = 0; i < count; i++) {
+                        checkCancelled(callback);
+                        String firstName = faker.name().firstName();
+                        String lastName = faker.name().lastName();
+
+                        String email = uniqueEmail(usedEmails, ChangeTracker.Table.STUDENT);
+
+                        LocalDate birthDate = faker.date().birthday(18, 25).toInstant()
+                                .atZone(ZoneId.systemDefault()).toLocalDate();
+
+                        sink.accept(new StudentRow(firstName, lastName, email, birthDate.toString()));
+                    }
+                },
+                (statement, row) -> {
+                    statement.setString(1, row.firstName());
+                    statement.setString(2, row.lastName());
+                    statement.setString(3, row.email());
+                    statement.setString(4, row.birthday());
+                },
+                written -> {
+                    if (callback != null) callback.updateRows(written, count);
+                }));
+
+        // 寫入前已清空資料表，表中的ID都是這次產生的
+        return batchInsertPipeline.queryIds("SELECT student_id FROM Student ORDER BY student_id");
     }
 
     private List<Teacher> generateTeachers(int count) {
         List<Teacher> teachers = new ArrayList<>();
-        Set<String> usedEmails = new HashSet<>();
+        BloomFilter usedEmails = new BloomFilter(count, USED_EMAIL_FALSE_POSITIVE_RATE);
 
         for (int i = 0; i < count; i++) {
             Teacher teacher = new Teacher();
@@ -173,12 +261,7 @@ public class DataGeneratorService {
             teacher.setName(name);
 
             // 唯一的email
-            String email;
-            do {
-                email = englishFaker.internet().emailAddress();
-            } while (usedEmails.contains(email));
-            usedEmails.add(email);
-            teacher.setEmail(email);
+            teacher.setEmail(uniqueEmail(usedEmails, ChangeTracker.Table.TEACHER));
 
             // 隨機年齡 (30-65歲)
             teacher.setAge(faker.number().numberBetween(30, 66));
@@ -189,6 +272,22 @@ public class DataGeneratorService {
         return teachers;
     }
 
+    /**
+     * 產生這次沒用過的 Email。用過的 Email 記在 Bloom filter 中 (每筆約 1 byte，不保留字串)，
+     * 誤判只會讓少數可用的 Email 被跳過，不會產生重複；寫入前先加入 Email 索引，資料產生期間的查詢不會漏掉。
+     */
+    private String uniqueEmail(BloomFilter usedEmails, ChangeTracker.Table table) {
+        String email;
+        String key;
+        do {
+            email = englishFaker.internet().emailAddress();
+            key = email.toLowerCase(Locale.ROOT);
+        } while (usedEmails.mightContain(key));
+        usedEmails.put(key);
+        emailIndexService.add(table, email);
+        return email;
+    }
+
     private List<Course> generateCourses(int count, List<Teacher> teachers) {
         List<Course> courses = new ArrayList<>();
         // 直接讀取指定數量的課程，避免讀取全部資料
@@ -235,210 +334,129 @@ public class DataGeneratorService {
         return courses;
     }
 
-    private void generateEnrollments(int count, List<Student> students, List<Course> courses) {
-        if (students.isEmpty() || courses.isEmpty()) {
+    private void generateEnrollments(int count, int[] studentIds, int[] courseIds) {
+        if (studentIds.length == 0 || courseIds.length == 0) {
             return;
         }
 
-        Set<String> enrollmentPairs = new HashSet<>();
-        
-        for (int i = 0; i < count; i++) {
-            Student randomStudent = students.get(faker.number().numberBetween(0, students.size()));
-            Course randomCourse = courses.get(faker.number().numberBetween(0, courses.size()));
-            
-            String enrollmentKey = randomStudent.getStudentId() + "-" + randomCourse.getCourseId();
-            
-            // 避免重複選課
-            if (enrollmentPairs.contains(enrollmentKey)) {
-                continue;
-            }
-            enrollmentPairs.add(enrollmentKey);
+        transactionTemplate.executeWithoutResult(status -> {
+            IntPairSet enrollmentPairs = new IntPairSet(count);
 
-            Enrollment enrollment = new Enrollment();
-            EnrollmentId enrollmentId = new EnrollmentId();
-            enrollmentId.setStudentId(randomStudent.getStudentId());
-            enrollmentId.setCourseId(randomCourse.getCourseId());
-            
-            enrollment.setId(enrollmentId);
-            enrollment.setStudent(randomStudent);
-            enrollment.setCourse(randomCourse);
-            
-            // 使用Faker生成隨機選課日期 (過去一年內)
-            LocalDate enrollmentDate = faker.date().past(365, java.util.concurrent.TimeUnit.DAYS)
-                    .toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-            enrollment.setEnrollmentDate(Date.valueOf(enrollmentDate));
+            for (int i = 0; i < count; i++) {
+                int studentId = studentIds[faker.number().numberBetween(0, studentIds.length)];
+                int courseId = courseIds[faker.number().numberBetween(0, courseIds.length)];
 
-            enrollmentRepository.save(enrollment);
-        }
+                // 避免重複選課
+                if (!enrollmentPairs.add(studentId, courseId)) {
+                    continue;
+                }
+
+                enrollmentRepository.save(newEnrollment(studentId, courseId));
+            }
+        });
     }
 
-    private void generateEnrollmentsBatch(int count, List<Student> students, List<Course> courses) {
-        if (students.isEmpty() || courses.isEmpty()) {
-            return;
+    // 回傳實際寫入的筆數 (重複的組合會被略過)
+    private long generateEnrollmentsBatch(int count, int[] studentIds, int[] courseIds) {
+        if (studentIds.length == 0 || courseIds.length == 0) {
+            return 0;
         }
 
         if (count > 5000) {
-            // 對於大量選課資料，使用SQL批量插入
-            generateEnrollmentsSQLBatch(count, students, courses);
-            return;
+            // 對於大量選課資料，使用JDBC批次寫入
+            return generateEnrollmentsSQLBatch(count, studentIds, courseIds, null);
         }
 
-        Set<String> enrollmentPairs = new HashSet<>();
-        List<Enrollment> enrollments = new ArrayList<>();
-        int batchSize = 1000; // 批次大小
-        
-        for (int i = 0; i < count; i++) {
-            Student randomStudent = students.get(faker.number().numberBetween(0, students.size()));
-            Course randomCourse = courses.get(faker.number().numberBetween(0, courses.size()));
-            
-            String enrollmentKey = randomStudent.getStudentId() + "-" + randomCourse.getCourseId();
-            
-            // 避免重複選課
-            if (enrollmentPairs.contains(enrollmentKey)) {
-                continue;
-            }
-            enrollmentPairs.add(enrollmentKey);
+        return transactionTemplate.execute(status -> {
+            IntPairSet enrollmentPairs = new IntPairSet(count);
+            List<Enrollment> enrollments = new ArrayList<>();
+            int batchSize = 1000; // 批次大小
 
-            Enrollment enrollment = new Enrollment();
-            EnrollmentId enrollmentId = new EnrollmentId();
-            enrollmentId.setStudentId(randomStudent.getStudentId());
-            enrollmentId.setCourseId(randomCourse.getCourseId());
-            
-            enrollment.setId(enrollmentId);
-            enrollment.setStudent(randomStudent);
-            enrollment.setCourse(randomCourse);
-            
-            // 使用Faker生成隨機選課日期 (過去一年內)
-            LocalDate enrollmentDate = faker.date().past(365, java.util.concurrent.TimeUnit.DAYS)
-                    .toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-            enrollment.setEnrollmentDate(Date.valueOf(enrollmentDate));
+            for (int i = 0; i < count; i++) {
+                int studentId = studentIds[faker.number().numberBetween(0, studentIds.length)];
+                int courseId = courseIds[faker.number().numberBetween(0, courseIds.length)];
 
-            enrollments.add(enrollment);
-            
-            // 批次儲存
-            if (enrollments.size() >= batchSize) {
-                enrollmentRepository.saveAll(enrollments);
-                enrollments.clear();
-            }
-        }
-        
-        // 儲存剩餘的資料
-        if (!enrollments.isEmpty()) {
-            enrollmentRepository.saveAll(enrollments);
-        }
-    }
-
-    private void generateEnrollmentsSQLBatch(int count, List<Student> students, List<Course> courses) {
-        Set<String> enrollmentPairs = new HashSet<>();
-        final int MEGA_BATCH_SIZE = 10000; // 每批10,000筆，避免記憶體問題
-        int processed = 0;
-        int attemptCount = 0;
-        
-        while (processed < count && attemptCount < count * 2) { // 防止無限迴圈
-            StringBuilder sql = new StringBuilder("INSERT INTO Enrollment (student_id, course_id, enrollment_date) VALUES ");
-            List<Object> parameters = new ArrayList<>();
-            int batchCount = 0;
-            
-            for (int i = 0; i < MEGA_BATCH_SIZE && processed < count && attemptCount < count * 2; i++, attemptCount++) {
-                Student randomStudent = students.get(faker.number().numberBetween(0, students.size()));
-                Course randomCourse = courses.get(faker.number().numberBetween(0, courses.size()));
-                
-                String enrollmentKey = randomStudent.getStudentId() + "-" + randomCourse.getCourseId();
-                
                 // 避免重複選課
-                if (enrollmentPairs.contains(enrollmentKey)) {
+                if (!enrollmentPairs.add(studentId, courseId)) {
                     continue;
                 }
-                enrollmentPairs.add(enrollmentKey);
-                
-                LocalDate enrollmentDate = faker.date().past(365, java.util.concurrent.TimeUnit.DAYS)
-                        .toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                
-                if (batchCount > 0) sql.append(", ");
-                sql.append("(?, ?, ?)");
-                
-                parameters.add(randomStudent.getStudentId());
-                parameters.add(randomCourse.getCourseId());
-                parameters.add(Date.valueOf(enrollmentDate));
-                batchCount++;
-                processed++;
-            }
-            
-            if (batchCount > 0) {
-                var query = entityManager.createNativeQuery(sql.toString());
-                for (int i = 0; i < parameters.size(); i++) {
-                    query.setParameter(i + 1, parameters.get(i));
-                }
-                query.executeUpdate();
-                
-                // 定期清理快取避免記憶體堆積
-                if (processed % 50000 == 0) {
-                    entityManager.flush();
-                    entityManager.clear();
+
+                enrollments.add(newEnrollment(studentId, courseId));
+
+                // 批次儲存
+                if (enrollments.size() >= batchSize) {
+                    enrollmentRepository.saveAll(enrollments);
+                    enrollments.clear();
                 }
             }
-        }
+
+            // 儲存剩餘的資料
+            if (!enrollments.isEmpty()) {
+                enrollmentRepository.saveAll(enrollments);
+            }
+            return (long) enrollmentPairs.size();
+        });
+    }
+
+    private long generateEnrollmentsSQLBatch(int count, int[] studentIds, int[] courseIds, ProgressCallback callback) {
+        // 生產者產生不重複的選課組合，JDBC batch 分批寫入並每 COMMIT_SIZE 筆提交一次
+        return batchInsertPipeline.<EnrollmentRow>run(
+                "INSERT INTO Enrollment (student_id, course_id, enrollment_date) VALUES (?, ?, ?)",
+                sink -> {
+                    IntPairSet enrollmentPairs = new IntPairSet(count);
+                    int processed = 0;
+                    int attemptCount = 0;
+
+                    while (processed < count && attemptCount < count * 2) { // 防止無限迴圈
+                        checkCancelled(callback);
+                        attemptCount++;
+                        int studentId = studentIds[faker.number().numberBetween(0, studentIds.length)];
+                        int courseId = courseIds[faker.number().numberBetween(0, courseIds.length)];
+
+                        // 避免重複選課
+                        if (!enrollmentPairs.add(studentId, courseId)) {
+                            continue;
+                        }
+
+                        sink.accept(new EnrollmentRow(studentId, courseId, randomEnrollmentDate()));
+                        processed++;
+                    }
+                },
+                (statement, row) -> {
+                    statement.setInt(1, row.studentId());
+                    statement.setInt(2, row.courseId());
+                    statement.setDate(3, row.enrollmentDate());
+                },
+                written -> {
+                    // 詳細進度回報
+                    if (callback != null) {
+                        callback.updateRows(written, count);
+                        callback.updateProgress(String.format("生成選課資料 (%d/%d)", written, count), 4, 5);
+                    }
+                });
     }
 
-    private void generateEnrollmentsBatchWithProgress(int count, List<Student> students, List<Course> courses, ProgressCallback callback) {
+    private long generateEnrollmentsBatchWithProgress(int count, int[] studentIds, int[] courseIds, ProgressCallback callback) {
         if (count <= 5000) {
-            generateEnrollmentsBatch(count, students, courses);
-            return;
-        }
-        
-        Set<String> enrollmentPairs = new HashSet<>();
-        final int MEGA_BATCH_SIZE = 10000;
-        int processed = 0;
-        int attemptCount = 0;
-        
-        while (processed < count && attemptCount < count * 2) {
-            StringBuilder sql = new StringBuilder("INSERT INTO Enrollment (student_id, course_id, enrollment_date) VALUES ");
-            List<Object> parameters = new ArrayList<>();
-            int batchCount = 0;
-            
-            for (int i = 0; i < MEGA_BATCH_SIZE && processed < count && attemptCount < count * 2; i++, attemptCount++) {
-                Student randomStudent = students.get(faker.number().numberBetween(0, students.size()));
-                Course randomCourse = courses.get(faker.number().numberBetween(0, courses.size()));
-                
-                String enrollmentKey = randomStudent.getStudentId() + "-" + randomCourse.getCourseId();
-                
-                if (enrollmentPairs.contains(enrollmentKey)) {
-                    continue;
-                }
-                enrollmentPairs.add(enrollmentKey);
-                
-                LocalDate enrollmentDate = faker.date().past(365, java.util.concurrent.TimeUnit.DAYS)
-                        .toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                
-                if (batchCount > 0) sql.append(", ");
-                sql.append("(?, ?, ?)");
-                
-                parameters.add(randomStudent.getStudentId());
-                parameters.add(randomCourse.getCourseId());
-                parameters.add(Date.valueOf(enrollmentDate));
-                batchCount++;
-                processed++;
-            }
-            
-            if (batchCount > 0) {
-                var query = entityManager.createNativeQuery(sql.toString());
-                for (int i = 0; i < parameters.size(); i++) {
-                    query.setParameter(i + 1, parameters.get(i));
-                }
-                query.executeUpdate();
-                
-                // 詳細進度回報
-                if (callback != null && processed % 50000 == 0) {
-                    int percentage = (int) (((processed * 100.0) / count) * 0.2 + 80); // 在80-100%之間
-                    callback.updateProgress(String.format("生成選課資料 (%d/%d)", processed, count), 4, 5);
-                }
-                
-                if (processed % 50000 == 0) {
-                    entityManager.flush();
-                    entityManager.clear();
-                }
-            }
+            return generateEnrollmentsBatch(count, studentIds, courseIds);
         }
+        return generateEnrollmentsSQLBatch(count, studentIds, courseIds, callback);
+    }
+
+    private Enrollment newEnrollment(int studentId, int courseId) {
+        Enrollment enrollment = new Enrollment();
+        enrollment.setId(new EnrollmentId(studentId, courseId));
+        enrollment.setStudent(entityManager.getReference(Student.class, studentId));
+        enrollment.setCourse(entityManager.getReference(Course.class, courseId));
+        enrollment.setEnrollmentDate(randomEnrollmentDate());
+        return enrollment;
+    }
+
+    // 使用Faker生成隨機選課日期 (過去一年內)
+    private Date randomEnrollmentDate() {
+        LocalDate enrollmentDate = faker.date().past(365, TimeUnit.DAYS)
+                .toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        return Date.valueOf(enrollmentDate);
     }
 
     private List<String[]> readCoursesFromCSV() {
@@ -517,6 +535,7 @@ public class DataGeneratorService {
             
             // 清除Hibernate的一級快取
             entityManager.clear();
+            eventPublisher.publishEvent(new DataReloadedEvent());
         } catch (Exception e) {
             try {
                 // 如果TRUNCATE失敗，回退到DELETE
@@ -529,6 +548,7 @@ public class DataGeneratorService {
                 
                 entityManager.createNativeQuery("SET FOREIGN_KEY_CHECKS = 1").executeUpdate();
                 entityManager.clear();
+                eventPublisher.publishEvent(new DataReloadedEvent());
             } catch (Exception fallbackException) {
                 throw new RuntimeException("清除資料失敗: " + fallbackException.getMessage(), fallbackException);
             }
@@ -0,0 +1,244 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.collection.BloomFilter;
+import fcu.pbiecs.spring_demo.etag.ChangeTracker.Table;
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.jdbc.ReadWriteRoutingDataSource;
+import fcu.pbiecs.spring_demo.repository.StudentRepository;
+import fcu.pbiecs.spring_demo.repository.TeacherRepository;
+import fcu.pbiecs.spring_demo.transaction.TransactionCallbacks;
+import org.springframework.beans.factory.annotation.Autowired;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 學生與教師 Email 的查詢前置索引：每張表一個 Bloom filter 與一個 Email → ID 的快取。
+ * <p>
+ * Bloom filter 包含資料庫中所有已提交的 Email (不分大小寫)，{@link #mightExist} 回傳 false 時不需要查詢；
+ * 寫入在交易提交前就加入，提交後再加入一次，重建期間提交的寫入也不會漏掉。刪除或改掉的 Email 無法移除，
+ * 只會增加誤判，加入筆數超過建立時的預計筆數後，下一次寫入提交時交給背景執行緒重建，不佔用請求的執行緒。
+ * 啟動完成與資料重新載入後以串流查詢重建。重建以 {@link ReentrantLock} 互斥而不是 synchronized，
+ * 掃描資料表期間 virtual thread 不會卡住載體執行緒。
+ * <p>
+ * 快取只存查詢命中的 Email，呼叫端依 ID 載入實體後必須確認 Email 仍相同，不同時 {@link #evict} 後改查資料庫。
+ * 索引尚未建立時 {@link #mightExist} 一律回傳 true。
+ */
+@Service
+public class EmailIndexService {
+
+    // 重建時預留的空間，資料量增加一倍前不需要再重建
+    private static final double HEADROOM = 2.0;
+    private static final long MIN_EXPECTED = 10_000;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.email-index.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${app.email-index.cache-size:10000}")
+    private int cacheSize;
+
+    private final Map<Table, Index> indexes = new EnumMap<>(Table.class);
+
+    // 已滿時的重建在這條執行緒上進行
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("email-index-"));
+
+    private static class Index {
+        volatile BloomFilter filter;
+        // 重建中的 filter，期間的寫入兩邊都加入
+        volatile BloomFilter building;
+        final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        final ReentrantLock rebuildLock = new ReentrantLock();
+        // 已排入背景重建，同時有多筆寫入發現已滿時只排一次
+        final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    }
+
+    public EmailIndexService() {
+        indexes.put(Table.STUDENT, new Index());
+        indexes.put(Table.TEACHER, new Index());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildAll() {
+        rebuild(Table.STUDENT);
+        rebuild(Table.TEACHER);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDataReloaded(DataReloadedEvent event) {
+        // 資料剛寫入，replica 可能還沒同步，從 primary 重建
+        ReadWriteRoutingDataSource.onPrimary(this::rebuildAll);
+    }
+
+    /**
+     * 這個 Email 是否可能存在；回傳 false 時資料庫中一定沒有。
+     */
+    public boolean mightExist(Table table, String email) {
+        if (email == null) {
+            return false;
+        }
+        BloomFilter filter = index(table).filter;
+        return filter == null || filter.mightContain(key(email));
+    }
+
+    public Integer cachedId(Table table, String email) {
+        return email == null ? null : index(table).ids.get(email);
+    }
+
+    public void cache(Table table, String email, Integer id) {
+        if (email == null || id == null) {
+            return;
+        }
+        Map<String, Integer> ids = index(table).ids;
+        if (ids.size() >= cacheSize) {
+            ids.clear();
+        }
+        ids.put(email, id);
+    }
+
+    public void evict(Table table, String email) {
+        if (email != null) {
+            index(table).ids.remove(email);
+        }
+    }
+
+    /**
+     * 新增或修改資料時呼叫；oldEmail 為修改前的 Email (新增時為 null)。
+     */
+    public void saved(Table table, String oldEmail, String email) {
+        add(table, email);
+        TransactionCallbacks.afterCommit(() -> {
+            add(table, email);
+            if (oldEmail != null && !oldEmail.equals(email)) {
+                evict(table, oldEmail);
+            }
+            BloomFilter filter = index(table).filter;
+            if (filter != null && filter.isSaturated()) {
+                scheduleRebuild(table);
+            }
+        });
+    }
+
+    public void removed(Table table, String email) {
+        TransactionCallbacks.afterCommit(() -> evict(table, email));
+    }
+
+    /**
+     * 將 Email 加入 Bloom filter，給以 JDBC 直接寫入的匯入與資料產生使用 (在寫入前呼叫)。
+     */
+    public void add(Table table, String email) {
+        if (email == null) {
+            return;
+        }
+        Index index = index(table);
+        String key = key(email);
+        // 先讀 building 再讀 filter：重建完成時先換上新的 filter 才清掉 building，兩個都讀到舊值的情況不會發生
+        BloomFilter building = index.building;
+        if (building != null) {
+            building.put(key);
+        }
+        BloomFilter filter = index.filter;
+        if (filter != null) {
+            filter.put(key);
+        }
+    }
+
+    private void scheduleRebuild(Table table) {
+        Index index = index(table);
+        if (!index.rebuildScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        // 重建失敗時 filter 仍是滿的，下一次寫入會再排一次
+        rebuildExecutor.execute(() -> {
+            index.rebuildScheduled.set(false);
+            ReadWriteRoutingDataSource.onPrimary(() -> rebuildIfSaturated(table));
+        });
+    }
+
+    private void rebuildIfSaturated(Table table) {
+        Index index = index(table);
+        index.rebuildLock.lock();
+        try {
+            // 排隊期間可能已經因為重新載入而重建過
+            if (index.filter.isSaturated()) {
+                rebuild(table);
+            }
+        } finally {
+            index.rebuildLock.unlock();
+        }
+    }
+
+    private void rebuild(Table table) {
+        Index index = index(table);
+        index.rebuildLock.lock();
+        try {
+            Supplier<Stream<String>> emails = table == Table.STUDENT ? studentRepository::streamEmails : teacherRepository::streamEmails;
+            Supplier<Long> counter = table == Table.STUDENT ? studentRepository::count : teacherRepository::count;
+
+            // 在事件的交易提交後呼叫時，不能加入已經結束的交易
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            transaction.setReadOnly(true);
+
+            long expected = transaction.execute(status -> counter.get());
+            BloomFilter filter = new BloomFilter(Math.max(MIN_EXPECTED, (long) (expected * HEADROOM)), falsePositiveRate);
+            index.building = filter;
+            try {
+                transaction.executeWithoutResult(status -> {
+                    try (Stream<String> rows = emails.get()) {
+                        rows.forEach(email -> filter.put(key(email)));
+                    }
+                });
+                index.filter = filter;
+                index.ids.clear();
+            } finally {
+                index.building = null;
+            }
+        } finally {
+            index.rebuildLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        rebuildExecutor.shutdown();
+    }
+
+    private Index index(Table table) {
+        Index index = indexes.get(table);
+        if (index == null) {
+            throw new IllegalArgumentException("No email index for " + table);
+        }
+        return index;
+    }
+
+    private static String key(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,174 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.dto.CreditsDistributionDTO;
+import fcu.pbiecs.spring_demo.dto.EnrollmentTrendDTO;
+import fcu.pbiecs.spring_demo.dto.RollupRebuildDTO;
+import fcu.pbiecs.spring_demo.dto.TeacherLoadDTO;
+import fcu.pbiecs.spring_demo.etag.ChangeTracker;
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.repository.EnrollmentRepository;
+import fcu.pbiecs.spring_demo.repository.EnrollmentRollupRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 每日選課彙總 (EnrollmentDailyCount) 的維護與查詢。
+ * 選課的新增、刪除在同一個交易中增減彙總；JDBC 大量寫入後 (DataReloadedEvent) 與啟動時彙總表為空時，
+ * 從 Enrollment 重新彙總。趨勢、教師負擔與學分分布都只查彙總表。
+ */
+@Service
+public class EnrollmentRollupService {
+
+    // 趨勢查詢的最大日期範圍
+    public static final int MAX_TREND_DAYS = 3660;
+
+    // 未指定日期範圍時涵蓋全部 (MariaDB DATE 的範圍)
+    private static final LocalDate EARLIEST = LocalDate.of(1000, 1, 1);
+    private static final LocalDate LATEST = LocalDate.of(9999, 12, 31);
+
+    @Autowired
+    private EnrollmentRollupRepository rollupRepository;
+
+    @Autowired
+    private EnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private ChangeTracker changeTracker;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void rebuildIfEmpty() {
+        if (rollupRepository.isEmpty() && enrollmentRepository.count() > 0) {
+            rollupRepository.rebuild();
+        }
+    }
+
+    // 排在 ChangeTracker 之前，彙總重建完才換 ETag
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Order(0)
+    public void onDataReloaded(DataReloadedEvent event) {
+        rollupRepository.rebuild();
+    }
+
+    /**
+     * 從 Enrollment 重新彙總。會短暫鎖住彙總表，同時進行的選課寫入會等待，建議在寫入量低時執行。
+     */
+    @Transactional
+    public RollupRebuildDTO rebuild() {
+        long start = System.nanoTime();
+        long rows = rollupRepository.rebuild();
+        changeTracker.changed(ChangeTracker.Table.ENROLLMENT);
+        return new RollupRebuildDTO(rows, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public void enrollmentAdded(int courseId, Date enrollmentDate) {
+        if (enrollmentDate != null) {
+            rollupRepository.add(enrollmentDate.toLocalDate(), courseId, 1);
+        }
+    }
+
+    public void enrollmentsAdded(LocalDate enrollmentDate, Map<Integer, Long> countByCourse) {
+        if (!countByCourse.isEmpty()) {
+            rollupRepository.addAll(enrollmentDate, countByCourse);
+        }
+    }
+
+    public void enrollmentsRemoved(LocalDate enrollmentDate, Map<Integer, Long> countByCourse) {
+        if (!countByCourse.isEmpty()) {
+            Map<Integer, Long> deltas = new HashMap<>();
+            countByCourse.forEach((courseId, count) -> deltas.put(courseId, -count));
+            rollupRepository.addAll(enrollmentDate, deltas);
+        }
+    }
+
+    public void enrollmentRemoved(int courseId, Date enrollmentDate) {
+        if (enrollmentDate != null) {
+            rollupRepository.add(enrollmentDate.toLocalDate(), courseId, -1);
+        }
+    }
+
+    // 需在刪除學生之前、同一個交易中呼叫
+    public void studentRemoving(int studentId) {
+        rollupRepository.removeStudent(studentId);
+    }
+
+    // 批次刪除學生用，需在刪除選課之前、同一個交易中呼叫
+    public void studentsRemoving(Collection<Integer> studentIds) {
+        if (!studentIds.isEmpty()) {
+            rollupRepository.removeStudents(studentIds);
+        }
+    }
+
+    // 需在課程或教師的刪除 flush 之後、同一個交易中呼叫；刪除會經由 cascade 波及其他課程，所以不只清單一課程
+    public void coursesRemoved() {
+        rollupRepository.removeOrphans();
+    }
+
+    // 每日選課人數，沒有選課的日子補 0
+    @Transactional(readOnly = true)
+    public List<EnrollmentTrendDTO> getDailyTrend(LocalDate from, LocalDate to, Integer courseId) {
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new IllegalArgumentException("Invalid date range");
+        }
+        long days = ChronoUnit.DAYS.between(from, to) + 1;
+        if (days > MAX_TREND_DAYS) {
+            throw new IllegalArgumentException("Date range must be at most " + MAX_TREND_DAYS + " days");
+        }
+        List<EnrollmentTrendDTO> rows = courseId == null
+                ? rollupRepository.findDailyTrend(from, to)
+                : rollupRepository.findDailyTrend(from, to, courseId);
+
+        List<EnrollmentTrendDTO> result = new ArrayList<>((int) days);
+        int next = 0;
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            if (next < rows.size() && rows.get(next).getDate().equals(date)) {
+                result.add(rows.get(next++));
+            } else {
+                result.add(new EnrollmentTrendDTO(date, 0));
+            }
+        }
+        return result;
+    }
+
+    @Transactional(readOnly = true)
+    public List<TeacherLoadDTO> getTeacherLoad(LocalDate from, LocalDate to) {
+        checkRange(from, to);
+        return rollupRepository.findTeacherLoad(orEarliest(from), orLatest(to));
+    }
+
+    @Transactional(readOnly = true)
+    public List<CreditsDistributionDTO> getCreditsDistribution(LocalDate from, LocalDate to) {
+        checkRange(from, to);
+        return rollupRepository.findCreditsDistribution(orEarliest(from), orLatest(to));
+    }
+
+    private static void checkRange(LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("Invalid date range");
+        }
+    }
+
+    private static LocalDate orEarliest(LocalDate date) {
+        return date == null ? EARLIEST : date;
+    }
+
+    private static LocalDate orLatest(LocalDate date) {
+        return date == null ? LATEST : date;
+    }
+}
@@ -1,22 +1,47 @@
 package fcu.pbiecs.spring_demo.service;
 
+import fcu.pbiecs.spring_demo.dto.BulkEnrollmentResultDTO;
 import fcu.pbiecs.spring_demo.dto.CourseEnrollmentDTO;
+import fcu.pbiecs.spring_demo.dto.EnrollmentPairDTO;
 import fcu.pbiecs.spring_demo.dto.PopularCourseDTO;
 import fcu.pbiecs.spring_demo.dto.StudentEnrollmentDTO;
-import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.etag.ChangeTracker;
 import fcu.pbiecs.spring_demo.model.Enrollment;
 import fcu.pbiecs.spring_demo.model.EnrollmentId;
-import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.pagination.CursorPage;
+import fcu.pbiecs.spring_demo.pagination.PageCursor;
+import fcu.pbiecs.spring_demo.pagination.TotalCountCache;
+import fcu.pbiecs.spring_demo.pagination.TotalMode;
+import fcu.pbiecs.spring_demo.repository.CourseRepository;
+import fcu.pbiecs.spring_demo.repository.EnrollmentJdbcRepository;
 import fcu.pbiecs.spring_demo.repository.EnrollmentRepository;
-import fcu.pbiecs.spring_demo.service.CourseService;
+import fcu.pbiecs.spring_demo.repository.StudentRepository;
+import fcu.pbiecs.spring_demo.transaction.TransactionCallbacks;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.Savepoint;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 
 @Service
@@ -34,132 +59,334 @@ public class EnrollmentService {
         }
     }
 
+    public static class CourseFullException extends Exception {
+        public CourseFullException(String m) {
+            super(m);
+        }
+    }
+
+    @Autowired
+    private EntityStreamer entityStreamer;
+
     @Autowired
     private EnrollmentRepository enrollmentRepository;
 
     @Autowired
-    private CourseService courseService;
+    private EnrollmentJdbcRepository enrollmentJdbcRepository;
+
+    @Autowired
+    private PopularCourseService popularCourseService;
+
+    @Autowired
+    private EnrollmentRollupService enrollmentRollupService;
+
+    @Autowired
+    private CourseSeatService courseSeatService;
+
+    @Autowired
+    private ChangeTracker changeTracker;
+
+    @Autowired
+    private TotalCountCache totalCountCache;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 單次批次選課的上限，以及 IN 查詢每批的ID數量
+    public static final int MAX_BULK_ENROLLMENTS = 10_000;
+    private static final int IN_CLAUSE_SIZE = 1000;
+
+    @Transactional(readOnly = true)
     public List<Enrollment> getAllEnrollment(){
         return enrollmentRepository.findAll();
     }
 
+    // 以 forward-only cursor 逐筆處理全部資料，不會一次載入整張表
+    public void forEachEnrollment(Consumer<Enrollment> action) {
+        entityStreamer.forEach(enrollmentRepository::streamAll, action);
+    }
+
+    @Transactional(readOnly = true)
     public Page<Enrollment> getAllEnrollment(int pageNumber, int pageSize) {
         Pageable pageable = PageRequest.of(pageNumber, pageSize);
         return enrollmentRepository.findAll(pageable);
     }
 
-    public Enrollment addEnrollment(Enrollment enrollment) throws EnrollmentAlreadyExistsException {
-        if (enrollmentRepository.existsById(enrollment.getId())) {
-            throw new EnrollmentAlreadyExistsException("Enrollment already exists with id: " + enrollment.getId().getStudentId() + ", " + enrollment.getId().getCourseId());
+    // 先保留名額 (額滿時不存取資料庫)，再直接 INSERT 由主鍵判斷重複，不會有先查詢再寫入的競爭；
+    // 兩種例外都回滾交易，保留的名額隨之歸還。彙總表的增減放在最後且分散到多個 bucket 列，同一門課程的選課很少互相等待
+    @Transactional(rollbackFor = {EnrollmentAlreadyExistsException.class, CourseFullException.class})
+    public Enrollment addEnrollment(Enrollment enrollment) throws EnrollmentAlreadyExistsException, CourseFullException {
+        EnrollmentId id = enrollment.getId();
+        if (!courseSeatService.reserve(id.getCourseId())) {
+            throw new CourseFullException("Course is full: " + id.getCourseId());
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO Enrollment (student_id, course_id, enrollment_date) VALUES (?, ?, ?)",
+                    id.getStudentId(), id.getCourseId(), enrollment.getEnrollmentDate());
+        } catch (DuplicateKeyException e) {
+            throw new EnrollmentAlreadyExistsException("Enrollment already exists with id: " + id.getStudentId() + ", " + id.getCourseId());
+        }
+        enrollmentRollupService.enrollmentAdded(id.getCourseId(), enrollment.getEnrollmentDate());
+        popularCourseService.enrollmentAdded(id.getCourseId());
+        totalCountCache.added(ChangeTracker.Table.ENROLLMENT, 1);
+        changeTracker.changed(ChangeTracker.Table.ENROLLMENT);
+        return enrollment;
+    }
+
+    // 批次選課：先以少量 IN 查詢驗證學生、課程與既有選課，再於單一交易中以 JDBC batch 寫入；
+    // 檢查之後才由其他請求新增的選課回報為 DUPLICATE，不會讓整批回滾
+    public BulkEnrollmentResultDTO addEnrollments(List<EnrollmentPairDTO> pairs) {
+        if (pairs == null || pairs.isEmpty()) {
+            throw new IllegalArgumentException("No enrollments given");
+        }
+        if (pairs.size() > MAX_BULK_ENROLLMENTS) {
+            throw new IllegalArgumentException("Too many enrollments, at most " + MAX_BULK_ENROLLMENTS + " per request");
+        }
+        for (EnrollmentPairDTO pair : pairs) {
+            if (pair == null || pair.getStudentId() == null || pair.getCourseId() == null) {
+                throw new IllegalArgumentException("studentId and courseId are required");
+            }
         }
-        return enrollmentRepository.save(enrollment);
 
+        Set<Integer> studentIds = new HashSet<>();
+        Set<Integer> courseIds = new HashSet<>();
+        for (EnrollmentPairDTO pair : pairs) {
+            studentIds.add(pair.getStudentId());
+            courseIds.add(pair.getCourseId());
+        }
+
+        List<EnrollmentId> created = new ArrayList<>();
+        // 課程ID -> 保留的名額、實際新增的選課數
+        Map<Integer, Integer> held = new HashMap<>();
+        Map<Integer, Integer> inserted = new HashMap<>();
+        List<BulkEnrollmentResultDTO.Item> results = transactionTemplate.execute(status -> {
+            Set<Integer> existingStudents = new HashSet<>();
+            forEachChunk(studentIds, chunk -> existingStudents.addAll(studentRepository.findExistingIds(chunk)));
+            Set<Integer> existingCourses = new HashSet<>();
+            forEachChunk(courseIds, chunk -> existingCourses.addAll(courseRepository.findExistingIds(chunk)));
+            Set<EnrollmentId> existingEnrollments = new HashSet<>();
+            forEachChunk(existingStudents, studentChunk ->
+                    forEachChunk(existingCourses, courseChunk ->
+                            existingEnrollments.addAll(enrollmentRepository.findExistingIds(studentChunk, courseChunk))));
+
+            List<BulkEnrollmentResultDTO.Item> items = new ArrayList<>(pairs.size());
+            for (EnrollmentPairDTO pair : pairs) {
+                EnrollmentId id = new EnrollmentId(pair.getStudentId(), pair.getCourseId());
+                BulkEnrollmentResultDTO.Status result;
+                if (!existingStudents.contains(id.getStudentId())) {
+                    result = BulkEnrollmentResultDTO.Status.UNKNOWN_STUDENT;
+                } else if (!existingCourses.contains(id.getCourseId())) {
+                    result = BulkEnrollmentResultDTO.Status.UNKNOWN_COURSE;
+                } else if (existingEnrollments.contains(id)) {
+                    // 已經選過，或同一個請求中重複出現
+                    result = BulkEnrollmentResultDTO.Status.DUPLICATE;
+                } else if (!courseSeatService.hold(id.getCourseId())) {
+                    result = BulkEnrollmentResultDTO.Status.COURSE_FULL;
+                } else {
+                    held.merge(id.getCourseId(), 1, Integer::sum);
+                    existingEnrollments.add(id);
+                    result = BulkEnrollmentResultDTO.Status.CREATED;
+                    created.add(id);
+                }
+                items.add(new BulkEnrollmentResultDTO.Item(id.getStudentId(), id.getCourseId(), result));
+            }
+            // 保留的名額在提交後依實際新增的筆數結算，重複而沒有新增的選課只歸還保留；回滾時全部歸還
+            TransactionCallbacks.afterCommit(() -> held.forEach((courseId, count) ->
+                    courseSeatService.settle(courseId, inserted.getOrDefault(courseId, 0), -count)));
+            TransactionCallbacks.afterRollback(() -> held.forEach((courseId, count) ->
+                    courseSeatService.settle(courseId, 0, -count)));
+
+            LocalDate enrollmentDate = LocalDate.now();
+            Set<EnrollmentId> duplicates = insertEnrollments(created, Date.valueOf(enrollmentDate));
+            if (!duplicates.isEmpty()) {
+                created.removeAll(duplicates);
+                for (BulkEnrollmentResultDTO.Item item : items) {
+                    if (item.getStatus() == BulkEnrollmentResultDTO.Status.CREATED
+                            && duplicates.contains(new EnrollmentId(item.getStudentId(), item.getCourseId()))) {
+                        item.setStatus(BulkEnrollmentResultDTO.Status.DUPLICATE);
+                    }
+                }
+            }
+            created.forEach(id -> inserted.merge(id.getCourseId(), 1, Integer::sum));
+            Map<Integer, Long> countByCourse = new HashMap<>();
+            created.forEach(id -> countByCourse.merge(id.getCourseId(), 1L, Long::sum));
+            enrollmentRollupService.enrollmentsAdded(enrollmentDate, countByCourse);
+            return items;
+        });
+
+        // 交易提交後才更新熱門課程統計
+        created.forEach(id -> popularCourseService.enrollmentAdded(id.getCourseId()));
+        totalCountCache.added(ChangeTracker.Table.ENROLLMENT, created.size());
+        changeTracker.changed(ChangeTracker.Table.ENROLLMENT);
+
+        BulkEnrollmentResultDTO response = new BulkEnrollmentResultDTO();
+        response.setResults(results);
+        for (BulkEnrollmentResultDTO.Item item : results) {
+            switch (item.getStatus()) {
+                case CREATED -> response.setCreated(response.getCreated() + 1);
+                case DUPLICATE -> response.setDuplicate(response.getDuplicate() + 1);
+                case UNKNOWN_STUDENT -> response.setUnknownStudent(response.getUnknownStudent() + 1);
+                case UNKNOWN_COURSE -> response.setUnknownCourse(response.getUnknownCourse() + 1);
+                case COURSE_FULL -> response.setCourseFull(response.getCourseFull() + 1);
+            }
+        }
+        return response;
     }
 
+    // 一般情況以 JDBC batch 一次寫入。檢查之後有其他交易新增了同一筆選課時回到 savepoint，改為逐筆 INSERT IGNORE，
+    // 更新筆數為 0 的就是重複的選課 (MariaDB 的 batch 可能以 bulk 協定執行，不會回報每一筆的更新筆數)；回傳重複的選課。
+    // 需在交易中呼叫；JPA 的交易不支援 savepoint，直接在交易使用的 JDBC 連線上設定
+    private Set<EnrollmentId> insertEnrollments(List<EnrollmentId> ids, Date enrollmentDate) {
+        Savepoint savepoint = jdbcTemplate.execute((ConnectionCallback<Savepoint>) Connection::setSavepoint);
+        try {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO Enrollment (student_id, course_id, enrollment_date) VALUES (?, ?, ?)",
+                    ids,
+                    IN_CLAUSE_SIZE,
+                    (statement, id) -> {
+                        statement.setInt(1, id.getStudentId());
+                        statement.setInt(2, id.getCourseId());
+                        statement.setDate(3, enrollmentDate);
+                    });
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                connection.releaseSavepoint(savepoint);
+                return null;
+            });
+            return Set.of();
+        } catch (DuplicateKeyException e) {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                connection.rollback(savepoint);
+                connection.releaseSavepoint(savepoint);
+                return null;
+            });
+        }
+        Set<EnrollmentId> duplicates = new HashSet<>();
+        for (EnrollmentId id : ids) {
+            int rows = jdbcTemplate.update("INSERT IGNORE INTO Enrollment (student_id, course_id, enrollment_date) VALUES (?, ?, ?)",
+                    id.getStudentId(), id.getCourseId(), enrollmentDate);
+            if (rows == 0) {
+                duplicates.add(id);
+            }
+        }
+        return duplicates;
+    }
+
+    private static void forEachChunk(Collection<Integer> ids, Consumer<List<Integer>> action) {
+        List<Integer> list = new ArrayList<>(ids);
+        for (int from = 0; from < list.size(); from += IN_CLAUSE_SIZE) {
+            action.accept(list.subList(from, Math.min(from + IN_CLAUSE_SIZE, list.size())));
+        }
+    }
+
+    @Transactional
     public void deleteEnrollment(Integer studentId, Integer courseId) throws EnrollmentNotfoundException {
         EnrollmentId id = new EnrollmentId(studentId, courseId);
-        if (!enrollmentRepository.existsById(id)) {
+        Enrollment enrollment = enrollmentRepository.findById(id).orElse(null);
+        if (enrollment == null) {
             throw new EnrollmentNotfoundException("Enrollment not found with studentId: " + studentId + " and courseId: " + courseId);
         }
-        enrollmentRepository.deleteById(id);
+        enrollmentRepository.delete(enrollment);
+        enrollmentRollupService.enrollmentRemoved(courseId, enrollment.getEnrollmentDate());
+        courseSeatService.released(courseId);
+        popularCourseService.enrollmentRemoved(courseId);
+        totalCountCache.removed(ChangeTracker.Table.ENROLLMENT, 1);
+        changeTracker.changed(ChangeTracker.Table.ENROLLMENT);
     }
 
+    // Keyset 分頁，依複合主鍵 (studentId, courseId) 排序，不執行 COUNT 查詢
+    @Transactional(readOnly = true)
+    public CursorPage<Enrollment> getEnrollmentsAfter(String after, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size");
+        }
+        int[] key = PageCursor.decode(after, 2);
+        List<Enrollment> rows = enrollmentRepository.findAfter(key[0], key[1], Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, row -> PageCursor.encode(row.getId().getStudentId(), row.getId().getCourseId()));
+    }
+
+    // 整份名單以原生 SQL 直接對應到 DTO，不經過 Hibernate
+    @Transactional(readOnly = true)
     public List<CourseEnrollmentDTO> getStudentEnrollments(Integer studentId) {
-        List<Enrollment> enrollments = enrollmentRepository.findByStudentId(studentId);
-
-        return enrollments.stream()
-                .map(enrollment -> {
-                    Course course = enrollment.getCourse();
-                    return new CourseEnrollmentDTO(
-                            course.getCourseId(),
-                            course.getName(),
-                            course.getDescription(),
-                            course.getCredits(),
-                            course.getTeacher(),
-                            enrollment.getEnrollmentDate()
-                    );
-                })
-                .collect(Collectors.toList());
+        return enrollmentJdbcRepository.findByStudentId(studentId);
     }
 
+    @Transactional(readOnly = true)
     public Page<CourseEnrollmentDTO> getStudentEnrollments(Integer studentId, int pageNumber, int pageSize) {
         Pageable pageable = PageRequest.of(pageNumber, pageSize);
-        Page<Enrollment> enrollmentPage = enrollmentRepository.findByStudentId(studentId, pageable);
-
-        return enrollmentPage.map(enrollment -> {
-            Course course = enrollment.getCourse();
-            return new CourseEnrollmentDTO(
-                    course.getCourseId(),
-                    course.getName(),
-                    course.getDescription(),
-                    course.getCredits(),
-                    course.getTeacher(),
-                    enrollment.getEnrollmentDate()
-            );
-        });
+        return enrollmentRepository.findByStudentId(studentId, pageable);
+    }
+
+    // total=none 時不執行 COUNT，total=approximate 時總筆數取自快取
+    @Transactional(readOnly = true)
+    public Slice<CourseEnrollmentDTO> getStudentEnrollments(Integer studentId, int pageNumber, int pageSize, TotalMode totalMode) {
+        Pageable pageable = PageRequest.of(pageNumber, pageSize);
+        return switch (totalMode) {
+            case EXACT -> enrollmentRepository.findByStudentId(studentId, pageable);
+            case NONE -> enrollmentRepository.findSliceByStudentId(studentId, pageable);
+            case APPROXIMATE -> totalCountCache.page(enrollmentRepository.findSliceByStudentId(studentId, pageable),
+                    ChangeTracker.Table.ENROLLMENT, "student:" + studentId,
+                    () -> enrollmentRepository.countByStudentId(studentId));
+        };
+    }
+
+    // Keyset 分頁，學生固定時依 courseId 排序
+    @Transactional(readOnly = true)
+    public CursorPage<CourseEnrollmentDTO> getStudentEnrollmentsAfter(Integer studentId, String after, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size");
+        }
+        int afterCourseId = PageCursor.decode(after, 1)[0];
+        List<CourseEnrollmentDTO> rows = enrollmentRepository.findByStudentIdAfter(studentId, afterCourseId, Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, row -> PageCursor.encode(row.getCourseId()));
     }
 
+    // 整份名單以原生 SQL 直接對應到 DTO，不經過 Hibernate
+    @Transactional(readOnly = true)
     public List<StudentEnrollmentDTO> getCourseEnrollments(Integer courseId) {
-        List<Enrollment> enrollments = enrollmentRepository.findByCourseId(courseId);
-
-        return enrollments.stream()
-                .map(enrollment -> {
-                    Student student = enrollment.getStudent();
-                    return new StudentEnrollmentDTO(
-                            student.getStudentId(),
-                            student.getFirstName(),
-                            student.getLastName(),
-                            student.getEmail(),
-                            student.getBirthday(),
-                            enrollment.getEnrollmentDate()
-                    );
-                })
-                .collect(Collectors.toList());
+        return enrollmentJdbcRepository.findByCourseId(courseId);
     }
 
+    @Transactional(readOnly = true)
     public Page<StudentEnrollmentDTO> getCourseEnrollments(Integer courseId, int pageNumber, int pageSize) {
         Pageable pageable = PageRequest.of(pageNumber, pageSize);
-        Page<Enrollment> enrollmentPage = enrollmentRepository.findByCourseId(courseId, pageable);
-
-        return enrollmentPage.map(enrollment -> {
-            Student student = enrollment.getStudent();
-            return new StudentEnrollmentDTO(
-                    student.getStudentId(),
-                    student.getFirstName(),
-                    student.getLastName(),
-                    student.getEmail(),
-                    student.getBirthday(),
-                    enrollment.getEnrollmentDate()
-            );
-        });
+        return enrollmentRepository.findByCourseId(courseId, pageable);
+    }
+
+    // total=none 時不執行 COUNT，total=approximate 時總筆數取自快取
+    @Transactional(readOnly = true)
+    public Slice<StudentEnrollmentDTO> getCourseEnrollments(Integer courseId, int pageNumber, int pageSize, TotalMode totalMode) {
+        Pageable pageable = PageRequest.of(pageNumber, pageSize);
+        return switch (totalMode) {
+            case EXACT -> enrollmentRepository.findByCourseId(courseId, pageable);
+            case NONE -> enrollmentRepository.findSliceByCourseId(courseId, pageable);
+            case APPROXIMATE -> totalCountCache.page(enrollmentRepository.findSliceByCourseId(courseId, pageable),
+                    ChangeTracker.Table.ENROLLMENT, "course:" + courseId,
+                    () -> enrollmentRepository.countByCourseId(courseId));
+        };
     }
 
+    // Keyset 分頁，課程固定時依 studentId 排序
+    @Transactional(readOnly = true)
+    public CursorPage<StudentEnrollmentDTO> getCourseEnrollmentsAfter(Integer courseId, String after, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size");
+        }
+        int afterStudentId = PageCursor.decode(after, 1)[0];
+        List<StudentEnrollmentDTO> rows = enrollmentRepository.findByCourseIdAfter(courseId, afterStudentId, Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, row -> PageCursor.encode(row.getStudentId()));
+    }
+
+    @Transactional(readOnly = true)
     public List<PopularCourseDTO> getTopPopularCourses(int limit) {
-        Pageable pageable = PageRequest.of(0, limit);
-        List<Object[]> results = enrollmentRepository.findTopCoursesByEnrollmentCount(pageable);
-        
-        return results.stream()
-                .map(result -> {
-                    Integer courseId = (Integer) result[0];
-                    Long enrollmentCount = (Long) result[1];
-                    
-                    try {
-                        Course course = courseService.getCourseById(courseId);
-                        return new PopularCourseDTO(
-                                course.getCourseId(),
-                                course.getName(),
-                                course.getDescription(),
-                                course.getCredits(),
-                                course.getTeacher(),
-                                enrollmentCount
-                        );
-                    } catch (CourseService.CourseNotfoundException e) {
-                        // Skip courses that might have been deleted
-                        return null;
-                    }
-                })
-                .filter(dto -> dto != null) // Remove null entries
-                .collect(Collectors.toList());
+        return popularCourseService.getTopCourses(limit);
     }
 }
@@ -0,0 +1,39 @@
+package fcu.pbiecs.spring_demo.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 在唯讀交易中逐筆走訪 repository 回傳的 Stream (forward-only cursor)，
+ * 每處理 {@link #CHUNK_SIZE} 筆就清空 persistence context，讓記憶體用量與資料表大小無關。
+ */
+@Component
+public class EntityStreamer {
+
+    // 與 repository 串流查詢的 fetch size 相同
+    public static final int CHUNK_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Transactional(readOnly = true)
+    public <T> void forEach(Supplier<Stream<T>> query, Consumer<T> action) {
+        try (Stream<T> rows = query.get()) {
+            Iterator<T> iterator = rows.iterator();
+            int count = 0;
+            while (iterator.hasNext()) {
+                action.accept(iterator.next());
+                if (++count % CHUNK_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+    }
+}
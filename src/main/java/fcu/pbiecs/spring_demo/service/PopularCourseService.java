@@ -0,0 +1,182 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.dto.PopularCourseDTO;
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.jdbc.ReadWriteRoutingDataSource;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.repository.CourseRepository;
+import fcu.pbiecs.spring_demo.repository.EnrollmentRepository;
+import fcu.pbiecs.spring_demo.stats.TopKCounter;
+import fcu.pbiecs.spring_demo.transaction.TransactionCallbacks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 熱門課程排行。
+ * 各課程選課人數只在啟動時從資料庫統計一次，之後由選課的新增、刪除在交易提交後增減；
+ * 課程與教師資料也保留一份快照，查詢前 N 名時不需要存取資料庫。
+ */
+@Service
+public class PopularCourseService {
+
+    @Autowired
+    private EnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    private volatile Ranking ranking;
+
+    // 重新載入期間會查詢資料庫，用 ReentrantLock 而不是 synchronized，避免虛擬執行緒卡住載體執行緒
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    // 各課程選課人數，以及課程資料快照 (enrollmentCount 欄位不使用)；重新載入時整組替換
+    private record Ranking(TopKCounter enrollmentCounts, Map<Integer, PopularCourseDTO> courses) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void reload() {
+        reloadLock.lock();
+        try {
+            // 建立新的一組再替換，重新載入期間的查詢仍看到完整的舊排行
+            TopKCounter enrollmentCounts = new TopKCounter();
+            Map<Integer, PopularCourseDTO> courses = new ConcurrentHashMap<>();
+            for (Course course : courseRepository.findAllWithTeacher()) {
+                courses.put(course.getCourseId(), snapshot(course));
+            }
+            for (Object[] row : enrollmentRepository.findTopCoursesByEnrollmentCount(Pageable.unpaged())) {
+                enrollmentCounts.add((Integer) row[0], (Long) row[1]);
+            }
+            ranking = new Ranking(enrollmentCounts, courses);
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    // 排在 ChangeTracker 之前，重新載入完才換 ETag
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    @Order(0)
+    public void onDataReloaded(DataReloadedEvent event) {
+        // 資料剛寫入，replica 可能還沒同步，從 primary 重新載入
+        ReadWriteRoutingDataSource.onPrimary(this::reload);
+    }
+
+    public List<PopularCourseDTO> getTopCourses(int limit) {
+        Ranking current = ranking;
+        if (current == null) {
+            reload();
+            current = ranking;
+        }
+        List<PopularCourseDTO> result = new ArrayList<>(limit);
+        for (TopKCounter.Entry entry : current.enrollmentCounts().top(limit)) {
+            PopularCourseDTO course = current.courses().get(entry.key());
+            if (course == null) {
+                // Skip courses that might have been deleted
+                continue;
+            }
+            result.add(new PopularCourseDTO(
+                    course.getCourseId(),
+                    course.getName(),
+                    course.getDescription(),
+                    course.getCredits(),
+                    course.getTeacher(),
+                    entry.count()
+            ));
+        }
+        return result;
+    }
+
+    // 以下的更新在交易提交後才套用，回滾的寫入不會計入；尚未載入時不需要更新
+
+    public void enrollmentAdded(int courseId) {
+        afterCommit(current -> current.enrollmentCounts().add(courseId, 1));
+    }
+
+    public void enrollmentRemoved(int courseId) {
+        afterCommit(current -> current.enrollmentCounts().add(courseId, -1));
+    }
+
+    public void enrollmentsRemoved(List<Integer> courseIds) {
+        afterCommit(current -> courseIds.forEach(courseId -> current.enrollmentCounts().add(courseId, -1)));
+    }
+
+    public void courseSaved(Course course) {
+        // 快照在呼叫時取得，教師可能是只能在 session 中載入的 proxy
+        PopularCourseDTO snapshot = snapshot(course);
+        afterCommit(current -> current.courses().put(snapshot.getCourseId(), snapshot));
+    }
+
+    public void courseRemoved(int courseId) {
+        afterCommit(current -> removeCourse(current, courseId));
+    }
+
+    public void teacherSaved(Teacher teacher) {
+        Teacher copy = copyOf(teacher);
+        afterCommit(current -> current.courses().replaceAll((courseId, course) -> {
+            Teacher existing = course.getTeacher();
+            if (existing == null || !existing.getTeacherId().equals(copy.getTeacherId())) {
+                return course;
+            }
+            // 換成新的快照，其他執行緒可能正在讀取原本的物件
+            return new PopularCourseDTO(course.getCourseId(), course.getName(), course.getDescription(),
+                    course.getCredits(), copy, course.getEnrollmentCount());
+        }));
+    }
+
+    public void teacherRemoved(int teacherId) {
+        // Teacher.courses 設定為 CascadeType.ALL，刪除教師時課程也會被刪除
+        afterCommit(current -> current.courses().values().stream()
+                .filter(course -> course.getTeacher() != null && course.getTeacher().getTeacherId() == teacherId)
+                .map(PopularCourseDTO::getCourseId)
+                .toList()
+                .forEach(courseId -> removeCourse(current, courseId)));
+    }
+
+    private void afterCommit(Consumer<Ranking> update) {
+        TransactionCallbacks.afterCommit(() -> {
+            Ranking current = ranking;
+            if (current != null) {
+                update.accept(current);
+            }
+        });
+    }
+
+    private static void removeCourse(Ranking current, int courseId) {
+        current.courses().remove(courseId);
+        current.enrollmentCounts().remove(courseId);
+    }
+
+    private static PopularCourseDTO snapshot(Course course) {
+        Teacher teacher = course.getTeacher();
+        return new PopularCourseDTO(
+                course.getCourseId(),
+                course.getName(),
+                course.getDescription(),
+                course.getCredits(),
+                teacher == null ? null : copyOf(teacher),
+                0L
+        );
+    }
+
+    // 不保留 Hibernate proxy，避免在 session 外被序列化時觸發 lazy loading
+    private static Teacher copyOf(Teacher teacher) {
+        return new Teacher(teacher.getTeacherId(), teacher.getName(), teacher.getEmail(), teacher.getAge(), null, teacher.getVersion());
+    }
+}
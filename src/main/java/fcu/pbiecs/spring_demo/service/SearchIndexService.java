@@ -0,0 +1,260 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.jdbc.ReadWriteRoutingDataSource;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.repository.CourseRepository;
+import fcu.pbiecs.spring_demo.repository.StudentRepository;
+import fcu.pbiecs.spring_demo.repository.TeacherRepository;
+import fcu.pbiecs.spring_demo.search.FullTextQuery;
+import fcu.pbiecs.spring_demo.search.NGramIndex;
+import fcu.pbiecs.spring_demo.transaction.TransactionCallbacks;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 課程、學生、教師的關鍵字搜尋索引。
+ * 啟動完成後從資料庫建立，之後由各 Service 的新增、更新、刪除在交易提交後維護；
+ * 索引尚未建立時搜尋方法回傳 null，呼叫端應改用資料庫查詢。
+ * <p>
+ * 設定 {@code app.search.full-text=true} 且資料庫是 MariaDB / MySQL 時不在記憶體中建立索引，
+ * 資料庫查詢改用 FULLTEXT 索引 ({@link #fullTextQuery})；其他資料庫照常建立索引。
+ */
+@Service
+public class SearchIndexService {
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${app.search.full-text:false}")
+    private boolean fullTextRequested;
+
+    private boolean fullText;
+
+    private volatile NGramIndex courseIndex;
+    private volatile NGramIndex studentIndex;
+    private volatile NGramIndex teacherIndex;
+
+    // 教師改名或刪除時需要重建其課程的索引
+    private volatile Map<Integer, Set<Integer>> coursesByTeacher = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void detectFullText() throws SQLException {
+        if (!fullTextRequested) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            String product = connection.getMetaData().getDatabaseProductName();
+            fullText = product.equalsIgnoreCase("MariaDB") || product.equalsIgnoreCase("MySQL");
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuildAll() {
+        if (fullText) {
+            return;
+        }
+        NGramIndex courses = new NGramIndex();
+        Map<Integer, Set<Integer>> byTeacher = new ConcurrentHashMap<>();
+        for (Object[] row : courseRepository.findSearchFields()) {
+            Integer courseId = (Integer) row[0];
+            courses.put(courseId, (String) row[1], (String) row[2], (String) row[4], String.valueOf(courseId));
+            if (row[3] != null) {
+                byTeacher.computeIfAbsent((Integer) row[3], id -> ConcurrentHashMap.newKeySet()).add(courseId);
+            }
+        }
+
+        NGramIndex students = new NGramIndex();
+        for (Object[] row : studentRepository.findSearchFields()) {
+            Integer studentId = (Integer) row[0];
+            students.put(studentId, (String) row[1], (String) row[2], (String) row[3], String.valueOf(studentId));
+        }
+
+        NGramIndex teachers = new NGramIndex();
+        for (Object[] row : teacherRepository.findSearchFields()) {
+            Integer teacherId = (Integer) row[0];
+            teachers.put(teacherId, (String) row[1], (String) row[2], String.valueOf(teacherId));
+        }
+
+        coursesByTeacher = byTeacher;
+        courseIndex = courses;
+        studentIndex = students;
+        teacherIndex = teachers;
+    }
+
+    // 排在 ChangeTracker 之前，重新載入完才換 ETag
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    @Order(0)
+    public void onDataReloaded(DataReloadedEvent event) {
+        // 資料剛寫入，replica 可能還沒同步，從 primary 重建
+        ReadWriteRoutingDataSource.onPrimary(this::rebuildAll);
+    }
+
+    /**
+     * 使用 FULLTEXT 索引時回傳 BOOLEAN MODE 查詢字串；未啟用或關鍵字不適合 (見 {@link FullTextQuery}) 時回傳 null，
+     * 呼叫端改用 LIKE 查詢。
+     */
+    public String fullTextQuery(String keyword) {
+        return fullText ? FullTextQuery.of(keyword) : null;
+    }
+
+    public int[] searchCourseIds(String keyword) {
+        NGramIndex index = courseIndex;
+        return index == null ? null : index.search(keyword);
+    }
+
+    public int[] searchStudentIds(String keyword) {
+        NGramIndex index = studentIndex;
+        return index == null ? null : index.search(keyword);
+    }
+
+    public int[] searchTeacherIds(String keyword) {
+        NGramIndex index = teacherIndex;
+        return index == null ? null : index.search(keyword);
+    }
+
+    // 以下的索引更新在呼叫時取出欄位值，交易提交後才套用；回滾的寫入不會進入索引
+
+    public void indexCourse(Course course) {
+        Integer courseId = course.getCourseId();
+        Teacher teacher = course.getTeacher();
+        Integer teacherId = teacher == null ? null : teacher.getTeacherId();
+        String[] fields = {course.getName(), course.getDescription(),
+                teacher == null ? null : teacher.getName(), String.valueOf(courseId)};
+        TransactionCallbacks.afterCommit(() -> {
+            NGramIndex index = courseIndex;
+            if (index == null) {
+                return;
+            }
+            coursesByTeacher.values().forEach(ids -> ids.remove(courseId));
+            if (teacherId != null) {
+                coursesByTeacher.computeIfAbsent(teacherId, id -> ConcurrentHashMap.newKeySet()).add(courseId);
+            }
+            index.put(courseId, fields);
+        });
+    }
+
+    public void removeCourse(int courseId) {
+        TransactionCallbacks.afterCommit(() -> {
+            NGramIndex index = courseIndex;
+            if (index == null) {
+                return;
+            }
+            coursesByTeacher.values().forEach(ids -> ids.remove(courseId));
+            index.remove(courseId);
+        });
+    }
+
+    public void indexStudent(Student student) {
+        Integer studentId = student.getStudentId();
+        String[] fields = {student.getFirstName(), student.getLastName(), student.getEmail(), String.valueOf(studentId)};
+        TransactionCallbacks.afterCommit(() -> {
+            NGramIndex index = studentIndex;
+            if (index != null) {
+                index.put(studentId, fields);
+            }
+        });
+    }
+
+    public void removeStudent(int studentId) {
+        TransactionCallbacks.afterCommit(() -> {
+            NGramIndex index = studentIndex;
+            if (index != null) {
+                index.remove(studentId);
+            }
+        });
+    }
+
+    public void indexTeacher(Teacher teacher) {
+        Integer teacherId = teacher.getTeacherId();
+        String name = teacher.getName();
+        String[] fields = {name, teacher.getEmail(), String.valueOf(teacherId)};
+        TransactionCallbacks.afterCommit(() -> {
+            NGramIndex index = teacherIndex;
+            if (index == null) {
+                return;
+            }
+            index.put(teacherId, fields);
+
+            // 課程索引包含教師名稱，一併更新
+            NGramIndex courses = courseIndex;
+            for (Integer courseId : coursesByTeacher.getOrDefault(teacherId, Set.of())) {
+                String[] courseFields = courses.fields(courseId);
+                if (courseFields != null) {
+                    courseFields[2] = name;
+                    courses.put(courseId, courseFields);
+                }
+            }
+        });
+    }
+
+    public void removeTeacher(int teacherId) {
+        TransactionCallbacks.afterCommit(() -> {
+            NGramIndex index = teacherIndex;
+            if (index == null) {
+                return;
+            }
+            index.remove(teacherId);
+
+            // Teacher.courses 設定為 CascadeType.ALL，刪除教師時課程也會被刪除
+            Set<Integer> courseIds = coursesByTeacher.remove(teacherId);
+            if (courseIds != null) {
+                courseIds.forEach(courseIndex::remove);
+            }
+        });
+    }
+
+    /**
+     * 將依 ID 查回的實體排回搜尋結果的順序。
+     */
+    static <T> List<T> inIdOrder(List<T> entities, List<Integer> ids, Function<T, Integer> idOf) {
+        Map<Integer, T> byId = new HashMap<>();
+        for (T entity : entities) {
+            byId.put(idOf.apply(entity), entity);
+        }
+        List<T> ordered = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            T entity = byId.get(id);
+            if (entity != null) {
+                ordered.add(entity);
+            }
+        }
+        return ordered;
+    }
+
+    static List<Integer> idList(int[] ids, int from, int to) {
+        List<Integer> list = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            list.add(ids[i]);
+        }
+        return list;
+    }
+}
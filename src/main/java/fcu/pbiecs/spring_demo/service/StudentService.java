@@ -1,14 +1,26 @@
 package fcu.pbiecs.spring_demo.service;
 
+import fcu.pbiecs.spring_demo.etag.ChangeTracker;
 import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.pagination.CursorPage;
+import fcu.pbiecs.spring_demo.pagination.PageCursor;
+import fcu.pbiecs.spring_demo.pagination.TotalCountCache;
+import fcu.pbiecs.spring_demo.pagination.TotalMode;
+import fcu.pbiecs.spring_demo.repository.EnrollmentRepository;
 import fcu.pbiecs.spring_demo.repository.StudentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
 
 @Service
 public class StudentService {
@@ -25,18 +37,76 @@ public class StudentService {
         }
     }
 
+    @Autowired
+    private EntityStreamer entityStreamer;
+
     @Autowired
     private StudentRepository studentRepository;
 
+    @Autowired
+    private EnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private EmailIndexService emailIndexService;
+
+    @Autowired
+    private PopularCourseService popularCourseService;
+
+    @Autowired
+    private CourseSeatService courseSeatService;
+
+    @Autowired
+    private EnrollmentRollupService enrollmentRollupService;
+
+    @Autowired
+    private ChangeTracker changeTracker;
+
+    @Autowired
+    private TotalCountCache totalCountCache;
+
+    @Transactional(readOnly = true)
     public List<Student> getAllStudent() {
         return studentRepository.findAll();
     }
 
+    // 以 forward-only cursor 逐筆處理全部資料，不會一次載入整張表
+    public void forEachStudent(Consumer<Student> action) {
+        entityStreamer.forEach(studentRepository::streamAll, action);
+    }
+
+    @Transactional(readOnly = true)
     public Page<Student> getAllStudent(int pageNumber, int pageSize) {
         Pageable pageable = PageRequest.of(pageNumber, pageSize);
         return studentRepository.findAll(pageable);
     }
 
+    // total=none 時不執行 COUNT，total=approximate 時總筆數取自快取
+    @Transactional(readOnly = true)
+    public Slice<Student> getAllStudent(int pageNumber, int pageSize, TotalMode totalMode) {
+        Pageable pageable = PageRequest.of(pageNumber, pageSize);
+        return switch (totalMode) {
+            case EXACT -> studentRepository.findAll(pageable);
+            case NONE -> studentRepository.findSlice(pageable);
+            case APPROXIMATE -> totalCountCache.page(studentRepository.findSlice(pageable),
+                    ChangeTracker.Table.STUDENT, studentRepository::count);
+        };
+    }
+
+    // Keyset 分頁，不執行 COUNT 查詢
+    @Transactional(readOnly = true)
+    public CursorPage<Student> getStudentsAfter(String after, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size");
+        }
+        int afterId = PageCursor.decode(after, 1)[0];
+        List<Student> rows = studentRepository.findAfter(afterId, Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, row -> PageCursor.encode(row.getStudentId()));
+    }
+
+    @Transactional(readOnly = true)
     public Student getStudentById(int id) throws StudentNotfoundException {
         Student student = studentRepository.findById(id).orElse(null);
         if (student == null) {
@@ -46,38 +116,139 @@ public class StudentService {
     }
 
     public Student addStudent(Student student) {
-        return studentRepository.save(student);
+        // 沒有版本的是新資料，忽略傳入的 ID (有 ID 又沒有版本時 JPA 無法新增)
+        boolean created = student.getVersion() == null;
+        if (created) {
+            student.setStudentId(null);
+        }
+        Student saved = studentRepository.save(student);
+        if (created) {
+            totalCountCache.added(ChangeTracker.Table.STUDENT, 1);
+        }
+        searchIndexService.indexStudent(saved);
+        emailIndexService.saved(ChangeTracker.Table.STUDENT, null, saved.getEmail());
+        changeTracker.changed(ChangeTracker.Table.STUDENT);
+        return saved;
     }
 
+    // 只更新基本欄位，版本以資料庫中的為準；選課關聯不受影響
+    @Transactional
     public Student updateStudent(Student student) throws StudentNotfoundException {
-        if (!studentRepository.existsById(student.getStudentId())) {
+        Student saved = studentRepository.findById(student.getStudentId()).orElse(null);
+        if (saved == null) {
             throw new StudentNotfoundException("Student not found with id: " + student.getStudentId());
         }
-        return studentRepository.save(student);
+        String oldEmail = saved.getEmail();
+        saved.setFirstName(student.getFirstName());
+        saved.setLastName(student.getLastName());
+        saved.setEmail(student.getEmail());
+        saved.setBirthday(student.getBirthday());
+        searchIndexService.indexStudent(saved);
+        emailIndexService.saved(ChangeTracker.Table.STUDENT, oldEmail, saved.getEmail());
+        changeTracker.changed(ChangeTracker.Table.STUDENT);
+        return saved;
     }
 
+    @Transactional
     public void deleteStudent(int id) throws StudentNotfoundException {
-        if (!studentRepository.existsById(id)) {
+        Student student = studentRepository.findById(id).orElse(null);
+        if (student == null) {
             throw new StudentNotfoundException("Student not found with id: " + id);
         }
+        // 學生的選課記錄會一併刪除，先記下課程ID以更新選課人數
+        List<Integer> courseIds = enrollmentRepository.findCourseIdsByStudentId(id);
+        enrollmentRollupService.studentRemoving(id);
+        courseSeatService.released(courseIds);
         studentRepository.deleteById(id);
+        searchIndexService.removeStudent(id);
+        emailIndexService.removed(ChangeTracker.Table.STUDENT, student.getEmail());
+        popularCourseService.enrollmentsRemoved(courseIds);
+        totalCountCache.removed(ChangeTracker.Table.STUDENT, 1);
+        totalCountCache.removed(ChangeTracker.Table.ENROLLMENT, courseIds.size());
+        changeTracker.changed(ChangeTracker.Table.STUDENT, ChangeTracker.Table.ENROLLMENT);
     }
 
+    @Transactional(readOnly = true)
     public List<Student> findStudentsByFirstName(String firstName) {
         return studentRepository.findByFirstNameContaining(firstName);
     }
 
+    // Bloom filter 判斷不存在時不查詢；快取命中時依ID載入 (二級快取)，Email 已經改掉時改查資料庫
+    @Transactional(readOnly = true)
     public Student findStudentsByEmail(String email) {
-        return studentRepository.findStudentByEmail(email);
+        if (!emailIndexService.mightExist(ChangeTracker.Table.STUDENT, email)) {
+            return null;
+        }
+        Integer cachedId = emailIndexService.cachedId(ChangeTracker.Table.STUDENT, email);
+        if (cachedId != null) {
+            Student student = studentRepository.findById(cachedId).orElse(null);
+            if (student != null && email.equals(student.getEmail())) {
+                return student;
+            }
+            emailIndexService.evict(ChangeTracker.Table.STUDENT, email);
+        }
+        Student student = studentRepository.findStudentByEmail(email);
+        if (student != null) {
+            emailIndexService.cache(ChangeTracker.Table.STUDENT, email, student.getStudentId());
+        }
+        return student;
     }
 
+    @Transactional(readOnly = true)
     public List<Student> searchStudents(String keyword) {
-        return studentRepository.findByKeyword(keyword);
+        int[] ids = searchIndexService.searchStudentIds(keyword);
+        if (ids == null) {
+            String query = searchIndexService.fullTextQuery(keyword);
+            return query != null ? studentRepository.findByFullText(query) : studentRepository.findByKeyword(keyword);
+        }
+        return findAllInOrder(ids, 0, ids.length);
     }
 
+    @Transactional(readOnly = true)
     public Page<Student> searchStudents(String keyword, int pageNumber, int pageSize) {
         Pageable pageable = PageRequest.of(pageNumber, pageSize);
-        return studentRepository.findByKeyword(keyword, pageable);
+        int[] ids = searchIndexService.searchStudentIds(keyword);
+        if (ids == null) {
+            String query = searchIndexService.fullTextQuery(keyword);
+            return query != null ? studentRepository.findByFullText(query, pageable) : studentRepository.findByKeyword(keyword, pageable);
+        }
+        return pageOf(ids, pageable);
+    }
+
+    @Transactional(readOnly = true)
+    public Slice<Student> searchStudents(String keyword, int pageNumber, int pageSize, TotalMode totalMode) {
+        if (totalMode == TotalMode.EXACT) {
+            return searchStudents(keyword, pageNumber, pageSize);
+        }
+        Pageable pageable = PageRequest.of(pageNumber, pageSize);
+        int[] ids = searchIndexService.searchStudentIds(keyword);
+        if (ids != null) {
+            // 搜尋索引已經有全部符合的ID，總筆數不需要另外查詢
+            return pageOf(ids, pageable);
+        }
+        String query = searchIndexService.fullTextQuery(keyword);
+        Slice<Student> slice = query != null
+                ? studentRepository.findSliceByFullText(query, pageable)
+                : studentRepository.findSliceByKeyword(keyword, pageable);
+        if (totalMode == TotalMode.NONE) {
+            return slice;
+        }
+        return totalCountCache.page(slice, ChangeTracker.Table.STUDENT, "keyword:" + keyword.toLowerCase(Locale.ROOT),
+                () -> query != null ? studentRepository.countByFullText(query) : studentRepository.countByKeyword(keyword));
+    }
+
+    private Page<Student> pageOf(int[] ids, Pageable pageable) {
+        int from = (int) Math.min(pageable.getOffset(), ids.length);
+        int to = Math.min(from + pageable.getPageSize(), ids.length);
+        return new PageImpl<>(findAllInOrder(ids, from, to), pageable, ids.length);
+    }
+
+    private List<Student> findAllInOrder(int[] ids, int from, int to) {
+        if (from >= to) {
+            return List.of();
+        }
+        List<Integer> pageIds = SearchIndexService.idList(ids, from, to);
+        return SearchIndexService.inIdOrder(studentRepository.findAllById(pageIds), pageIds, Student::getStudentId);
     }
 
 
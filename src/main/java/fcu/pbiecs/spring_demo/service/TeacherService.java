@@ -1,15 +1,26 @@
 package fcu.pbiecs.spring_demo.service;
 
+import fcu.pbiecs.spring_demo.etag.ChangeTracker;
 import fcu.pbiecs.spring_demo.model.Course;
 import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.pagination.CursorPage;
+import fcu.pbiecs.spring_demo.pagination.PageCursor;
+import fcu.pbiecs.spring_demo.pagination.TotalCountCache;
+import fcu.pbiecs.spring_demo.pagination.TotalMode;
 import fcu.pbiecs.spring_demo.repository.TeacherRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
 
 
 @Service
@@ -27,18 +38,70 @@ public class TeacherService {
         }
     }
 
+    @Autowired
+    private EntityStreamer entityStreamer;
+
     @Autowired
     private TeacherRepository teacherRepository;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private EmailIndexService emailIndexService;
+
+    @Autowired
+    private PopularCourseService popularCourseService;
+
+    @Autowired
+    private EnrollmentRollupService enrollmentRollupService;
+
+    @Autowired
+    private ChangeTracker changeTracker;
+
+    @Autowired
+    private TotalCountCache totalCountCache;
+
+    @Transactional(readOnly = true)
     public List<Teacher> getAllTeacher(){
         return teacherRepository.findAll();
     }
 
+    // 以 forward-only cursor 逐筆處理全部資料，不會一次載入整張表
+    public void forEachTeacher(Consumer<Teacher> action) {
+        entityStreamer.forEach(teacherRepository::streamAll, action);
+    }
+
+    @Transactional(readOnly = true)
     public Page<Teacher> getAllTeacher(int pageNumber, int pageSize) {
         Pageable pageable = PageRequest.of(pageNumber, pageSize);
         return teacherRepository.findAll(pageable);
     }
 
+    // total=none 時不執行 COUNT，total=approximate 時總筆數取自快取
+    @Transactional(readOnly = true)
+    public Slice<Teacher> getAllTeacher(int pageNumber, int pageSize, TotalMode totalMode) {
+        Pageable pageable = PageRequest.of(pageNumber, pageSize);
+        return switch (totalMode) {
+            case EXACT -> teacherRepository.findAll(pageable);
+            case NONE -> teacherRepository.findSlice(pageable);
+            case APPROXIMATE -> totalCountCache.page(teacherRepository.findSlice(pageable),
+                    ChangeTracker.Table.TEACHER, teacherRepository::count);
+        };
+    }
+
+    // Keyset 分頁，不執行 COUNT 查詢
+    @Transactional(readOnly = true)
+    public CursorPage<Teacher> getTeachersAfter(String after, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size");
+        }
+        int afterId = PageCursor.decode(after, 1)[0];
+        List<Teacher> rows = teacherRepository.findAfter(afterId, Limit.of(pageSize + 1));
+        return CursorPage.of(rows, pageSize, row -> PageCursor.encode(row.getTeacherId()));
+    }
+
+    @Transactional(readOnly = true)
     public Teacher getTeacherById(int id) throws TeacherNotfoundException {
         Teacher teacher = teacherRepository.findById(id).orElse(null);
         if (teacher == null) {
@@ -48,27 +111,110 @@ public class TeacherService {
     }
 
     public Teacher addTeacher(Teacher teacher)  {
-        return teacherRepository.save(teacher);
+        // 沒有版本的是新資料，忽略傳入的 ID (有 ID 又沒有版本時 JPA 無法新增)
+        boolean created = teacher.getVersion() == null;
+        if (created) {
+            teacher.setTeacherId(null);
+        }
+        Teacher saved = teacherRepository.save(teacher);
+        if (created) {
+            totalCountCache.added(ChangeTracker.Table.TEACHER, 1);
+        }
+        searchIndexService.indexTeacher(saved);
+        emailIndexService.saved(ChangeTracker.Table.TEACHER, null, saved.getEmail());
+        popularCourseService.teacherSaved(saved);
+        changeTracker.changed(ChangeTracker.Table.TEACHER);
+        return saved;
     }
 
+    // 只更新基本欄位，版本以資料庫中的為準；授課的課程不受影響
+    @Transactional
     public Teacher updateTeacher(Teacher teacher) throws TeacherNotfoundException {
-        if (teacher == null || !teacherRepository.existsById(teacher.getTeacherId())) {
+        Teacher saved = teacher == null ? null : teacherRepository.findById(teacher.getTeacherId()).orElse(null);
+        if (saved == null) {
             throw new TeacherNotfoundException("Teacher with ID " + (teacher != null ? teacher.getTeacherId() : "null") + " not found.");
         }
-        return teacherRepository.save(teacher);
+        String oldEmail = saved.getEmail();
+        saved.setName(teacher.getName());
+        saved.setEmail(teacher.getEmail());
+        saved.setAge(teacher.getAge());
+        searchIndexService.indexTeacher(saved);
+        emailIndexService.saved(ChangeTracker.Table.TEACHER, oldEmail, saved.getEmail());
+        popularCourseService.teacherSaved(saved);
+        changeTracker.changed(ChangeTracker.Table.TEACHER);
+        return saved;
     }
 
+    @Transactional
     public void deleteTeacher(int id) {
+        // 課程會 cascade 一併刪除；deleteById 也是先載入實體，這裡不會多一次查詢
+        String email = teacherRepository.findById(id).map(Teacher::getEmail).orElse(null);
         teacherRepository.deleteById(id);
+        teacherRepository.flush();
+        enrollmentRollupService.coursesRemoved();
+        searchIndexService.removeTeacher(id);
+        emailIndexService.removed(ChangeTracker.Table.TEACHER, email);
+        popularCourseService.teacherRemoved(id);
+        // cascade 刪除的課程與選課筆數不確定，重新計算
+        totalCountCache.invalidate(ChangeTracker.Table.TEACHER, ChangeTracker.Table.COURSE, ChangeTracker.Table.ENROLLMENT);
+        changeTracker.changed(ChangeTracker.Table.TEACHER, ChangeTracker.Table.COURSE, ChangeTracker.Table.ENROLLMENT);
     }
 
+    @Transactional(readOnly = true)
     public List<Teacher> searchTeachers(String keyword) {
-        return teacherRepository.findByKeyword(keyword);
+        int[] ids = searchIndexService.searchTeacherIds(keyword);
+        if (ids == null) {
+            String query = searchIndexService.fullTextQuery(keyword);
+            return query != null ? teacherRepository.findByFullText(query) : teacherRepository.findByKeyword(keyword);
+        }
+        return findAllInOrder(ids, 0, ids.length);
     }
 
+    @Transactional(readOnly = true)
     public Page<Teacher> searchTeachers(String keyword, int pageNumber, int pageSize) {
         Pageable pageable = PageRequest.of(pageNumber, pageSize);
-        return teacherRepository.findByKeyword(keyword, pageable);
+        int[] ids = searchIndexService.searchTeacherIds(keyword);
+        if (ids == null) {
+            String query = searchIndexService.fullTextQuery(keyword);
+            return query != null ? teacherRepository.findByFullText(query, pageable) : teacherRepository.findByKeyword(keyword, pageable);
+        }
+        return pageOf(ids, pageable);
+    }
+
+    @Transactional(readOnly = true)
+    public Slice<Teacher> searchTeachers(String keyword, int pageNumber, int pageSize, TotalMode totalMode) {
+        if (totalMode == TotalMode.EXACT) {
+            return searchTeachers(keyword, pageNumber, pageSize);
+        }
+        Pageable pageable = PageRequest.of(pageNumber, pageSize);
+        int[] ids = searchIndexService.searchTeacherIds(keyword);
+        if (ids != null) {
+            // 搜尋索引已經有全部符合的ID，總筆數不需要另外查詢
+            return pageOf(ids, pageable);
+        }
+        String query = searchIndexService.fullTextQuery(keyword);
+        Slice<Teacher> slice = query != null
+                ? teacherRepository.findSliceByFullText(query, pageable)
+                : teacherRepository.findSliceByKeyword(keyword, pageable);
+        if (totalMode == TotalMode.NONE) {
+            return slice;
+        }
+        return totalCountCache.page(slice, ChangeTracker.Table.TEACHER, "keyword:" + keyword.toLowerCase(Locale.ROOT),
+                () -> query != null ? teacherRepository.countByFullText(query) : teacherRepository.countByKeyword(keyword));
+    }
+
+    private Page<Teacher> pageOf(int[] ids, Pageable pageable) {
+        int from = (int) Math.min(pageable.getOffset(), ids.length);
+        int to = Math.min(from + pageable.getPageSize(), ids.length);
+        return new PageImpl<>(findAllInOrder(ids, from, to), pageable, ids.length);
+    }
+
+    private List<Teacher> findAllInOrder(int[] ids, int from, int to) {
+        if (from >= to) {
+            return List.of();
+        }
+        List<Integer> pageIds = SearchIndexService.idList(ids, from, to);
+        return SearchIndexService.inIdOrder(teacherRepository.findAllById(pageIds), pageIds, Teacher::getTeacherId);
     }
 
 
@@ -0,0 +1,62 @@
+package fcu.pbiecs.spring_demo.stats;
+
+import java.util.*;
+
+/**
+ * 以 key 計數並維持依計數遞減排序的集合，增減為 O(log n)，取前 K 名為 O(K)。
+ * 計數相同時依 key 遞增排序；計數降到 0 的 key 會被移除。
+ */
+public class TopKCounter {
+
+    public record Entry(int key, long count) {
+    }
+
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparingLong(Entry::count).reversed()
+            .thenComparingInt(Entry::key);
+
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> ranking = new TreeSet<>(ORDER);
+
+    public synchronized void add(int key, long delta) {
+        Entry previous = entries.remove(key);
+        long count = delta;
+        if (previous != null) {
+            ranking.remove(previous);
+            count += previous.count();
+        }
+        if (count > 0) {
+            Entry entry = new Entry(key, count);
+            entries.put(key, entry);
+            ranking.add(entry);
+        }
+    }
+
+    public synchronized void remove(int key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            ranking.remove(previous);
+        }
+    }
+
+    public synchronized long count(int key) {
+        Entry entry = entries.get(key);
+        return entry == null ? 0 : entry.count();
+    }
+
+    public synchronized List<Entry> top(int limit) {
+        List<Entry> result = new ArrayList<>(Math.min(limit, ranking.size()));
+        for (Entry entry : ranking) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        ranking.clear();
+    }
+}
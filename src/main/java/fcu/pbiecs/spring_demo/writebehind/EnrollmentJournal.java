@@ -0,0 +1,194 @@
+package fcu.pbiecs.spring_demo.writebehind;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 選課寫入的本機日誌 (append-only 文字檔)，每行一筆：{@code seq op studentId courseId date}，
+ * op 為 A (選課) 或 D (退選)，date 為 yyyy-MM-dd 或 -。
+ * <p>
+ * {@link #append} 只寫進作業系統，{@link #sync} 才 fsync；多條執行緒同時等待時一次 fsync 涵蓋全部已寫入的記錄 (group commit)。
+ * 開啟時讀出全部記錄，寫到一半就當機的最後一行會被截掉。{@link #rewrite} 先寫暫存檔再以 atomic move 換掉整個日誌，
+ * 只保留尚未寫入資料庫的記錄，過程中當機時舊的日誌仍完整。append 與 rewrite 由呼叫端序列化。
+ */
+public class EnrollmentJournal implements Closeable {
+
+    public record Entry(long seq, boolean add, int studentId, int courseId, LocalDate date) {
+    }
+
+    private final Path path;
+    private final List<Entry> recovered;
+    private FileChannel channel;
+
+    // 最後寫入與最後 fsync 的 seq
+    private volatile long written;
+    private volatile long synced;
+
+    // fsync 期間會阻塞，用 ReentrantLock 而不是 synchronized，避免虛擬執行緒卡住載體執行緒
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    public EnrollmentJournal(Path path) throws IOException {
+        this.path = path;
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        byte[] content = Files.exists(path) ? Files.readAllBytes(path) : new byte[0];
+        List<Entry> entries = new ArrayList<>();
+        int validLength = parse(content, entries);
+        this.recovered = List.copyOf(entries);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // 截掉不完整的最後一行，之後的記錄接在最後一筆完整的記錄後面
+        channel.truncate(validLength);
+        channel.position(validLength);
+        channel.force(true);
+        long last = entries.isEmpty() ? 0 : entries.get(entries.size() - 1).seq();
+        this.written = last;
+        this.synced = last;
+    }
+
+    /**
+     * 開啟時讀到的記錄，依 seq 排序。
+     */
+    public List<Entry> recovered() {
+        return recovered;
+    }
+
+    public long lastSeq() {
+        return recovered.isEmpty() ? 0 : recovered.get(recovered.size() - 1).seq();
+    }
+
+    public void append(Entry entry) throws IOException {
+        write(channel, encode(entry));
+        written = entry.seq();
+    }
+
+    /**
+     * 確保 seq 以前的記錄都已經寫到磁碟。
+     */
+    public void sync(long seq) throws IOException {
+        if (synced >= seq) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            // 等待期間其他執行緒的 fsync 可能已經涵蓋這筆
+            if (synced >= seq) {
+                return;
+            }
+            long target = written;
+            channel.force(false);
+            synced = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * 以 entries 取代整個日誌 (entries 為空時清空)。
+     */
+    public void rewrite(Collection<Entry> entries) throws IOException {
+        syncLock.lock();
+        try {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                StringBuilder lines = new StringBuilder();
+                for (Entry entry : entries) {
+                    lines.append(encode(entry));
+                }
+                write(out, lines.toString());
+                out.force(true);
+            }
+            channel.close();
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+            channel = FileChannel.open(path, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            synced = written;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        syncLock.lock();
+        try {
+            channel.force(true);
+            channel.close();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // 讓檔名的替換也寫到磁碟；部分平台 (Windows) 不能開啟目錄，忽略
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // 沒有目錄 fsync 時，替換在當機後可能還原為舊的日誌，重播舊記錄仍然正確
+        }
+    }
+
+    private static String encode(Entry entry) {
+        return entry.seq() + " " + (entry.add() ? "A" : "D") + " " + entry.studentId() + " " + entry.courseId() + " "
+                + (entry.date() == null ? "-" : entry.date().toString()) + "\n";
+    }
+
+    // 解析到第一筆不完整或無法解析的記錄為止，回傳有效內容的長度
+    private static int parse(byte[] content, List<Entry> entries) {
+        int start = 0;
+        long previous = 0;
+        while (start < content.length) {
+            int end = start;
+            while (end < content.length && content[end] != '\n') {
+                end++;
+            }
+            if (end == content.length) {
+                break;
+            }
+            Entry entry = decode(new String(content, start, end - start, StandardCharsets.UTF_8));
+            if (entry == null || entry.seq() <= previous) {
+                break;
+            }
+            entries.add(entry);
+            previous = entry.seq();
+            start = end + 1;
+        }
+        return start;
+    }
+
+    private static Entry decode(String line) {
+        String[] fields = line.split(" ");
+        if (fields.length != 5 || !(fields[1].equals("A") || fields[1].equals("D"))) {
+            return null;
+        }
+        try {
+            return new Entry(
+                    Long.parseLong(fields[0]),
+                    fields[1].equals("A"),
+                    Integer.parseInt(fields[2]),
+                    Integer.parseInt(fields[3]),
+                    fields[4].equals("-") ? null : LocalDate.parse(fields[4]));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void write(FileChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
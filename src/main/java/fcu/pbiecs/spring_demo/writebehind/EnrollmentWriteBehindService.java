@@ -0,0 +1,545 @@
+package fcu.pbiecs.spring_demo.writebehind;
+
+import fcu.pbiecs.spring_demo.collection.IntPairSet;
+import fcu.pbiecs.spring_demo.etag.ChangeTracker;
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.jdbc.ReadWriteRoutingDataSource;
+import fcu.pbiecs.spring_demo.job.BulkWriteGuard;
+import fcu.pbiecs.spring_demo.model.EnrollmentId;
+import fcu.pbiecs.spring_demo.pagination.TotalCountCache;
+import fcu.pbiecs.spring_demo.repository.CourseRepository;
+import fcu.pbiecs.spring_demo.repository.EnrollmentRepository;
+import fcu.pbiecs.spring_demo.repository.StudentRepository;
+import fcu.pbiecs.spring_demo.service.CourseSeatService;
+import fcu.pbiecs.spring_demo.service.EnrollmentRollupService;
+import fcu.pbiecs.spring_demo.service.EnrollmentService;
+import fcu.pbiecs.spring_demo.service.PopularCourseService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 選課的 write-behind 模式 ({@code app.enrollment.write-behind.enabled=true})，給選課尖峰時單筆選課與退選使用。
+ * <p>
+ * 請求依記憶體中的狀態驗證 (尚未寫入的選課、名額計數器；沒有待寫入記錄時以主鍵查詢是否已選)，寫入本機日誌並 fsync 後
+ * 就回應，不等資料庫交易。每個 (學生, 課程) 組合只保留最後的狀態，選課後又退選的組合在寫入前就互相抵銷。
+ * 背景執行緒每隔 flush-interval 把待寫入的組合分批在一個交易中寫入 Enrollment，同時更新彙總表、熱門課程、總筆數與 ETag，
+ * 寫完後以剩下的記錄改寫日誌。
+ * <p>
+ * 啟動時重播日誌並先寫入資料庫，才開始接受請求。寫入只依最後狀態決定新增或刪除，已經寫入過的記錄重播時不會再改變資料，
+ * 寫入後、改寫日誌前當機也不會重複計算。學生或課程在寫入前被刪除時該筆選課捨棄並歸還名額。
+ * <p>
+ * 名額在接受請求時就保留或歸還，寫入後依資料庫實際的變動結算 (見 {@link CourseSeatService#settle})；
+ * 同一筆選課在寫入前已被其他途徑新增或刪除時，只撤銷這裡的保留，不會重複計算。
+ * <p>
+ * 資料初始化、CSV 匯入與清除資料取得 {@link BulkWriteGuard} 後先呼叫 {@link #drain} 寫完所有待寫入的記錄，
+ * 期間的新請求會被拒絕，重新載入 (DataReloadedEvent) 時不會有針對舊資料的記錄；萬一還有則捨棄並改寫日誌。
+ * <p>
+ * 查詢選課名單在寫入前看不到尚未寫入的記錄；批次選課、刪除學生等其他寫入仍同步進行，不經過這裡。
+ * <p>
+ * 指標：enrollment.writebehind.pending (待寫入的組合數)、enrollment.writebehind.lag (最早一筆待寫入記錄確認後經過的秒數)、
+ * enrollment.writebehind.flush (每批寫入時間)、enrollment.writebehind.accepted / written (標籤 op=add|delete)、
+ * enrollment.writebehind.coalesced (覆蓋了待寫入狀態的請求數) 與 enrollment.writebehind.failures (寫入失敗，下一輪重試)。
+ */
+@Service
+public class EnrollmentWriteBehindService {
+
+    private static final int IN_CLAUSE_SIZE = 1000;
+    private static final int STRIPES = 64;
+    private static final String JOURNAL_FILE = "enrollments.journal";
+
+    @Autowired
+    private WriteBehindProperties properties;
+
+    @Autowired
+    private EnrollmentRepository enrollmentRepository;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private EnrollmentRollupService enrollmentRollupService;
+
+    @Autowired
+    private PopularCourseService popularCourseService;
+
+    @Autowired
+    private CourseSeatService courseSeatService;
+
+    @Autowired
+    private TotalCountCache totalCountCache;
+
+    @Autowired
+    private ChangeTracker changeTracker;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private BulkWriteGuard bulkWriteGuard;
+
+    /**
+     * 資料初始化、匯入或清除資料進行中，暫時不接受選課與退選。
+     */
+    public static class BulkWriteInProgressException extends RuntimeException {
+        public BulkWriteInProgressException(String m) {
+            super(m);
+        }
+    }
+
+    // 每個組合最後的狀態；acceptedAt 為第一筆尚未寫入的請求被確認的時間 (System.nanoTime)。
+    // stored 為這一連串請求開始時資料庫中是否已有這筆選課，名額保留的累計為 add - stored (重播的記錄沒有保留，與 add 相同)
+    private record Pending(long seq, boolean add, LocalDate date, long acceptedAt, boolean stored) {
+        Pending withStored(boolean stored) {
+            return new Pending(seq, add, date, acceptedAt, stored);
+        }
+    }
+
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+
+    // 同一個組合的驗證與寫入日誌需要序列化，不同組合分散到不同的鎖
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    // 日誌的寫入順序與 pending 一致：append 與 pending.put 在同一個鎖內
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private EnrollmentJournal journal;
+    private long nextSeq;
+    private ScheduledExecutorService flusher;
+
+    private Counter acceptedAdds;
+    private Counter acceptedDeletes;
+    private Counter writtenAdds;
+    private Counter writtenDeletes;
+    private Counter coalesced;
+    private Counter failures;
+    private Timer flushTimer;
+
+    public EnrollmentWriteBehindService() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        registerMetrics();
+        journal = new EnrollmentJournal(properties.getJournalDirectory().resolve(JOURNAL_FILE));
+        long now = System.nanoTime();
+        for (EnrollmentJournal.Entry entry : journal.recovered()) {
+            pending.put(IntPairSet.pack(entry.studentId(), entry.courseId()),
+                    new Pending(entry.seq(), entry.add(), entry.date(), now, entry.add()));
+        }
+        nextSeq = journal.lastSeq() + 1;
+        // 當機前已確認的選課先寫入資料庫，名額計數器之後才會從正確的人數載入
+        flush();
+
+        long interval = properties.getFlushInterval().toMillis();
+        flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("enrollment-flush-"));
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException, InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(30, TimeUnit.SECONDS);
+        // 沒有寫完的記錄留在日誌中，下次啟動時重播
+        flushQuietly();
+        journal.close();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 接受一筆選課，寫入日誌後回傳；呼叫端需先確認學生與課程存在。
+     */
+    public void add(int studentId, int courseId, LocalDate enrollmentDate)
+            throws EnrollmentService.EnrollmentAlreadyExistsException, EnrollmentService.CourseFullException {
+        checkEnabled();
+        long key = IntPairSet.pack(studentId, courseId);
+        long seq;
+        ReentrantLock stripe = stripe(key);
+        stripe.lock();
+        try {
+            checkNoBulkWrite();
+            if (enrolled(key, studentId, courseId)) {
+                throw new EnrollmentService.EnrollmentAlreadyExistsException("Enrollment already exists with id: " + studentId + ", " + courseId);
+            }
+            if (!courseSeatService.hold(courseId)) {
+                throw new EnrollmentService.CourseFullException("Course is full: " + courseId);
+            }
+            try {
+                seq = append(key, new EnrollmentJournal.Entry(0, true, studentId, courseId, enrollmentDate));
+            } catch (RuntimeException e) {
+                courseSeatService.settle(courseId, 0, -1);
+                throw e;
+            }
+        } finally {
+            stripe.unlock();
+        }
+        acceptedAdds.increment();
+        sync(seq);
+    }
+
+    /**
+     * 接受一筆退選，寫入日誌後回傳，名額立即歸還。
+     */
+    public void delete(int studentId, int courseId) throws EnrollmentService.EnrollmentNotfoundException {
+        checkEnabled();
+        long key = IntPairSet.pack(studentId, courseId);
+        long seq;
+        ReentrantLock stripe = stripe(key);
+        stripe.lock();
+        try {
+            checkNoBulkWrite();
+            if (!enrolled(key, studentId, courseId)) {
+                throw new EnrollmentService.EnrollmentNotfoundException("Enrollment not found with studentId: " + studentId + " and courseId: " + courseId);
+            }
+            seq = append(key, new EnrollmentJournal.Entry(0, false, studentId, courseId, null));
+            courseSeatService.settle(courseId, 0, -1);
+        } finally {
+            stripe.unlock();
+        }
+        acceptedDeletes.increment();
+        sync(seq);
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 大量寫入取得 {@link BulkWriteGuard} 後呼叫：等進行中的請求寫入日誌，再把待寫入的記錄全部寫入資料庫。
+     * 之後的請求在執行權釋放前都會被拒絕。寫入失敗時拋出例外，呼叫端應放棄這次大量寫入。
+     */
+    public void drain() {
+        if (journal == null) {
+            return;
+        }
+        // 拿到每個 stripe 代表已經通過執行權檢查的請求都寫入 pending 了
+        lockStripes();
+        unlockStripes();
+        flush();
+        if (!pending.isEmpty()) {
+            throw new IllegalStateException("Enrollment write-behind could not be drained: " + pending.size() + " pending");
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDataReloaded(DataReloadedEvent event) {
+        if (journal == null) {
+            return;
+        }
+        flushLock.lock();
+        lockStripes();
+        try {
+            // 正常情況下大量寫入前已經 drain；剩下的記錄針對的是重新載入前的資料，捨棄並改寫日誌
+            pending.clear();
+            compactJournal();
+        } finally {
+            unlockStripes();
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 把目前待寫入的組合全部寫入資料庫 (寫入期間新進的請求留到下一輪)，再改寫日誌。
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            int remaining = pending.size();
+            int batchSize = Math.max(1, Math.min(properties.getMaxBatchSize(), IN_CLAUSE_SIZE));
+            boolean flushed = false;
+            while (remaining > 0 && !pending.isEmpty()) {
+                Map<Long, Pending> batch = new HashMap<>();
+                for (Map.Entry<Long, Pending> entry : pending.entrySet()) {
+                    batch.put(entry.getKey(), entry.getValue());
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+                }
+                flushTimer.record(() -> write(batch));
+                batch.forEach(this::written);
+                remaining -= batch.size();
+                flushed = true;
+            }
+            if (flushed) {
+                compactJournal();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void checkEnabled() {
+        if (journal == null) {
+            throw new IllegalStateException("Enrollment write-behind is disabled");
+        }
+    }
+
+    private void checkNoBulkWrite() {
+        if (bulkWriteGuard.owner() != null) {
+            throw new BulkWriteInProgressException("資料初始化、匯入或清除資料執行中，暫時無法選課或退選");
+        }
+    }
+
+    // 寫入期間被新的請求覆蓋的組合保留到下一輪；這一批已結算的保留不再計入，新請求的保留從這一批的狀態起算
+    private void written(long key, Pending op) {
+        ReentrantLock stripe = stripe(key);
+        stripe.lock();
+        try {
+            pending.computeIfPresent(key, (k, current) -> current == op ? null : current.withStored(op.add()));
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // 記錄仍在 pending 與日誌中，下一輪重試
+            failures.increment();
+        }
+    }
+
+    private void write(Map<Long, Pending> batch) {
+        List<EnrollmentId> inserted = new ArrayList<>();
+        List<Integer> deletedCourseIds = new ArrayList<>();
+        // 課程ID -> {寫入造成的選課人數增減, 要撤銷的名額保留}
+        Map<Integer, int[]> seats = new HashMap<>();
+
+        ReadWriteRoutingDataSource.onPrimary(() -> transactionTemplate.executeWithoutResult(status -> {
+            Set<Integer> studentIds = new HashSet<>();
+            Set<Integer> courseIds = new HashSet<>();
+            batch.keySet().forEach(key -> {
+                studentIds.add(studentId(key));
+                courseIds.add(courseId(key));
+            });
+            Set<Integer> existingStudents = new HashSet<>(studentRepository.findExistingIds(studentIds));
+            Set<Integer> existingCourses = new HashSet<>(courseRepository.findExistingIds(courseIds));
+            // 已經存在的選課與其日期 (日期可能是 null)
+            Map<Long, LocalDate> existing = new HashMap<>();
+            for (Object[] row : enrollmentRepository.findExistingWithDates(studentIds, courseIds)) {
+                Date date = (Date) row[2];
+                existing.put(IntPairSet.pack((Integer) row[0], (Integer) row[1]), date == null ? null : date.toLocalDate());
+            }
+
+            List<EnrollmentJournal.Entry> inserts = new ArrayList<>();
+            List<EnrollmentJournal.Entry> deletes = new ArrayList<>();
+            Map<LocalDate, Map<Integer, Long>> added = new HashMap<>();
+            Map<LocalDate, Map<Integer, Long>> removed = new HashMap<>();
+            batch.forEach((key, op) -> {
+                int studentId = studentId(key);
+                int courseId = courseId(key);
+                int[] seat = seats.computeIfAbsent(courseId, id -> new int[2]);
+                // 接受請求時累計的保留 (add - stored) 在這裡全部撤銷；資料庫中已被其他途徑新增或刪除的選課，
+                // 由那個途徑計算名額，這裡只撤銷保留 (捨棄的選課亦同)
+                seat[1] += (op.stored() ? 1 : 0) - (op.add() ? 1 : 0);
+                if (op.add()) {
+                    if (existing.containsKey(key)
+                            || !existingStudents.contains(studentId) || !existingCourses.contains(courseId)) {
+                        return;
+                    }
+                    inserts.add(new EnrollmentJournal.Entry(op.seq(), true, studentId, courseId, op.date()));
+                    seat[0]++;
+                    if (op.date() != null) {
+                        added.computeIfAbsent(op.date(), date -> new HashMap<>()).merge(courseId, 1L, Long::sum);
+                    }
+                } else if (existing.containsKey(key)) {
+                    LocalDate date = existing.get(key);
+                    deletes.add(new EnrollmentJournal.Entry(op.seq(), false, studentId, courseId, date));
+                    seat[0]--;
+                    if (date != null) {
+                        removed.computeIfAbsent(date, day -> new HashMap<>()).merge(courseId, 1L, Long::sum);
+                    }
+                }
+            });
+
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO Enrollment (student_id, course_id, enrollment_date) VALUES (?, ?, ?)",
+                    inserts,
+                    IN_CLAUSE_SIZE,
+                    (statement, entry) -> {
+                        statement.setInt(1, entry.studentId());
+                        statement.setInt(2, entry.courseId());
+                        statement.setDate(3, entry.date() == null ? null : Date.valueOf(entry.date()));
+                    });
+            jdbcTemplate.batchUpdate(
+                    "DELETE FROM Enrollment WHERE student_id = ? AND course_id = ?",
+                    deletes,
+                    IN_CLAUSE_SIZE,
+                    (statement, entry) -> {
+                        statement.setInt(1, entry.studentId());
+                        statement.setInt(2, entry.courseId());
+                    });
+            added.forEach(enrollmentRollupService::enrollmentsAdded);
+            removed.forEach(enrollmentRollupService::enrollmentsRemoved);
+
+            inserts.forEach(entry -> inserted.add(new EnrollmentId(entry.studentId(), entry.courseId())));
+            deletes.forEach(entry -> deletedCourseIds.add(entry.courseId()));
+        }));
+
+        // 交易提交後才更新記憶體中的統計
+        inserted.forEach(id -> popularCourseService.enrollmentAdded(id.getCourseId()));
+        popularCourseService.enrollmentsRemoved(deletedCourseIds);
+        seats.forEach((courseId, seat) -> courseSeatService.settle(courseId, seat[0], seat[1]));
+        totalCountCache.added(ChangeTracker.Table.ENROLLMENT, inserted.size());
+        totalCountCache.removed(ChangeTracker.Table.ENROLLMENT, deletedCourseIds.size());
+        writtenAdds.increment(inserted.size());
+        writtenDeletes.increment(deletedCourseIds.size());
+        if (!inserted.isEmpty() || !deletedCourseIds.isEmpty()) {
+            changeTracker.changed(ChangeTracker.Table.ENROLLMENT);
+        }
+    }
+
+    // 待寫入的狀態優先，沒有時查詢資料庫 (primary，replica 可能還沒同步)
+    private boolean enrolled(long key, int studentId, int courseId) {
+        Pending op = pending.get(key);
+        if (op != null) {
+            return op.add();
+        }
+        return ReadWriteRoutingDataSource.onPrimary(() -> enrollmentRepository.existsById(new EnrollmentId(studentId, courseId)));
+    }
+
+    private long append(long key, EnrollmentJournal.Entry request) {
+        journalLock.lock();
+        try {
+            long seq = nextSeq++;
+            journal.append(new EnrollmentJournal.Entry(seq, request.add(), request.studentId(), request.courseId(), request.date()));
+            Pending previous = pending.get(key);
+            if (previous != null) {
+                coalesced.increment();
+            }
+            long acceptedAt = previous != null ? previous.acceptedAt() : System.nanoTime();
+            // 沒有待寫入的狀態時，選課代表資料庫中還沒有、退選代表已經有
+            boolean stored = previous != null ? previous.stored() : !request.add();
+            pending.put(key, new Pending(seq, request.add(), request.date(), acceptedAt, stored));
+            return seq;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    // fsync 在鎖外進行，同時確認的請求共用一次 fsync；失敗時記錄已在 pending 中，仍會寫入資料庫
+    private void sync(long seq) {
+        try {
+            journal.sync(seq);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // 日誌只保留還沒寫入資料庫的記錄
+    private void compactJournal() {
+        journalLock.lock();
+        try {
+            List<EnrollmentJournal.Entry> entries = new ArrayList<>(pending.size());
+            pending.forEach((key, op) -> entries.add(
+                    new EnrollmentJournal.Entry(op.seq(), op.add(), studentId(key), courseId(key), op.date())));
+            entries.sort(Comparator.comparingLong(EnrollmentJournal.Entry::seq));
+            journal.rewrite(entries);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    private double lagSeconds() {
+        long now = System.nanoTime();
+        long oldest = now;
+        for (Pending op : pending.values()) {
+            oldest = Math.min(oldest, op.acceptedAt());
+        }
+        return (now - oldest) / 1e9;
+    }
+
+    private void registerMetrics() {
+        Gauge.builder("enrollment.writebehind.pending", pending, Map::size)
+                .description("尚未寫入資料庫的選課組合數").register(meterRegistry);
+        Gauge.builder("enrollment.writebehind.lag", this, EnrollmentWriteBehindService::lagSeconds)
+                .baseUnit("seconds").description("最早一筆待寫入記錄確認後經過的時間").register(meterRegistry);
+        flushTimer = Timer.builder("enrollment.writebehind.flush")
+                .description("每批寫入資料庫的時間").register(meterRegistry);
+        acceptedAdds = Counter.builder("enrollment.writebehind.accepted").tag("op", "add").register(meterRegistry);
+        acceptedDeletes = Counter.builder("enrollment.writebehind.accepted").tag("op", "delete").register(meterRegistry);
+        writtenAdds = Counter.builder("enrollment.writebehind.written").tag("op", "add").register(meterRegistry);
+        writtenDeletes = Counter.builder("enrollment.writebehind.written").tag("op", "delete").register(meterRegistry);
+        coalesced = Counter.builder("enrollment.writebehind.coalesced")
+                .description("覆蓋了待寫入狀態的請求數").register(meterRegistry);
+        failures = Counter.builder("enrollment.writebehind.failures")
+                .description("寫入資料庫失敗的次數").register(meterRegistry);
+    }
+
+    private void lockStripes() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockStripes() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.unlock();
+        }
+    }
+
+    private ReentrantLock stripe(long key) {
+        return stripes[(Long.hashCode(key) & 0x7FFFFFFF) % STRIPES];
+    }
+
+    private static int studentId(long key) {
+        return IntPairSet.first(key);
+    }
+
+    private static int courseId(long key) {
+        return IntPairSet.second(key);
+    }
+}
@@ -0,0 +1,27 @@
+package fcu.pbiecs.spring_demo.writebehind;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 選課 write-behind 設定 ({@code app.enrollment.write-behind.*})。日誌目錄必須在本機磁碟上，且同時只能有一個程序使用。
+ */
+@Data
+@Component
+@ConfigurationProperties("app.enrollment.write-behind")
+public class WriteBehindProperties {
+
+    private boolean enabled = false;
+
+    private Path journalDirectory = Path.of("data");
+
+    // 背景寫入資料庫的間隔，上一批寫完後才開始計時
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    // 每個交易寫入的選課組合數，最多 1000 (IN 條件的上限)
+    private int maxBatchSize = 1000;
+}
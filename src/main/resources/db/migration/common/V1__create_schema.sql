@@ -0,0 +1,57 @@
+-- 初始資料表結構，與實體類別 (fcu.pbiecs.spring_demo.model) 對應。
+-- 查詢用的索引直接寫在資料表定義中，外鍵會使用同一個索引，不會再自動建立一個。
+
+CREATE TABLE IF NOT EXISTS Teacher (
+    teacher_id   INT          NOT NULL AUTO_INCREMENT,
+    teacher_name VARCHAR(255),
+    email        VARCHAR(255),
+    age          INT          NOT NULL,
+    version      BIGINT       NOT NULL DEFAULT 0,
+    PRIMARY KEY (teacher_id)
+);
+
+CREATE TABLE IF NOT EXISTS Student (
+    student_id    INT          NOT NULL AUTO_INCREMENT,
+    first_name    VARCHAR(255),
+    last_name     VARCHAR(255),
+    email         VARCHAR(255),
+    date_of_birth VARCHAR(255),
+    version       BIGINT       NOT NULL DEFAULT 0,
+    PRIMARY KEY (student_id),
+    -- findStudentByEmail
+    INDEX idx_student_email (email)
+);
+
+CREATE TABLE IF NOT EXISTS Course (
+    course_id          INT          NOT NULL AUTO_INCREMENT,
+    course_name        VARCHAR(255),
+    course_description VARCHAR(255),
+    credits            INT          NOT NULL,
+    teacher_id         INT,
+    version            BIGINT       NOT NULL DEFAULT 0,
+    PRIMARY KEY (course_id),
+    -- 教師的授課課程，刪除教師時 cascade
+    INDEX idx_course_teacher (teacher_id),
+    CONSTRAINT fk_course_teacher FOREIGN KEY (teacher_id) REFERENCES Teacher (teacher_id)
+);
+
+CREATE TABLE IF NOT EXISTS Enrollment (
+    student_id      INT  NOT NULL,
+    course_id       INT  NOT NULL,
+    enrollment_date DATE,
+    PRIMARY KEY (student_id, course_id),
+    -- 課程的選課名單 (findByCourseId) 與熱門課程的 GROUP BY course_id；
+    -- 次要索引包含主鍵欄位，兩者都只需要掃描索引
+    INDEX idx_enrollment_course (course_id),
+    CONSTRAINT fk_enrollment_student FOREIGN KEY (student_id) REFERENCES Student (student_id),
+    CONSTRAINT fk_enrollment_course FOREIGN KEY (course_id) REFERENCES Course (course_id)
+);
+
+CREATE TABLE IF NOT EXISTS EnrollmentDailyCount (
+    course_id        INT    NOT NULL,
+    enrollment_date  DATE   NOT NULL,
+    enrollment_count BIGINT NOT NULL,
+    PRIMARY KEY (course_id, enrollment_date),
+    -- 依日期區間查詢趨勢
+    INDEX idx_enrollment_daily_count_date (enrollment_date)
+);
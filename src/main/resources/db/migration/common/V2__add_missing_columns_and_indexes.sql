@@ -0,0 +1,11 @@
+-- 手動建立的既有資料庫 (以 baseline-on-migrate 從版本 0 開始) 可能缺少的欄位與索引。
+-- 由 V1 建立的資料庫都已經有了，這裡的敘述不會有任何變更。
+
+ALTER TABLE Teacher ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE Student ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE Course ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS idx_student_email ON Student (email);
+CREATE INDEX IF NOT EXISTS idx_course_teacher ON Course (teacher_id);
+CREATE INDEX IF NOT EXISTS idx_enrollment_course ON Enrollment (course_id);
+CREATE INDEX IF NOT EXISTS idx_enrollment_daily_count_date ON EnrollmentDailyCount (enrollment_date);
@@ -0,0 +1,4 @@
+-- 課程名額，NULL 表示不限人數 (既有課程維持不限)。
+-- 已選課人數不另外存欄位，由 CourseSeatService 從 Enrollment 載入後在記憶體中增減。
+
+ALTER TABLE Course ADD COLUMN IF NOT EXISTS capacity INT;
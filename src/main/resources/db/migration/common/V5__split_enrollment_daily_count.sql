@@ -0,0 +1,6 @@
+-- 每個 (課程, 日期) 的彙總分成多列 (bucket)，同一門熱門課程同時選課時增減分散到不同列，不會都在等同一列的鎖。
+-- 既有的彙總都在 bucket 0；查詢一律以 SUM 合計各列。
+
+ALTER TABLE EnrollmentDailyCount ADD COLUMN IF NOT EXISTS bucket INT NOT NULL DEFAULT 0;
+ALTER TABLE EnrollmentDailyCount DROP PRIMARY KEY;
+ALTER TABLE EnrollmentDailyCount ADD PRIMARY KEY (course_id, enrollment_date, bucket);
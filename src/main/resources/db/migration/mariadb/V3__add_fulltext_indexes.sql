@@ -0,0 +1,7 @@
+-- 關鍵字搜尋的 FULLTEXT 索引 (app.search.full-text=true 時使用)，只有 MariaDB / MySQL 支援。
+-- MATCH() 的欄位必須與索引完全相同，課程搜尋另外比對教師姓名，因此教師姓名有自己的索引。
+
+CREATE FULLTEXT INDEX IF NOT EXISTS ft_student_keyword ON Student (first_name, last_name, email);
+CREATE FULLTEXT INDEX IF NOT EXISTS ft_teacher_keyword ON Teacher (teacher_name, email);
+CREATE FULLTEXT INDEX IF NOT EXISTS ft_teacher_name ON Teacher (teacher_name);
+CREATE FULLTEXT INDEX IF NOT EXISTS ft_course_keyword ON Course (course_name, course_description);
@@ -0,0 +1,73 @@
+package fcu.pbiecs.spring_demo;
+
+import fcu.pbiecs.spring_demo.service.SearchIndexService;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Flyway migration 在嵌入式資料庫上建立的結構：Hibernate 以 validate 啟動 (見測試的 application.properties)，
+ * 查詢用的索引存在，手動建立的舊資料庫也能補上缺少的欄位與索引。
+ */
+@SpringBootTest
+class SchemaMigrationTests {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    SearchIndexService searchIndexService;
+
+    @Test
+    void migrationsCreateQueryIndexes() {
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT \"version\" FROM \"flyway_schema_history\" WHERE \"success\" AND \"version\" IS NOT NULL ORDER BY \"installed_rank\"",
+                String.class))
+                .containsExactly("1", "2", "4", "5");
+        assertIndexes(jdbcTemplate);
+    }
+
+    @Test
+    void handMadeSchemaIsBaselinedAndCompleted() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:legacy-schema;MODE=MariaDB;DATABASE_TO_LOWER=FALSE;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate legacy = new JdbcTemplate(dataSource);
+        // 加上 @Version 之前手動建立的結構，沒有任何次要索引
+        legacy.execute("CREATE TABLE Teacher (teacher_id INT AUTO_INCREMENT PRIMARY KEY, teacher_name VARCHAR(255), email VARCHAR(255), age INT)");
+        legacy.execute("CREATE TABLE Student (student_id INT AUTO_INCREMENT PRIMARY KEY, first_name VARCHAR(255), last_name VARCHAR(255), email VARCHAR(255), date_of_birth VARCHAR(255))");
+        legacy.execute("CREATE TABLE Course (course_id INT AUTO_INCREMENT PRIMARY KEY, course_name VARCHAR(255), course_description VARCHAR(255), credits INT, teacher_id INT)");
+        legacy.execute("CREATE TABLE Enrollment (student_id INT NOT NULL, course_id INT NOT NULL, enrollment_date DATE, PRIMARY KEY (student_id, course_id))");
+        legacy.update("INSERT INTO Student (first_name, last_name, email, date_of_birth) VALUES ('Alice', 'Wang', 'alice@example.com', '2003-01-01')");
+
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration/common")
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate();
+
+        assertIndexes(legacy);
+        assertThat(legacy.queryForObject("SELECT version FROM Student", Long.class)).isZero();
+        assertThat(legacy.queryForObject("SELECT COUNT(*) FROM EnrollmentDailyCount", Integer.class)).isZero();
+    }
+
+    @Test
+    void fullTextSearchIsOffOnDatabasesWithoutIt() {
+        assertThat(searchIndexService.fullTextQuery("alice")).isNull();
+    }
+
+    private static void assertIndexes(JdbcTemplate jdbc) {
+        List<String> indexes = jdbc.queryForList(
+                "SELECT UPPER(INDEX_NAME) FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_SCHEMA = 'PUBLIC'", String.class);
+        assertThat(indexes).contains("IDX_STUDENT_EMAIL", "IDX_COURSE_TEACHER", "IDX_ENROLLMENT_COURSE",
+                "IDX_ENROLLMENT_DAILY_COUNT_DATE");
+    }
+}
@@ -0,0 +1,86 @@
+package fcu.pbiecs.spring_demo;
+
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.repository.TeacherRepository;
+import fcu.pbiecs.spring_demo.service.CourseService;
+import fcu.pbiecs.spring_demo.service.TeacherService;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestComponent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 整合測試共用的資料準備：清空資料表、經由 Service 建立教師與課程，以及比對選課彙總。
+ * 測試類別以 {@code @Import(TestDataSupport.class)} 取得。
+ */
+@TestComponent
+public class TestDataSupport {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TeacherService teacherService;
+
+    @Autowired
+    private CourseService courseService;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    /**
+     * 以 SQL 清空所有資料表，再比照資料重新載入清掉二級快取與記憶體中的索引、統計、名額計數。
+     */
+    public void clear() {
+        jdbcTemplate.update("DELETE FROM EnrollmentDailyCount");
+        jdbcTemplate.update("DELETE FROM Enrollment");
+        jdbcTemplate.update("DELETE FROM Course");
+        jdbcTemplate.update("DELETE FROM Student");
+        jdbcTemplate.update("DELETE FROM Teacher");
+        entityManagerFactory.getCache().evictAll();
+        eventPublisher.publishEvent(new DataReloadedEvent());
+    }
+
+    public Teacher addTeacher(String name, String email) {
+        return teacherService.addTeacher(new Teacher(null, name, email, 45, null, null));
+    }
+
+    /**
+     * 新增課程。Course.teacher 設定為 CascadeType.ALL，教師要在同一個交易中重新載入，不能直接傳入已脫離 session 的實體。
+     */
+    public Course addCourse(Teacher teacher, String name, String description, int credits, Integer capacity) {
+        return transactionTemplate.execute(status -> courseService.addCourse(new Course(null, name, description, credits,
+                capacity, teacherRepository.findById(teacher.getTeacherId()).orElseThrow(), null, null)));
+    }
+
+    /**
+     * 每日選課彙總表中各 (課程, 日期) 合計不為零的人數，與 {@link #countedFromEnrollments} 比對。
+     */
+    public List<Map<String, Object>> rollup() {
+        return jdbcTemplate.queryForList(
+                "SELECT course_id, enrollment_date, CAST(SUM(enrollment_count) AS BIGINT) AS n FROM EnrollmentDailyCount " +
+                "GROUP BY course_id, enrollment_date HAVING SUM(enrollment_count) <> 0 ORDER BY course_id, enrollment_date");
+    }
+
+    public List<Map<String, Object>> countedFromEnrollments() {
+        return jdbcTemplate.queryForList(
+                "SELECT course_id, enrollment_date, COUNT(*) AS n FROM Enrollment " +
+                "GROUP BY course_id, enrollment_date ORDER BY course_id, enrollment_date");
+    }
+}
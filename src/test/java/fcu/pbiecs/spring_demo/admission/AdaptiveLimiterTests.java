@@ -0,0 +1,200 @@
+package fcu.pbiecs.spring_demo.admission;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 並行上限：佇列已滿與等待逾時時拒絕、離開佇列的等待者不會吞掉空位，以及上限依延遲樣本縮小與增加。
+ */
+class AdaptiveLimiterTests {
+
+    final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1, 1, 10, TimeUnit.SECONDS);
+        AdaptiveLimiter.Permit held = limiter.acquire();
+        Future<AdaptiveLimiter.Permit> queued = executor.submit(limiter::acquire);
+        awaitQueued(limiter, 1);
+
+        assertThatThrownBy(limiter::acquire)
+                .isInstanceOf(AdaptiveLimiter.LimitExceededException.class)
+                .satisfies(e -> {
+                    AdaptiveLimiter.LimitExceededException exceeded = (AdaptiveLimiter.LimitExceededException) e;
+                    assertThat(exceeded.getReason()).isEqualTo(AdaptiveLimiter.Reason.QUEUE_FULL);
+                    assertThat(exceeded.getRetryAfterSeconds()).isBetween(1L, 60L);
+                });
+
+        held.release();
+        queued.get(5, TimeUnit.SECONDS).release();
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void rejectsAfterWaitingTooLong() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1, 5, 50, TimeUnit.MILLISECONDS);
+        AdaptiveLimiter.Permit held = limiter.acquire();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(limiter::acquire)
+                .isInstanceOf(AdaptiveLimiter.LimitExceededException.class)
+                .extracting(e -> ((AdaptiveLimiter.LimitExceededException) e).getReason())
+                .isEqualTo(AdaptiveLimiter.Reason.TIMEOUT);
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(limiter.getQueued()).isZero();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+
+        held.release();
+        limiter.acquire().release();
+    }
+
+    @Test
+    void interruptedWaiterLeavesSlotForNext() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1, 5, 10, TimeUnit.SECONDS);
+        AdaptiveLimiter.Permit held = limiter.acquire();
+        CompletableFuture<Thread> firstThread = new CompletableFuture<>();
+        Future<AdaptiveLimiter.Permit> first = executor.submit(() -> {
+            firstThread.complete(Thread.currentThread());
+            return limiter.acquire();
+        });
+        awaitQueued(limiter, 1);
+        Future<AdaptiveLimiter.Permit> second = executor.submit(limiter::acquire);
+        awaitQueued(limiter, 2);
+
+        firstThread.get().interrupt();
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(InterruptedException.class);
+        held.release();
+
+        second.get(5, TimeUnit.SECONDS).release();
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.getQueued()).isZero();
+    }
+
+    @Test
+    void freedSlotIsHandedOnWhenWaiterTimesOutAtTheSameTime() throws Exception {
+        // 釋放與最前面的等待者逾時幾乎同時發生：不論誰拿到空位，都不能讓後面的等待者一直等到逾時
+        for (int round = 0; round < 20; round++) {
+            AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1, 5, 100, TimeUnit.MILLISECONDS);
+            AdaptiveLimiter.Permit held = limiter.acquire();
+            long start = System.nanoTime();
+            Future<AdaptiveLimiter.Permit> first = executor.submit(limiter::acquire);
+            awaitQueued(limiter, 1);
+            Thread.sleep(40);
+            Future<AdaptiveLimiter.Permit> second = executor.submit(limiter::acquire);
+            awaitQueued(limiter, 2);
+            // 在第一個等待者逾時的時間點附近釋放
+            long untilTimeout = TimeUnit.MILLISECONDS.toNanos(100) - (System.nanoTime() - start);
+            if (untilTimeout > 0) {
+                TimeUnit.NANOSECONDS.sleep(untilTimeout);
+            }
+            held.release();
+
+            List<AdaptiveLimiter.Permit> admitted = new ArrayList<>();
+            for (Future<AdaptiveLimiter.Permit> waiter : List.of(first, second)) {
+                try {
+                    admitted.add(waiter.get(5, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).isInstanceOf(AdaptiveLimiter.LimitExceededException.class);
+                }
+            }
+            assertThat(admitted).as("round %d", round).isNotEmpty();
+            admitted.forEach(AdaptiveLimiter.Permit::release);
+            assertThat(limiter.getInFlight()).isZero();
+        }
+    }
+
+    @Test
+    void releaseOnlyCountsOnce() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 2, 0, 0, TimeUnit.MILLISECONDS);
+        AdaptiveLimiter.Permit permit = limiter.acquire();
+        limiter.acquire();
+
+        permit.release();
+        permit.release();
+
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void limitGrowsWhileLatencyIsStableAndShrinksWhenItRises() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 5, 40, 0, 0, TimeUnit.MILLISECONDS, clock::get);
+
+        for (int i = 0; i < 10; i++) {
+            round(limiter, clock, limiter.getLimit(), 10);
+        }
+        int grown = limiter.getLimit();
+        assertThat(grown).isGreaterThan(10);
+
+        // 延遲變成十倍：請求開始排隊，上限依比例降低
+        for (int i = 0; i < 10; i++) {
+            round(limiter, clock, limiter.getLimit(), 100);
+        }
+        assertThat(limiter.getLimit()).isLessThan(grown);
+
+        // 延遲持續變長時一路降到下限 (gradient 最低 0.5，上限本身收斂在 4 附近，由下限擋住)
+        long rtt = 100;
+        for (int i = 0; i < 20; i++) {
+            rtt *= 2;
+            round(limiter, clock, limiter.getLimit(), rtt);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(5);
+
+        // 延遲穩定下來後長期平均跟上，上限再慢慢往上加
+        for (int i = 0; i < 100; i++) {
+            round(limiter, clock, limiter.getLimit(), rtt);
+        }
+        assertThat(limiter.getLimit()).isGreaterThan(5);
+    }
+
+    @Test
+    void limitStaysWhileMostlyIdle() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 2, 40, 0, 0, TimeUnit.MILLISECONDS, clock::get);
+
+        // 用量不到一半時延遲再穩定也不往上加，延遲變長也不縮小
+        for (int i = 0; i < 20; i++) {
+            round(limiter, clock, 2, 10);
+        }
+        for (int i = 0; i < 20; i++) {
+            round(limiter, clock, 2, 100);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    // 同時取得 concurrent 個許可，經過 rttMillis 後全部歸還
+    private static void round(AdaptiveLimiter limiter, AtomicLong clock, int concurrent, long rttMillis) throws Exception {
+        List<AdaptiveLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < concurrent; i++) {
+            permits.add(limiter.acquire());
+        }
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(rttMillis));
+        permits.forEach(AdaptiveLimiter.Permit::release);
+    }
+
+    private static void awaitQueued(AdaptiveLimiter limiter, int queued) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.getQueued() < queued) {
+            assertThat(System.nanoTime()).as("waiting for %d queued", queued).isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package fcu.pbiecs.spring_demo.admission;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.controller.NdjsonStreamer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 限流攔截器：heavy 額度被 NDJSON 串流佔住時，排隊已滿或等待逾時的請求回 503 + Retry-After，light 請求不受影響；
+ * 串流的許可在 async dispatch 完成後只歸還一次。
+ */
+@SpringBootTest(properties = {
+        "app.admission.heavy.initial-limit=1",
+        "app.admission.heavy.min-limit=1",
+        "app.admission.heavy.max-limit=1",
+        "app.admission.heavy.max-queue=1",
+        "app.admission.heavy.max-wait=500ms"
+})
+@AutoConfigureMockMvc
+@Import(TestDataSupport.class)
+class AdmissionControlInterceptorTests {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    TestDataSupport testData;
+
+    @BeforeEach
+    void setUp() {
+        testData.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testData.clear();
+    }
+
+    @Test
+    void streamHoldsHeavyPermitUntilAsyncDispatchCompletes() throws Exception {
+        MvcResult stream = startStream();
+        assertThat(gauge("admission.inflight")).isEqualTo(1);
+
+        mockMvc.perform(asyncDispatch(stream)).andExpect(status().isOk());
+        assertThat(gauge("admission.inflight")).isZero();
+
+        // 歸還後可以再取得，且不會因重複歸還而多出額度
+        MvcResult next = startStream();
+        assertThat(gauge("admission.inflight")).isEqualTo(1);
+        mockMvc.perform(asyncDispatch(next)).andExpect(status().isOk());
+        assertThat(gauge("admission.inflight")).isZero();
+    }
+
+    @Test
+    void rejectsHeavyRequestsWhenQueueIsFullOrWaitTimesOut() throws Exception {
+        double queueFull = rejected("queue_full");
+        double timeout = rejected("timeout");
+        MvcResult stream = startStream();
+
+        // 第一個請求排隊等待，逾時後回 503
+        CompletableFuture<MvcResult> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return mockMvc.perform(get("/api/courses").accept(MediaType.APPLICATION_JSON)).andReturn();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gauge("admission.queue") < 1) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(1);
+        }
+
+        // 佇列已滿，立即回 503
+        mockMvc.perform(get("/api/courses").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER))
+                .andExpect(jsonPath("$.error").value("Too many concurrent requests (queue_full)"));
+
+        // light 請求有自己的額度
+        mockMvc.perform(get("/api/courses").param("pageNumber", "0").param("pageSize", "10")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        MvcResult timedOut = waiting.get(5, TimeUnit.SECONDS);
+        assertThat(timedOut.getResponse().getStatus()).isEqualTo(503);
+        assertThat(timedOut.getResponse().getHeader(HttpHeaders.RETRY_AFTER)).isNotNull();
+        assertThat(rejected("queue_full")).isEqualTo(queueFull + 1);
+        assertThat(rejected("timeout")).isEqualTo(timeout + 1);
+
+        mockMvc.perform(asyncDispatch(stream)).andExpect(status().isOk());
+        mockMvc.perform(get("/api/courses").accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        assertThat(gauge("admission.inflight")).isZero();
+        assertThat(gauge("admission.queue")).isZero();
+    }
+
+    private MvcResult startStream() throws Exception {
+        return mockMvc.perform(get("/api/courses").accept(NdjsonStreamer.APPLICATION_NDJSON_VALUE))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).tag("class", "heavy").gauge().value();
+    }
+
+    private double rejected(String reason) {
+        var counter = meterRegistry.find("admission.rejected").tag("class", "heavy").tag("reason", reason).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
@@ -0,0 +1,92 @@
+package fcu.pbiecs.spring_demo.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 打包的 (int, int) 集合：(0, 0) 與負數 ID 也要正確判斷，擴充後既有的元素不會遺失。
+ */
+class IntPairSetTests {
+
+    @Test
+    void packRoundTrips() {
+        int[] values = {0, 1, -1, 42, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int first : values) {
+            for (int second : values) {
+                long key = IntPairSet.pack(first, second);
+                assertThat(IntPairSet.first(key)).as("%d, %d", first, second).isEqualTo(first);
+                assertThat(IntPairSet.second(key)).as("%d, %d", first, second).isEqualTo(second);
+            }
+        }
+        // 低位的負數不能把高位蓋掉
+        assertThat(IntPairSet.pack(1, -1)).isNotEqualTo(IntPairSet.pack(-1, -1));
+    }
+
+    @Test
+    void zeroPairIsStoredOutsideTheTable() {
+        IntPairSet set = new IntPairSet();
+        assertThat(set.contains(0, 0)).isFalse();
+        assertThat(set.add(0, 0)).isTrue();
+        assertThat(set.add(0, 0)).isFalse();
+        assertThat(set.contains(0, 0)).isTrue();
+        assertThat(set.size()).isEqualTo(1);
+
+        // 只有一邊為 0 的組合與 (0, 0) 不同
+        assertThat(set.contains(0, 1)).isFalse();
+        assertThat(set.add(0, 1)).isTrue();
+        assertThat(set.add(1, 0)).isTrue();
+        assertThat(set.size()).isEqualTo(3);
+    }
+
+    @Test
+    void negativeIdsAreDistinct() {
+        IntPairSet set = new IntPairSet();
+        assertThat(set.add(-1, -1)).isTrue();
+        assertThat(set.add(-1, 1)).isTrue();
+        assertThat(set.add(1, -1)).isTrue();
+        assertThat(set.add(Integer.MIN_VALUE, Integer.MAX_VALUE)).isTrue();
+        assertThat(set.add(-1, -1)).isFalse();
+        assertThat(set.contains(1, 1)).isFalse();
+        assertThat(set.contains(Integer.MAX_VALUE, Integer.MIN_VALUE)).isFalse();
+        assertThat(set.size()).isEqualTo(4);
+    }
+
+    @Test
+    void keepsAllElementsAcrossGrowth() {
+        // 從最小容量開始，經過多次擴充
+        IntPairSet set = new IntPairSet(1);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            // 範圍小，會有重複
+            int first = random.nextInt(400) - 200;
+            int second = random.nextInt(400) - 200;
+            assertThat(set.add(first, second)).isEqualTo(expected.add(IntPairSet.pack(first, second)));
+        }
+        assertThat(set.size()).isEqualTo(expected.size());
+        for (int first = -200; first < 200; first++) {
+            for (int second = -200; second < 200; second++) {
+                assertThat(set.contains(first, second)).isEqualTo(expected.contains(IntPairSet.pack(first, second)));
+            }
+        }
+    }
+
+    @Test
+    void sequentialIdsSpreadAcrossTable() {
+        // 資料產生時的ID是連續的
+        IntPairSet set = new IntPairSet(10_000);
+        for (int student = 1; student <= 100; student++) {
+            for (int course = 1; course <= 100; course++) {
+                assertThat(set.add(student, course)).isTrue();
+            }
+        }
+        assertThat(set.size()).isEqualTo(10_000);
+        assertThat(set.contains(100, 100)).isTrue();
+        assertThat(set.contains(101, 1)).isFalse();
+    }
+}
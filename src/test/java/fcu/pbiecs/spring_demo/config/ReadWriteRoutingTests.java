@@ -0,0 +1,141 @@
+package fcu.pbiecs.spring_demo.config;
+
+import fcu.pbiecs.spring_demo.jdbc.ReadWriteRoutingDataSource;
+import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.service.StudentService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 以兩個 H2 記憶體資料庫分別當作 primary 與 replica，確認唯讀交易讀 replica、寫入一律到 primary。
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;MODE=MariaDB;DATABASE_TO_LOWER=FALSE;DB_CLOSE_DELAY=-1",
+        "app.datasource.replica.url=jdbc:h2:mem:routing-replica;MODE=MariaDB;DATABASE_TO_LOWER=FALSE;DB_CLOSE_DELAY=-1;"
+                + "INIT=RUNSCRIPT FROM 'classpath:replica-schema.sql'",
+        "app.datasource.replica.username=sa",
+        "app.datasource.replica.password=",
+        "app.datasource.replica.driver-class-name=org.h2.Driver"
+})
+@AutoConfigureMockMvc
+class ReadWriteRoutingTests {
+
+    @Autowired
+    StudentService studentService;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    DataSource primaryDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    DataSource replicaDataSource;
+
+    JdbcTemplate primary;
+    JdbcTemplate replica;
+
+    @BeforeEach
+    void setUp() {
+        primary = new JdbcTemplate(primaryDataSource);
+        replica = new JdbcTemplate(replicaDataSource);
+        for (JdbcTemplate db : List.of(primary, replica)) {
+            db.update("DELETE FROM Enrollment");
+            db.update("DELETE FROM Course");
+            db.update("DELETE FROM Student");
+            db.update("DELETE FROM Teacher");
+        }
+    }
+
+    @Test
+    void writesGoToPrimary() {
+        studentService.addStudent(new Student(null, "Alice", "Wang", "alice@example.com", "2003-01-01", null, null));
+
+        assertThat(primary.queryForObject("SELECT COUNT(*) FROM Student", Integer.class)).isEqualTo(1);
+        assertThat(replica.queryForObject("SELECT COUNT(*) FROM Student", Integer.class)).isZero();
+    }
+
+    @Test
+    void readOnlyQueriesGoToReplica() {
+        primary.update("INSERT INTO Student (first_name, last_name, email) VALUES ('Primary', 'Row', 'primary@example.com')");
+        replica.update("INSERT INTO Student (first_name, last_name, email) VALUES ('Replica', 'Row', 'replica@example.com')");
+
+        assertThat(studentService.getAllStudent())
+                .extracting(Student::getEmail)
+                .containsExactly("replica@example.com");
+    }
+
+    @Test
+    void onPrimaryReadsPrimaryInsideReadOnlyTransaction() {
+        primary.update("INSERT INTO Student (first_name, last_name, email) VALUES ('Primary', 'Row', 'primary@example.com')");
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        JdbcTemplate routed = new JdbcTemplate(dataSource);
+
+        Integer fromReplica = readOnly.execute(status -> routed.queryForObject("SELECT COUNT(*) FROM Student", Integer.class));
+        Integer fromPrimary = readOnly.execute(status -> ReadWriteRoutingDataSource.onPrimary(
+                () -> routed.queryForObject("SELECT COUNT(*) FROM Student", Integer.class)));
+
+        assertThat(fromReplica).isZero();
+        assertThat(fromPrimary).isEqualTo(1);
+    }
+
+    @Test
+    void etagGuardedReadsGoToPrimary() throws Exception {
+        // replica 還沒同步到的課程 (沒有授課教師)，以 ETag 回應的讀取要讀 primary
+        primary.update("INSERT INTO Course (course_id, course_name, credits) VALUES (7, 'Lagging', 3)");
+
+        mockMvc.perform(get("/api/courses/7").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(jsonPath("$.name").value("Lagging"));
+        mockMvc.perform(get("/api/courses").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name").value(contains("Lagging")));
+    }
+
+    @Test
+    void writeAfterReadInSameRequestGoesToPrimary() throws Exception {
+        // 同一個老師存在於兩邊，PUT 會先唯讀查詢 (replica) 再更新，更新必須寫到 primary
+        for (JdbcTemplate db : List.of(primary, replica)) {
+            db.update("INSERT INTO Teacher (teacher_id, teacher_name, email, age) VALUES (1, 'Old', 'old@example.com', 40)");
+        }
+
+        mockMvc.perform(put("/api/teachers/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"New\",\"email\":\"new@example.com\",\"age\":41}"))
+                .andExpect(status().isOk());
+
+        assertThat(primary.queryForObject("SELECT teacher_name FROM Teacher WHERE teacher_id = 1", String.class)).isEqualTo("New");
+        assertThat(replica.queryForObject("SELECT teacher_name FROM Teacher WHERE teacher_id = 1", String.class)).isEqualTo("Old");
+    }
+}
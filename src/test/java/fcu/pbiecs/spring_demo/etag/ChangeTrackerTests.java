@@ -0,0 +1,107 @@
+package fcu.pbiecs.spring_demo.etag;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.service.CourseService;
+import fcu.pbiecs.spring_demo.service.TeacherService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 條件式 GET：資料沒有變更時回 304，相關資料寫入後換新的 ETag。
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@Import(TestDataSupport.class)
+class ChangeTrackerTests {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    TeacherService teacherService;
+
+    @Autowired
+    CourseService courseService;
+
+    @Autowired
+    TestDataSupport testData;
+
+    Teacher teacher;
+    Course first;
+    Course second;
+
+    @BeforeEach
+    void setUp() {
+        testData.clear();
+        teacher = testData.addTeacher("ETag Teacher", "etag@example.com");
+        first = testData.addCourse(teacher, "Compilers", "ETag", 3, null);
+        second = testData.addCourse(teacher, "Networks", "ETag", 3, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        testData.clear();
+    }
+
+    @Test
+    void courseListIsNotModifiedUntilACourseChanges() throws Exception {
+        String etag = etagOf("/api/courses");
+        mockMvc.perform(get("/api/courses").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        renameCourse(second, "Operating Systems");
+
+        assertThat(etagOf("/api/courses")).isNotEqualTo(etag);
+    }
+
+    @Test
+    void courseEtagFollowsItsOwnVersion() throws Exception {
+        String url = "/api/courses/" + first.getCourseId();
+        String etag = etagOf(url);
+
+        // 其他課程的變更不影響這門課的 ETag
+        renameCourse(second, "Operating Systems");
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        // 授課教師更新後課程內容跟著改變
+        teacher.setName("Renamed Teacher");
+        teacherService.updateTeacher(teacher);
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    // 經由 API 更新，課程的教師在 open-in-view 的 session 中載入
+    private void renameCourse(Course course, String name) throws Exception {
+        mockMvc.perform(put("/api/courses/" + course.getCourseId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"" + name + "\",\"description\":\"ETag\",\"credits\":3," +
+                                "\"teacher\":{\"teacherId\":" + teacher.getTeacherId() + "}}"))
+                .andExpect(status().isOk());
+    }
+
+    private String etagOf(String url) throws Exception {
+        String etag = mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotNull();
+        return etag;
+    }
+}
@@ -0,0 +1,105 @@
+package fcu.pbiecs.spring_demo.etag;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 經過實際的 Tomcat：帶 ETag 的大型回應仍會 gzip 壓縮，不同格式與壓縮後的回應都能以同一個 ETag 回 304。
+ */
+// 測試的 application.properties 蓋過正式設定，壓縮設定與正式環境相同
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.compression.enabled=true",
+        "server.compression.mime-types=application/json,application/cbor",
+        "server.compression.min-response-size=2KB"
+})
+@Import(TestDataSupport.class)
+class CompressedEtagTests {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    TestDataSupport testData;
+
+    final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() {
+        testData.clear();
+        Teacher teacher = testData.addTeacher("Gzip Teacher", "gzip@example.com");
+        // 超過 server.compression.min-response-size
+        for (int i = 0; i < 30; i++) {
+            testData.addCourse(teacher, "Course " + i, "Long description ".repeat(10) + i, 3, null);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        testData.clear();
+    }
+
+    @Test
+    void courseListIsCompressedWithWeakEtag() throws Exception {
+        HttpResponse<byte[]> json = get("/api/courses", MediaType.APPLICATION_JSON_VALUE, null);
+
+        assertThat(json.statusCode()).isEqualTo(200);
+        assertThat(json.headers().firstValue(HttpHeaders.CONTENT_ENCODING)).hasValue("gzip");
+        assertThat(String.join(",", json.headers().allValues(HttpHeaders.VARY)).toLowerCase(Locale.ROOT))
+                .contains("accept,").contains("accept-encoding");
+        String etag = json.headers().firstValue(HttpHeaders.ETAG).orElseThrow();
+        assertThat(etag).startsWith("W/\"");
+        String body = new String(new GZIPInputStream(new ByteArrayInputStream(json.body())).readAllBytes(), StandardCharsets.UTF_8);
+        assertThat(body).contains("Course 29");
+
+        HttpResponse<byte[]> cbor = get("/api/courses", MediaType.APPLICATION_CBOR_VALUE, null);
+        assertThat(cbor.statusCode()).isEqualTo(200);
+        assertThat(cbor.headers().firstValue(HttpHeaders.CONTENT_ENCODING)).hasValue("gzip");
+
+        // 快取中的壓縮回應以同一個 ETag 重新驗證
+        HttpResponse<byte[]> notModified = get("/api/courses", MediaType.APPLICATION_JSON_VALUE, etag);
+        assertThat(notModified.statusCode()).isEqualTo(304);
+        assertThat(notModified.body()).isEmpty();
+    }
+
+    @Test
+    void courseStudentsIsCompressedWithWeakEtag() throws Exception {
+        // 選課名單同樣是弱 ETag，可以壓縮，也能以同一個 ETag 回 304
+        int courseId = testData.addCourse(testData.addTeacher("Other", "other@example.com"), "Empty", "x", 3, null).getCourseId();
+        HttpResponse<byte[]> response = get("/api/courses/" + courseId + "/Students", MediaType.APPLICATION_JSON_VALUE, null);
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        String etag = response.headers().firstValue(HttpHeaders.ETAG).orElseThrow();
+        assertThat(etag).startsWith("W/\"");
+        assertThat(get("/api/courses/" + courseId + "/Students", MediaType.APPLICATION_JSON_VALUE, etag).statusCode()).isEqualTo(304);
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept, String ifNoneMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header(HttpHeaders.ACCEPT, accept)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        if (ifNoneMatch != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
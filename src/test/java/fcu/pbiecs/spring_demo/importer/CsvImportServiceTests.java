@@ -0,0 +1,212 @@
+package fcu.pbiecs.spring_demo.importer;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.dto.ImportResultDTO;
+import fcu.pbiecs.spring_demo.job.BulkWriteGuard;
+import fcu.pbiecs.spring_demo.job.DataInitJobService;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.model.Enrollment;
+import fcu.pbiecs.spring_demo.model.EnrollmentId;
+import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.service.EnrollmentService;
+import fcu.pbiecs.spring_demo.service.StudentService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * CSV 匯入：檔案內與資料庫中的重複、超過名額的選課都會被拒絕，回應中的拒絕清單有上限，且不能與資料初始化同時進行。
+ */
+@SpringBootTest
+@Import(TestDataSupport.class)
+class CsvImportServiceTests {
+
+    @Autowired
+    CsvImportService csvImportService;
+
+    @Autowired
+    StudentService studentService;
+
+    @Autowired
+    EnrollmentService enrollmentService;
+
+    @Autowired
+    DataInitJobService dataInitJobService;
+
+    @Autowired
+    BulkWriteGuard bulkWriteGuard;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    TestDataSupport testData;
+
+    @BeforeEach
+    void setUp() {
+        testData.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testData.clear();
+    }
+
+    @Test
+    void rejectsDuplicateEmailsInFileAndDatabase() throws Exception {
+        studentService.addStudent(new Student(null, "Old", "Student", "old@example.com", "2003-01-01", null, null));
+
+        // 標題列帶 BOM；檔案內的 Email 不分大小寫，與資料庫比對依欄位定序 (H2 區分大小寫)
+        ImportResultDTO result = importCsv(CsvImportService.Target.STUDENTS, """
+                \uFEFFfirst_name,last_name,email,birthday
+                New,Student,new@example.com,2004-02-03
+                Again,Student,old@example.com,2004-02-03
+                Twice,Student,New@Example.com,2004-02-03
+                Bad,Student,not-an-email,2004-02-03
+                """);
+
+        assertThat(result.getRowsRead()).isEqualTo(4);
+        assertThat(result.getRowsImported()).isEqualTo(1);
+        assertThat(result.getRowsRejected()).isEqualTo(3);
+        assertThat(result.getRejected()).extracting(ImportResultDTO.RejectedRow::getLine).containsExactlyInAnyOrder(3L, 4L, 5L);
+        assertThat(result.getRejected()).extracting(ImportResultDTO.RejectedRow::getReason)
+                .anyMatch(reason -> reason.startsWith("Email 已存在: old@"))
+                .anyMatch(reason -> reason.startsWith("Email 已存在: New@"))
+                .anyMatch(reason -> reason.startsWith("email 格式錯誤"));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Student", Integer.class)).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsDuplicateAndDanglingEnrollments() throws Exception {
+        Teacher teacher = testData.addTeacher("Import Teacher", "import.teacher@example.com");
+        Course course = testData.addCourse(teacher, "Import Course", "CSV", 3, null);
+        int first = studentService.addStudent(new Student(null, "A", "Student", "a@example.com", "2003-01-01", null, null)).getStudentId();
+        int second = studentService.addStudent(new Student(null, "B", "Student", "b@example.com", "2003-01-01", null, null)).getStudentId();
+        int courseId = course.getCourseId();
+        jdbcTemplate.update("INSERT INTO Enrollment (student_id, course_id, enrollment_date) VALUES (?, ?, CURRENT_DATE)", first, courseId);
+
+        ImportResultDTO result = importCsv(CsvImportService.Target.ENROLLMENTS,
+                "student_id,course_id,enrollment_date\n"
+                        + first + "," + courseId + ",2025-09-01\n"
+                        + second + "," + courseId + ",2025-09-01\n"
+                        + second + "," + courseId + ",2025-09-02\n"
+                        + (second + 1000) + "," + courseId + ",2025-09-01\n"
+                        + second + "," + (courseId + 1000) + ",2025-09-01\n");
+
+        assertThat(result.getRowsImported()).isEqualTo(1);
+        assertThat(result.getRejected()).extracting(ImportResultDTO.RejectedRow::getReason).containsExactly(
+                "選課已存在: " + first + " / " + courseId,
+                "選課已存在: " + second + " / " + courseId,
+                "學生不存在: " + (second + 1000),
+                "課程不存在: " + (courseId + 1000));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Enrollment", Integer.class)).isEqualTo(2);
+    }
+
+    @Test
+    void enrollmentsBeyondCapacityAreRejected() throws Exception {
+        Teacher teacher = testData.addTeacher("Import Teacher", "import.teacher@example.com");
+        Course course = testData.addCourse(teacher, "Small Course", "CSV", 3, 2);
+        int courseId = course.getCourseId();
+        List<Integer> students = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            students.add(studentService.addStudent(
+                    new Student(null, "S" + i, "Student", "s" + i + "@example.com", "2003-01-01", null, null)).getStudentId());
+        }
+        // 線上選課先占用一個名額
+        enrollmentService.addEnrollment(new Enrollment(new EnrollmentId(students.get(0), courseId), null, null, null));
+
+        ImportResultDTO result = importCsv(CsvImportService.Target.ENROLLMENTS,
+                "student_id,course_id\n" + students.get(1) + "," + courseId + "\n" + students.get(2) + "," + courseId + "\n");
+
+        assertThat(result.getRowsImported()).isEqualTo(1);
+        assertThat(result.getRejected()).extracting(ImportResultDTO.RejectedRow::getReason)
+                .containsExactly("課程已額滿: " + courseId);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Enrollment WHERE course_id = ?", Integer.class, courseId))
+                .isEqualTo(2);
+    }
+
+    @Test
+    void capsReportedRejectionsButNotifiesEveryOne() throws Exception {
+        int rows = CsvImportService.MAX_REPORTED_REJECTIONS + 5;
+        StringBuilder csv = new StringBuilder("teacher_name,email,age\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append("Teacher ").append(i).append(",bad-email-").append(i).append(",40\n");
+        }
+        List<Long> notified = new ArrayList<>();
+
+        ImportResultDTO result = csvImportService.importCsv(CsvImportService.Target.TEACHERS, stream(csv.toString()),
+                new CsvImportService.ImportListener() {
+                    @Override
+                    public void onRejected(long line, String reason) {
+                        notified.add(line);
+                    }
+                });
+
+        assertThat(result.getRowsRejected()).isEqualTo(rows);
+        assertThat(result.getRejected()).hasSize(CsvImportService.MAX_REPORTED_REJECTIONS);
+        assertThat(result.isRejectedTruncated()).isTrue();
+        assertThat(notified).hasSize(rows);
+    }
+
+    @Test
+    void dataInitCannotStartWhileImporting() throws Exception {
+        List<Exception> startFailures = new ArrayList<>();
+
+        // 匯入過程中 (持有執行權) 嘗試開始資料初始化
+        importCsv(CsvImportService.Target.TEACHERS, "teacher_name,email\nT,bad\n", new CsvImportService.ImportListener() {
+            @Override
+            public void onRejected(long line, String reason) {
+                try {
+                    dataInitJobService.start(1, 1, 1, 1);
+                } catch (Exception e) {
+                    startFailures.add(e);
+                }
+            }
+        });
+
+        assertThat(startFailures).singleElement()
+                .isInstanceOf(DataInitJobService.JobAlreadyRunningException.class)
+                .satisfies(e -> assertThat(((DataInitJobService.JobAlreadyRunningException) e).getJobId()).isNull());
+        assertThat(bulkWriteGuard.owner()).isNull();
+    }
+
+    @Test
+    void importRejectedWhileGuardHeld() {
+        Object other = new Object();
+        assertThat(bulkWriteGuard.tryAcquire(other)).isTrue();
+        try {
+            assertThatThrownBy(csvImportService::checkAvailable).isInstanceOf(CsvImportService.ImportRejectedException.class);
+            assertThatThrownBy(() -> importCsv(CsvImportService.Target.TEACHERS, "teacher_name,email\nT,t@example.com\n"))
+                    .isInstanceOf(CsvImportService.ImportRejectedException.class);
+        } finally {
+            bulkWriteGuard.release(other);
+        }
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Teacher", Integer.class)).isZero();
+    }
+
+    private ImportResultDTO importCsv(CsvImportService.Target target, String csv) throws Exception {
+        return importCsv(target, csv, null);
+    }
+
+    private ImportResultDTO importCsv(CsvImportService.Target target, String csv, CsvImportService.ImportListener listener) throws Exception {
+        return csvImportService.importCsv(target, stream(csv), listener);
+    }
+
+    private static InputStream stream(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+}
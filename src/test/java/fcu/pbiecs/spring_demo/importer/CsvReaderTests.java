@@ -0,0 +1,98 @@
+package fcu.pbiecs.spring_demo.importer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * CSV 解析：引號欄位、欄位內換行、檔案結尾被截斷的資料與 BOM，格式錯誤後可以繼續讀下一筆。
+ */
+class CsvReaderTests {
+
+    @Test
+    void readsQuotedFieldsWithCommasAndEscapedQuotes() throws Exception {
+        CsvReader reader = reader("name,note\n\"Lin, Mei\",\"say \"\"hi\"\"\"\n,\"\"\n");
+
+        assertThat(reader.next()).containsExactly("name", "note");
+        assertThat(reader.next()).containsExactly("Lin, Mei", "say \"hi\"");
+        assertThat(reader.next()).containsExactly("", "");
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void keepsNewlinesInsideQuotesAndCountsLines() throws Exception {
+        CsvReader reader = reader("a,b\r\n\"line1\r\nline2\nline3\",x\r\n\r\nlast,y");
+
+        assertThat(reader.next()).containsExactly("a", "b");
+        assertThat(reader.getRecordLine()).isEqualTo(1);
+        assertThat(reader.next()).containsExactly("line1\r\nline2\nline3", "x");
+        assertThat(reader.getRecordLine()).isEqualTo(2);
+        // 空白行略過，行號仍要算進去
+        assertThat(reader.next()).containsExactly("last", "y");
+        assertThat(reader.getRecordLine()).isEqualTo(6);
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void rejectsTornLastRecord() throws Exception {
+        CsvReader reader = reader("a,b\n1,2\n3,\"unterminated\nstill open");
+
+        assertThat(reader.next()).containsExactly("a", "b");
+        assertThat(reader.next()).containsExactly("1", "2");
+        assertThatThrownBy(reader::next)
+                .isInstanceOf(CsvReader.MalformedRecordException.class)
+                .hasMessageContaining("引號未結束")
+                .satisfies(e -> assertThat(((CsvReader.MalformedRecordException) e).getLine()).isEqualTo(3));
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void skipsMalformedRecordAndContinues() throws Exception {
+        CsvReader reader = reader("a\"b,c\n\"x\"y,z\nok,1\n");
+
+        assertThatThrownBy(reader::next).hasMessageContaining("欄位中間出現引號");
+        assertThatThrownBy(reader::next).hasMessageContaining("引號後必須是逗號或換行");
+        assertThat(reader.next()).containsExactly("ok", "1");
+        assertThat(reader.getRecordLine()).isEqualTo(3);
+    }
+
+    @Test
+    void dropsOversizedRecordWithoutLosingTheNext() throws Exception {
+        String huge = "\"" + "x\n".repeat(CsvReader.MAX_RECORD_CHARS) + "\"";
+        CsvReader reader = reader(huge + ",1\nnext,2\n");
+
+        assertThatThrownBy(reader::next).hasMessageContaining("資料長度超過");
+        assertThat(reader.next()).containsExactly("next", "2");
+    }
+
+    @Test
+    void leavesByteOrderMarkToTheCaller() throws Exception {
+        // BOM 由匯入讀取標題列時去掉，解析器原樣回傳
+        List<String[]> records = readAll("\uFEFFemail,name\na@b.c,A\n");
+
+        assertThat(records).hasSize(2);
+        assertThat(records.get(0)[0]).isEqualTo("\uFEFFemail");
+        assertThat(records.get(1)).containsExactly("a@b.c", "A");
+    }
+
+    private static CsvReader reader(String csv) {
+        return new CsvReader(new StringReader(csv));
+    }
+
+    private static List<String[]> readAll(String csv) throws IOException, CsvReader.MalformedRecordException {
+        List<String[]> records = new ArrayList<>();
+        try (CsvReader reader = reader(csv)) {
+            String[] record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,104 @@
+package fcu.pbiecs.spring_demo.pagination;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.service.TeacherService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 分頁的 total=none 與 total=approximate：不執行 COUNT 時只回 X-Has-Next，快取的總筆數隨寫入更新。
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@Import(TestDataSupport.class)
+class TotalCountCacheTests {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    TeacherService teacherService;
+
+    @Autowired
+    TestDataSupport testData;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    List<Teacher> teachers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        testData.clear();
+        for (int i = 1; i <= 5; i++) {
+            teachers.add(teacherService.addTeacher(new Teacher(null, "Teacher " + i, "t" + i + "@example.com", 40, null, null)));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        testData.clear();
+    }
+
+    @Test
+    void sliceModeReportsOnlyWhetherThereIsANextPage() throws Exception {
+        mockMvc.perform(get("/api/teachers?pageNumber=0&pageSize=2&total=none"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(header().string("X-Has-Next", "true"))
+                .andExpect(header().doesNotExist("X-Total-Count"));
+        mockMvc.perform(get("/api/teachers?pageNumber=2&pageSize=2&total=none"))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(header().string("X-Has-Next", "false"));
+    }
+
+    @Test
+    void approximateTotalFollowsWritesWithoutRecounting() throws Exception {
+        expectApproximateTotal(5);
+
+        teacherService.addTeacher(new Teacher(null, "Teacher 6", "t6@example.com", 40, null, null));
+        expectApproximateTotal(6);
+
+        // 繞過 Service 寫入時快取不會知道，要等 TTL 或下一次 invalidate
+        jdbcTemplate.update("INSERT INTO Teacher (teacher_name, email, age, version) VALUES ('Direct', 'd@example.com', 40, 0)");
+        expectApproximateTotal(6);
+        mockMvc.perform(get("/api/teachers?pageNumber=0&pageSize=2"))
+                .andExpect(header().string("X-Total-Count", "7"))
+                .andExpect(header().doesNotExist("X-Total-Count-Approximate"));
+
+        // 刪除教師會 cascade，之後重新計算
+        teacherService.deleteTeacher(teachers.get(0).getTeacherId());
+        expectApproximateTotal(6);
+    }
+
+    @Test
+    void invalidTotalModeIsBadRequest() throws Exception {
+        mockMvc.perform(get("/api/teachers?pageNumber=0&pageSize=2&total=sometimes"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid total mode: sometimes"));
+    }
+
+    private void expectApproximateTotal(int total) throws Exception {
+        mockMvc.perform(get("/api/teachers?pageNumber=0&pageSize=2&total=approximate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Total-Count", String.valueOf(total)))
+                .andExpect(header().string("X-Total-Count-Approximate", "true"))
+                .andExpect(header().string("X-Has-Next", "true"));
+    }
+}
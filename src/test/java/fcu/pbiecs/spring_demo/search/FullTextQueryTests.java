@@ -0,0 +1,26 @@
+package fcu.pbiecs.spring_demo.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FullTextQueryTests {
+
+    @Test
+    void everyWordIsRequiredAsAPrefix() {
+        assertThat(FullTextQuery.of("Bob.Lin")).isEqualTo("+bob* +lin*");
+        assertThat(FullTextQuery.of("  database   systems ")).isEqualTo("+database* +systems*");
+        // 停用詞不會出現在索引中，必須出現的話就查不到任何資料
+        assertThat(FullTextQuery.of("alice@example.com")).isEqualTo("+alice* +example*");
+    }
+
+    @Test
+    void keywordsFullTextCannotMatchFallBackToLike() {
+        assertThat(FullTextQuery.of("bo")).isNull();
+        assertThat(FullTextQuery.of("alice wu")).isNull();
+        assertThat(FullTextQuery.of("1024")).isNull();
+        assertThat(FullTextQuery.of("資料庫")).isNull();
+        assertThat(FullTextQuery.of("+-*")).isNull();
+        assertThat(FullTextQuery.of("the")).isNull();
+    }
+}
@@ -0,0 +1,159 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.dto.BulkDeleteRequestDTO;
+import fcu.pbiecs.spring_demo.dto.BulkDeleteResultDTO;
+import fcu.pbiecs.spring_demo.dto.EnrollmentPairDTO;
+import fcu.pbiecs.spring_demo.dto.PopularCourseDTO;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 批次刪除以少量集合式 DELETE 完成，彙總表與記憶體中的索引、統計隨之更新。
+ */
+@SpringBootTest
+@Import(TestDataSupport.class)
+class BulkDeleteServiceTests {
+
+    static final int STUDENTS = 40;
+
+    @Autowired
+    BulkDeleteService bulkDeleteService;
+
+    @Autowired
+    StudentService studentService;
+
+    @Autowired
+    TeacherService teacherService;
+
+    @Autowired
+    CourseService courseService;
+
+    @Autowired
+    EnrollmentService enrollmentService;
+
+    @Autowired
+    PopularCourseService popularCourseService;
+
+    @Autowired
+    TestDataSupport testData;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    Teacher alice;
+    Teacher bob;
+    Course algorithms;
+    Course databases;
+    Course networks;
+    List<Integer> studentIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        testData.clear();
+        alice = testData.addTeacher("Alice Bulk", "alice.bulk@example.com");
+        bob = testData.addTeacher("Bob Bulk", "bob.bulk@example.com");
+        algorithms = testData.addCourse(alice, "Algorithms", "Bulk", 3, null);
+        databases = testData.addCourse(alice, "Databases", "Bulk", 2, null);
+        networks = testData.addCourse(bob, "Networks", "Bulk", 2, null);
+        List<EnrollmentPairDTO> enrollments = new ArrayList<>();
+        for (int i = 0; i < STUDENTS; i++) {
+            Student student = studentService.addStudent(new Student(null, "Bulk", "Student" + i, "bulk" + i + "@example.com", "2003-01-01", null, null));
+            studentIds.add(student.getStudentId());
+            enrollments.add(new EnrollmentPairDTO(student.getStudentId(), algorithms.getCourseId()));
+            if (i % 2 == 0) {
+                enrollments.add(new EnrollmentPairDTO(student.getStudentId(), networks.getCourseId()));
+            }
+        }
+        enrollmentService.addEnrollments(enrollments);
+    }
+
+    @AfterEach
+    void tearDown() {
+        testData.clear();
+    }
+
+    @Test
+    void deletesStudentsWithAFewStatements() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<Integer> ids = new ArrayList<>(studentIds);
+        ids.add(-1);
+        BulkDeleteResultDTO result = bulkDeleteService.deleteStudents(new BulkDeleteRequestDTO(ids, null));
+
+        assertThat(result.getDeleted()).isEqualTo(STUDENTS);
+        assertThat(result.getEnrollmentsDeleted()).isEqualTo(STUDENTS + STUDENTS / 2);
+        // 逐筆刪除時每位學生至少要載入、刪除選課與刪除學生各一次
+        assertThat(statistics.getPrepareStatementCount()).isLessThan(15);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Enrollment", Integer.class)).isZero();
+        assertThat(testData.rollup()).isEqualTo(testData.countedFromEnrollments());
+        assertThat(studentService.searchStudents("bulk")).isEmpty();
+        assertThat(studentService.findStudentsByEmail("bulk0@example.com")).isNull();
+        assertThat(enrollmentCount(algorithms)).isZero();
+    }
+
+    @Test
+    void deletingCoursesKeepsTheirTeacher() throws Exception {
+        BulkDeleteResultDTO result = bulkDeleteService.deleteCourses(
+                new BulkDeleteRequestDTO(List.of(algorithms.getCourseId(), databases.getCourseId()), null));
+
+        assertThat(result.getDeleted()).isEqualTo(2);
+        assertThat(result.getEnrollmentsDeleted()).isEqualTo(STUDENTS);
+        assertThat(teacherService.getTeacherById(alice.getTeacherId()).getName()).isEqualTo("Alice Bulk");
+        assertThat(courseService.searchCourses("algorithms")).isEmpty();
+        assertThat(testData.rollup()).isEqualTo(testData.countedFromEnrollments());
+        assertThat(enrollmentCount(networks)).isEqualTo(STUDENTS / 2);
+    }
+
+    @Test
+    void deletingTeachersBySearchRemovesTheirCourses() {
+        BulkDeleteResultDTO result = bulkDeleteService.deleteTeachers(new BulkDeleteRequestDTO(null, "bob bulk"));
+
+        assertThat(result.getDeleted()).isEqualTo(1);
+        assertThat(result.getCoursesDeleted()).isEqualTo(1);
+        assertThat(result.getEnrollmentsDeleted()).isEqualTo(STUDENTS / 2);
+        assertThat(courseService.searchCourses("networks")).isEmpty();
+        assertThat(courseService.searchCourses("algorithms")).hasSize(1);
+        assertThat(testData.rollup()).isEqualTo(testData.countedFromEnrollments());
+    }
+
+    @Test
+    void requiresExactlyOneOfIdsOrSearch() {
+        assertThatThrownBy(() -> bulkDeleteService.deleteStudents(new BulkDeleteRequestDTO(null, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> bulkDeleteService.deleteStudents(new BulkDeleteRequestDTO(List.of(1), "bulk")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> bulkDeleteService.deleteCourses(new BulkDeleteRequestDTO(null, "  ")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(studentService.searchStudents("bulk")).hasSize(STUDENTS);
+    }
+
+    private long enrollmentCount(Course course) {
+        return popularCourseService.getTopCourses(100).stream()
+                .filter(row -> row.getCourseId().equals(course.getCourseId()))
+                .mapToLong(PopularCourseDTO::getEnrollmentCount)
+                .sum();
+    }
+}
@@ -0,0 +1,335 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.dto.BulkEnrollmentResultDTO;
+import fcu.pbiecs.spring_demo.dto.EnrollmentPairDTO;
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.model.Enrollment;
+import fcu.pbiecs.spring_demo.model.EnrollmentId;
+import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.repository.EnrollmentRollupRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 課程名額：大量同時選課不會超收，重複選課由主鍵拒絕，退選與名額修改後可以再選，計數器會以資料庫校正，
+ * 選課期間的校正不會重複計算剛提交的選課，批次選課遇到同時新增的選課時回報重複並歸還名額。
+ */
+@SpringBootTest
+@Import(TestDataSupport.class)
+class CourseSeatServiceTests {
+
+    static final int CAPACITY = 50;
+    static final int STUDENTS = 400;
+    static final int THREADS = 32;
+
+    @Autowired
+    EnrollmentService enrollmentService;
+
+    @Autowired
+    CourseService courseService;
+
+    @Autowired
+    StudentService studentService;
+
+    @Autowired
+    TeacherService teacherService;
+
+    @Autowired
+    TestDataSupport testData;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    CourseSeatService courseSeatService;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    Teacher teacher;
+    Course course;
+    List<Integer> studentIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        testData.clear();
+        teacher = testData.addTeacher("Seat Teacher", "seat@example.com");
+        course = testData.addCourse(teacher, "Hot Course", "Seats", 3, CAPACITY);
+        for (int i = 0; i < STUDENTS; i++) {
+            studentIds.add(studentService.addStudent(
+                    new Student(null, "Seat", "Student" + i, "seat" + i + "@example.com", "2003-01-01", null, null)).getStudentId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        testData.clear();
+    }
+
+    @Test
+    void concurrentEnrollmentsNeverOversubscribe() throws Exception {
+        seedRollupBuckets();
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger full = new AtomicInteger();
+        AtomicInteger duplicate = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Integer studentId : studentIds) {
+            // 每位學生送兩次，重複的請求也同時進行
+            for (int attempt = 0; attempt < 2; attempt++) {
+                tasks.add(() -> {
+                    start.await();
+                    try {
+                        enroll(studentId);
+                        created.incrementAndGet();
+                    } catch (EnrollmentService.CourseFullException e) {
+                        full.incrementAndGet();
+                    } catch (EnrollmentService.EnrollmentAlreadyExistsException e) {
+                        duplicate.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(created.get()).isEqualTo(CAPACITY);
+        assertThat(created.get() + full.get() + duplicate.get()).isEqualTo(tasks.size());
+        assertThat(enrollmentCount()).isEqualTo(CAPACITY);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT SUM(enrollment_count) FROM EnrollmentDailyCount WHERE course_id = ?", Integer.class, course.getCourseId()))
+                .isEqualTo(CAPACITY);
+    }
+
+    @Test
+    void reconcileDuringEnrollmentRushFillsExactlyToCapacity() throws Exception {
+        seedRollupBuckets();
+        // 先退選幾筆，讓退選的結算也和校正同時進行
+        for (int i = 0; i < 10; i++) {
+            enroll(studentIds.get(i));
+        }
+
+        AtomicInteger created = new AtomicInteger(10);
+        AtomicInteger full = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int studentId = studentIds.get(i);
+            tasks.add(() -> {
+                start.await();
+                enrollmentService.deleteEnrollment(studentId, course.getCourseId());
+                created.decrementAndGet();
+                return null;
+            });
+        }
+        for (int i = 10; i < STUDENTS; i++) {
+            int studentId = studentIds.get(i);
+            tasks.add(() -> {
+                start.await();
+                try {
+                    enroll(studentId);
+                    created.incrementAndGet();
+                } catch (EnrollmentService.CourseFullException e) {
+                    full.incrementAndGet();
+                }
+                return null;
+            });
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        try {
+            Future<?> reconciler = executor.submit(() -> {
+                while (!done.get()) {
+                    courseSeatService.reconcile();
+                }
+            });
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            done.set(true);
+            reconciler.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(created.get()).isEqualTo(CAPACITY);
+        assertThat(enrollmentCount()).isEqualTo(CAPACITY);
+        courseSeatService.reconcile();
+        assertThatThrownBy(() -> enroll(studentIds.get(0)))
+                .isInstanceOf(EnrollmentService.CourseFullException.class);
+    }
+
+    @Test
+    void seatsFreedByDeletesAndCapacityChanges() throws Exception {
+        for (int i = 0; i < CAPACITY; i++) {
+            enroll(studentIds.get(i));
+        }
+        assertThatThrownBy(() -> enroll(studentIds.get(CAPACITY)))
+                .isInstanceOf(EnrollmentService.CourseFullException.class);
+
+        // 退選與刪除學生都會歸還名額
+        enrollmentService.deleteEnrollment(studentIds.get(0), course.getCourseId());
+        studentService.deleteStudent(studentIds.get(1));
+        enroll(studentIds.get(CAPACITY));
+        enroll(studentIds.get(CAPACITY + 1));
+        assertThatThrownBy(() -> enroll(studentIds.get(CAPACITY + 2)))
+                .isInstanceOf(EnrollmentService.CourseFullException.class);
+
+        // 批次選課超過名額的部分回傳 COURSE_FULL
+        Course updated = courseService.getCourseById(course.getCourseId());
+        updated.setCapacity(CAPACITY + 2);
+        updated.setTeacher(teacher);
+        courseService.updateCourse(updated);
+        List<EnrollmentPairDTO> pairs = new ArrayList<>();
+        for (int i = CAPACITY + 2; i < CAPACITY + 6; i++) {
+            pairs.add(new EnrollmentPairDTO(studentIds.get(i), course.getCourseId()));
+        }
+        BulkEnrollmentResultDTO result = enrollmentService.addEnrollments(pairs);
+        assertThat(result.getCreated()).isEqualTo(2);
+        assertThat(result.getCourseFull()).isEqualTo(2);
+        assertThat(enrollmentCount()).isEqualTo(CAPACITY + 2);
+
+        // 重新載入後從資料庫重新計算
+        courseSeatService.onDataReloaded(new DataReloadedEvent());
+        assertThatThrownBy(() -> enroll(studentIds.get(CAPACITY + 6)))
+                .isInstanceOf(EnrollmentService.CourseFullException.class);
+    }
+
+    @Test
+    void bulkEnrollmentReportsConcurrentInsertAsDuplicate() throws Exception {
+        Course small = testData.addCourse(teacher, "Small Course", "Seats", 3, 3);
+        CountDownLatch enrolled = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        BulkEnrollmentResultDTO result;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // 另一個交易先新增同一筆選課但還沒提交，批次選課的檢查看不到它
+            Future<?> other = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    enroll(small, studentIds.get(0));
+                    enrolled.countDown();
+                    commit.await();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+            enrolled.await(60, TimeUnit.SECONDS);
+            Future<BulkEnrollmentResultDTO> bulk = executor.submit(() -> enrollmentService.addEnrollments(List.of(
+                    new EnrollmentPairDTO(studentIds.get(0), small.getCourseId()),
+                    new EnrollmentPairDTO(studentIds.get(1), small.getCourseId()))));
+            // 等批次選課的 INSERT 被未提交的選課擋住後才提交
+            while (!bulk.isDone() && jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS WHERE EXECUTING_STATEMENT LIKE 'INSERT INTO Enrollment %'",
+                    Integer.class) == 0) {
+                Thread.sleep(10);
+            }
+            commit.countDown();
+            other.get(60, TimeUnit.SECONDS);
+            result = bulk.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(result.getCreated()).isEqualTo(1);
+        assertThat(result.getDuplicate()).isEqualTo(1);
+        assertThat(result.getResults()).extracting(BulkEnrollmentResultDTO.Item::getStatus)
+                .containsExactly(BulkEnrollmentResultDTO.Status.DUPLICATE, BulkEnrollmentResultDTO.Status.CREATED);
+        assertThat(testData.rollup()).isEqualTo(testData.countedFromEnrollments());
+
+        // 重複的選課沒有佔用名額
+        enroll(small, studentIds.get(2));
+        assertThatThrownBy(() -> enroll(small, studentIds.get(3)))
+                .isInstanceOf(EnrollmentService.CourseFullException.class);
+    }
+
+    @Test
+    void countersAreReconciledWithDatabase() throws Exception {
+        enroll(studentIds.get(0));
+
+        // 其他執行個體寫入的選課不會經過這裡的計數器，校正後才會額滿
+        for (int i = 1; i < CAPACITY; i++) {
+            jdbcTemplate.update("INSERT INTO Enrollment (student_id, course_id, enrollment_date) VALUES (?, ?, CURRENT_DATE)",
+                    studentIds.get(i), course.getCourseId());
+        }
+        courseSeatService.reconcile();
+        assertThatThrownBy(() -> enroll(studentIds.get(CAPACITY)))
+                .isInstanceOf(EnrollmentService.CourseFullException.class);
+
+        // 其他途徑刪除的選課與修改的名額也在校正後反映
+        jdbcTemplate.update("DELETE FROM Enrollment WHERE course_id = ? AND student_id IN (?, ?)",
+                course.getCourseId(), studentIds.get(1), studentIds.get(2));
+        jdbcTemplate.update("UPDATE Course SET capacity = ? WHERE course_id = ?", CAPACITY + 1, course.getCourseId());
+        courseSeatService.reconcile();
+        for (int i = CAPACITY; i < CAPACITY + 3; i++) {
+            enroll(studentIds.get(i));
+        }
+        assertThatThrownBy(() -> enroll(studentIds.get(CAPACITY + 3)))
+                .isInstanceOf(EnrollmentService.CourseFullException.class);
+        assertThat(enrollmentCount()).isEqualTo(CAPACITY + 1);
+    }
+
+    private void enroll(int studentId) throws EnrollmentService.EnrollmentAlreadyExistsException, EnrollmentService.CourseFullException {
+        enroll(course, studentId);
+    }
+
+    private void enroll(Course course, int studentId) throws EnrollmentService.EnrollmentAlreadyExistsException, EnrollmentService.CourseFullException {
+        enrollmentService.addEnrollment(new Enrollment(
+                new EnrollmentId(studentId, course.getCourseId()), null, null, Date.valueOf(LocalDate.now())));
+    }
+
+    // 先建好當天每個 bucket 的彙總列；H2 的 ON DUPLICATE KEY UPDATE 同時新增同一列時會回報主鍵重複 (MariaDB 不會)
+    private void seedRollupBuckets() {
+        for (int bucket = 0; bucket < EnrollmentRollupRepository.BUCKETS; bucket++) {
+            jdbcTemplate.update("INSERT INTO EnrollmentDailyCount (course_id, enrollment_date, bucket, enrollment_count) VALUES (?, ?, ?, 0)",
+                    course.getCourseId(), Date.valueOf(LocalDate.now()), bucket);
+        }
+    }
+
+    private int enrollmentCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Enrollment WHERE course_id = ?", Integer.class, course.getCourseId());
+    }
+}
@@ -0,0 +1,122 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.etag.ChangeTracker.Table;
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Email 索引：不存在的 Email 不查詢資料庫，存在的由快取的 ID 載入，並隨學生與教師的寫入與重新載入更新。
+ */
+@SpringBootTest
+@Import(TestDataSupport.class)
+class EmailIndexServiceTests {
+
+    @Autowired
+    EmailIndexService emailIndexService;
+
+    @Autowired
+    StudentService studentService;
+
+    @Autowired
+    TeacherService teacherService;
+
+    @Autowired
+    TestDataSupport testData;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        testData.clear();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testData.clear();
+    }
+
+    @Test
+    void missingEmailIsAnsweredWithoutQuery() {
+        studentService.addStudent(new Student(null, "Alice", "Wang", "alice@example.com", "2003-01-01", null, null));
+
+        long queries = statistics.getQueryExecutionCount();
+        assertThat(studentService.findStudentsByEmail("nobody@example.com")).isNull();
+        assertThat(statistics.getQueryExecutionCount()).isEqualTo(queries);
+
+        // 第一次查詢後記下 ID，之後依 ID 從二級快取載入
+        assertThat(studentService.findStudentsByEmail("alice@example.com").getFirstName()).isEqualTo("Alice");
+        queries = statistics.getQueryExecutionCount();
+        assertThat(studentService.findStudentsByEmail("alice@example.com").getFirstName()).isEqualTo("Alice");
+        assertThat(statistics.getQueryExecutionCount()).isEqualTo(queries);
+    }
+
+    @Test
+    void indexFollowsWrites() throws Exception {
+        Student bob = studentService.addStudent(new Student(null, "Bob", "Lin", "bob@example.com", "2002-05-05", null, null));
+        assertThat(studentService.findStudentsByEmail("bob@example.com")).isNotNull();
+
+        bob.setEmail("robert@example.com");
+        studentService.updateStudent(bob);
+        assertThat(studentService.findStudentsByEmail("bob@example.com")).isNull();
+        assertThat(studentService.findStudentsByEmail("robert@example.com").getStudentId()).isEqualTo(bob.getStudentId());
+
+        studentService.deleteStudent(bob.getStudentId());
+        assertThat(studentService.findStudentsByEmail("robert@example.com")).isNull();
+
+        teacherService.addTeacher(new Teacher(null, "Teacher", "Teacher@Example.com", 40, null, null));
+        assertThat(emailIndexService.mightExist(Table.TEACHER, "teacher@example.com")).isTrue();
+        assertThat(emailIndexService.mightExist(Table.TEACHER, "other@example.com")).isFalse();
+    }
+
+    @Test
+    void rebuiltAfterDataReload() {
+        // 繞過 Service 寫入的資料要等重新載入後才會加入
+        jdbcTemplate.update("INSERT INTO Student (first_name, last_name, email, date_of_birth, version) " +
+                "VALUES ('Direct', 'Insert', 'direct@example.com', '2003-01-01', 0)");
+        assertThat(emailIndexService.mightExist(Table.STUDENT, "direct@example.com")).isFalse();
+
+        emailIndexService.onDataReloaded(new DataReloadedEvent());
+        assertThat(studentService.findStudentsByEmail("direct@example.com").getFirstName()).isEqualTo("Direct");
+    }
+
+    @Test
+    void saturatedFilterIsRebuiltInBackground() throws Exception {
+        // 超過預計筆數 (至少 10,000，碰撞的不計) 的 Email，資料庫中並不存在
+        for (int i = 0; i < 12_000; i++) {
+            emailIndexService.add(Table.TEACHER, "ghost" + i + "@example.com");
+        }
+        assertThat(emailIndexService.mightExist(Table.TEACHER, "ghost1@example.com")).isTrue();
+
+        // 寫入提交後排入背景重建，重建後只剩資料庫中的 Email
+        teacherService.addTeacher(new Teacher(null, "Real", "real@example.com", 40, null, null));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (emailIndexService.mightExist(Table.TEACHER, "ghost1@example.com")) {
+            assertThat(System.nanoTime()).as("rebuild finished").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+        assertThat(emailIndexService.mightExist(Table.TEACHER, "real@example.com")).isTrue();
+    }
+}
@@ -0,0 +1,122 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.dto.EnrollmentPairDTO;
+import fcu.pbiecs.spring_demo.dto.EnrollmentTrendDTO;
+import fcu.pbiecs.spring_demo.dto.TeacherLoadDTO;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.model.Enrollment;
+import fcu.pbiecs.spring_demo.model.EnrollmentId;
+import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 每日選課彙總在各種寫入後都要與直接從 Enrollment 統計的結果一致。
+ */
+@SpringBootTest
+@Import(TestDataSupport.class)
+class EnrollmentRollupServiceTests {
+
+    static final LocalDate DAY = LocalDate.of(2025, 3, 1);
+
+    @Autowired
+    EnrollmentRollupService enrollmentRollupService;
+
+    @Autowired
+    EnrollmentService enrollmentService;
+
+    @Autowired
+    StudentService studentService;
+
+    @Autowired
+    TeacherService teacherService;
+
+    @Autowired
+    CourseService courseService;
+
+    @Autowired
+    TestDataSupport testData;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    Teacher teacher;
+    Course algorithms;
+    Course databases;
+    List<Student> students;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testData.clear();
+        teacher = testData.addTeacher("Rollup Teacher", "rollup@example.com");
+        algorithms = testData.addCourse(teacher, "Algorithms", "Rollup", 3, null);
+        databases = testData.addCourse(teacher, "Databases", "Rollup", 2, null);
+        students = List.of(
+                studentService.addStudent(new Student(null, "Amy", "Chen", "amy@example.com", "2003-01-01", null, null)),
+                studentService.addStudent(new Student(null, "Ben", "Liu", "ben@example.com", "2003-02-02", null, null)),
+                studentService.addStudent(new Student(null, "Cat", "Wu", "cat@example.com", "2003-03-03", null, null)));
+        for (Student student : students) {
+            enroll(student, algorithms, DAY);
+        }
+        enroll(students.get(0), databases, DAY.plusDays(2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        testData.clear();
+    }
+
+    @Test
+    void rollupFollowsEnrollmentWrites() throws Exception {
+        assertThat(testData.rollup()).isEqualTo(testData.countedFromEnrollments());
+
+        enrollmentService.addEnrollments(List.of(new EnrollmentPairDTO(students.get(1).getStudentId(), databases.getCourseId())));
+        enrollmentService.deleteEnrollment(students.get(2).getStudentId(), algorithms.getCourseId());
+        assertThat(testData.rollup()).isEqualTo(testData.countedFromEnrollments());
+
+        studentService.deleteStudent(students.get(0).getStudentId());
+        assertThat(testData.rollup()).isEqualTo(testData.countedFromEnrollments());
+
+        courseService.deleteCourse(algorithms.getCourseId());
+        assertThat(testData.rollup()).isEqualTo(testData.countedFromEnrollments());
+
+        enrollmentRollupService.rebuild();
+        assertThat(testData.rollup()).isEqualTo(testData.countedFromEnrollments());
+    }
+
+    @Test
+    void statisticsAreAnsweredFromRollup() {
+        List<EnrollmentTrendDTO> trend = enrollmentRollupService.getDailyTrend(DAY.minusDays(1), DAY.plusDays(2), null);
+        assertThat(trend).extracting(EnrollmentTrendDTO::getEnrollments).containsExactly(0L, 3L, 0L, 1L);
+
+        List<EnrollmentTrendDTO> courseTrend = enrollmentRollupService.getDailyTrend(DAY, DAY.plusDays(2), databases.getCourseId());
+        assertThat(courseTrend).extracting(EnrollmentTrendDTO::getEnrollments).containsExactly(0L, 0L, 1L);
+
+        assertThat(enrollmentRollupService.getTeacherLoad(null, null))
+                .containsExactly(new TeacherLoadDTO(teacher.getTeacherId(), "Rollup Teacher", 2, 4));
+        assertThat(enrollmentRollupService.getTeacherLoad(DAY.plusDays(1), null))
+                .containsExactly(new TeacherLoadDTO(teacher.getTeacherId(), "Rollup Teacher", 2, 1));
+
+        assertThat(enrollmentRollupService.getCreditsDistribution(null, null))
+                .extracting(row -> List.of(row.getCredits(), row.getCourses(), row.getEnrollments()))
+                .containsExactly(List.of(2, 1L, 1L), List.of(3, 1L, 3L));
+    }
+
+    private void enroll(Student student, Course course, LocalDate date) throws Exception {
+        enrollmentService.addEnrollment(new Enrollment(
+                new EnrollmentId(student.getStudentId(), course.getCourseId()), student, course, Date.valueOf(date)));
+    }
+}
@@ -0,0 +1,130 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.dto.PopularCourseDTO;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.model.Enrollment;
+import fcu.pbiecs.spring_demo.model.EnrollmentId;
+import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * 熱門課程排行只計入已提交的選課，重新載入後與資料庫一致，教師修改後換成新的快照。
+ */
+@SpringBootTest
+@Import(TestDataSupport.class)
+class PopularCourseServiceTests {
+
+    @Autowired
+    PopularCourseService popularCourseService;
+
+    @Autowired
+    EnrollmentService enrollmentService;
+
+    @Autowired
+    StudentService studentService;
+
+    @Autowired
+    TeacherService teacherService;
+
+    @Autowired
+    TestDataSupport testData;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    Teacher teacher;
+    Course course;
+    Student amy;
+    Student ben;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testData.clear();
+        teacher = testData.addTeacher("Popular Teacher", "popular@example.com");
+        course = testData.addCourse(teacher, "Popular Course", "Ranking", 3, null);
+        amy = studentService.addStudent(new Student(null, "Amy", "Chen", "amy@example.com", "2003-01-01", null, null));
+        ben = studentService.addStudent(new Student(null, "Ben", "Liu", "ben@example.com", "2003-02-02", null, null));
+        enroll(amy);
+    }
+
+    @AfterEach
+    void tearDown() {
+        testData.clear();
+    }
+
+    @Test
+    void rolledBackEnrollmentsAreNotCounted() throws Exception {
+        assertThat(enrollmentCount()).isEqualTo(1);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            try {
+                enroll(ben);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            status.setRollbackOnly();
+        });
+        assertThat(enrollmentCount()).isEqualTo(1);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            try {
+                enrollmentService.deleteEnrollment(amy.getStudentId(), course.getCourseId());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            status.setRollbackOnly();
+        });
+        assertThat(enrollmentCount()).isEqualTo(1);
+
+        enroll(ben);
+        assertThat(enrollmentCount()).isEqualTo(2);
+    }
+
+    @Test
+    void reloadMatchesDatabase() throws Exception {
+        enroll(ben);
+        popularCourseService.reload();
+        assertThat(popularCourseService.getTopCourses(10))
+                .extracting(PopularCourseDTO::getCourseId, PopularCourseDTO::getEnrollmentCount)
+                .containsExactly(tuple(course.getCourseId(), 2L));
+    }
+
+    @Test
+    void teacherUpdatesReplaceSnapshots() throws Exception {
+        PopularCourseDTO before = popularCourseService.getTopCourses(10).get(0);
+
+        teacherService.updateTeacher(new Teacher(teacher.getTeacherId(), "Renamed Teacher", teacher.getEmail(), 50, null, null));
+
+        assertThat(popularCourseService.getTopCourses(10))
+                .extracting(row -> row.getTeacher().getName(), row -> row.getTeacher().getAge(), PopularCourseDTO::getEnrollmentCount)
+                .containsExactly(tuple("Renamed Teacher", 50, 1L));
+        // 已經回傳的結果不受影響
+        assertThat(before.getTeacher().getName()).isEqualTo("Popular Teacher");
+    }
+
+    private void enroll(Student student) throws Exception {
+        enrollmentService.addEnrollment(new Enrollment(
+                new EnrollmentId(student.getStudentId(), course.getCourseId()), null, null, Date.valueOf(LocalDate.now())));
+    }
+
+    private long enrollmentCount() {
+        return popularCourseService.getTopCourses(10).stream()
+                .filter(row -> row.getCourseId().equals(course.getCourseId()))
+                .mapToLong(PopularCourseDTO::getEnrollmentCount)
+                .sum();
+    }
+}
@@ -0,0 +1,139 @@
+package fcu.pbiecs.spring_demo.service;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.repository.CourseRepository;
+import fcu.pbiecs.spring_demo.repository.StudentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 記憶體中的搜尋索引與資料庫查詢的結果一致，並在寫入提交後才更新。
+ */
+@SpringBootTest
+@Import(TestDataSupport.class)
+class SearchIndexServiceTests {
+
+    @Autowired
+    SearchIndexService searchIndexService;
+
+    @Autowired
+    StudentService studentService;
+
+    @Autowired
+    TeacherService teacherService;
+
+    @Autowired
+    CourseService courseService;
+
+    @Autowired
+    StudentRepository studentRepository;
+
+    @Autowired
+    CourseRepository courseRepository;
+
+    @Autowired
+    TestDataSupport testData;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        testData.clear();
+        studentService.addStudent(new Student(null, "Alice", "Wang", "alice@example.com", "2003-01-01", null, null));
+        studentService.addStudent(new Student(null, "Bob", "Lin", "bob.lin@example.com", "2002-05-05", null, null));
+        studentService.addStudent(new Student(null, "小明", "陳", "ming@example.com", "2004-09-09", null, null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        testData.clear();
+    }
+
+    @Test
+    void studentSearchMatchesRepositoryQuery() {
+        for (String keyword : List.of("a", "AL", "lin@ex", "example", "小明", "陳", "zzz", "1")) {
+            assertThat(ids(studentService.searchStudents(keyword)))
+                    .as(keyword)
+                    .isEqualTo(ids(studentRepository.findByKeyword(keyword)));
+        }
+    }
+
+    @Test
+    void pagedSearchReportsTotals() {
+        Page<Student> page = studentService.searchStudents("example", 1, 2);
+        assertThat(page.getTotalElements()).isEqualTo(3);
+        assertThat(page.getTotalPages()).isEqualTo(2);
+        assertThat(page.getContent()).hasSize(1);
+    }
+
+    @Test
+    void indexFollowsUpdatesAndDeletes() throws Exception {
+        Student bob = studentService.searchStudents("bob").get(0);
+        bob.setFirstName("Robert");
+        studentService.updateStudent(bob);
+        assertThat(studentService.searchStudents("bob.lin")).hasSize(1);
+        assertThat(studentService.searchStudents("robert")).hasSize(1);
+        assertThat(studentService.searchStudents("bob@")).isEmpty();
+
+        studentService.deleteStudent(bob.getStudentId());
+        assertThat(studentService.searchStudents("robert")).isEmpty();
+    }
+
+    @Test
+    void rolledBackWritesAreNotIndexed() {
+        transactionTemplate.executeWithoutResult(status -> {
+            studentService.addStudent(new Student(null, "Carol", "Kuo", "carol@example.com", "2003-03-03", null, null));
+            status.setRollbackOnly();
+        });
+        assertThat(studentService.searchStudents("carol")).isEmpty();
+    }
+
+    @Test
+    void courseUpdateWithTeacherIdOnlyKeepsTeacherName() throws Exception {
+        Teacher teacher = testData.addTeacher("Dr. Hsu", "hsu@example.com");
+        Course course = testData.addCourse(teacher, "編譯器", "Compilers", 3, null);
+
+        Teacher idOnly = new Teacher();
+        idOnly.setTeacherId(teacher.getTeacherId());
+        courseService.updateCourse(new Course(course.getCourseId(), "編譯器設計", "Compilers", 3, null, idOnly, null, null));
+
+        assertThat(courseService.searchCourses("hsu")).extracting(Course::getCourseId).containsExactly(course.getCourseId());
+        assertThat(courseService.searchCourses("設計")).hasSize(1);
+    }
+
+    @Test
+    void courseSearchFollowsTeacherRename() {
+        Teacher teacher = testData.addTeacher("Dr. Hsu", "hsu@example.com");
+        testData.addCourse(teacher, "資料結構", "Data Structures", 3, null);
+
+        assertThat(courseService.searchCourses("hsu")).hasSize(1);
+        assertThat(ids(courseService.searchCourses("資料"))).isEqualTo(ids(courseRepository.findByKeyword("資料")));
+
+        teacher.setName("Dr. Lee");
+        teacherService.addTeacher(teacher);
+        assertThat(courseService.searchCourses("hsu")).isEmpty();
+        assertThat(courseService.searchCourses("dr. lee")).hasSize(1);
+    }
+
+    private static List<Integer> ids(List<?> entities) {
+        return entities.stream()
+                .map(e -> e instanceof Student s ? s.getStudentId() : ((Course) e).getCourseId())
+                .sorted(Comparator.naturalOrder())
+                .toList();
+    }
+}
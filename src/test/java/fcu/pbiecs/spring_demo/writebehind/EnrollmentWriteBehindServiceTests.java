@@ -0,0 +1,249 @@
+package fcu.pbiecs.spring_demo.writebehind;
+
+import fcu.pbiecs.spring_demo.TestDataSupport;
+import fcu.pbiecs.spring_demo.event.DataReloadedEvent;
+import fcu.pbiecs.spring_demo.importer.CsvImportService;
+import fcu.pbiecs.spring_demo.job.BulkWriteGuard;
+import fcu.pbiecs.spring_demo.model.Course;
+import fcu.pbiecs.spring_demo.model.Enrollment;
+import fcu.pbiecs.spring_demo.model.EnrollmentId;
+import fcu.pbiecs.spring_demo.model.Student;
+import fcu.pbiecs.spring_demo.model.Teacher;
+import fcu.pbiecs.spring_demo.service.EnrollmentService;
+import fcu.pbiecs.spring_demo.service.StudentService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 選課 write-behind：確認前寫入日誌，選課與退選合併後才寫入資料庫，名額依實際寫入結算，
+ * 大量寫入前先寫完待寫入的記錄，日誌重新開啟時捨棄不完整的記錄。
+ */
+@SpringBootTest(properties = {
+        "app.enrollment.write-behind.enabled=true",
+        // 測試中手動 flush
+        "app.enrollment.write-behind.flush-interval=1h"
+})
+@Import(TestDataSupport.class)
+class EnrollmentWriteBehindServiceTests {
+
+    static final int CAPACITY = 3;
+
+    static Path journalDirectory;
+
+    @DynamicPropertySource
+    static void journalDirectory(DynamicPropertyRegistry registry) throws IOException {
+        journalDirectory = Files.createTempDirectory("enrollment-journal");
+        registry.add("app.enrollment.write-behind.journal-directory", journalDirectory::toString);
+    }
+
+    @Autowired
+    EnrollmentWriteBehindService writeBehindService;
+
+    @Autowired
+    StudentService studentService;
+
+    @Autowired
+    EnrollmentService enrollmentService;
+
+    @Autowired
+    CsvImportService csvImportService;
+
+    @Autowired
+    BulkWriteGuard bulkWriteGuard;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    TestDataSupport testData;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    Course course;
+    List<Integer> studentIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        testData.clear();
+        Teacher teacher = testData.addTeacher("Journal Teacher", "journal@example.com");
+        course = testData.addCourse(teacher, "Rush Course", "Write-behind", 3, CAPACITY);
+        for (int i = 0; i < 5; i++) {
+            studentIds.add(studentService.addStudent(
+                    new Student(null, "Rush", "Student" + i, "rush" + i + "@example.com", "2003-01-01", null, null)).getStudentId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehindService.flush();
+        testData.clear();
+    }
+
+    @Test
+    void acknowledgedBeforeWriteAndCoalesced() throws Exception {
+        double coalesced = meterRegistry.get("enrollment.writebehind.coalesced").counter().count();
+        add(0);
+        add(1);
+        writeBehindService.delete(studentIds.get(1), course.getCourseId());
+        add(2);
+
+        // 已確認的請求都在日誌中，資料庫還沒有
+        assertThat(journalLines()).hasSize(4);
+        assertThat(enrollments()).isEmpty();
+        assertThat(writeBehindService.pendingCount()).isEqualTo(3);
+        assertThat(meterRegistry.get("enrollment.writebehind.pending").gauge().value()).isEqualTo(3);
+        assertThat(meterRegistry.get("enrollment.writebehind.coalesced").counter().count()).isEqualTo(coalesced + 1);
+
+        writeBehindService.flush();
+
+        assertThat(enrollments()).containsExactlyInAnyOrder(studentIds.get(0), studentIds.get(2));
+        assertThat(journalLines()).isEmpty();
+        assertThat(writeBehindService.pendingCount()).isZero();
+        assertThat(testData.rollup()).isEqualTo(testData.countedFromEnrollments());
+
+        // 已寫入的選課退選後再寫入一次
+        writeBehindService.delete(studentIds.get(0), course.getCourseId());
+        writeBehindService.flush();
+        assertThat(enrollments()).containsExactly(studentIds.get(2));
+        assertThat(testData.rollup()).isEqualTo(testData.countedFromEnrollments());
+    }
+
+    @Test
+    void validatedAgainstPendingState() throws Exception {
+        add(0);
+        assertThatThrownBy(() -> add(0)).isInstanceOf(EnrollmentService.EnrollmentAlreadyExistsException.class);
+        assertThatThrownBy(() -> writeBehindService.delete(studentIds.get(4), course.getCourseId()))
+                .isInstanceOf(EnrollmentService.EnrollmentNotfoundException.class);
+
+        add(1);
+        add(2);
+        assertThatThrownBy(() -> add(3)).isInstanceOf(EnrollmentService.CourseFullException.class);
+        // 尚未寫入的選課退選後名額立即歸還
+        writeBehindService.delete(studentIds.get(0), course.getCourseId());
+        add(3);
+
+        writeBehindService.flush();
+        assertThat(enrollments()).containsExactlyInAnyOrder(studentIds.get(1), studentIds.get(2), studentIds.get(3));
+        assertThatThrownBy(() -> add(1)).isInstanceOf(EnrollmentService.EnrollmentAlreadyExistsException.class);
+    }
+
+    @Test
+    void seatsSettleWhenRowsChangeElsewhere() throws Exception {
+        // 待寫入期間同一筆選課已經由同步的 API 寫入 (名額由那邊計算)，寫入時只撤銷這裡的保留
+        add(0);
+        enrollmentService.addEnrollment(new Enrollment(
+                new EnrollmentId(studentIds.get(0), course.getCourseId()), null, null, Date.valueOf(LocalDate.now())));
+        writeBehindService.flush();
+        add(1);
+        add(2);
+        assertThatThrownBy(() -> add(3)).isInstanceOf(EnrollmentService.CourseFullException.class);
+        writeBehindService.flush();
+
+        // 退選待寫入期間同一筆選課已經被刪除，名額不會歸還兩次
+        writeBehindService.delete(studentIds.get(1), course.getCourseId());
+        enrollmentService.deleteEnrollment(studentIds.get(1), course.getCourseId());
+        writeBehindService.flush();
+        add(3);
+        assertThatThrownBy(() -> add(4)).isInstanceOf(EnrollmentService.CourseFullException.class);
+
+        writeBehindService.flush();
+        assertThat(enrollments()).containsExactlyInAnyOrder(studentIds.get(0), studentIds.get(2), studentIds.get(3));
+    }
+
+    @Test
+    void bulkWritesDrainPendingAndRejectNewRequests() throws Exception {
+        add(0);
+        // 匯入前先寫完待寫入的選課，匯入後的重新載入不會捨棄它們
+        csvImportService.importCsv(CsvImportService.Target.ENROLLMENTS, new ByteArrayInputStream(
+                ("student_id,course_id\n" + studentIds.get(1) + "," + course.getCourseId() + "\n").getBytes(StandardCharsets.UTF_8)), null);
+        assertThat(writeBehindService.pendingCount()).isZero();
+        assertThat(enrollments()).containsExactlyInAnyOrder(studentIds.get(0), studentIds.get(1));
+
+        Object bulkWrite = new Object();
+        assertThat(bulkWriteGuard.tryAcquire(bulkWrite)).isTrue();
+        try {
+            assertThatThrownBy(() -> add(2)).isInstanceOf(EnrollmentWriteBehindService.BulkWriteInProgressException.class);
+            assertThatThrownBy(() -> writeBehindService.delete(studentIds.get(0), course.getCourseId()))
+                    .isInstanceOf(EnrollmentWriteBehindService.BulkWriteInProgressException.class);
+        } finally {
+            bulkWriteGuard.release(bulkWrite);
+        }
+        add(2);
+        assertThatThrownBy(() -> add(3)).isInstanceOf(EnrollmentService.CourseFullException.class);
+    }
+
+    @Test
+    void reloadDropsLeftoverPendingWrites() throws Exception {
+        add(0);
+        writeBehindService.onDataReloaded(new DataReloadedEvent());
+
+        assertThat(writeBehindService.pendingCount()).isZero();
+        assertThat(journalLines()).isEmpty();
+        writeBehindService.flush();
+        assertThat(enrollments()).isEmpty();
+    }
+
+    @Test
+    void reopenedJournalDropsTornRecord(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("test.journal");
+        try (EnrollmentJournal journal = new EnrollmentJournal(path)) {
+            journal.append(new EnrollmentJournal.Entry(1, true, 1, 10, LocalDate.of(2026, 9, 1)));
+            journal.append(new EnrollmentJournal.Entry(2, true, 2, 10, LocalDate.of(2026, 9, 1)));
+            journal.append(new EnrollmentJournal.Entry(3, false, 1, 10, null));
+            journal.sync(3);
+        }
+        // 寫到一半就當機的記錄
+        Files.writeString(path, "4 A 3 1", StandardOpenOption.APPEND);
+
+        try (EnrollmentJournal journal = new EnrollmentJournal(path)) {
+            assertThat(journal.recovered()).extracting(EnrollmentJournal.Entry::seq).containsExactly(1L, 2L, 3L);
+            assertThat(journal.recovered().get(2).add()).isFalse();
+            journal.append(new EnrollmentJournal.Entry(4, true, 3, 10, LocalDate.of(2026, 9, 2)));
+            journal.sync(4);
+        }
+        try (EnrollmentJournal journal = new EnrollmentJournal(path)) {
+            assertThat(journal.recovered()).extracting(EnrollmentJournal.Entry::seq).containsExactly(1L, 2L, 3L, 4L);
+            journal.rewrite(List.of(journal.recovered().get(3)));
+        }
+        try (EnrollmentJournal journal = new EnrollmentJournal(path)) {
+            assertThat(journal.recovered()).extracting(EnrollmentJournal.Entry::studentId).containsExactly(3);
+            assertThat(journal.lastSeq()).isEqualTo(4);
+        }
+    }
+
+    private void add(int student) throws EnrollmentService.EnrollmentAlreadyExistsException, EnrollmentService.CourseFullException {
+        writeBehindService.add(studentIds.get(student), course.getCourseId(), LocalDate.now());
+    }
+
+    private List<String> journalLines() throws IOException {
+        return Files.readAllLines(journalDirectory.resolve("enrollments.journal"), StandardCharsets.UTF_8);
+    }
+
+    private List<Integer> enrollments() {
+        return jdbcTemplate.queryForList("SELECT student_id FROM Enrollment WHERE course_id = ?", Integer.class, course.getCourseId());
+    }
+}
@@ -0,0 +1,6 @@
+-- 讀寫分離測試用的 replica 資料表，與 Hibernate 在 primary 產生的結構相同
+CREATE TABLE IF NOT EXISTS Teacher (teacher_id INTEGER GENERATED BY DEFAULT AS IDENTITY, teacher_name VARCHAR(255), email VARCHAR(255), age INTEGER, version BIGINT DEFAULT 0 NOT NULL, PRIMARY KEY (teacher_id));
+CREATE TABLE IF NOT EXISTS Student (student_id INTEGER GENERATED BY DEFAULT AS IDENTITY, first_name VARCHAR(255), last_name VARCHAR(255), email VARCHAR(255), date_of_birth VARCHAR(255), version BIGINT DEFAULT 0 NOT NULL, PRIMARY KEY (student_id));
+CREATE TABLE IF NOT EXISTS Course (course_id INTEGER GENERATED BY DEFAULT AS IDENTITY, course_name VARCHAR(255), course_description VARCHAR(255), credits INTEGER, capacity INTEGER, teacher_id INTEGER NOT NULL, version BIGINT DEFAULT 0 NOT NULL, PRIMARY KEY (course_id), FOREIGN KEY (teacher_id) REFERENCES Teacher);
+CREATE TABLE IF NOT EXISTS Enrollment (student_id INTEGER NOT NULL, course_id INTEGER NOT NULL, enrollment_date DATE, PRIMARY KEY (course_id, student_id), FOREIGN KEY (student_id) REFERENCES Student, FOREIGN KEY (course_id) REFERENCES Course);
+CREATE TABLE IF NOT EXISTS EnrollmentDailyCount (course_id INTEGER NOT NULL, enrollment_date DATE NOT NULL, bucket INTEGER DEFAULT 0 NOT NULL, enrollment_count BIGINT NOT NULL, PRIMARY KEY (course_id, enrollment_date, bucket));